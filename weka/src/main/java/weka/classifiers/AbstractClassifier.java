@@ -48,7 +48,7 @@ import java.util.Vector;
  * @version $Revision$
  */
 public abstract class AbstractClassifier
-  implements Classifier, Cloneable, Serializable, OptionHandler,
+  implements Classifier, BatchPredictor, Cloneable, Serializable, OptionHandler,
              CapabilitiesHandler, RevisionHandler {
 
   /** for serialization */
@@ -131,6 +131,37 @@ public abstract class AbstractClassifier
     }
   }
 
+  /**
+   * Predicts the class memberships for the given instances. The default
+   * implementation calls distributionForInstance() for each instance.
+   *
+   * @param insts the instances to be classified
+   * @return an array containing the estimated membership probabilities
+   * (or the numeric prediction) for each of the instances
+   * @exception Exception if the distributions could not be
+   * computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts) throws Exception {
+
+    double[][] result = new double[insts.numInstances()][];
+    for (int i = 0; i < insts.numInstances(); i++) {
+      result[i] = distributionForInstance(insts.instance(i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether distributionsForInstances() is more efficient than
+   * calling distributionForInstance() for each instance. The default
+   * implementation returns false.
+   *
+   * @return true if the batch prediction is more efficient
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+
+    return false;
+  }
+
   /**
    * Creates a new instance of a classifier given it's class name and
    * (optional) arguments to pass to it's setOptions method. If the
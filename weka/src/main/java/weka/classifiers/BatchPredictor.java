@@ -0,0 +1,56 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BatchPredictor.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers;
+
+import weka.core.Instances;
+
+/**
+ * Interface to classifiers that can predict the class memberships of a
+ * whole set of instances at once.
+ *
+ * @version $Revision$
+ */
+public interface BatchPredictor {
+
+  /**
+   * Predicts the class memberships for the given instances. The result
+   * has to be the same as calling distributionForInstance() for each of
+   * the instances in turn.
+   *
+   * @param insts the instances to be classified
+   * @return an array containing the estimated membership probabilities
+   * (or the numeric prediction) for each of the instances
+   * @exception Exception if the distributions could not be
+   * computed successfully
+   */
+  double[][] distributionsForInstances(Instances insts) throws Exception;
+
+  /**
+   * Returns whether distributionsForInstances() is more efficient than
+   * calling distributionForInstance() for each instance, i.e., whether
+   * it is worth collecting instances into batches.
+   *
+   * @return true if the batch prediction is more efficient
+   */
+  boolean implementsMoreEfficientBatchPrediction();
+}
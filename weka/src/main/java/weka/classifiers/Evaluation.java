@@ -63,10 +63,17 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedList;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -105,6 +112,9 @@ import java.util.zip.GZIPOutputStream;
  * Random number seed for the cross-validation and percentage split
  * (default: 1). <p/>
  *
+ * -cv-slots number <br/>
+ * The number of threads to use for the cross-validation (default: 1). <p/>
+ *
  * -m filename <br/>
  * The name of a file containing a cost matrix. <p/>
  *
@@ -193,7 +203,10 @@ import java.util.zip.GZIPOutputStream;
  * @version  $Revision$
  */
 public class Evaluation
-  implements Summarizable, RevisionHandler {
+  implements Serializable, Summarizable, RevisionHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -7010314486866816271L;
 
   /** The number of classes. */
   protected int m_NumClasses;
@@ -286,7 +299,7 @@ public class Evaluation
   protected double [] m_TrainClassWeights;
 
   /** Numeric class estimator for prior. */
-  protected UnivariateKernelEstimator m_PriorEstimator;
+  protected transient UnivariateKernelEstimator m_PriorEstimator;
 
   /** Whether complexity statistics are available. */
   protected boolean m_ComplexityStatisticsAvailable = true;
@@ -331,6 +344,12 @@ public class Evaluation
   /** The header of the training set. */
   protected Instances m_Header;
 
+  /** The number of threads to use for cross-validation. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The number of instances to predict at once with a BatchPredictor. */
+  protected static final int BATCH_SIZE = 1000;
+
   /**
    * Initializes all the counters for the evaluation.
    * Use <code>useNoPriors()</code> if the dataset is the test set and you
@@ -465,12 +484,37 @@ public class Evaluation
     return newMatrix;
   }
 
+  /**
+   * Sets the number of execution slots (threads) to use for
+   * cross-validation. With more than one slot, the folds are trained
+   * and predicted in parallel.
+   *
+   * @param numSlots the number of slots to use
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for
+   * cross-validation.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation
    * for a classifier on a set of instances. Now performs
    * a deep copy of the classifier before each call to
    * buildClassifier() (just in case the classifier is not
-   * initialized properly).
+   * initialized properly). If more than one execution slot is
+   * set, the folds are trained and predicted in parallel, but
+   * their predictions are still added to the statistics in the
+   * order of the folds, giving the same results as a sequential
+   * cross-validation.
    *
    * @param classifier the classifier with any options set.
    * @param data the data on which the cross-validation is to be
@@ -506,13 +550,17 @@ public class Evaluation
     }
 
     // Do the folds
-    for (int i = 0; i < numFolds; i++) {
-      Instances train = data.trainCV(numFolds, i, random);
-      setPriors(train);
-      Classifier copiedClassifier = AbstractClassifier.makeCopy(classifier);
-      copiedClassifier.buildClassifier(train);
-      Instances test = data.testCV(numFolds, i);
-      evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+    if (m_NumExecutionSlots > 1) {
+      crossValidateFolds(classifier, data, numFolds, random, classificationOutput);
+    } else {
+      for (int i = 0; i < numFolds; i++) {
+        Instances train = data.trainCV(numFolds, i, random);
+        setPriors(train);
+        Classifier copiedClassifier = AbstractClassifier.makeCopy(classifier);
+        copiedClassifier.buildClassifier(train);
+        Instances test = data.testCV(numFolds, i);
+        evaluateModel(copiedClassifier, test, forPredictionsPrinting);
+      }
     }
     m_NumFolds = numFolds;
 
@@ -520,6 +568,143 @@ public class Evaluation
       classificationOutput.printFooter();
   }
 
+  /**
+   * Trains and predicts the folds of a cross-validation in parallel.
+   * The training sets are created in the order of the folds, as they
+   * consume random numbers, and only a limited number of folds is
+   * kept in memory at a time.
+   *
+   * @param classifier the classifier with any options set
+   * @param data the randomized (and stratified) data
+   * @param numFolds the number of folds for the cross-validation
+   * @param random random number generator for randomization
+   * @param classificationOutput the output for the predictions, may be null
+   * @throws Exception if a classifier could not be generated
+   * successfully
+   */
+  protected void crossValidateFolds(Classifier classifier, Instances data,
+                                    int numFolds, Random random,
+                                    AbstractOutput classificationOutput)
+    throws Exception {
+
+    Classifier[] copies = AbstractClassifier.makeCopies(classifier, numFolds);
+    ExecutorService executor = Executors.newFixedThreadPool(m_NumExecutionSlots);
+    LinkedList<CrossValidationFold> pending = new LinkedList<CrossValidationFold>();
+    try {
+      for (int i = 0; i < numFolds; i++) {
+        CrossValidationFold fold = new CrossValidationFold(copies[i],
+            data.trainCV(numFolds, i, random), data.testCV(numFolds, i));
+        copies[i] = null;
+        fold.m_Result = executor.submit(fold);
+        pending.add(fold);
+
+        // limit the number of folds waiting to be evaluated
+        while (pending.size() >= 2 * m_NumExecutionSlots) {
+          evaluateFold(pending.removeFirst(), classificationOutput);
+        }
+      }
+      while (pending.size() > 0) {
+        evaluateFold(pending.removeFirst(), classificationOutput);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for a fold of a cross-validation and adds its predictions
+   * to the statistics, like evaluateModel(Classifier, Instances, Object...).
+   *
+   * @param fold the fold to evaluate
+   * @param classificationOutput the output for the predictions, may be null
+   * @throws Exception if the fold failed or could not be evaluated
+   */
+  protected void evaluateFold(CrossValidationFold fold,
+                              AbstractOutput classificationOutput)
+    throws Exception {
+
+    double[][] dists;
+    try {
+      dists = fold.m_Result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw new Exception(e.getCause().toString());
+    }
+
+    setPriors(fold.m_Train);
+    for (int i = 0; i < fold.m_Test.numInstances(); i++) {
+      Instance instance = fold.m_Test.instance(i);
+      Instance classMissing = (Instance)instance.copy();
+      classMissing.setDataset(instance.dataset());
+      classMissing.setClassMissing();
+      evaluationForSingleInstance(fold.m_Classifier, dists[i], instance,
+                                  classMissing, true);
+      if (classificationOutput != null)
+        classificationOutput.printClassification(fold.m_Classifier, instance, i);
+    }
+  }
+
+  /**
+   * Trains a copy of the classifier on the training set of a fold and
+   * predicts the fold's test set.
+   */
+  protected static class CrossValidationFold
+    implements Callable<double[][]> {
+
+    /** the classifier to train. */
+    protected Classifier m_Classifier;
+
+    /** the training set of the fold. */
+    protected Instances m_Train;
+
+    /** the test set of the fold. */
+    protected Instances m_Test;
+
+    /** the predicted distributions, once available. */
+    protected Future<double[][]> m_Result;
+
+    /**
+     * Initializes the fold.
+     *
+     * @param classifier the classifier to train
+     * @param train the training set
+     * @param test the test set
+     */
+    public CrossValidationFold(Classifier classifier, Instances train,
+                               Instances test) {
+      m_Classifier = classifier;
+      m_Train      = train;
+      m_Test       = test;
+    }
+
+    /**
+     * Trains the classifier and predicts the test set.
+     *
+     * @return the predicted distribution of each test instance
+     * @throws Exception if training or prediction fails
+     */
+    public double[][] call() throws Exception {
+      m_Classifier.buildClassifier(m_Train);
+
+      if (usesBatchPrediction(m_Classifier)) {
+        return ((BatchPredictor) m_Classifier).distributionsForInstances(
+            classMissingBatch(m_Test, 0, m_Test.numInstances()));
+      }
+
+      double[][] result = new double[m_Test.numInstances()][];
+      for (int i = 0; i < m_Test.numInstances(); i++) {
+        Instance classMissing = (Instance)m_Test.instance(i).copy();
+        classMissing.setDataset(m_Test);
+        classMissing.setClassMissing();
+        result[i] = m_Classifier.distributionForInstance(classMissing);
+      }
+
+      return result;
+    }
+  }
+
   /**
    * Performs a (stratified if class is nominal) cross-validation
    * for a classifier on a set of instances.
@@ -577,6 +762,9 @@ public class Evaluation
    * Random number seed for the cross-validation and percentage split
    * (default: 1). <p/>
    *
+   * -cv-slots number <br/>
+   * The number of threads to use for the cross-validation (default: 1). <p/>
+   *
    * -m filename <br/>
    * The name of a file containing a cost matrix. <p/>
    *
@@ -714,6 +902,9 @@ public class Evaluation
    * Random number seed for the cross-validation and percentage split
    * (default: 1). <p/>
    *
+   * -cv-slots number <br/>
+   * The number of threads to use for the cross-validation (default: 1). <p/>
+   *
    * -m file with cost matrix <br/>
    * The name of a file containing a cost matrix. <p/>
    *
@@ -773,10 +964,10 @@ public class Evaluation
       String [] options) throws Exception {
 
     Instances train = null, tempTrain, test = null, template = null;
-    int seed = 1, folds = 10, classIndex = -1;
+    int seed = 1, folds = 10, classIndex = -1, numSlots = 1;
     boolean noCrossValidation = false;
     String trainFileName, testFileName, sourceClass,
-    classIndexString, seedString, foldsString, objectInputFileName,
+    classIndexString, seedString, foldsString, numSlotsString, objectInputFileName,
     objectOutputFileName;
     boolean noOutput = false,
     trainStatistics = true,
@@ -877,6 +1068,10 @@ public class Evaluation
       if (seedString.length() != 0) {
         seed = Integer.parseInt(seedString);
       }
+      numSlotsString = Utils.getOption("cv-slots", options);
+      if (numSlotsString.length() != 0) {
+        numSlots = Integer.parseInt(numSlotsString);
+      }
       if (trainFileName.length() == 0) {
         if (objectInputFileName.length() == 0) {
           throw new Exception("No training file and no object input file given.");
@@ -1067,6 +1262,7 @@ public class Evaluation
     // Setup up evaluation objects
     Evaluation trainingEvaluation = new Evaluation(new Instances(template, 0), costMatrix);
     Evaluation testingEvaluation = new Evaluation(new Instances(template, 0), costMatrix);
+    testingEvaluation.setNumExecutionSlots(numSlots);
 
     // disable use of priors if no training file given
     if (!trainSetPresent)
@@ -1441,16 +1637,61 @@ public class Evaluation
 
     // Need to be able to collect predictions if appropriate (for AUC)
 
-    for (int i = 0; i < data.numInstances(); i++) {
-      predictions[i] = evaluateModelOnceAndRecordPrediction((Classifier)classifier,
-          data.instance(i));
-      if (classificationOutput != null)
-        classificationOutput.printClassification(classifier, data.instance(i), i);
+    if (usesBatchPrediction(classifier)) {
+      for (int start = 0; start < data.numInstances(); start += BATCH_SIZE) {
+        Instances batch = classMissingBatch(data, start,
+            Math.min(BATCH_SIZE, data.numInstances() - start));
+        double[][] dists = ((BatchPredictor) classifier).distributionsForInstances(batch);
+        for (int i = 0; i < batch.numInstances(); i++) {
+          predictions[start + i] = evaluationForSingleInstance(classifier, dists[i],
+              data.instance(start + i), batch.instance(i), true);
+          if (classificationOutput != null)
+            classificationOutput.printClassification(classifier,
+                data.instance(start + i), start + i);
+        }
+      }
+    } else {
+      for (int i = 0; i < data.numInstances(); i++) {
+        predictions[i] = evaluateModelOnceAndRecordPrediction((Classifier)classifier,
+            data.instance(i));
+        if (classificationOutput != null)
+          classificationOutput.printClassification(classifier, data.instance(i), i);
+      }
     }
 
     return predictions;
   }
 
+  /**
+   * Returns whether the classifier should be evaluated on batches of
+   * instances rather than instance by instance.
+   *
+   * @param classifier the classifier to check
+   * @return true if the classifier is a BatchPredictor with a more
+   * efficient batch prediction
+   */
+  protected static boolean usesBatchPrediction(Classifier classifier) {
+    return (classifier instanceof BatchPredictor)
+      && ((BatchPredictor) classifier).implementsMoreEfficientBatchPrediction();
+  }
+
+  /**
+   * Returns copies of a range of instances with the class set to missing,
+   * so that the classifier cannot make use of the actual class values.
+   *
+   * @param data the instances to copy
+   * @param start the index of the first instance to copy
+   * @param num the number of instances to copy
+   * @return the copies
+   */
+  protected static Instances classMissingBatch(Instances data, int start, int num) {
+    Instances result = new Instances(data, start, num);
+    for (int i = 0; i < result.numInstances(); i++) {
+      result.instance(i).setClassMissing();
+    }
+    return result;
+  }
+
   /**
    * Evaluates the supplied distribution on a single instance.
    *
@@ -1509,8 +1750,31 @@ public class Evaluation
     Instance classMissing = (Instance)instance.copy();
     classMissing.setDataset(instance.dataset());
     classMissing.setClassMissing();
-    double pred = evaluationForSingleInstance(classifier.distributionForInstance(classMissing),
-                                              instance, storePredictions);
+    return evaluationForSingleInstance(classifier,
+                                       classifier.distributionForInstance(classMissing),
+                                       instance, classMissing, storePredictions);
+  }
+
+  /**
+   * Evaluates the distribution predicted by a classifier on a single
+   * instance and records the prediction.
+   *
+   * @param classifier the classifier that predicted the distribution
+   * @param dist the predicted distribution
+   * @param instance the test instance
+   * @param classMissing the test instance with the class set to missing
+   * @param storePredictions whether to store predictions for nominal classifier
+   * @return the prediction made by the clasifier
+   * @throws Exception if model could not be evaluated
+   * successfully
+   */
+  protected double evaluationForSingleInstance(Classifier classifier,
+                                               double[] dist,
+                                               Instance instance,
+                                               Instance classMissing,
+                                               boolean storePredictions) throws Exception {
+
+    double pred = evaluationForSingleInstance(dist, instance, storePredictions);
 
     // We don't need to do the following if the class is nominal because in that case
     // entropy and coverage statistics are always computed.
@@ -3111,6 +3375,109 @@ public class Evaluation
     m_NoPriors = true;
   }
 
+  /**
+   * Adds the statistics of another evaluation to this one, e.g., to
+   * combine evaluations of different parts of a test set that were
+   * computed in different threads or JVMs. All counts, error sums,
+   * entropy sums, margin counts and stored predictions are added up. Both
+   * evaluations must have been set up with the same training data, whose 
+   * priors are kept as they are. The number of folds is the sum of the 
+   * folds of both evaluations.
+   *
+   * @param other the evaluation to add to this one
+   * @throws Exception if the evaluations are not based on the same data
+   * @see #aggregate(Evaluation, boolean)
+   */
+  public void aggregate(Evaluation other) throws Exception {
+    aggregate(other, false);
+  }
+
+  /**
+   * Adds the statistics of another evaluation to this one, see
+   * aggregate(Evaluation). If the evaluations were set up with disjoint 
+   * training sets, e.g., different parts of the training data in an 
+   * incremental setting, the prior class counts (or the stored training 
+   * class values for numeric classes) of both evaluations can be combined 
+   * as well, counting the initial count of one per class only once.
+   *
+   * @param other the evaluation to add to this one
+   * @param mergePriors whether to combine the priors of disjoint training 
+   * sets, otherwise the priors are left untouched
+   * @throws Exception if the evaluations are not based on the same data
+   */
+  public void aggregate(Evaluation other, boolean mergePriors) throws Exception {
+
+    String msg = m_Header.equalHeadersMsg(other.m_Header);
+    if (msg != null) {
+      throw new Exception("Evaluations are not compatible:\n" + msg);
+    }
+
+    m_NumFolds += other.m_NumFolds;
+    m_Incorrect += other.m_Incorrect;
+    m_Correct += other.m_Correct;
+    m_Unclassified += other.m_Unclassified;
+    m_MissingClass += other.m_MissingClass;
+    m_WithClass += other.m_WithClass;
+    if (m_ClassIsNominal) {
+      for (int i = 0; i < m_NumClasses; i++) {
+        for (int j = 0; j < m_NumClasses; j++) {
+          m_ConfusionMatrix[i][j] += other.m_ConfusionMatrix[i][j];
+        }
+      }
+    }
+    m_TotalCost += other.m_TotalCost;
+    m_SumErr += other.m_SumErr;
+    m_SumAbsErr += other.m_SumAbsErr;
+    m_SumSqrErr += other.m_SumSqrErr;
+    m_SumClass += other.m_SumClass;
+    m_SumSqrClass += other.m_SumSqrClass;
+    m_SumPredicted += other.m_SumPredicted;
+    m_SumSqrPredicted += other.m_SumSqrPredicted;
+    m_SumClassPredicted += other.m_SumClassPredicted;
+    m_SumPriorAbsErr += other.m_SumPriorAbsErr;
+    m_SumPriorSqrErr += other.m_SumPriorSqrErr;
+    m_SumKBInfo += other.m_SumKBInfo;
+    for (int i = 0; i < m_MarginCounts.length; i++) {
+      m_MarginCounts[i] += other.m_MarginCounts[i];
+    }
+    m_SumPriorEntropy += other.m_SumPriorEntropy;
+    m_SumSchemeEntropy += other.m_SumSchemeEntropy;
+    m_ComplexityStatisticsAvailable &= other.m_ComplexityStatisticsAvailable;
+    m_TotalSizeOfRegions += other.m_TotalSizeOfRegions;
+    m_TotalCoverage += other.m_TotalCoverage;
+    m_CoverageStatisticsAvailable &= other.m_CoverageStatisticsAvailable;
+
+    if (other.m_Predictions != null) {
+      if (m_Predictions == null) {
+        m_Predictions = new FastVector();
+      }
+      for (int i = 0; i < other.m_Predictions.size(); i++) {
+        m_Predictions.addElement(other.m_Predictions.elementAt(i));
+      }
+    }
+
+    // priors
+    if (!mergePriors) {
+      return;
+    }
+    m_NoPriors = m_NoPriors && other.m_NoPriors;
+    if (m_ClassIsNominal) {
+      for (int i = 0; i < m_NumClasses; i++) {
+        m_ClassPriors[i] += other.m_ClassPriors[i] - 1;
+      }
+      m_ClassPriorsSum += other.m_ClassPriorsSum - m_NumClasses;
+    } else {
+      m_ClassPriors[0] += other.m_ClassPriors[0];
+      m_ClassPriorsSum += other.m_ClassPriorsSum;
+      for (int i = 0; i < other.m_NumTrainClassVals; i++) {
+        addNumericTrainClass(other.m_TrainClassVals[i], other.m_TrainClassWeights[i]);
+      }
+      m_MinTarget = Math.min(m_MinTarget, other.m_MinTarget);
+      m_MaxTarget = Math.max(m_MaxTarget, other.m_MaxTarget);
+      m_PriorEstimator = null;
+    }
+  }
+
   /**
    * Tests whether the current evaluation object is equal to another
    * evaluation object.
@@ -3193,6 +3560,9 @@ public class Evaluation
     optionsText.append("-s <random number seed>\n");
     optionsText.append("\tSets random number seed for cross-validation or percentage split\n");
     optionsText.append("\t(default: 1).\n");
+    optionsText.append("-cv-slots <number of threads>\n");
+    optionsText.append("\tSets the number of threads to use for cross-validation\n");
+    optionsText.append("\t(default: 1).\n");
     optionsText.append("-m <name of file with cost matrix>\n");
     optionsText.append("\tSets file with cost matrix.\n");
     optionsText.append("-l <name of input file>\n");
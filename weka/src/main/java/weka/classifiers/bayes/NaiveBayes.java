@@ -43,6 +43,7 @@ import weka.estimators.Estimator;
 import weka.estimators.KernelEstimator;
 import weka.estimators.NormalEstimator;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -213,24 +214,23 @@ implements OptionHandler, WeightedInstancesHandler,
     // can classifier handle the data?
     getCapabilities().testWithFail(instances);
 
-    // remove instances with missing class
-    instances = new Instances(instances);
-    instances.deleteWithMissingClass();
-
     m_NumClasses = instances.numClasses();
 
-    // Copy the instances
-    m_Instances = new Instances(instances);
-
-    // Discretize instances if required
+    // Discretize instances if required, otherwise the training data
+    // doesn't get copied and instances with missing class are skipped
     if (m_UseDiscretization) {
+      instances = new Instances(instances);
+      instances.deleteWithMissingClass();
       m_Disc = new weka.filters.supervised.attribute.Discretize();
-      m_Disc.setInputFormat(m_Instances);
-      m_Instances = weka.filters.Filter.useFilter(m_Instances, m_Disc);
+      m_Disc.setInputFormat(instances);
+      instances = weka.filters.Filter.useFilter(instances, m_Disc);
     } else {
       m_Disc = null;
     }
 
+    // Keep the header only
+    m_Instances = new Instances(instances, 0);
+
     // Reserve space for the distributions
     m_Distributions = new Estimator[m_Instances.numAttributes() - 1]
       [m_Instances.numClasses()];
@@ -245,18 +245,21 @@ implements OptionHandler, WeightedInstancesHandler,
       // numeric precision from differences between adjacent values
       double numPrecision = DEFAULT_NUM_PRECISION;
       if (attribute.type() == Attribute.NUMERIC) {
-	m_Instances.sort(attribute);
-	if ((m_Instances.numInstances() > 0)
-	    && !m_Instances.instance(0).isMissing(attribute)) {
-	  double lastVal = m_Instances.instance(0).value(attribute);
+	double[] values = new double[instances.numInstances()];
+	int numValues = 0;
+	for (int i = 0; i < instances.numInstances(); i++) {
+	  Instance currentInst = instances.instance(i);
+	  if (!currentInst.classIsMissing() && !currentInst.isMissing(attribute)) {
+	    values[numValues++] = currentInst.value(attribute);
+	  }
+	}
+	Arrays.sort(values, 0, numValues);
+	if (numValues > 0) {
+	  double lastVal = values[0];
 	  double currentVal, deltaSum = 0;
 	  int distinct = 0;
-	  for (int i = 1; i < m_Instances.numInstances(); i++) {
-	    Instance currentInst = m_Instances.instance(i);
-	    if (currentInst.isMissing(attribute)) {
-	      break;
-	    }
-	    currentVal = currentInst.value(attribute);
+	  for (int i = 1; i < numValues; i++) {
+	    currentVal = values[i];
 	    if (currentVal != lastVal) {
 	      deltaSum += currentVal - lastVal;
 	      lastVal = currentVal;
@@ -293,15 +296,12 @@ implements OptionHandler, WeightedInstancesHandler,
     }
 
     // Compute counts
-    Enumeration enumInsts = m_Instances.enumerateInstances();
+    Enumeration enumInsts = instances.enumerateInstances();
     while (enumInsts.hasMoreElements()) {
       Instance instance = 
 	(Instance) enumInsts.nextElement();
       updateClassifier(instance);
     }
-
-    // Save space
-    m_Instances = new Instances(m_Instances, 0);
   }
 
 
@@ -384,6 +384,105 @@ implements OptionHandler, WeightedInstancesHandler,
     return probs;
   }
 
+  /**
+   * Calculates the class membership probabilities for the given test 
+   * instances. The factors of the nominal attributes are looked up in 
+   * tables that are computed once for the whole batch.
+   *
+   * @param instances the instances to be classified
+   * @return predicted class probability distributions
+   * @exception Exception if distributions can't be computed
+   */
+  public double [][] distributionsForInstances(Instances instances) 
+    throws Exception { 
+
+    double [][] result = new double[instances.numInstances()][];
+    double [] priors = new double[m_NumClasses];
+    for (int j = 0; j < m_NumClasses; j++) {
+      priors[j] = m_ClassDistribution.getProbability(j);
+    }
+
+    // tables of the factors of the nominal attributes, [attIndex][value][class],
+    // unless an attribute has more values than there are instances
+    double [][][] factors = new double[m_Distributions.length][][];
+    int attIndex = 0;
+    for (int att = 0; att < m_Instances.numAttributes(); att++) {
+      if (att == m_Instances.classIndex()) {
+	continue;
+      }
+      if (m_Instances.attribute(att).isNominal()
+	  && (m_Instances.attribute(att).numValues() <= instances.numInstances())) {
+	factors[attIndex] = new double[m_Instances.attribute(att).numValues()][m_NumClasses];
+	for (int v = 0; v < factors[attIndex].length; v++) {
+	  for (int j = 0; j < m_NumClasses; j++) {
+	    factors[attIndex][v][j] = Math.max(1e-75, Math.pow(m_Distributions[attIndex][j].
+                                                               getProbability(v), 
+                                                               m_Instances.attribute(attIndex).weight()));
+	  }
+	}
+      }
+      attIndex++;
+    }
+
+    for (int i = 0; i < instances.numInstances(); i++) {
+      Instance instance = instances.instance(i);
+      if (m_UseDiscretization) {
+	m_Disc.input(instance);
+	instance = m_Disc.output();
+      }
+      double [] probs = priors.clone();
+      attIndex = 0;
+      for (int att = 0; att < instance.numAttributes(); att++) {
+	if (att == instance.classIndex()) {
+	  continue;
+	}
+	if (!instance.isMissing(att)) {
+	  double temp, max = 0;
+	  double value = instance.value(att);
+	  for (int j = 0; j < m_NumClasses; j++) {
+	    if (factors[attIndex] != null) {
+	      temp = factors[attIndex][(int) value][j];
+	    } else {
+	      temp = Math.max(1e-75, Math.pow(m_Distributions[attIndex][j].
+                                              getProbability(value), 
+                                              m_Instances.attribute(attIndex).weight()));
+	    }
+	    probs[j] *= temp;
+	    if (probs[j] > max) {
+	      max = probs[j];
+	    }
+	    if (Double.isNaN(probs[j])) {
+	      throw new Exception("NaN returned from estimator for attribute "
+                                  + instance.attribute(att).name() + ":\n"
+                                  + m_Distributions[attIndex][j].toString());
+	    }
+	  }
+	  if ((max > 0) && (max < 1e-75)) { // Danger of probability underflow
+	    for (int j = 0; j < m_NumClasses; j++) {
+	      probs[j] *= 1e75;
+	    }
+	  }
+	}
+	attIndex++;
+      }
+
+      Utils.normalize(probs);
+      result[i] = probs;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns true, since distributionsForInstances() computes the factors 
+   * of the nominal attributes only once.
+   *
+   * @return true
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
   /**
    * Returns an enumeration describing the available options.
    *
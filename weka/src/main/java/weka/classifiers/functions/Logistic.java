@@ -31,6 +31,7 @@ import weka.core.Optimization;
 import weka.core.Option;
 import weka.core.OptionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -75,6 +76,8 @@ import java.util.Vector;
  * <br/>
  * Although original Logistic Regression does not deal with instance weights, we modify the algorithm a little bit to handle the instance weights.<br/>
  * <br/>
+ * Sparse data is processed sparsely, i.e., the normalization of the attributes is folded into the parameters rather than applied to the data.<br/>
+ * <br/>
  * For more information see:<br/>
  * <br/>
  * le Cessie, S., van Houwelingen, J.C. (1992). Ridge Estimators in Logistic Regression. Applied Statistics. 41(1):191-201.<br/>
@@ -111,6 +114,16 @@ import java.util.Vector;
  * <pre> -M &lt;number&gt;
  *  Set the maximum number of iterations (default -1, until convergence).</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for evaluating the log-likelihood
+ *  and its gradient in parallel.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
+ * <pre> -num-corrections &lt;num&gt;
+ *  Number of corrections stored by L-BFGS, which needs memory
+ *  linear in the number of parameters.
+ *  (default 0 - i.e. BFGS with dense Hessian approximation)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Xin Xu (xx5@cs.waikato.ac.nz)
@@ -127,6 +140,12 @@ public class Logistic extends AbstractClassifier
     
   /** The data saved as a matrix */
   protected double [][] m_Data;
+
+  /** The indices of the non-zero predictors of sparse training data */
+  protected int [][] m_SparseIndices;
+
+  /** The non-zero values of the predictors of sparse training data */
+  protected double [][] m_SparseValues;
     
   /** The number of attributes in the model */
   protected int m_NumPredictors;
@@ -158,6 +177,12 @@ public class Logistic extends AbstractClassifier
   /** The maximum number of iterations. */
   private int m_MaxIts = -1;
 
+  /** The number of execution slots for evaluating in parallel. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The number of corrections stored by L-BFGS (0 for BFGS). */
+  protected int m_NumCorrections = 0;
+
   private Instances m_structure;
     
   /**
@@ -189,6 +214,9 @@ public class Logistic extends AbstractClassifier
       +"Although original Logistic Regression does not deal with instance "
       +"weights, we modify the algorithm a little bit to handle the "
       +"instance weights.\n\n"
+      +"Sparse data is processed sparsely, i.e., the normalization of the "
+      +"attributes is folded into the parameters rather than applied to "
+      +"the data.\n\n"
       +"For more information see:\n\n"
       + getTechnicalInformation().toString() + "\n\n"
       +"Note: Missing values are replaced using a ReplaceMissingValuesFilter, and "
@@ -224,7 +252,7 @@ public class Logistic extends AbstractClassifier
    * @return an enumeration of all the available options
    */
   public Enumeration listOptions() {
-    Vector newVector = new Vector(3);
+    Vector newVector = new Vector(5);
     newVector.addElement(new Option("\tTurn on debugging output.",
 				    "D", 0, "-D"));
     newVector.addElement(new Option("\tSet the ridge in the log-likelihood.",
@@ -232,6 +260,16 @@ public class Logistic extends AbstractClassifier
     newVector.addElement(new Option("\tSet the maximum number of iterations"+
 				    " (default -1, until convergence).",
 				    "M", 1, "-M <number>"));
+    newVector.addElement(new Option(
+	"\tNumber of execution slots for evaluating the log-likelihood\n"
+	+ "\tand its gradient in parallel.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+    newVector.addElement(new Option(
+	"\tNumber of corrections stored by L-BFGS, which needs memory\n"
+	+ "\tlinear in the number of parameters.\n"
+	+ "\t(default 0 - i.e. BFGS with dense Hessian approximation)",
+	"num-corrections", 1, "-num-corrections <num>"));
     return newVector.elements();
   }
     
@@ -250,6 +288,16 @@ public class Logistic extends AbstractClassifier
    * <pre> -M &lt;number&gt;
    *  Set the maximum number of iterations (default -1, until convergence).</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for evaluating the log-likelihood
+   *  and its gradient in parallel.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
+   * <pre> -num-corrections &lt;num&gt;
+   *  Number of corrections stored by L-BFGS, which needs memory
+   *  linear in the number of parameters.
+   *  (default 0 - i.e. BFGS with dense Hessian approximation)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -269,6 +317,18 @@ public class Logistic extends AbstractClassifier
       m_MaxIts = Integer.parseInt(maxItsString);
     else 
       m_MaxIts = -1;
+
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) 
+      m_NumExecutionSlots = Integer.parseInt(slotsString);
+    else 
+      m_NumExecutionSlots = 1;
+
+    String correctionsString = Utils.getOption("num-corrections", options);
+    if (correctionsString.length() != 0) 
+      m_NumCorrections = Integer.parseInt(correctionsString);
+    else 
+      m_NumCorrections = 0;
   }
     
   /**
@@ -278,7 +338,7 @@ public class Logistic extends AbstractClassifier
    */
   public String [] getOptions() {
 	
-    String [] options = new String [5];
+    String [] options = new String [9];
     int current = 0;
 	
     if (getDebug()) 
@@ -287,6 +347,10 @@ public class Logistic extends AbstractClassifier
     options[current++] = ""+m_Ridge;	
     options[current++] = "-M";
     options[current++] = ""+m_MaxIts;
+    options[current++] = "-num-slots";
+    options[current++] = ""+m_NumExecutionSlots;
+    options[current++] = "-num-corrections";
+    options[current++] = ""+m_NumCorrections;
     while (current < options.length) 
       options[current++] = "";
     return options;
@@ -374,6 +438,66 @@ public class Logistic extends AbstractClassifier
 	
     m_MaxIts = newMaxIts;
   }    
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for evaluating "
+      + "the log-likelihood and its gradient in parallel.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for evaluating
+   * the log-likelihood and its gradient in parallel.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for evaluating
+   * the log-likelihood and its gradient in parallel.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numCorrectionsTipText() {
+    return "The number of corrections stored by the limited memory BFGS "
+      + "method (L-BFGS), whose memory is linear in the number of parameters; "
+      + "0 uses BFGS with a dense approximation of the Hessian, which is "
+      + "quadratic in the number of parameters.";
+  }
+
+  /**
+   * Set the number of corrections stored by L-BFGS, 0 for BFGS.
+   *
+   * @param num the number of corrections
+   */
+  public void setNumCorrections(int num) {
+    m_NumCorrections = num;
+  }
+
+  /**
+   * Get the number of corrections stored by L-BFGS, 0 for BFGS.
+   *
+   * @return the number of corrections
+   */
+  public int getNumCorrections() {
+    return m_NumCorrections;
+  }
     
   private class OptEng extends Optimization{
     /** Weights of instances in the data */
@@ -381,6 +505,15 @@ public class Logistic extends AbstractClassifier
 
     /** Class labels of instances */
     private int[] cls;
+
+    /** Attribute means, for normalizing sparse data implicitly */
+    private double[] mean;
+
+    /** Attribute standard deviations, for normalizing sparse data implicitly */
+    private double[] sd;
+
+    /** The parameters for the unnormalized sparse data, per class */
+    private double[][] coef;
 	
     /** 
      * Set the weights of instances
@@ -397,24 +530,85 @@ public class Logistic extends AbstractClassifier
     public void setClassLabels(int[] c) {
       cls = c;
     }
+
+    /** 
+     * Set the attribute means and standard deviations used to normalize
+     * sparse data
+     * @param m the means
+     * @param s the standard deviations
+     */ 
+    public void setNormalization(double[] m, double[] s) {
+      mean = m;
+      sd = s;
+    }
+
+    /** 
+     * Convert the parameters for normalized data to the parameters for
+     * unnormalized data, which the sparse instances are evaluated with
+     * @param x the current values of variables
+     */
+    private void unnormalize(double[] x) {
+      int dim = m_NumPredictors+1; // Number of variables per class
+
+      if (coef == null)
+	coef = new double[m_NumClasses-1][dim];
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	int index = offset * dim;
+	coef[offset][0] = x[index];
+	for(int j=1; j<dim; j++){
+	  coef[offset][j] = x[index + j];
+	  if (sd[j] != 0) {
+	    coef[offset][j] /= sd[j];
+	    coef[offset][0] -= coef[offset][j] * mean[j];
+	  }
+	}
+      }
+    }
 	
     /** 
      * Evaluate objective function
      * @param x the current values of variables
      * @return the value of the objective function 
+     * @throws Exception if the evaluation fails
+     */
+    protected double objectiveFunction(double[] x) throws Exception {
+      if (m_Data == null)
+	unnormalize(x);
+      double nll = parallelObjectiveFunction(x, cls.length); // -LogLikelihood
+      int dim = m_NumPredictors+1; // Number of variables per class
+	    
+      // Ridge: note that intercepts NOT included
+      for(int offset=0; offset<m_NumClasses-1; offset++){
+	for(int r=1; r<dim; r++)
+	  nll += m_Ridge*x[offset*dim+r]*x[offset*dim+r];
+      }
+	    
+      return nll;
+    }
+
+    /** 
+     * Evaluate the negative log-likelihood of a range of instances
+     * @param x the current values of variables
+     * @param start the first instance
+     * @param end the instance after the last one
+     * @return the weighted negative log-likelihood of the instances
      */
-    protected double objectiveFunction(double[] x){
+    protected double partialObjectiveFunction(double[] x, int start, int end){
       double nll = 0; // -LogLikelihood
       int dim = m_NumPredictors+1; // Number of variables per class
 	    
-      for(int i=0; i<cls.length; i++){ // ith instance
+      for(int i=start; i<end; i++){ // ith instance
 
 	double[] exp = new double[m_NumClasses-1];
 	int index;
-	for(int offset=0; offset<m_NumClasses-1; offset++){ 
-	  index = offset * dim;
-	  for(int j=0; j<dim; j++)
-	    exp[offset] += m_Data[i][j]*x[index + j];
+	if (m_Data == null) {
+	  sparseDotProducts(i, exp);
+	} else {
+	  for(int offset=0; offset<m_NumClasses-1; offset++){ 
+	    index = offset * dim;
+	    for(int j=0; j<dim; j++)
+	      exp[offset] += m_Data[i][j]*x[index + j];
+	  }
 	}
 	double max = exp[Utils.maxIndex(exp)];
 	double denom = Math.exp(-max);
@@ -431,33 +625,65 @@ public class Logistic extends AbstractClassifier
 	nll -= weights[i]*(num - Math.log(denom)); // Weighted NLL
       }
 	    
+      return nll;
+    }
+
+    /** 
+     * Evaluate Jacobian vector
+     * @param x the current values of variables
+     * @return the gradient vector 
+     * @throws Exception if the evaluation fails
+     */
+    protected double[] evaluateGradient(double[] x) throws Exception {
+      if (m_Data == null)
+	unnormalize(x);
+      double[] grad = parallelGradient(x, cls.length);
+      int dim = m_NumPredictors+1; // Number of variables per class
+
+      // Sparse data: chain rule for the implicit normalization
+      if (m_Data == null) {
+	for(int offset=0; offset<m_NumClasses-1; offset++){
+	  int index = offset * dim;
+	  for(int j=1; j<dim; j++){
+	    if (sd[j] != 0)
+	      grad[index + j] = (grad[index + j] - mean[j] * grad[index]) / sd[j];
+	  }
+	}
+      }
+	    
       // Ridge: note that intercepts NOT included
       for(int offset=0; offset<m_NumClasses-1; offset++){
 	for(int r=1; r<dim; r++)
-	  nll += m_Ridge*x[offset*dim+r]*x[offset*dim+r];
+	  grad[offset*dim+r] += 2*m_Ridge*x[offset*dim+r];
       }
 	    
-      return nll;
+      return grad;
     }
 
     /** 
-     * Evaluate Jacobian vector
+     * Add the gradient of the negative log-likelihood of a range of 
+     * instances
      * @param x the current values of variables
-     * @return the gradient vector 
+     * @param start the first instance
+     * @param end the instance after the last one
+     * @param grad the gradient vector to add to
      */
-    protected double[] evaluateGradient(double[] x){
-      double[] grad = new double[x.length];
+    protected void partialGradient(double[] x, int start, int end, double[] grad){
       int dim = m_NumPredictors+1; // Number of variables per class
 	    
-      for(int i=0; i<cls.length; i++){ // ith instance
+      for(int i=start; i<end; i++){ // ith instance
 	double[] num=new double[m_NumClasses-1]; // numerator of [-log(1+sum(exp))]'
 	int index;
-	for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
-	  double exp=0.0;
-	  index = offset * dim;
-	  for(int j=0; j<dim; j++)
-	    exp += m_Data[i][j]*x[index + j];
-	  num[offset] = exp;
+	if (m_Data == null) {
+	  sparseDotProducts(i, num);
+	} else {
+	  for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
+	    double exp=0.0;
+	    index = offset * dim;
+	    for(int j=0; j<dim; j++)
+	      exp += m_Data[i][j]*x[index + j];
+	    num[offset] = exp;
+	  }
 	}
 
 	double max = num[Utils.maxIndex(num)];
@@ -473,25 +699,61 @@ public class Logistic extends AbstractClassifier
 	for(int offset=0; offset<m_NumClasses-1; offset++){ // Which part of x
 	  index = offset * dim;
 	  firstTerm = weights[i] * num[offset];
-	  for(int q=0; q<dim; q++){
-	    grad[index + q] += firstTerm * m_Data[i][q];
+	  if (m_Data == null) {
+	    addSparse(i, firstTerm, grad, index);
+	  } else {
+	    for(int q=0; q<dim; q++){
+	      grad[index + q] += firstTerm * m_Data[i][q];
+	    }
 	  }
 	}
 		
 	if(cls[i] != m_NumClasses-1){ // Not the last class
-	  for(int p=0; p<dim; p++){
-	    grad[cls[i]*dim+p] -= weights[i]*m_Data[i][p]; 
+	  if (m_Data == null) {
+	    addSparse(i, -weights[i], grad, cls[i]*dim);
+	  } else {
+	    for(int p=0; p<dim; p++){
+	      grad[cls[i]*dim+p] -= weights[i]*m_Data[i][p]; 
+	    }
 	  }
 	}
       }
-	    
-      // Ridge: note that intercepts NOT included
+    }
+
+    /** 
+     * Compute the dot products of a sparse instance with the unnormalized 
+     * parameters of each class, visiting only its non-zero values
+     * @param i the index of the instance
+     * @param result the array to store the dot products in
+     */
+    private void sparseDotProducts(int i, double[] result){
+      int[] indices = m_SparseIndices[i];
+      double[] values = m_SparseValues[i];
+
       for(int offset=0; offset<m_NumClasses-1; offset++){
-	for(int r=1; r<dim; r++)
-	  grad[offset*dim+r] += 2*m_Ridge*x[offset*dim+r];
+	double[] c = coef[offset];
+	double exp = c[0];
+	for(int n=0; n<indices.length; n++)
+	  exp += c[indices[n]]*values[n];
+	result[offset] = exp;
       }
-	    
-      return grad;
+    }
+
+    /** 
+     * Add a multiple of a sparse instance (including the constant for the 
+     * intercept) to a part of the gradient vector
+     * @param i the index of the instance
+     * @param factor the multiple
+     * @param grad the gradient vector
+     * @param index the start of the part of the gradient vector
+     */
+    private void addSparse(int i, double factor, double[] grad, int index){
+      int[] indices = m_SparseIndices[i];
+      double[] values = m_SparseValues[i];
+
+      grad[index] += factor;
+      for(int n=0; n<indices.length; n++)
+	grad[index + indices[n]] += factor*values[n];
     }
     
     /**
@@ -537,9 +799,15 @@ public class Logistic extends AbstractClassifier
     // can classifier handle the data?
     getCapabilities().testWithFail(train);
 
-    // remove instances with missing class
-    train = new Instances(train);
-    train.deleteWithMissingClass();
+    // remove instances with missing class, copying the data only if
+    // there are any
+    for (int i = 0; i < train.numInstances(); i++) {
+      if (train.instance(i).classIsMissing()) {
+        train = new Instances(train);
+        train.deleteWithMissingClass();
+        break;
+      }
+    }
     
     // Replace missing values	
     m_ReplaceMissingValues = new ReplaceMissingValues();
@@ -567,7 +835,17 @@ public class Logistic extends AbstractClassifier
     int nR = m_NumPredictors = train.numAttributes() - 1;
     int nC = train.numInstances();
 	
-    m_Data = new double[nC][nR + 1];               // Data values
+    // Sparse data stays sparse and gets normalized implicitly
+    boolean sparse = false;
+    for (int i = 0; (i < nC) && !sparse; i++)
+      sparse = (train.instance(i) instanceof SparseInstance);
+    if (sparse) {
+      m_Data = null;
+      m_SparseIndices = new int[nC][];             // Non-zero predictors
+      m_SparseValues = new double[nC][];           // Their values
+    } else {
+      m_Data = new double[nC][nR + 1];             // Data values
+    }
     int [] Y  = new int[nC];                       // Class labels
     double [] xMean= new double[nR + 1];           // Attribute means
     double [] xSD  = new double[nR + 1];           // Attribute stddev's
@@ -587,15 +865,37 @@ public class Logistic extends AbstractClassifier
       weights[i] = current.weight();     // Dealing with weights
       totWeights += weights[i];
 	    
-      m_Data[i][0] = 1;
-      int j = 1;
-      for (int k = 0; k <= nR; k++) {
-	if (k != m_ClassIndex) {
-	  double x = current.value(k);
-	  m_Data[i][j] = x;
-	  xMean[j] += weights[i]*x;
-	  xSD[j] += weights[i]*x*x;
-	  j++;
+      if (sparse) {
+	int count = 0;
+	for (int n = 0; n < current.numValues(); n++) {
+	  if ((current.index(n) != m_ClassIndex) && (current.valueSparse(n) != 0))
+	    count++;
+	}
+	m_SparseIndices[i] = new int[count];
+	m_SparseValues[i] = new double[count];
+	count = 0;
+	for (int n = 0; n < current.numValues(); n++) {
+	  int k = current.index(n);
+	  double x = current.valueSparse(n);
+	  if ((k != m_ClassIndex) && (x != 0)) {
+	    int j = (k < m_ClassIndex) ? k + 1 : k;
+	    m_SparseIndices[i][count] = j;
+	    m_SparseValues[i][count++] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	  }
+	}
+      } else {
+	m_Data[i][0] = 1;
+	int j = 1;
+	for (int k = 0; k <= nR; k++) {
+	  if (k != m_ClassIndex) {
+	    double x = current.value(k);
+	    m_Data[i][j] = x;
+	    xMean[j] += weights[i]*x;
+	    xSD[j] += weights[i]*x*x;
+	    j++;
+	  }
 	}
       }
 	    
@@ -629,7 +929,7 @@ public class Logistic extends AbstractClassifier
     }
 	
     // Normalise input data 
-    for (int i = 0; i < nC; i++) {
+    for (int i = 0; !sparse && (i < nC); i++) {
       for (int j = 0; j <= nR; j++) {
 	if (xSD[j] != 0) {
 	  m_Data[i][j] = (m_Data[i][j] - xMean[j]) / xSD[j];
@@ -659,8 +959,11 @@ public class Logistic extends AbstractClassifier
 	
     OptEng opt = new OptEng();	
     opt.setDebug(m_Debug);
+    opt.setNumExecutionSlots(m_NumExecutionSlots);
+    opt.setNumCorrections(m_NumCorrections);
     opt.setWeights(weights);
     opt.setClassLabels(Y);
+    opt.setNormalization(xMean, xSD);
 
     if(m_MaxIts == -1){  // Search until convergence
       x = opt.findArgmin(x, b);
@@ -684,6 +987,8 @@ public class Logistic extends AbstractClassifier
 
     // Don't need data matrix anymore
     m_Data = null;
+    m_SparseIndices = null;
+    m_SparseValues = null;
 	    
     // Convert coefficients back to non-normalized attribute units
     for(int i=0; i < nK; i++){
@@ -714,6 +1019,13 @@ public class Logistic extends AbstractClassifier
     instance = m_AttFilter.output();
     m_NominalToBinary.input(instance);
     instance = m_NominalToBinary.output();
+
+    // Only visit the non-zero values of sparse instances
+    if (instance instanceof SparseInstance) {
+      double [] v = new double [m_NumClasses];
+      logPosteriors(instance, v);
+      return probabilities(v);
+    }
 	
     // Extract the predictor columns into an array
     double [] instDat = new double [m_NumPredictors + 1];
@@ -729,6 +1041,69 @@ public class Logistic extends AbstractClassifier
     return distribution;
   }
 
+  /**
+   * Computes the distributions for the given instances. Only the non-zero
+   * values of the filtered instances are used, which makes no difference
+   * to the result but is much faster for sparse data.
+   *
+   * @param insts the instances for which the distributions are computed
+   * @return the distributions
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double [][] distributionsForInstances(Instances insts) 
+    throws Exception {
+
+    double [][] result = new double [insts.numInstances()][];
+    double [] v = new double [m_NumClasses];
+    for (int i = 0; i < insts.numInstances(); i++) {
+      Instance instance = insts.instance(i);
+      m_ReplaceMissingValues.input(instance);
+      instance = m_ReplaceMissingValues.output();
+      m_AttFilter.input(instance);
+      instance = m_AttFilter.output();
+      m_NominalToBinary.input(instance);
+      instance = m_NominalToBinary.output();
+
+      logPosteriors(instance, v);
+      result[i] = probabilities(v);
+    }
+    return result;
+  }
+
+  /**
+   * Computes the log-posteriors before normalizing of a filtered instance,
+   * visiting only its non-zero values.
+   *
+   * @param instance the filtered instance
+   * @param v the array to store the log-posteriors in, the last one being zero
+   */
+  private void logPosteriors(Instance instance, double[] v) {
+    // Start with the intercept
+    for (int j = 0; j < m_NumClasses-1; j++) {
+      v[j] = m_Par[0][j];
+    }
+    for (int n = 0; n < instance.numValues(); n++) {
+      int k = instance.index(n);
+      double value = instance.valueSparse(n);
+      if ((k != m_ClassIndex) && (value != 0)) {
+	int row = (k < m_ClassIndex) ? k + 1 : k;
+	for (int j = 0; j < m_NumClasses-1; j++) {
+	  v[j] += m_Par[row][j] * value;
+	}
+      }
+    }
+    v[m_NumClasses-1] = 0;
+  }
+
+  /**
+   * Returns true, since distributionsForInstances() skips zero values.
+   *
+   * @return true
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
   /**
    * Compute the posterior distribution using optimized parameter values
    * and the testing instance.
@@ -736,8 +1111,7 @@ public class Logistic extends AbstractClassifier
    * @return the posterior probability distribution
    */ 
   private double[] evaluateProbability(double[] data){
-    double[] prob = new double[m_NumClasses],
-      v = new double[m_NumClasses];
+    double[] v = new double[m_NumClasses];
 
     // Log-posterior before normalizing
     for(int j = 0; j < m_NumClasses-1; j++){
@@ -747,6 +1121,17 @@ public class Logistic extends AbstractClassifier
     }
     v[m_NumClasses-1] = 0;
 	
+    return probabilities(v);
+  } 
+
+  /**
+   * Turns the log-posteriors into the posterior distribution.
+   * @param v the log-posteriors, the last one being zero
+   * @return the posterior probability distribution
+   */ 
+  private double[] probabilities(double[] v){
+    double[] prob = new double[m_NumClasses];
+
     // Do so to avoid scaling problems
     for(int m=0; m < m_NumClasses; m++){
       double sum = 0;
@@ -54,10 +54,18 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.IdentityHashMap;
 import java.util.Random;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -141,6 +149,16 @@ import javax.swing.JTextField;
  *  Learning rate decay will occur.
  *  (Set this to cause the learning rate to decay).</pre>
  * 
+ * <pre> -batch-size &lt;num&gt;
+ *  The number of instances per mini-batch. The weights are
+ *  updated after each mini-batch.
+ *  (Value should be &gt; 0, Default = 1).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for processing the instances
+ *  of a mini-batch in parallel.
+ *  (Default = 1 - i.e. no parallelism).</pre>
+ * 
  <!-- options-end -->
  *
  * @author Malcolm Ware (mfw4@cs.waikato.ac.nz)
@@ -441,6 +459,378 @@ public class MultilayerPerceptron
   
 
  
+  /**
+   * A copy of the network laid out in flat arrays, for training with
+   * mini-batches whose instances can be processed in parallel. The units
+   * are numbered with the inputs first, followed by the nodes in an order
+   * in which every node comes after its inputs. The weights of a node (the
+   * threshold first) are stored consecutively, together with the units 
+   * they connect from. The weights are updated with the same rule as the 
+   * network's nodes use, and get copied back into the nodes after training.
+   */
+  protected class FlatNetwork {
+
+    /** The nodes, in the order in which they are evaluated. */
+    protected NeuralNode[] m_nodes;
+
+    /** The attribute index of each input unit. */
+    protected int[] m_inputLinks;
+
+    /** Whether a node is a linear (rather than a sigmoid) unit. */
+    protected boolean[] m_linear;
+
+    /** The position of each node's first weight (plus the end). */
+    protected int[] m_weightStart;
+
+    /** The unit each weight connects from, -1 for the thresholds. */
+    protected int[] m_source;
+
+    /** The weights of all the nodes. */
+    protected double[] m_weights;
+
+    /** The last change in the weights. */
+    protected double[] m_changes;
+
+    /** The weights with the lowest validation error. */
+    protected double[] m_bestWeights;
+
+    /** The nodes (as units) that feed each output. */
+    protected int[][] m_outputSources;
+
+    /** The workers, one per execution slot. */
+    protected Worker[] m_workers;
+
+    /**
+     * Processes ranges of instances, using its own buffers.
+     */
+    protected class Worker {
+
+      /** The output values of the units. */
+      protected double[] m_values;
+
+      /** The errors of the units. */
+      protected double[] m_deltas;
+
+      /** The errors of the outputs. */
+      protected double[] m_outputErrors;
+
+      /** The weighted sum of the changes the instances ask for. */
+      protected double[] m_gradient;
+
+      /**
+       * Sets up the buffers.
+       */
+      public Worker() {
+	m_values = new double[m_inputLinks.length + m_nodes.length];
+	m_deltas = new double[m_values.length];
+	m_outputErrors = new double[m_outputSources.length];
+	m_gradient = new double[m_weights.length];
+      }
+
+      /**
+       * Calculates the output values of all units and the errors of the
+       * outputs for an instance.
+       * @param inst The instance.
+       * @return The squared error.
+       */
+      protected double calculateOutputs(Instance inst) {
+	int numInputs = m_inputLinks.length;
+	for (int noa = 0; noa < numInputs; noa++) {
+	  if (inst.isMissing(m_inputLinks[noa])) {
+	    m_values[noa] = 0;
+	  }
+	  else {
+	    m_values[noa] = inst.value(m_inputLinks[noa]);
+	  }
+	}
+	for (int noa = 0; noa < m_nodes.length; noa++) {
+	  int start = m_weightStart[noa];
+	  int end = m_weightStart[noa + 1];
+	  double value = m_weights[start];
+	  for (int nob = start + 1; nob < end; nob++) {
+	    value += m_values[m_source[nob]] * m_weights[nob];
+	  }
+	  if (!m_linear[noa]) {
+	    //same overflow protection as the SigmoidUnit
+	    if (value < -45) {
+	      value = 0;
+	    }
+	    else if (value > 45) {
+	      value = 1;
+	    }
+	    else {
+	      value = 1 / (1 + Math.exp(-value));
+	    }
+	  }
+	  m_values[numInputs + noa] = value;
+	}
+
+	double ret = 0;
+	int classIndex = m_instances.classIndex();
+	for (int noa = 0; noa < m_outputSources.length; noa++) {
+	  double value = 0;
+	  for (int nob = 0; nob < m_outputSources[noa].length; nob++) {
+	    value += m_values[m_outputSources[noa][nob]];
+	  }
+	  double error;
+	  if (!m_numeric) {
+	    error = ((inst.classValue() == noa) ? 1 : 0) - value;
+	  }
+	  else if (m_normalizeClass) {
+	    value = value * m_attributeRanges[classIndex] 
+	      + m_attributeBases[classIndex];
+	    if (m_attributeRanges[classIndex] == 0) {
+	      error = 0;
+	    }
+	    else {
+	      error = (inst.classValue() - value) / m_attributeRanges[classIndex];
+	    }
+	  }
+	  else {
+	    error = inst.classValue() - value;
+	  }
+	  m_outputErrors[noa] = error;
+	  ret += error * error;
+	}
+	return ret;
+      }
+
+      /**
+       * Propagates the errors of the outputs back through the network and
+       * adds the resulting weight changes to the gradient.
+       * @param weight The weight of the instance.
+       */
+      protected void calculateErrors(double weight) {
+	int numInputs = m_inputLinks.length;
+	Arrays.fill(m_deltas, numInputs, m_deltas.length, 0);
+	for (int noa = 0; noa < m_outputSources.length; noa++) {
+	  for (int nob = 0; nob < m_outputSources[noa].length; nob++) {
+	    m_deltas[m_outputSources[noa][nob]] += m_outputErrors[noa];
+	  }
+	}
+	for (int noa = m_nodes.length - 1; noa >= 0; noa--) {
+	  int unit = numInputs + noa;
+	  double delta = m_deltas[unit];
+	  if (!m_linear[noa]) {
+	    delta *= m_values[unit] * (1 - m_values[unit]);
+	  }
+	  double weightTimesDelta = weight * delta;
+	  int start = m_weightStart[noa];
+	  int end = m_weightStart[noa + 1];
+	  m_gradient[start] += weightTimesDelta;
+	  for (int nob = start + 1; nob < end; nob++) {
+	    int source = m_source[nob];
+	    m_gradient[nob] += weightTimesDelta * m_values[source];
+	    if (source >= numInputs) {
+	      m_deltas[source] += delta * m_weights[nob];
+	    }
+	  }
+	}
+      }
+
+      /**
+       * Processes a range of instances.
+       * @param data The instances.
+       * @param indices The indices of the instances to process from.
+       * @param start The first index in the range.
+       * @param end The index after the last one in the range.
+       * @param train True if the gradient should be calculated.
+       * @return The sum of the weighted errors, as the network reports them.
+       */
+      protected double process(Instances data, int[] indices, int start, 
+			       int end, boolean train) {
+	double ret = 0;
+	if (train) {
+	  Arrays.fill(m_gradient, 0);
+	}
+	for (int noa = start; noa < end; noa++) {
+	  Instance inst = data.instance(indices[noa]);
+	  ret += (calculateOutputs(inst) / data.numClasses()) * inst.weight();
+	  if (train) {
+	    calculateErrors(inst.weight());
+	  }
+	}
+	return ret;
+      }
+    }
+
+    /**
+     * Lays out the given nodes of the network.
+     * @param nodes The nodes, each one after its inputs.
+     * @param units The unit number of each input and node.
+     */
+    public FlatNetwork(NeuralNode[] nodes, 
+		       IdentityHashMap<NeuralConnection, Integer> units) {
+      m_nodes = nodes;
+      m_inputLinks = new int[m_inputs.length];
+      for (int noa = 0; noa < m_inputs.length; noa++) {
+	m_inputLinks[noa] = m_inputs[noa].getLink();
+      }
+      m_linear = new boolean[nodes.length];
+      m_weightStart = new int[nodes.length + 1];
+      for (int noa = 0; noa < nodes.length; noa++) {
+	m_linear[noa] = (nodes[noa].getMethod() instanceof LinearUnit);
+	m_weightStart[noa + 1] = m_weightStart[noa] + nodes[noa].getNumInputs() + 1;
+      }
+      m_weights = new double[m_weightStart[nodes.length]];
+      m_changes = new double[m_weights.length];
+      m_bestWeights = new double[m_weights.length];
+      m_source = new int[m_weights.length];
+      for (int noa = 0; noa < nodes.length; noa++) {
+	int start = m_weightStart[noa];
+	int length = m_weightStart[noa + 1] - start;
+	System.arraycopy(nodes[noa].getWeights(), 0, m_weights, start, length);
+	System.arraycopy(nodes[noa].getChangeInWeights(), 0, m_changes, start, 
+			 length);
+	m_source[start] = -1;
+	NeuralConnection[] inputs = nodes[noa].getInputs();
+	for (int nob = 1; nob < length; nob++) {
+	  m_source[start + nob] = units.get(inputs[nob - 1]).intValue();
+	}
+      }
+      m_outputSources = new int[m_outputs.length][];
+      for (int noa = 0; noa < m_outputs.length; noa++) {
+	NeuralConnection[] inputs = m_outputs[noa].getInputs();
+	m_outputSources[noa] = new int[m_outputs[noa].getNumInputs()];
+	for (int nob = 0; nob < m_outputSources[noa].length; nob++) {
+	  m_outputSources[noa][nob] = units.get(inputs[nob]).intValue();
+	}
+      }
+      m_workers = new Worker[(m_executor == null) ? 1 : m_numExecutionSlots];
+      for (int noa = 0; noa < m_workers.length; noa++) {
+	m_workers[noa] = new Worker();
+      }
+    }
+
+    /**
+     * Processes a range of instances, split up among the workers. The 
+     * gradients of the workers get added up in the first worker.
+     * @param data The instances.
+     * @param indices The indices of the instances to process from.
+     * @param start The first index in the range.
+     * @param end The index after the last one in the range.
+     * @param train True if the gradient should be calculated.
+     * @return The sum of the weighted errors.
+     * @throws Exception if processing fails.
+     */
+    protected double process(final Instances data, final int[] indices, 
+			     int start, int end, final boolean train) 
+      throws Exception {
+      
+      int numParts = Math.max(1, Math.min(m_workers.length, end - start));
+      if (numParts == 1) {
+	return m_workers[0].process(data, indices, start, end, train);
+      }
+
+      Future<Object>[] results = new Future[numParts];
+      for (int noa = 1; noa < numParts; noa++) {
+	final Worker worker = m_workers[noa];
+	final int partStart = start + (int) ((long) (end - start) * noa / numParts);
+	final int partEnd = start + (int) ((long) (end - start) * (noa + 1) / numParts);
+	results[noa] = m_executor.submit(new Callable<Object>() {
+	    public Object call() throws Exception {
+	      return new Double(worker.process(data, indices, partStart, partEnd, 
+					       train));
+	    }
+	  });
+      }
+      double ret = m_workers[0].process(data, indices, start, 
+					start + (end - start) / numParts, train);
+      for (int noa = 1; noa < numParts; noa++) {
+	try {
+	  ret += ((Double) results[noa].get()).doubleValue();
+	}
+	catch (ExecutionException e) {
+	  if (e.getCause() instanceof Exception) {
+	    throw (Exception) e.getCause();
+	  }
+	  throw e;
+	}
+	if (train) {
+	  double[] gradient = m_workers[noa].m_gradient;
+	  double[] sum = m_workers[0].m_gradient;
+	  for (int nob = 0; nob < sum.length; nob++) {
+	    sum[nob] += gradient[nob];
+	  }
+	}
+      }
+      return ret;
+    }
+
+    /**
+     * Trains the network for one epoch.
+     * @param indices The indices of the training instances.
+     * @param epoch The number of the epoch, starting at 1.
+     * @return The sum of the weighted errors before each update.
+     * @throws Exception if training fails.
+     */
+    public double trainEpoch(int[] indices, int epoch) throws Exception {
+      double ret = 0;
+      for (int noa = 0; noa < indices.length; noa += m_batchSize) {
+	int end = Math.min(indices.length, noa + m_batchSize);
+	ret += process(m_instances, indices, noa, end, true);
+
+	//the changes asked for by the instances get averaged
+	double batchWeight = 0;
+	for (int nob = noa; nob < end; nob++) {
+	  batchWeight += m_instances.instance(indices[nob]).weight();
+	}
+	double rate = m_learningRate;
+	if (batchWeight > 0 && end - noa > 1) {
+	  rate /= batchWeight;
+	}
+	if (m_decay) {
+	  rate /= epoch;
+	}
+	double[] gradient = m_workers[0].m_gradient;
+	for (int nob = 0; nob < m_weights.length; nob++) {
+	  double c = rate * gradient[nob] + m_momentum * m_changes[nob];
+	  m_weights[nob] += c;
+	  m_changes[nob] = c;
+	}
+      }
+      return ret;
+    }
+
+    /**
+     * Evaluates the network.
+     * @param data The instances.
+     * @param indices The indices of the instances to evaluate.
+     * @return The sum of the weighted errors.
+     * @throws Exception if evaluation fails.
+     */
+    public double evaluate(Instances data, int[] indices) throws Exception {
+      return process(data, indices, 0, indices.length, false);
+    }
+
+    /**
+     * Saves the current weights.
+     */
+    public void saveWeights() {
+      System.arraycopy(m_weights, 0, m_bestWeights, 0, m_weights.length);
+    }
+
+    /**
+     * Restores the saved weights.
+     */
+    public void restoreWeights() {
+      System.arraycopy(m_bestWeights, 0, m_weights, 0, m_weights.length);
+    }
+
+    /**
+     * Copies the weights back into the nodes of the network.
+     */
+    public void copyToNetwork() {
+      for (int noa = 0; noa < m_nodes.length; noa++) {
+	int start = m_weightStart[noa];
+	int length = m_weightStart[noa + 1] - start;
+	System.arraycopy(m_weights, start, m_nodes[noa].getWeights(), 0, length);
+	System.arraycopy(m_changes, start, m_nodes[noa].getChangeInWeights(), 
+			 0, length);
+      }
+    }
+  }
+
   /** Inner class used to draw the nodes onto.(uses the node lists!!) 
    * This will also handle the user input. */
   private class NodePanel 
@@ -1027,6 +1417,15 @@ public class MultilayerPerceptron
    * This is a linear unit.
    */
   private LinearUnit m_linearUnit;
+
+  /** The number of instances per mini-batch. */
+  private int m_batchSize;
+
+  /** The number of execution slots for processing mini-batches in parallel. */
+  private int m_numExecutionSlots;
+
+  /** The executor for processing mini-batches, only available while training. */
+  private transient ExecutorService m_executor;
   
   /**
    * The constructor.
@@ -1074,6 +1473,8 @@ public class MultilayerPerceptron
     m_momentum = .2;
     m_reset = true;
     m_decay = false;
+    m_batchSize = 1;
+    m_numExecutionSlots = 1;
   }
 
   /**
@@ -1383,6 +1784,43 @@ public class MultilayerPerceptron
   public int getTrainingTime() {
     return m_numEpochs;
   }
+
+  /**
+   * Set the number of instances per mini-batch. The weights get updated
+   * after each mini-batch, with the weighted average of the changes asked
+   * for by its instances. Must be greater than 0.
+   * @param n The number of instances per mini-batch.
+   */
+  public void setBatchSize(int n) {
+    if (n > 0) {
+      m_batchSize = n;
+    }
+  }
+
+  /**
+   * @return The number of instances per mini-batch.
+   */
+  public int getBatchSize() {
+    return m_batchSize;
+  }
+
+  /**
+   * Set the number of execution slots (threads) for processing the 
+   * instances of a mini-batch in parallel. Must be greater than 0.
+   * @param n The number of execution slots.
+   */
+  public void setNumExecutionSlots(int n) {
+    if (n > 0) {
+      m_numExecutionSlots = n;
+    }
+  }
+
+  /**
+   * @return The number of execution slots.
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
   
   /**
    * Call this function to place a node into the network list.
@@ -1722,6 +2160,81 @@ public class MultilayerPerceptron
     }
   }
 
+  /**
+   * Lays out the network in flat arrays for faster training. This is only
+   * possible if every node is fed by the inputs and feeds the outputs, 
+   * since the network would not update the other nodes.
+   * @return The flat network, or null if not possible.
+   */
+  private FlatNetwork flattenNetwork() {
+    IdentityHashMap<NeuralConnection, Integer> units = 
+      new IdentityHashMap<NeuralConnection, Integer>();
+    for (int noa = 0; noa < m_inputs.length; noa++) {
+      units.put(m_inputs[noa], new Integer(noa));
+    }
+    
+    //find an order in which each node comes after its inputs, starting
+    //from the outputs
+    ArrayList<NeuralNode> order = new ArrayList<NeuralNode>();
+    ArrayList<NeuralConnection> stack = new ArrayList<NeuralConnection>();
+    ArrayList<Integer> next = new ArrayList<Integer>();
+    for (int noa = 0; noa < m_outputs.length; noa++) {
+      for (int nob = 0; nob < m_outputs[noa].getNumInputs(); nob++) {
+	stack.add(m_outputs[noa].getInputs()[nob]);
+	next.add(new Integer(0));
+	while (stack.size() > 0) {
+	  NeuralConnection current = stack.get(stack.size() - 1);
+	  int input = next.get(next.size() - 1).intValue();
+	  if (!(current instanceof NeuralNode)) {
+	    if (!units.containsKey(current)) {
+	      return null;
+	    }
+	    stack.remove(stack.size() - 1);
+	    next.remove(next.size() - 1);
+	  }
+	  else if (units.containsKey(current)) {
+	    stack.remove(stack.size() - 1);
+	    next.remove(next.size() - 1);
+	  }
+	  else if (input < current.getNumInputs()) {
+	    next.set(next.size() - 1, new Integer(input + 1));
+	    if (stack.contains(current.getInputs()[input])) {
+	      return null; //not a feed forward network
+	    }
+	    stack.add(current.getInputs()[input]);
+	    next.add(new Integer(0));
+	  }
+	  else {
+	    units.put(current, new Integer(m_inputs.length + order.size()));
+	    order.add((NeuralNode) current);
+	    stack.remove(stack.size() - 1);
+	    next.remove(next.size() - 1);
+	  }
+	}
+      }
+    }
+    if (order.size() != m_neuralNodes.length) {
+      return null;
+    }
+
+    //check that every node is fed by the inputs
+    boolean[] fed = new boolean[order.size()];
+    for (int noa = 0; noa < order.size(); noa++) {
+      NeuralConnection[] inputs = order.get(noa).getInputs();
+      for (int nob = 0; nob < order.get(noa).getNumInputs(); nob++) {
+	int unit = units.get(inputs[nob]).intValue();
+	if (unit < m_inputs.length || fed[unit - m_inputs.length]) {
+	  fed[noa] = true;
+	}
+      }
+      if (!fed[noa]) {
+	return null;
+      }
+    }
+
+    return new FlatNetwork(order.toArray(new NeuralNode[order.size()]), units);
+  }
+
   /**
    * Returns default capabilities of the classifier.
    *
@@ -1753,6 +2266,28 @@ public class MultilayerPerceptron
    * @throws Exception if can't build classification properly.
    */
   public void buildClassifier(Instances i) throws Exception {
+    if (!m_gui && m_numExecutionSlots > 1) {
+      m_executor = Executors.newFixedThreadPool(m_numExecutionSlots);
+    }
+    try {
+      buildNetwork(i);
+    }
+    finally {
+      if (m_executor != null) {
+	m_executor.shutdownNow();
+	m_executor = null;
+      }
+    }
+  }
+
+  /**
+   * Builds and trains the network, see buildClassifier(Instances). Without
+   * the gui, the network gets trained in flat form if the instances are 
+   * processed in mini-batches or in parallel.
+   * @param i The training data.
+   * @throws Exception if can't build classification properly.
+   */
+  private void buildNetwork(Instances i) throws Exception {
 
     // can classifier handle the data?
     getCapabilities().testWithFail(i);
@@ -1934,29 +2469,61 @@ public class MultilayerPerceptron
     }
     m_stopped = false;
      
+    //the flat form of the network, for mini-batches
+    FlatNetwork flat = null;
+    int[] trainIndices = null;
+    int[] valIndices = null;
+    if (!m_gui && (m_batchSize > 1 || m_executor != null)) {
+      flat = flattenNetwork();
+    }
+    if (flat != null) {
+      trainIndices = new int[m_instances.numInstances() - numInVal];
+      int count = 0;
+      for (int noa = numInVal; noa < m_instances.numInstances(); noa++) {
+	if (!m_instances.instance(noa).classIsMissing()) {
+	  trainIndices[count++] = noa;
+	}
+      }
+      trainIndices = Arrays.copyOf(trainIndices, count);
+      if (m_valSize != 0) {
+	valIndices = new int[valSet.numInstances()];
+	count = 0;
+	for (int noa = 0; noa < valSet.numInstances(); noa++) {
+	  if (!valSet.instance(noa).classIsMissing()) {
+	    valIndices[count++] = noa;
+	  }
+	}
+	valIndices = Arrays.copyOf(valIndices, count);
+      }
+    }
 
     for (int noa = 1; noa < m_numEpochs + 1; noa++) {
       right = 0;
-      for (int nob = numInVal; nob < m_instances.numInstances(); nob++) {
-	m_currentInstance = m_instances.instance(nob);
-	
-	if (!m_currentInstance.classIsMissing()) {
-	   
-	  //this is where the network updating (and training occurs, for the
-	  //training set
-	  resetNetwork();
-	  calculateOutputs();
-	  tempRate = m_learningRate * m_currentInstance.weight();  
-	  if (m_decay) {
-	    tempRate /= noa;
+      if (flat != null) {
+	right = flat.trainEpoch(trainIndices, noa);
+      }
+      else {
+	for (int nob = numInVal; nob < m_instances.numInstances(); nob++) {
+	  m_currentInstance = m_instances.instance(nob);
+	  
+	  if (!m_currentInstance.classIsMissing()) {
+	    
+	    //this is where the network updating (and training occurs, for the
+	    //training set
+	    resetNetwork();
+	    calculateOutputs();
+	    tempRate = m_learningRate * m_currentInstance.weight();  
+	    if (m_decay) {
+	      tempRate /= noa;
+	    }
+	    
+	    right += (calculateErrors() / m_instances.numClasses()) *
+	      m_currentInstance.weight();
+	    updateNetworkWeights(tempRate, m_momentum);
+	    
 	  }
-
-	  right += (calculateErrors() / m_instances.numClasses()) *
-	    m_currentInstance.weight();
-	  updateNetworkWeights(tempRate, m_momentum);
 	  
 	}
-	
       }
       right /= totalWeight;
       if (Double.isInfinite(right) || Double.isNaN(right)) {
@@ -1972,7 +2539,7 @@ public class MultilayerPerceptron
 		"Learning rate got too small (" + m_learningRate 
 		+ " <= " + Utils.SMALL + ")!");
 	  m_learningRate /= 2;
-	  buildClassifier(i);
+	  buildNetwork(i);
 	  m_learningRate = origRate;
 	  m_instances = new Instances(m_instances, 0);	  
 	  return;
@@ -1982,27 +2549,37 @@ public class MultilayerPerceptron
       ////////////////////////do validation testing if applicable
       if (m_valSize != 0) {
 	right = 0;
-	for (int nob = 0; nob < valSet.numInstances(); nob++) {
-	  m_currentInstance = valSet.instance(nob);
-	  if (!m_currentInstance.classIsMissing()) {
-	    //this is where the network updating occurs, for the validation set
-	    resetNetwork();
-	    calculateOutputs();
-	    right += (calculateErrors() / valSet.numClasses()) 
-	      * m_currentInstance.weight();
-	    //note 'right' could be calculated here just using
-	    //the calculate output values. This would be faster.
-	    //be less modular
+	if (flat != null) {
+	  right = flat.evaluate(valSet, valIndices);
+	}
+	else {
+	  for (int nob = 0; nob < valSet.numInstances(); nob++) {
+	    m_currentInstance = valSet.instance(nob);
+	    if (!m_currentInstance.classIsMissing()) {
+	      //this is where the network updating occurs, for the validation set
+	      resetNetwork();
+	      calculateOutputs();
+	      right += (calculateErrors() / valSet.numClasses()) 
+		* m_currentInstance.weight();
+	      //note 'right' could be calculated here just using
+	      //the calculate output values. This would be faster.
+	      //be less modular
+	    }
+	    
 	  }
-	  
 	}
 	
 	if (right < lastRight) {
 	  if (right < bestError) {
 	    bestError = right;
 	    // save the network weights at this point
-	    for (int noc = 0; noc < m_numClasses; noc++) {
-	      m_outputs[noc].saveWeights();
+	    if (flat != null) {
+	      flat.saveWeights();
+	    }
+	    else {
+	      for (int noc = 0; noc < m_numClasses; noc++) {
+		m_outputs[noc].saveWeights();
+	      }
 	    }
 	    driftOff = 0;
 	  }
@@ -2012,9 +2589,14 @@ public class MultilayerPerceptron
 	}
 	lastRight = right;
 	if (driftOff > m_driftThreshold || noa + 1 >= m_numEpochs) {
-	  for (int noc = 0; noc < m_numClasses; noc++) {
-            m_outputs[noc].restoreWeights();
-          }
+	  if (flat != null) {
+	    flat.restoreWeights();
+	  }
+	  else {
+	    for (int noc = 0; noc < m_numClasses; noc++) {
+	      m_outputs[noc].restoreWeights();
+	    }
+	  }
 	  m_accepted = true;
 	}
 	right /= totalValWeight;
@@ -2063,6 +2645,9 @@ public class MultilayerPerceptron
 	}
       }
       if (m_accepted) {
+	if (flat != null) {
+	  flat.copyToNetwork();
+	}
 	m_instances = new Instances(m_instances, 0);
 	return;
       }
@@ -2072,6 +2657,9 @@ public class MultilayerPerceptron
       m_controlPanel = null;
       m_nodePanel = null;
     }
+    if (flat != null) {
+      flat.copyToNetwork();
+    }
     m_instances = new Instances(m_instances, 0);  
   }
 
@@ -2147,7 +2735,7 @@ public class MultilayerPerceptron
    */
   public Enumeration listOptions() {
     
-    Vector newVector = new Vector(14);
+    Vector newVector = new Vector(16);
 
     newVector.addElement(new Option(
 	      "\tLearning Rate for the backpropagation algorithm.\n"
@@ -2210,6 +2798,16 @@ public class MultilayerPerceptron
               "\tLearning rate decay will occur.\n"
 	      +"\t(Set this to cause the learning rate to decay).",
 	      "D", 0,"-D"));
+    newVector.addElement(new Option(
+	      "\tThe number of instances per mini-batch. The weights are\n"
+	      + "\tupdated after each mini-batch.\n"
+	      + "\t(Value should be > 0, Default = 1).",
+	      "batch-size", 1, "-batch-size <num>"));
+    newVector.addElement(new Option(
+	      "\tNumber of execution slots for processing the instances\n"
+	      + "\tof a mini-batch in parallel.\n"
+	      + "\t(Default = 1 - i.e. no parallelism).",
+	      "num-slots", 1, "-num-slots <num>"));
     
     
     return newVector.elements();
@@ -2282,6 +2880,16 @@ public class MultilayerPerceptron
    *  Learning rate decay will occur.
    *  (Set this to cause the learning rate to decay).</pre>
    * 
+   * <pre> -batch-size &lt;num&gt;
+   *  The number of instances per mini-batch. The weights are
+   *  updated after each mini-batch.
+   *  (Value should be &gt; 0, Default = 1).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for processing the instances
+   *  of a mini-batch in parallel.
+   *  (Default = 1 - i.e. no parallelism).</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -2368,6 +2976,18 @@ public class MultilayerPerceptron
     } else {
       setDecay(false);
     }
+    String batchSizeString = Utils.getOption("batch-size", options);
+    if (batchSizeString.length() != 0) {
+      setBatchSize(Integer.parseInt(batchSizeString));
+    } else {
+      setBatchSize(1);
+    }
+    String slotsString = Utils.getOption("num-slots", options);
+    if (slotsString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(slotsString));
+    } else {
+      setNumExecutionSlots(1);
+    }
     
     Utils.checkForRemainingOptions(options);
   }
@@ -2379,7 +2999,7 @@ public class MultilayerPerceptron
    */
   public String [] getOptions() {
 
-    String [] options = new String [21];
+    String [] options = new String [25];
     int current = 0;
     options[current++] = "-L"; options[current++] = "" + getLearningRate(); 
     options[current++] = "-M"; options[current++] = "" + getMomentum();
@@ -2409,6 +3029,9 @@ public class MultilayerPerceptron
     if (getDecay()) {
       options[current++] = "-D";
     }
+    options[current++] = "-batch-size"; options[current++] = "" + getBatchSize();
+    options[current++] = "-num-slots"; 
+    options[current++] = "" + getNumExecutionSlots();
 
     
     while (current < options.length) {
@@ -2612,6 +3235,26 @@ public class MultilayerPerceptron
   }
 
 
+  /**
+   * @return a string to describe the batch size option.
+   */
+  public String batchSizeTipText() {
+    return "The number of instances per mini-batch. The weights are updated" +
+      " after each mini-batch, with the weighted average of the changes" +
+      " asked for by its instances, so larger mini-batches may need a larger" +
+      " learning rate. If this is larger than 1, or several execution slots" +
+      " are used, the network is trained in a flat layout that is faster" +
+      " than the node by node training (not if the gui is set).";
+  }
+
+  /**
+   * @return a string to describe the number of execution slots option.
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for processing" +
+      " the instances of a mini-batch in parallel.";
+  }
+
   /**
    * @return a string to describe the nominal to binary option.
    */
@@ -24,9 +24,12 @@ package weka.classifiers.functions;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.AbstractClassifier;
+import weka.classifiers.functions.supportVector.CachedKernel;
 import weka.classifiers.functions.supportVector.Kernel;
+import weka.classifiers.functions.supportVector.KernelRowCache;
 import weka.classifiers.functions.supportVector.PolyKernel;
 import weka.classifiers.functions.supportVector.SMOset;
+import weka.classifiers.functions.supportVector.SecondOrderSolver;
 import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.FastVector;
@@ -53,9 +56,17 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 import weka.filters.unsupervised.attribute.Standardize;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -157,6 +168,14 @@ import java.util.Vector;
  * <pre> -W &lt;double&gt;
  *  The random number seed. (default 1)</pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for training the binary
+ *  classifiers. (default 1 - i.e. no parallelism)</pre>
+ * 
+ * <pre> -second-order
+ *  Use second order working set selection and shrinking
+ *  instead of Platt's heuristics.</pre>
+ * 
  * <pre> -K &lt;classname and parameters&gt;
  *  The Kernel to use.
  *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -178,6 +197,11 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -row-cache &lt;num&gt;
+ *  The size of the row cache in megabytes, which caches whole
+ *  rows of kernel values instead (0 to use the other cache).
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -332,6 +356,10 @@ public class SMO
     /** Stores the weight of the training instances */
     protected double m_sumOfWeights = 0;
 
+    /** The index of each support vector among the distinct support vectors
+     * of all binary machines (used for batch prediction) */
+    protected transient int[] m_sharedIndices;
+
     /**
      * Fits logistic regression model to SVM outputs analogue
      * to John Platt's method.  
@@ -389,7 +417,7 @@ public class SMO
           /*	  SerializedObject so = new SerializedObject(this);
                   BinarySMO smo = (BinarySMO)so.getObject(); */
           BinarySMO smo = new BinarySMO();
-          smo.setKernel(Kernel.makeCopy(SMO.this.m_kernel));
+          smo.setKernel(copyKernel());
           smo.buildClassifier(train, cl1, cl2, false, -1, -1);
 	  Instances test = insts.testCV(numFolds, i);
 	  for (int j = 0; j < test.numInstances(); j++) {
@@ -518,6 +546,74 @@ public class SMO
       // init kernel
       m_kernel.buildKernel(m_data);
       
+      // Find the Lagrange multipliers
+      if (m_useSecondOrderSolver) {
+	solveSecondOrder();
+      } else {
+	solvePlatt();
+      }
+      
+      // Save memory
+      m_kernel.clean(); 
+      
+      m_errors = null;
+      m_I0 = m_I1 = m_I2 = m_I3 = m_I4 = null;
+      
+      // If machine is linear, delete training data
+      // and store weight vector in sparse format
+      if (m_KernelIsLinear) {
+	
+	// We don't need to store the set of support vectors
+	m_supportVectors = null;
+
+	// We don't need to store the class values either
+	m_class = null;
+	
+	// Clean out training data
+	if (!m_checksTurnedOff) {
+	  m_data = new Instances(m_data, 0);
+	} else {
+	  m_data = null;
+	}
+	
+	// Convert weight vector
+	double[] sparseWeights = new double[m_weights.length];
+	int[] sparseIndices = new int[m_weights.length];
+	int counter = 0;
+	for (int i = 0; i < m_weights.length; i++) {
+	  if (m_weights[i] != 0.0) {
+	    sparseWeights[counter] = m_weights[i];
+	    sparseIndices[counter] = i;
+	    counter++;
+	  }
+	}
+	m_sparseWeights = new double[counter];
+	m_sparseIndices = new int[counter];
+	System.arraycopy(sparseWeights, 0, m_sparseWeights, 0, counter);
+	System.arraycopy(sparseIndices, 0, m_sparseIndices, 0, counter);
+	
+	// Clean out weight vector
+	m_weights = null;
+	
+	// We don't need the alphas in the linear case
+	m_alpha = null;
+      }
+      
+      // Fit sigmoid if requested
+      if (fitLogistic) {
+	fitLogistic(insts, cl1, cl2, numFolds, new Random(randomSeed));
+      }
+
+    }
+    
+    /**
+     * Finds the Lagrange multipliers and the threshold with Platt's
+     * heuristics and Keerthi et al.'s modifications.
+     *
+     * @throws Exception if something goes wrong
+     */
+    protected void solvePlatt() throws Exception {
+
       // Initialize error cache
       m_errors = new double[m_data.numInstances()];
       m_errors[m_iLow] = 1; m_errors[m_iUp] = -1;
@@ -577,58 +673,49 @@ public class SMO
       
       // Set threshold
       m_b = (m_bLow + m_bUp) / 2.0;
-      
-      // Save memory
-      m_kernel.clean(); 
-      
-      m_errors = null;
-      m_I0 = m_I1 = m_I2 = m_I3 = m_I4 = null;
-      
-      // If machine is linear, delete training data
-      // and store weight vector in sparse format
-      if (m_KernelIsLinear) {
-	
-	// We don't need to store the set of support vectors
-	m_supportVectors = null;
+    }
 
-	// We don't need to store the class values either
-	m_class = null;
-	
-	// Clean out training data
-	if (!m_checksTurnedOff) {
-	  m_data = new Instances(m_data, 0);
-	} else {
-	  m_data = null;
-	}
-	
-	// Convert weight vector
-	double[] sparseWeights = new double[m_weights.length];
-	int[] sparseIndices = new int[m_weights.length];
-	int counter = 0;
-	for (int i = 0; i < m_weights.length; i++) {
-	  if (m_weights[i] != 0.0) {
-	    sparseWeights[counter] = m_weights[i];
-	    sparseIndices[counter] = i;
-	    counter++;
+    /**
+     * Finds the Lagrange multipliers and the threshold with second order
+     * working set selection and shrinking.
+     *
+     * @throws Exception if something goes wrong
+     * @see SecondOrderSolver
+     */
+    protected void solveSecondOrder() throws Exception {
+
+      int n = m_data.numInstances();
+      int[] index = new int[n];
+      double[] p = new double[n];
+      double[] C = new double[n];
+      for (int i = 0; i < n; i++) {
+	index[i] = i;
+	p[i] = -1;
+	C[i] = m_C * m_data.instance(i).weight();
+      }
+      SecondOrderSolver solver = new SecondOrderSolver(m_kernel, m_data,
+	  index, m_class, p, C, 2 * m_tol, true);
+      solver.solve();
+
+      // Set multipliers, support vectors and threshold
+      m_alpha = solver.getAlpha();
+      m_b = solver.getRho();
+      for (int i = 0; i < n; i++) {
+	if (m_alpha[i] > 0) {
+	  m_supportVectors.insert(i);
+
+	  // Update weight vector, if linear SVM
+	  if (m_KernelIsLinear) {
+	    Instance inst = m_data.instance(i);
+	    for (int p1 = 0; p1 < inst.numValues(); p1++) {
+	      if (inst.index(p1) != m_data.classIndex()) {
+		m_weights[inst.index(p1)] += 
+		  m_class[i] * m_alpha[i] * inst.valueSparse(p1);
+	      }
+	    }
 	  }
 	}
-	m_sparseWeights = new double[counter];
-	m_sparseIndices = new int[counter];
-	System.arraycopy(sparseWeights, 0, m_sparseWeights, 0, counter);
-	System.arraycopy(sparseIndices, 0, m_sparseIndices, 0, counter);
-	
-	// Clean out weight vector
-	m_weights = null;
-	
-	// We don't need the alphas in the linear case
-	m_alpha = null;
-      }
-      
-      // Fit sigmoid if requested
-      if (fitLogistic) {
-	fitLogistic(insts, cl1, cl2, numFolds, new Random(randomSeed));
       }
-
     }
     
     /**
@@ -682,6 +769,26 @@ public class SMO
       return result;
     }
 
+    /**
+     * Computes SVM output from the kernel values between an instance and
+     * the distinct support vectors of all binary machines.
+     *
+     * @param kernelValues the kernel values, indexed via m_sharedIndices
+     * @return the output of the SVM for the instance
+     */
+    protected double SVMOutput(double[] kernelValues) {
+      
+      double result = 0;
+      
+      for (int i = m_supportVectors.getNext(-1); i != -1; 
+	   i = m_supportVectors.getNext(i)) {
+	result += m_class[i] * m_alpha[i] * kernelValues[m_sharedIndices[i]];
+      }
+      result -= m_b;
+      
+      return result;
+    }
+
     /**
      * Prints out the classifier.
      *
@@ -1185,6 +1292,13 @@ public class SMO
   /** Precision constant for updating sets */
   protected static double m_Del = 1000 * Double.MIN_VALUE;
 
+  /** The binary machine that computes the kernel values for each distinct
+   * support vector in batch prediction */
+  protected transient BinarySMO[] m_SharedOwners;
+
+  /** The index of each distinct support vector in its binary machine */
+  protected transient int[] m_SharedOwnerIndices;
+
   /** Whether logistic models are to be fit */
   protected boolean m_fitLogisticModels = false;
 
@@ -1194,6 +1308,15 @@ public class SMO
   /** The random number seed  */
   protected int m_randomSeed = 1;
 
+  /** The number of execution slots for training the binary classifiers */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether to use second order working set selection and shrinking */
+  protected boolean m_useSecondOrderSolver = false;
+
+  /** The row cache shared by the kernels while training, if used */
+  protected transient KernelRowCache m_rowCache;
+
   /** the kernel to use */
   protected Kernel m_kernel = new PolyKernel();
   
@@ -1248,6 +1371,9 @@ public class SMO
    */
   public void buildClassifier(Instances insts) throws Exception {
 
+    m_SharedOwners = null;
+    m_SharedOwnerIndices = null;
+
     if (!m_checksTurnedOff) {
       // can classifier handle the data?
       getCapabilities().testWithFail(insts);
@@ -1334,26 +1460,145 @@ public class SMO
       subsets[i].compactify();
     }
 
-    // Build the binary classifiers
+    // Build the binary classifiers, shuffling their data in the same
+    // order regardless of the number of execution slots
     Random rand = new Random(m_randomSeed);
     m_classifiers = new BinarySMO[insts.numClasses()][insts.numClasses()];
-    for (int i = 0; i < insts.numClasses(); i++) {
-      for (int j = i + 1; j < insts.numClasses(); j++) {
-	m_classifiers[i][j] = new BinarySMO();
-	m_classifiers[i][j].setKernel(Kernel.makeCopy(getKernel()));
-	Instances data = new Instances(insts, insts.numInstances());
-	for (int k = 0; k < subsets[i].numInstances(); k++) {
-	  data.add(subsets[i].instance(k));
-	}
-	for (int k = 0; k < subsets[j].numInstances(); k++) {
-	  data.add(subsets[j].instance(k));
+    if ((m_kernel instanceof CachedKernel) 
+	&& (((CachedKernel) m_kernel).getRowCacheSize() > 0)) {
+      m_rowCache = new KernelRowCache(((CachedKernel) m_kernel).getRowCacheSize());
+    }
+    ExecutorService executor = null;
+    LinkedList<Future<Object>> pending = new LinkedList<Future<Object>>();
+    if (m_numExecutionSlots > 1) {
+      executor = Executors.newFixedThreadPool(m_numExecutionSlots);
+    }
+    try {
+      for (int i = 0; i < insts.numClasses(); i++) {
+	for (int j = i + 1; j < insts.numClasses(); j++) {
+	  m_classifiers[i][j] = new BinarySMO();
+	  m_classifiers[i][j].setKernel(copyKernel());
+	  Instances data = new Instances(insts, insts.numInstances());
+	  for (int k = 0; k < subsets[i].numInstances(); k++) {
+	    data.add(subsets[i].instance(k));
+	  }
+	  for (int k = 0; k < subsets[j].numInstances(); k++) {
+	    data.add(subsets[j].instance(k));
+	  }
+	  data.compactify();
+	  data.randomize(rand);
+	  BinarySMOBuilder builder = 
+	    new BinarySMOBuilder(m_classifiers[i][j], data, i, j);
+	  if (executor == null) {
+	    builder.call();
+	  } else {
+	    // limit the number of data sets waiting in the queue
+	    pending.add(executor.submit(builder));
+	    while (pending.size() >= 2 * m_numExecutionSlots) {
+	      waitFor(pending.removeFirst());
+	    }
+	  }
 	}
-	data.compactify();
-	data.randomize(rand);
-	m_classifiers[i][j].buildClassifier(data, i, j, 
-					    m_fitLogisticModels,
-					    m_numFolds, m_randomSeed);
       }
+      while (pending.size() > 0) {
+	waitFor(pending.removeFirst());
+      }
+    } finally {
+      if (executor != null) {
+	executor.shutdownNow();
+      }
+      if ((m_rowCache != null) && m_Debug) {
+	System.err.println(m_rowCache);
+      }
+      m_rowCache = null;
+    }
+  }
+
+  /**
+   * Creates a copy of the kernel for a binary classifier. A CachedKernel
+   * with a row cache gets the row cache shared by all the copies. 
+   * Otherwise, if the binary classifiers get trained in parallel, the
+   * cache of a CachedKernel is divided among the execution slots, so that
+   * all the caches together don't take up more memory than the cache of a
+   * single kernel.
+   *
+   * @return the copy of the kernel
+   * @throws Exception if the kernel can't be copied
+   */
+  protected Kernel copyKernel() throws Exception {
+
+    Kernel result = Kernel.makeCopy(m_kernel);
+    if ((m_rowCache != null) && (result instanceof CachedKernel)) {
+      ((CachedKernel) result).shareRowCache(m_rowCache);
+    } else if ((m_numExecutionSlots > 1) && (result instanceof CachedKernel)) {
+      CachedKernel cached = (CachedKernel) result;
+      if (cached.getCacheSize() > 0) {
+	cached.setCacheSize(Math.max(1, cached.getCacheSize() / m_numExecutionSlots));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Waits for a binary classifier to be trained.
+   *
+   * @param result the result of training the classifier
+   * @throws Exception if training the classifier failed
+   */
+  protected void waitFor(Future<Object> result) throws Exception {
+    try {
+      result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw new Exception(e.getCause().toString());
+    }
+  }
+
+  /**
+   * Trains a binary classifier on the data of two classes.
+   */
+  protected class BinarySMOBuilder
+    implements Callable<Object> {
+
+    /** the classifier to train */
+    protected BinarySMO m_SMO;
+
+    /** the data of the two classes */
+    protected Instances m_Data;
+
+    /** the index of the first class */
+    protected int m_Class1;
+
+    /** the index of the second class */
+    protected int m_Class2;
+
+    /**
+     * Initializes the builder.
+     *
+     * @param smo the classifier to train
+     * @param data the data of the two classes, already shuffled
+     * @param cl1 the index of the first class
+     * @param cl2 the index of the second class
+     */
+    public BinarySMOBuilder(BinarySMO smo, Instances data, int cl1, int cl2) {
+      m_SMO = smo;
+      m_Data = data;
+      m_Class1 = cl1;
+      m_Class2 = cl2;
+    }
+
+    /**
+     * Trains the classifier.
+     *
+     * @return always null
+     * @throws Exception if training fails
+     */
+    public Object call() throws Exception {
+      m_SMO.buildClassifier(m_Data, m_Class1, m_Class2, 
+			    m_fitLogisticModels, m_numFolds, m_randomSeed);
+      return null;
     }
   }
 
@@ -1365,7 +1610,125 @@ public class SMO
    */
   public double[] distributionForInstance(Instance inst) throws Exception {
 
-    // Filter instance
+    inst = filterInstance(inst);
+
+    double[][] outputs = new double[inst.numClasses()][inst.numClasses()];
+    for (int i = 0; i < inst.numClasses(); i++) {
+      for (int j = i + 1; j < inst.numClasses(); j++) {
+	if ((m_classifiers[i][j].m_alpha != null) || 
+	    (m_classifiers[i][j].m_sparseWeights != null)) {
+	  outputs[i][j] = m_classifiers[i][j].SVMOutput(-1, inst);
+	}
+      }
+    }
+
+    return distribution(inst, outputs);
+  }
+
+  /**
+   * Estimates class probabilities for the given instances. The kernel
+   * value between an instance and a training instance that is a support
+   * vector of several binary machines is computed only once.
+   *
+   * @param insts the instances to be classified
+   * @return the distributions for the instances
+   * @throws Exception if the distributions can't be computed successfully
+   */
+  public double[][] distributionsForInstances(Instances insts) throws Exception {
+
+    double[][] result = new double[insts.numInstances()][];
+    double[][] outputs = new double[insts.numClasses()][insts.numClasses()];
+    double[] kernelValues = null;
+    if (!m_KernelIsLinear) {
+      initSharedSupportVectors();
+      kernelValues = new double[m_SharedOwners.length];
+    }
+
+    for (int n = 0; n < insts.numInstances(); n++) {
+      Instance inst = filterInstance(insts.instance(n));
+      if (!m_KernelIsLinear) {
+	for (int k = 0; k < m_SharedOwners.length; k++) {
+	  kernelValues[k] = m_SharedOwners[k].m_kernel.eval(-1, m_SharedOwnerIndices[k], inst);
+	}
+      }
+      for (int i = 0; i < inst.numClasses(); i++) {
+	for (int j = i + 1; j < inst.numClasses(); j++) {
+	  if (m_classifiers[i][j].m_sparseWeights != null) {
+	    outputs[i][j] = m_classifiers[i][j].SVMOutput(-1, inst);
+	  } else if (m_classifiers[i][j].m_alpha != null) {
+	    outputs[i][j] = m_classifiers[i][j].SVMOutput(kernelValues);
+	  }
+	}
+      }
+      result[n] = distribution(inst, outputs);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns true, since distributionsForInstances() shares kernel
+   * evaluations between the binary machines.
+   *
+   * @return true
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
+  /**
+   * Determines the distinct support vectors of all binary machines, which
+   * are identified by their values, since the kernel only depends on those.
+   */
+  protected void initSharedSupportVectors() {
+
+    if (m_SharedOwners != null) {
+      return;
+    }
+
+    HashMap<String,Integer> indices = new HashMap<String,Integer>();
+    Vector<BinarySMO> owners = new Vector<BinarySMO>();
+    Vector<Integer> ownerIndices = new Vector<Integer>();
+    for (int i = 0; i < m_classifiers.length; i++) {
+      for (int j = i + 1; j < m_classifiers.length; j++) {
+	BinarySMO smo = m_classifiers[i][j];
+	if (smo.m_alpha == null) {
+	  continue;
+	}
+	smo.m_sharedIndices = new int[smo.m_alpha.length];
+	for (int k = smo.m_supportVectors.getNext(-1); k != -1; 
+	     k = smo.m_supportVectors.getNext(k)) {
+	  double[] values = smo.m_data.instance(k).toDoubleArray();
+	  values[m_classIndex] = 0;
+	  String key = Arrays.toString(values);
+	  Integer index = indices.get(key);
+	  if (index == null) {
+	    index = owners.size();
+	    indices.put(key, index);
+	    owners.add(smo);
+	    ownerIndices.add(k);
+	  }
+	  smo.m_sharedIndices[k] = index;
+	}
+      }
+    }
+
+    m_SharedOwners = owners.toArray(new BinarySMO[owners.size()]);
+    m_SharedOwnerIndices = new int[ownerIndices.size()];
+    for (int i = 0; i < m_SharedOwnerIndices.length; i++) {
+      m_SharedOwnerIndices[i] = ownerIndices.get(i);
+    }
+  }
+
+  /**
+   * Passes an instance through the filters used in training.
+   *
+   * @param inst the instance to filter
+   * @return the filtered instance
+   * @throws Exception if filtering fails
+   */
+  protected Instance filterInstance(Instance inst) throws Exception {
+
     if (!m_checksTurnedOff) {
       m_Missing.input(inst);
       m_Missing.batchFinished();
@@ -1383,6 +1746,20 @@ public class SMO
       m_Filter.batchFinished();
       inst = m_Filter.output();
     }
+
+    return inst;
+  }
+
+  /**
+   * Estimates class probabilities for a filtered instance from the
+   * outputs of the binary machines.
+   *
+   * @param inst the filtered instance
+   * @param outputs the output of each binary machine
+   * @return the class probability distribution
+   * @throws Exception if the distribution can't be computed successfully
+   */
+  protected double[] distribution(Instance inst, double[][] outputs) throws Exception {
     
     if (!m_fitLogisticModels) {
       double[] result = new double[inst.numClasses()];
@@ -1390,7 +1767,7 @@ public class SMO
 	for (int j = i + 1; j < inst.numClasses(); j++) {
 	  if ((m_classifiers[i][j].m_alpha != null) || 
 	      (m_classifiers[i][j].m_sparseWeights != null)) {
-	    double output = m_classifiers[i][j].SVMOutput(-1, inst);
+	    double output = outputs[i][j];
 	    if (output > 0) {
 	      result[j] += 1;
 	    } else {
@@ -1407,7 +1784,7 @@ public class SMO
       // then two classes.
       if (inst.numClasses() == 2) {
 	double[] newInst = new double[2];
-	newInst[0] = m_classifiers[0][1].SVMOutput(-1, inst);
+	newInst[0] = outputs[0][1];
 	newInst[1] = Utils.missingValue();
 	return m_classifiers[0][1].m_logistic.
 	  distributionForInstance(new DenseInstance(1, newInst));
@@ -1419,7 +1796,7 @@ public class SMO
 	  if ((m_classifiers[i][j].m_alpha != null) || 
 	      (m_classifiers[i][j].m_sparseWeights != null)) {
 	    double[] newInst = new double[2];
-	    newInst[0] = m_classifiers[i][j].SVMOutput(-1, inst);
+	    newInst[0] = outputs[i][j];
 	    newInst[1] = Utils.missingValue();
 	    r[i][j] = m_classifiers[i][j].m_logistic.
 	      distributionForInstance(new DenseInstance(1, newInst))[0];
@@ -1627,6 +2004,17 @@ public class SMO
 	"(default 1)",
 	"W", 1, "-W <double>"));
     
+    result.addElement(new Option(
+	"\tNumber of execution slots for training the binary\n" +
+	"\tclassifiers. " +
+	"(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+    
+    result.addElement(new Option(
+	"\tUse second order working set selection and shrinking\n" +
+	"\tinstead of Platt's heuristics.",
+	"second-order", 0, "-second-order"));
+    
     result.addElement(new Option(
 	"\tThe Kernel to use.\n"
 	+ "\t(default: weka.classifiers.functions.supportVector.PolyKernel)",
@@ -1685,6 +2073,14 @@ public class SMO
    * <pre> -W &lt;double&gt;
    *  The random number seed. (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for training the binary
+   *  classifiers. (default 1 - i.e. no parallelism)</pre>
+   * 
+   * <pre> -second-order
+   *  Use second order working set selection and shrinking
+   *  instead of Platt's heuristics.</pre>
+   * 
    * <pre> -K &lt;classname and parameters&gt;
    *  The Kernel to use.
    *  (default: weka.classifiers.functions.supportVector.PolyKernel)</pre>
@@ -1706,6 +2102,11 @@ public class SMO
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -row-cache &lt;num&gt;
+   *  The size of the row cache in megabytes, which caches whole
+   *  rows of kernel values instead (0 to use the other cache).
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -1763,6 +2164,14 @@ public class SMO
     else
       setRandomSeed(1);
 
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
+
+    setUseSecondOrderSolver(Utils.getFlag("second-order", options));
+
     tmpStr     = Utils.getOption('K', options);
     tmpOptions = Utils.splitOptions(tmpStr);
     if (tmpOptions.length != 0) {
@@ -1813,6 +2222,12 @@ public class SMO
     result.add("-W");
     result.add("" + getRandomSeed());
 
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+
+    if (getUseSecondOrderSolver())
+      result.add("-second-order");
+
     result.add("-K");
     result.add("" + getKernel().getClass().getName() + " " + Utils.joinOptions(getKernel().getOptions()));
     
@@ -2083,6 +2498,70 @@ public class SMO
     
     m_randomSeed = newrandomSeed;
   }
+     
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "training the binary classifiers of a multi-class problem.";
+  }
+  
+  /**
+   * Get the number of execution slots (threads) to use for training the
+   * binary classifiers.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    
+    return m_numExecutionSlots;
+  }
+  
+  /**
+   * Set the number of execution slots (threads) to use for training the
+   * binary classifiers.
+   *
+   * @param numSlots the number of slots to use
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    
+    m_numExecutionSlots = numSlots;
+  }
+     
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String useSecondOrderSolverTipText() {
+    return "Whether to select the pairs of Lagrange multipliers with second "
+      + "order information and to shrink the problem to the multipliers that "
+      + "may still change (as in LIBSVM), instead of Platt's heuristics. "
+      + "Usually much faster on large datasets.";
+  }
+  
+  /**
+   * Get whether second order working set selection and shrinking is used.
+   *
+   * @return true if the second order solver is used
+   */
+  public boolean getUseSecondOrderSolver() {
+    
+    return m_useSecondOrderSolver;
+  }
+  
+  /**
+   * Set whether to use second order working set selection and shrinking.
+   *
+   * @param value true if the second order solver is to be used
+   */
+  public void setUseSecondOrderSolver(boolean value) {
+    
+    m_useSecondOrderSolver = value;
+  }
   
   /**
    * Prints out the classifier.
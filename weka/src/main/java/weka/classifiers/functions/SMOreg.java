@@ -117,6 +117,10 @@ import java.util.Vector;
  *  Use variant 1 of the algorithm when true, otherwise use variant 2.
  *  (default true)</pre>
  * 
+ * <pre> -second-order
+ *  Use second order working set selection and shrinking
+ *  instead of either variant.</pre>
+ * 
  * <pre> -P &lt;double&gt;
  *  The epsilon for round-off error.
  *  (default 1.0e-12)</pre>
@@ -146,6 +150,11 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -row-cache &lt;num&gt;
+ *  The size of the row cache in megabytes, which caches whole
+ *  rows of kernel values instead (0 to use the other cache).
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -340,6 +349,10 @@ public class SMOreg
    *  Use variant 1 of the algorithm when true, otherwise use variant 2.
    *  (default true)</pre>
    * 
+   * <pre> -second-order
+   *  Use second order working set selection and shrinking
+   *  instead of either variant.</pre>
+   * 
    * <pre> -P &lt;double&gt;
    *  The epsilon for round-off error.
    *  (default 1.0e-12)</pre>
@@ -369,6 +382,11 @@ public class SMOreg
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -row-cache &lt;num&gt;
+   *  The size of the row cache in megabytes, which caches whole
+   *  rows of kernel values instead (0 to use the other cache).
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
@@ -473,8 +473,15 @@ public class SPegasos extends AbstractClassifier
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
     
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // the data only needs to be copied for removing instances with missing
+    // class, the filters don't change their input
+    for (int i = 0; i < data.numInstances(); i++) {
+      if (data.instance(i).classIsMissing()) {
+        data = new Instances(data);
+        data.deleteWithMissingClass();
+        break;
+      }
+    }
     
     if (data.numInstances() > 0 && !m_dontReplaceMissing) {
       m_replaceMissing = new ReplaceMissingValues();
@@ -33,7 +33,9 @@ import java.util.Vector;
 /**
  * Base class for RBFKernel and PolyKernel that implements a simple LRU.
  * (least-recently-used) cache if the cache size is set to a value > 0.
- * Otherwise it uses a full cache.
+ * Otherwise it uses a full cache. Alternatively, whole rows of kernel
+ * values can be cached in a KernelRowCache of a given size in megabytes,
+ * which can also be shared among several kernels.
  * 
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
  * @author Shane Legg (shane@intelligenesis.net) (sparse vector code)
@@ -71,6 +73,15 @@ public abstract class CachedKernel
   /** number of cache slots in an entry */
   protected int m_cacheSlots = 4;
 
+  /** The size of the row cache in megabytes (0 to use the other caches) */
+  protected double m_rowCacheSize = 0;
+
+  /** The row cache, possibly shared with other kernels */
+  protected transient KernelRowCache m_rowCache;
+
+  /** The owner ID of this kernel's rows in the row cache */
+  protected transient int m_rowCacheOwner = -1;
+
   /**
    * default constructor - does nothing.
    */
@@ -115,6 +126,12 @@ public abstract class CachedKernel
 	+ "\t(default: 250007)",
 	"C", 1, "-C <num>"));
 
+    result.addElement(new Option(
+	"\tThe size of the row cache in megabytes, which caches whole\n"
+	+ "\trows of kernel values instead (0 to use the other cache).\n"
+	+ "\t(default: 0)",
+	"row-cache", 1, "-row-cache <num>"));
+
     return result.elements();
   }
 
@@ -133,6 +150,12 @@ public abstract class CachedKernel
     else
       setCacheSize(250007);
     
+    tmpStr = Utils.getOption("row-cache", options);
+    if (tmpStr.length() != 0)
+      setRowCacheSize(Double.parseDouble(tmpStr));
+    else
+      setRowCacheSize(0);
+    
     super.setOptions(options);
   }
 
@@ -154,6 +177,11 @@ public abstract class CachedKernel
     result.add("-C");
     result.add("" + getCacheSize());
 
+    if (getRowCacheSize() > 0) {
+      result.add("-row-cache");
+      result.add("" + getRowCacheSize());
+    }
+
     return (String[]) result.toArray(new String[result.size()]);	  
   }
 
@@ -185,9 +213,26 @@ public abstract class CachedKernel
     long key = -1;
     int location = -1;
 
+    // cache the whole row of the first instance?
+    if ( (id1 >= 0) && (m_rowCacheSize > 0) && (m_rowCache != null) ) {
+      double[] row = m_rowCache.get(m_rowCacheOwner, id1);
+      if (row != null) {
+	m_cacheHits++;
+	return row[id2];
+      }
+      Instance rowInst = m_data.instance(id1);
+      row = new double[m_numInsts];
+      for (int j = 0; j < m_numInsts; j++) {
+	row[j] = evaluate(id1, j, rowInst);
+      }
+      m_kernelEvals += m_numInsts;
+      m_rowCache.put(m_rowCacheOwner, id1, row);
+      return row[id2];
+    }
+
     // we can only cache if we know the indexes and caching is not 
-    // disbled (m_cacheSize == -1)
-    if ( (id1 >= 0) && (m_cacheSize != -1) ) {
+    // disbled (m_cacheSize == -1) or done by the row cache
+    if ( (id1 >= 0) && (m_cacheSize != -1) && (m_rowCacheSize <= 0) ) {
 
       // Use full cache?
       if (m_cacheSize == 0) {
@@ -241,7 +286,7 @@ public abstract class CachedKernel
     m_kernelEvals++;
 
     // store result in cache
-    if ( (key != -1) && (m_cacheSize != -1) ) {
+    if (key != -1) {
       // move all cache slots forward one array index
       // to make room for the new entry
       System.arraycopy(m_keys, location, m_keys, location + 1,
@@ -279,6 +324,9 @@ public abstract class CachedKernel
     m_storage = null;
     m_keys = null;
     m_kernelMatrix = null;
+    if (m_rowCache != null) {
+      m_rowCache.remove(m_rowCacheOwner);
+    }
   }
 
   /**
@@ -351,6 +399,66 @@ public abstract class CachedKernel
     return "The size of the cache (a prime number), 0 for full cache and -1 to turn it off.";
   }
 
+  /**
+   * Sets the size of the row cache in megabytes. If greater than 0, whole
+   * rows of kernel values get cached instead of single values.
+   * 
+   * @param value	the size of the row cache
+   */
+  public void setRowCacheSize(double value) {
+    if (value >= 0) {
+      m_rowCacheSize = value;
+      clean();
+      m_rowCache = null;
+    }
+    else {
+      System.out.println(
+	  "Row cache size cannot be smaller than 0 (provided: " + value + ")!");
+    }
+  }
+  
+  /**
+   * Gets the size of the row cache in megabytes.
+   * 
+   * @return 		the row cache size
+   */
+  public double getRowCacheSize() {
+    return m_rowCacheSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String rowCacheSizeTipText() {
+    return "The size of the cache for whole rows of kernel values in megabytes, "
+      + "0 to use the cache of single values instead.";
+  }
+
+  /**
+   * Sets the row cache to use, e.g., to share one cache among several
+   * kernels. Only used if the row cache size is greater than 0. If no row
+   * cache is set, the kernel creates its own when it gets built.
+   * 
+   * @param value	the row cache
+   */
+  public void shareRowCache(KernelRowCache value) {
+    clean();
+    m_rowCache = value;
+  }
+
+  /**
+   * Returns the row cache in use, e.g., to inspect its hit, miss and
+   * eviction counts.
+   * 
+   * @return		the row cache, null if none is used
+   */
+  public KernelRowCache getRowCache() {
+    return m_rowCache;
+  }
+
   /**
    * initializes variables etc.
    * 
@@ -363,7 +471,19 @@ public abstract class CachedKernel
     m_cacheHits   = 0;
     m_numInsts    = m_data.numInstances();
 
-    if (getCacheSize() > 0) {
+    if (m_rowCacheSize > 0) {
+      // Use row cache
+      if (m_rowCache == null) {
+	m_rowCache = new KernelRowCache(m_rowCacheSize);
+      } else {
+	m_rowCache.remove(m_rowCacheOwner);
+      }
+      m_rowCacheOwner = m_rowCache.newOwner();
+      m_storage      = null;
+      m_keys         = null;
+      m_kernelMatrix = null;
+    }
+    else if (getCacheSize() > 0) {
       // Use LRU cache
       m_storage = new double[m_cacheSize * m_cacheSlots];
       m_keys    = new long[m_cacheSize * m_cacheSlots];
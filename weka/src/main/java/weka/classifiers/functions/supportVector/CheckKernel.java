@@ -156,6 +156,11 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -row-cache &lt;num&gt;
+ *  The size of the row cache in megabytes, which caches whole
+ *  rows of kernel values instead (0 to use the other cache).
+ *  (default: 0)</pre>
+ * 
  * <pre> -G &lt;num&gt;
  *  The Gamma parameter.
  *  (default: 0.01)</pre>
@@ -280,6 +285,11 @@ public class CheckKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -row-cache &lt;num&gt;
+   *  The size of the row cache in megabytes, which caches whole
+   *  rows of kernel values instead (0 to use the other cache).
+   *  (default: 0)</pre>
+   * 
    * <pre> -G &lt;num&gt;
    *  The Gamma parameter.
    *  (default: 0.01)</pre>
@@ -0,0 +1,386 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * KernelRowCache.java
+ *
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions.supportVector;
+
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A thread-safe cache for whole rows of kernel values, i.e., the values
+ * of one training instance with all the other training instances. The
+ * memory used by the rows is bounded by a size in megabytes and the least
+ * recently used rows get evicted first. <p/>
+ *
+ * Several kernels can share a cache, e.g., the kernels of the binary
+ * classifiers that SMO trains in parallel. Each kernel obtains its own
+ * owner ID, which keeps the rows of the kernels apart. The rows are spread
+ * over a number of stripes with a lock and a share of the memory each, so
+ * that kernels accessing different rows rarely wait for each other.
+ *
+ * @version $Revision$
+ */
+public class KernelRowCache
+  implements RevisionHandler {
+
+  /** the default number of stripes */
+  public final static int DEFAULT_NUM_STRIPES = 16;
+
+  /** the estimated overhead of a row in bytes (array header, map entry, key) */
+  protected final static int ROW_OVERHEAD = 80;
+
+  /** the size of the cache in megabytes */
+  protected double m_Size;
+
+  /** the stripes */
+  protected Stripe[] m_Stripes;
+
+  /** the next owner ID to hand out */
+  protected int m_NextOwner = 0;
+
+  /**
+   * A part of the cache with its own lock and memory bound.
+   */
+  protected static class Stripe
+    extends LinkedHashMap<Long,double[]> {
+
+    /** for serialization */
+    private static final long serialVersionUID = 8104416960584463624L;
+
+    /** the maximum number of bytes the rows may use */
+    protected long m_MaxBytes;
+
+    /** the number of bytes the rows use */
+    protected long m_Bytes = 0;
+
+    /** the number of lookups that found a row */
+    protected long m_Hits = 0;
+
+    /** the number of lookups that found no row */
+    protected long m_Misses = 0;
+
+    /** the number of rows evicted to make room for others */
+    protected long m_Evictions = 0;
+
+    /**
+     * Initializes the stripe.
+     *
+     * @param maxBytes	the maximum number of bytes the rows may use
+     */
+    public Stripe(long maxBytes) {
+      super(16, 0.75f, true);
+      m_MaxBytes = maxBytes;
+    }
+  }
+
+  /**
+   * Initializes the cache with the default number of stripes.
+   *
+   * @param size	the size of the cache in megabytes
+   */
+  public KernelRowCache(double size) {
+    this(size, DEFAULT_NUM_STRIPES);
+  }
+
+  /**
+   * Initializes the cache.
+   *
+   * @param size	the size of the cache in megabytes
+   * @param numStripes	the number of independently locked stripes
+   */
+  public KernelRowCache(double size, int numStripes) {
+    if (size <= 0)
+      throw new IllegalArgumentException("Cache size must be positive!");
+    if (numStripes < 1)
+      throw new IllegalArgumentException("Number of stripes must be at least 1!");
+
+    m_Size    = size;
+    m_Stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++)
+      m_Stripes[i] = new Stripe((long) (size * 1024 * 1024 / numStripes));
+  }
+
+  /**
+   * Returns the size of the cache in megabytes.
+   *
+   * @return		the size
+   */
+  public double getSize() {
+    return m_Size;
+  }
+
+  /**
+   * Returns a new owner ID, to be used by a kernel for all its rows.
+   *
+   * @return		the owner ID
+   */
+  public synchronized int newOwner() {
+    return m_NextOwner++;
+  }
+
+  /**
+   * Returns the key of a row.
+   *
+   * @param owner	the owner ID
+   * @param row		the index of the row
+   * @return		the key
+   */
+  protected static long key(int owner, int row) {
+    return ((long) owner << 32) | (row & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the stripe a row belongs to.
+   *
+   * @param owner	the owner ID
+   * @param row		the index of the row
+   * @return		the stripe
+   */
+  protected Stripe stripe(int owner, int row) {
+    int		hash;
+
+    hash = row * 31 + owner;
+    hash ^= (hash >>> 16);
+    return m_Stripes[(hash & 0x7FFFFFFF) % m_Stripes.length];
+  }
+
+  /**
+   * Returns the number of bytes a row is estimated to use.
+   *
+   * @param values	the values of the row
+   * @return		the number of bytes
+   */
+  protected static long bytes(double[] values) {
+    return 8L * values.length + ROW_OVERHEAD;
+  }
+
+  /**
+   * Returns a cached row and marks it as recently used. The returned array
+   * must not be modified.
+   *
+   * @param owner	the owner ID
+   * @param row		the index of the row
+   * @return		the row, null if not cached
+   */
+  public double[] get(int owner, int row) {
+    Stripe	stripe;
+    double[]	result;
+
+    stripe = stripe(owner, row);
+    synchronized (stripe) {
+      result = stripe.get(key(owner, row));
+      if (result == null)
+	stripe.m_Misses++;
+      else
+	stripe.m_Hits++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds a row to the cache, evicting the least recently used rows of the
+   * stripe if necessary. Rows that are larger than a stripe don't get
+   * cached. The array must not be modified afterwards.
+   *
+   * @param owner	the owner ID
+   * @param row		the index of the row
+   * @param values	the values of the row
+   */
+  public void put(int owner, int row, double[] values) {
+    Stripe			stripe;
+    double[]			old;
+    Iterator<double[]>		iter;
+
+    stripe = stripe(owner, row);
+    if (bytes(values) > stripe.m_MaxBytes)
+      return;
+
+    synchronized (stripe) {
+      old = stripe.put(key(owner, row), values);
+      if (old != null)
+	stripe.m_Bytes -= bytes(old);
+      stripe.m_Bytes += bytes(values);
+
+      iter = stripe.values().iterator();
+      while (stripe.m_Bytes > stripe.m_MaxBytes) {
+	old = iter.next();
+	iter.remove();
+	stripe.m_Bytes -= bytes(old);
+	stripe.m_Evictions++;
+      }
+    }
+  }
+
+  /**
+   * Removes all the rows of an owner, e.g., when a kernel gets cleaned up.
+   *
+   * @param owner	the owner ID
+   */
+  public void remove(int owner) {
+    Iterator<Map.Entry<Long,double[]>>	iter;
+    Map.Entry<Long,double[]>		entry;
+
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	iter = stripe.entrySet().iterator();
+	while (iter.hasNext()) {
+	  entry = iter.next();
+	  if ((int) (entry.getKey().longValue() >>> 32) == owner) {
+	    stripe.m_Bytes -= bytes(entry.getValue());
+	    iter.remove();
+	  }
+	}
+      }
+    }
+  }
+
+  /**
+   * Removes all rows and resets the counters.
+   */
+  public void clear() {
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	stripe.clear();
+	stripe.m_Bytes     = 0;
+	stripe.m_Hits      = 0;
+	stripe.m_Misses    = 0;
+	stripe.m_Evictions = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the number of lookups that found a row.
+   *
+   * @return		the number of hits
+   */
+  public long getHits() {
+    long	result;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.m_Hits;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of lookups that found no row.
+   *
+   * @return		the number of misses
+   */
+  public long getMisses() {
+    long	result;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.m_Misses;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of rows that got evicted to make room for others.
+   *
+   * @return		the number of evictions
+   */
+  public long getEvictions() {
+    long	result;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.m_Evictions;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the estimated number of bytes the cached rows use.
+   *
+   * @return		the number of bytes
+   */
+  public long getBytes() {
+    long	result;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.m_Bytes;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the number of cached rows.
+   *
+   * @return		the number of rows
+   */
+  public int numRows() {
+    int		result;
+
+    result = 0;
+    for (Stripe stripe: m_Stripes) {
+      synchronized (stripe) {
+	result += stripe.size();
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the statistics of the cache.
+   *
+   * @return		the statistics
+   */
+  public String toString() {
+    return "Kernel row cache: " + numRows() + " rows, "
+      + (getBytes() / 1024) + " of " + ((long) (m_Size * 1024)) + " KB, "
+      + getHits() + " hits, " + getMisses() + " misses, "
+      + getEvictions() + " evictions";
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
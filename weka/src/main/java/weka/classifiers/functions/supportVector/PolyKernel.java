@@ -55,6 +55,11 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -row-cache &lt;num&gt;
+ *  The size of the row cache in megabytes, which caches whole
+ *  rows of kernel values instead (0 to use the other cache).
+ *  (default: 0)</pre>
+ * 
  * <pre> -E &lt;num&gt;
  *  The Exponent to use.
  *  (default: 1.0)</pre>
@@ -178,6 +183,11 @@ public class PolyKernel
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -row-cache &lt;num&gt;
+   *  The size of the row cache in megabytes, which caches whole
+   *  rows of kernel values instead (0 to use the other cache).
+   *  (default: 0)</pre>
+   * 
    * <pre> -E &lt;num&gt;
    *  The Exponent to use.
    *  (default: 1.0)</pre>
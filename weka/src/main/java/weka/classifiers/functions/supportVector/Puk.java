@@ -63,6 +63,11 @@ import java.util.Vector;
  *  -1 to turn it off.
  *  (default: 250007)</pre>
  * 
+ * <pre> -row-cache &lt;num&gt;
+ *  The size of the row cache in megabytes, which caches whole
+ *  rows of kernel values instead (0 to use the other cache).
+ *  (default: 0)</pre>
+ * 
  * <pre> -O &lt;num&gt;
  *  The Omega parameter.
  *  (default: 1.0)</pre>
@@ -205,6 +210,11 @@ public class Puk
    *  -1 to turn it off.
    *  (default: 250007)</pre>
    * 
+   * <pre> -row-cache &lt;num&gt;
+   *  The size of the row cache in megabytes, which caches whole
+   *  rows of kernel values instead (0 to use the other cache).
+   *  (default: 0)</pre>
+   * 
    * <pre> -O &lt;num&gt;
    *  The Omega parameter.
    *  (default: 1.0)</pre>
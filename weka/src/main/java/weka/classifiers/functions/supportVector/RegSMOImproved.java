@@ -81,6 +81,10 @@ import java.util.Vector;
  *  Use variant 1 of the algorithm when true, otherwise use variant 2.
  *  (default true)</pre>
  * 
+ * <pre> -second-order
+ *  Use second order working set selection and shrinking
+ *  instead of either variant.</pre>
+ * 
  * <pre> -P &lt;double&gt;
  *  The epsilon for round-off error.
  *  (default 1.0e-12)</pre>
@@ -130,6 +134,9 @@ public class RegSMOImproved
   /** set true to use variant 1 of the paper, otherwise use variant 2 */
   boolean m_bUseVariant1 = true;
   
+  /** set true to use second order working set selection and shrinking instead */
+  boolean m_bUseSecondOrderSolver = false;
+  
   /**
    * Returns a string describing the object
    * 
@@ -192,6 +199,11 @@ public class RegSMOImproved
 	+ "\t(default true)", 
 	"V", 0, "-V"));
     
+    result.addElement(new Option(
+	"\tUse second order working set selection and shrinking\n" 
+	+ "\tinstead of either variant.", 
+	"second-order", 0, "-second-order"));
+    
     Enumeration enm = super.listOptions();
     while (enm.hasMoreElements()) {
       result.addElement(enm.nextElement());
@@ -214,6 +226,10 @@ public class RegSMOImproved
    *  Use variant 1 of the algorithm when true, otherwise use variant 2.
    *  (default true)</pre>
    * 
+   * <pre> -second-order
+   *  Use second order working set selection and shrinking
+   *  instead of either variant.</pre>
+   * 
    * <pre> -P &lt;double&gt;
    *  The epsilon for round-off error.
    *  (default 1.0e-12)</pre>
@@ -243,6 +259,8 @@ public class RegSMOImproved
     
     setUseVariant1(Utils.getFlag('V', options));
     
+    setUseSecondOrderSolver(Utils.getFlag("second-order", options));
+    
     super.setOptions(options);
   }
   
@@ -267,6 +285,9 @@ public class RegSMOImproved
     
     if (m_bUseVariant1)
       result.add("-V");
+    
+    if (m_bUseSecondOrderSolver)
+      result.add("-second-order");
 
     return (String[]) result.toArray(new String[result.size()]);	  
   }
@@ -327,6 +348,36 @@ public class RegSMOImproved
     m_bUseVariant1 = b;
   }
   
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		a description suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String useSecondOrderSolverTipText() {
+    return "set true to select the pairs of Lagrange multipliers with second order "
+      + "information and to shrink the problem to the multipliers that may still "
+      + "change (as in LIBSVM), instead of using either variant of the paper.";
+  }
+  
+  /**
+   * Whether second order working set selection and shrinking is used
+   * 
+   * @return		true if the second order solver is used
+   */
+  public boolean getUseSecondOrderSolver() {
+    return m_bUseSecondOrderSolver;
+  }
+  
+  /**
+   * Sets whether to use second order working set selection and shrinking
+   * 
+   * @param b		if true then the second order solver is used
+   */
+  public void setUseSecondOrderSolver(boolean b) {
+    m_bUseSecondOrderSolver = b;
+  }
+  
   /** 
    * takeStep method from Shevade et al.s paper.
    * parameters correspond to pseudocode from paper.
@@ -926,6 +977,48 @@ public class RegSMOImproved
     }
   }
   
+  /** 
+   * solves the problem with second order working set selection and shrinking,
+   * treating the multipliers alpha and alpha* as separate variables.
+   * 
+   * @throws Exception	if something goes wrong
+   * @see SecondOrderSolver
+   */
+  protected void optimizeSecondOrder() throws Exception {
+    int [] index = new int[2 * m_nInstances];
+    double [] y = new double[2 * m_nInstances];
+    double [] p = new double[2 * m_nInstances];
+    double [] C = new double[2 * m_nInstances];
+    for (int i = 0; i < m_nInstances; i++) {
+      // alpha
+      index[i] = i;
+      y[i] = 1;
+      p[i] = m_epsilon - m_target[i];
+      C[i] = m_C * m_data.instance(i).weight();
+      // alpha*
+      index[i + m_nInstances] = i;
+      y[i + m_nInstances] = -1;
+      p[i + m_nInstances] = m_epsilon + m_target[i];
+      C[i + m_nInstances] = C[i];
+    }
+    
+    SecondOrderSolver solver = new SecondOrderSolver(m_kernel, m_data, index, y, p, C, 2 * m_fTolerance, true);
+    solver.solve();
+    
+    double [] alpha = solver.getAlpha();
+    for (int i = 0; i < m_nInstances; i++) {
+      m_alpha[i] = alpha[i];
+      m_alphaStar[i] = alpha[i + m_nInstances];
+      if ((m_alpha[i] > 0) || (m_alphaStar[i] > 0)) {
+	m_supportVectors.insert(i);
+      }
+    }
+    
+    // both boundaries coincide with the threshold (see wrapUp())
+    m_bUp = -solver.getRho();
+    m_bLow = m_bUp;
+  }
+  
   /** 
    * wrap up various variables to save memeory and do some housekeeping after optimization
    * has finished.
@@ -951,7 +1044,9 @@ public class RegSMOImproved
     init(instances); 
 
     // solve optimization problem
-    if (m_bUseVariant1) {
+    if (m_bUseSecondOrderSolver) {
+      optimizeSecondOrder();
+    } else if (m_bUseVariant1) {
       optimize1();
     } else {
       optimize2();
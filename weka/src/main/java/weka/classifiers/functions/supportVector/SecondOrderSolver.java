@@ -0,0 +1,652 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * SecondOrderSolver.java
+ *
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers.functions.supportVector;
+
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformationHandler;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+/**
+ * Solves the dual problem of support vector machines with SMO, using
+ * second order information to select the working set and shrinking the
+ * problem to the variables that may still change, as in LIBSVM. The
+ * problem has the form <p/>
+ *
+ * min 0.5 * a'Qa + p'a subject to y'a = 0 and 0 &lt;= a[t] &lt;= C[t], <p/>
+ *
+ * where Q[t][s] = y[t] * y[s] * K(index[t], index[s]) and y[t] is either
+ * 1 or -1. Several variables can refer to the same training instance,
+ * e.g., the two multipliers of an instance in SVM regression. The kernel
+ * values are obtained row by row from the kernel, so that kernel caches
+ * get used effectively. <p/>
+ *
+ * For more information see: <p/>
+ *
+ * R.-E. Fan, P.-H. Chen, C.-J. Lin (2005). Working set selection using
+ * second order information for training support vector machines. Journal
+ * of Machine Learning Research. 6:1889-1918.
+ *
+ * @version $Revision$
+ */
+public class SecondOrderSolver
+  implements RevisionHandler, TechnicalInformationHandler {
+
+  /** the value used for non-positive curvatures */
+  protected final static double TAU = 1e-12;
+
+  /** the kernel */
+  protected Kernel m_Kernel;
+
+  /** the data the kernel has been built with */
+  protected Instances m_Data;
+
+  /** the instance of each variable */
+  protected int[] m_Index;
+
+  /** the sign (1 or -1) of each variable */
+  protected double[] m_Y;
+
+  /** the linear term of the objective */
+  protected double[] m_P;
+
+  /** the upper bound of each variable */
+  protected double[] m_C;
+
+  /** the tolerance of the stopping criterion */
+  protected double m_Eps;
+
+  /** whether to shrink the problem */
+  protected boolean m_Shrinking;
+
+  /** the variables */
+  protected double[] m_Alpha;
+
+  /** the gradient of the objective */
+  protected double[] m_G;
+
+  /** the part of the gradient due to variables at the upper bound */
+  protected double[] m_GBar;
+
+  /** the kernel value of each variable with itself */
+  protected double[] m_QD;
+
+  /** the variables, the active ones first */
+  protected int[] m_Active;
+
+  /** the number of active variables */
+  protected int m_ActiveSize;
+
+  /** whether all variables have been activated again near the optimum */
+  protected boolean m_Unshrink;
+
+  /** the first variable of the working set */
+  protected int m_WorkI;
+
+  /** the second variable of the working set */
+  protected int m_WorkJ;
+
+  /** the threshold */
+  protected double m_Rho;
+
+  /** the number of iterations performed */
+  protected int m_Iterations;
+
+  /**
+   * Initializes the solver. The kernel must have been built with the
+   * given data already.
+   *
+   * @param kernel	the kernel to use
+   * @param data	the data the kernel has been built with
+   * @param index	the instance of each variable
+   * @param y		the sign (1 or -1) of each variable
+   * @param p		the linear term of the objective
+   * @param C		the upper bound of each variable
+   * @param eps		the tolerance of the stopping criterion, i.e., the
+   * 			maximum violation of the optimality conditions
+   * @param shrinking	whether to shrink the problem
+   */
+  public SecondOrderSolver(Kernel kernel, Instances data, int[] index,
+      double[] y, double[] p, double[] C, double eps, boolean shrinking) {
+
+    m_Kernel    = kernel;
+    m_Data      = data;
+    m_Index     = index;
+    m_Y         = y;
+    m_P         = p;
+    m_C         = C;
+    m_Eps       = eps;
+    m_Shrinking = shrinking;
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing
+   * detailed information about the technical background of this class,
+   * e.g., paper reference or book this class is based on.
+   *
+   * @return 		the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation 	result;
+
+    result = new TechnicalInformation(Type.ARTICLE);
+    result.setValue(Field.AUTHOR, "R.-E. Fan and P.-H. Chen and C.-J. Lin");
+    result.setValue(Field.TITLE, "Working set selection using second order information for training support vector machines");
+    result.setValue(Field.JOURNAL, "Journal of Machine Learning Research");
+    result.setValue(Field.YEAR, "2005");
+    result.setValue(Field.VOLUME, "6");
+    result.setValue(Field.PAGES, "1889-1918");
+
+    return result;
+  }
+
+  /**
+   * Returns the kernel value of two variables.
+   *
+   * @param t		the first variable
+   * @param s		the second variable
+   * @return		the kernel value
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected double kernel(int t, int s) throws Exception {
+    return m_Kernel.eval(m_Index[t], m_Index[s], m_Data.instance(m_Index[t]));
+  }
+
+  /**
+   * Returns whether the variable is at its upper bound.
+   *
+   * @param t		the variable
+   * @return		true if at the upper bound
+   */
+  protected boolean isUpperBound(int t) {
+    return (m_Alpha[t] >= m_C[t]);
+  }
+
+  /**
+   * Returns whether the variable is at its lower bound.
+   *
+   * @param t		the variable
+   * @return		true if at the lower bound
+   */
+  protected boolean isLowerBound(int t) {
+    return (m_Alpha[t] <= 0);
+  }
+
+  /**
+   * Solves the problem, starting with all variables at 0.
+   *
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  public void solve() throws Exception {
+    int		l;
+    int		counter;
+    int		maxIter;
+
+    l        = m_Y.length;
+    m_Alpha  = new double[l];
+    m_G      = new double[l];
+    m_GBar   = new double[l];
+    m_QD     = new double[l];
+    m_Active = new int[l];
+    for (int t = 0; t < l; t++) {
+      m_G[t]      = m_P[t];
+      m_QD[t]     = kernel(t, t);
+      m_Active[t] = t;
+    }
+    m_ActiveSize = l;
+    m_Unshrink   = false;
+    m_Iterations = 0;
+
+    maxIter = Math.max(10000000, (l > Integer.MAX_VALUE / 100) ? Integer.MAX_VALUE : 100 * l);
+    counter = Math.min(l, 1000) + 1;
+    while (m_Iterations < maxIter) {
+      // shrink the problem every now and then
+      if (--counter == 0) {
+	counter = Math.min(l, 1000);
+	if (m_Shrinking)
+	  shrink();
+      }
+
+      if (!selectWorkingSet()) {
+	// optimal on the active variables, check all of them
+	reconstructGradient();
+	m_ActiveSize = l;
+	if (!selectWorkingSet())
+	  break;
+	counter = 1;
+      }
+
+      m_Iterations++;
+      update(m_WorkI, m_WorkJ);
+    }
+
+    if (m_ActiveSize < l) {
+      reconstructGradient();
+      m_ActiveSize = l;
+    }
+
+    m_Rho = calculateRho();
+
+    // the data is no longer needed
+    m_G      = null;
+    m_GBar   = null;
+    m_QD     = null;
+    m_Active = null;
+  }
+
+  /**
+   * Selects the maximally violating variable as the first variable of the
+   * working set and the one promising the largest decrease of the
+   * objective as the second.
+   *
+   * @return		false if the optimality conditions are met on the
+   * 			active variables
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected boolean selectWorkingSet() throws Exception {
+    double	gMax;
+    double	gMax2;
+    double	objMin;
+    double	gradDiff;
+    double	quad;
+    double	obj;
+    int		i;
+    int		j;
+    int		t;
+
+    // maximum of -y[t] * G[t] over the variables that may move "up"
+    gMax = Double.NEGATIVE_INFINITY;
+    i    = -1;
+    for (int k = 0; k < m_ActiveSize; k++) {
+      t = m_Active[k];
+      if (m_Y[t] == 1) {
+	if (!isUpperBound(t) && (-m_G[t] >= gMax)) {
+	  gMax = -m_G[t];
+	  i    = t;
+	}
+      }
+      else {
+	if (!isLowerBound(t) && (m_G[t] >= gMax)) {
+	  gMax = m_G[t];
+	  i    = t;
+	}
+      }
+    }
+
+    // variable that may move "down" with the largest decrease
+    gMax2  = Double.NEGATIVE_INFINITY;
+    objMin = Double.POSITIVE_INFINITY;
+    j      = -1;
+    for (int k = 0; k < m_ActiveSize; k++) {
+      t = m_Active[k];
+      if (m_Y[t] == 1) {
+	if (isLowerBound(t))
+	  continue;
+	gradDiff = gMax + m_G[t];
+	if (m_G[t] >= gMax2)
+	  gMax2 = m_G[t];
+      }
+      else {
+	if (isUpperBound(t))
+	  continue;
+	gradDiff = gMax - m_G[t];
+	if (-m_G[t] >= gMax2)
+	  gMax2 = -m_G[t];
+      }
+      if (gradDiff > 0) {
+	quad = m_QD[i] + m_QD[t] - 2 * kernel(i, t);
+	if (quad <= 0)
+	  quad = TAU;
+	obj = -(gradDiff * gradDiff) / quad;
+	if (obj <= objMin) {
+	  objMin = obj;
+	  j      = t;
+	}
+      }
+    }
+
+    if ((gMax + gMax2 < m_Eps) || (j == -1))
+      return false;
+
+    m_WorkI = i;
+    m_WorkJ = j;
+
+    return true;
+  }
+
+  /**
+   * Optimizes the objective for the two variables and updates the
+   * gradient.
+   *
+   * @param i		the first variable
+   * @param j		the second variable
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected void update(int i, int j) throws Exception {
+    double	Ci;
+    double	Cj;
+    double	oldAi;
+    double	oldAj;
+    double	quad;
+    double	delta;
+    double	diff;
+    double	sum;
+    double	dAi;
+    double	dAj;
+    boolean	upperI;
+    boolean	upperJ;
+    int		t;
+
+    Ci     = m_C[i];
+    Cj     = m_C[j];
+    oldAi  = m_Alpha[i];
+    oldAj  = m_Alpha[j];
+    upperI = isUpperBound(i);
+    upperJ = isUpperBound(j);
+
+    quad = m_QD[i] + m_QD[j] - 2 * kernel(i, j);
+    if (quad <= 0)
+      quad = TAU;
+
+    if (m_Y[i] != m_Y[j]) {
+      delta = (-m_G[i] - m_G[j]) / quad;
+      diff  = m_Alpha[i] - m_Alpha[j];
+      m_Alpha[i] += delta;
+      m_Alpha[j] += delta;
+
+      if (diff > 0) {
+	if (m_Alpha[j] < 0) {
+	  m_Alpha[j] = 0;
+	  m_Alpha[i] = diff;
+	}
+      }
+      else {
+	if (m_Alpha[i] < 0) {
+	  m_Alpha[i] = 0;
+	  m_Alpha[j] = -diff;
+	}
+      }
+      if (diff > Ci - Cj) {
+	if (m_Alpha[i] > Ci) {
+	  m_Alpha[i] = Ci;
+	  m_Alpha[j] = Ci - diff;
+	}
+      }
+      else {
+	if (m_Alpha[j] > Cj) {
+	  m_Alpha[j] = Cj;
+	  m_Alpha[i] = Cj + diff;
+	}
+      }
+    }
+    else {
+      delta = (m_G[i] - m_G[j]) / quad;
+      sum   = m_Alpha[i] + m_Alpha[j];
+      m_Alpha[i] -= delta;
+      m_Alpha[j] += delta;
+
+      if (sum > Ci) {
+	if (m_Alpha[i] > Ci) {
+	  m_Alpha[i] = Ci;
+	  m_Alpha[j] = sum - Ci;
+	}
+      }
+      else {
+	if (m_Alpha[j] < 0) {
+	  m_Alpha[j] = 0;
+	  m_Alpha[i] = sum;
+	}
+      }
+      if (sum > Cj) {
+	if (m_Alpha[j] > Cj) {
+	  m_Alpha[j] = Cj;
+	  m_Alpha[i] = sum - Cj;
+	}
+      }
+      else {
+	if (m_Alpha[i] < 0) {
+	  m_Alpha[i] = 0;
+	  m_Alpha[j] = sum;
+	}
+      }
+    }
+
+    // update the gradient of the active variables
+    dAi = m_Y[i] * (m_Alpha[i] - oldAi);
+    dAj = m_Y[j] * (m_Alpha[j] - oldAj);
+    for (int k = 0; k < m_ActiveSize; k++) {
+      t = m_Active[k];
+      m_G[t] += m_Y[t] * (kernel(i, t) * dAi + kernel(j, t) * dAj);
+    }
+
+    // update the part of the gradient due to the upper bounds
+    if (upperI != isUpperBound(i))
+      updateGBar(i, upperI ? -Ci : Ci);
+    if (upperJ != isUpperBound(j))
+      updateGBar(j, upperJ ? -Cj : Cj);
+  }
+
+  /**
+   * Adds a variable's (dis)appearance at the upper bound to the gradient
+   * part of the upper bounds of all variables.
+   *
+   * @param i		the variable
+   * @param C		the bound, negative if the variable left it
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected void updateGBar(int i, double C) throws Exception {
+    for (int t = 0; t < m_Y.length; t++)
+      m_GBar[t] += C * m_Y[i] * m_Y[t] * kernel(i, t);
+  }
+
+  /**
+   * Recomputes the gradient of the inactive variables.
+   *
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected void reconstructGradient() throws Exception {
+    int		t;
+    int		s;
+
+    for (int k = m_ActiveSize; k < m_Y.length; k++) {
+      t = m_Active[k];
+      m_G[t] = m_GBar[t] + m_P[t];
+      for (int n = 0; n < m_ActiveSize; n++) {
+	s = m_Active[n];
+	if (!isUpperBound(s) && !isLowerBound(s))
+	  m_G[t] += m_Alpha[s] * m_Y[s] * m_Y[t] * kernel(t, s);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the variable can be removed from the active ones,
+   * i.e., whether it is at a bound and will most likely stay there.
+   *
+   * @param t		the variable
+   * @param gMax1	the maximum violation of the variables moving "up"
+   * @param gMax2	the maximum violation of the variables moving "down"
+   * @return		true if the variable can be removed
+   */
+  protected boolean canShrink(int t, double gMax1, double gMax2) {
+    if (isUpperBound(t)) {
+      if (m_Y[t] == 1)
+	return (-m_G[t] > gMax1);
+      else
+	return (-m_G[t] > gMax2);
+    }
+    else if (isLowerBound(t)) {
+      if (m_Y[t] == 1)
+	return (m_G[t] > gMax2);
+      else
+	return (m_G[t] > gMax1);
+    }
+
+    return false;
+  }
+
+  /**
+   * Removes the variables from the active ones that are at a bound and
+   * will most likely stay there. Once close to the optimum, all variables
+   * are activated again (once) to avoid stopping on the wrong ones.
+   *
+   * @throws Exception	if the kernel can't be evaluated
+   */
+  protected void shrink() throws Exception {
+    double	gMax1;
+    double	gMax2;
+    int		t;
+
+    gMax1 = Double.NEGATIVE_INFINITY;
+    gMax2 = Double.NEGATIVE_INFINITY;
+    for (int k = 0; k < m_ActiveSize; k++) {
+      t = m_Active[k];
+      if (m_Y[t] == 1) {
+	if (!isUpperBound(t))
+	  gMax1 = Math.max(gMax1, -m_G[t]);
+	if (!isLowerBound(t))
+	  gMax2 = Math.max(gMax2, m_G[t]);
+      }
+      else {
+	if (!isUpperBound(t))
+	  gMax2 = Math.max(gMax2, -m_G[t]);
+	if (!isLowerBound(t))
+	  gMax1 = Math.max(gMax1, m_G[t]);
+      }
+    }
+
+    if (!m_Unshrink && (gMax1 + gMax2 <= m_Eps * 10)) {
+      m_Unshrink = true;
+      reconstructGradient();
+      m_ActiveSize = m_Y.length;
+    }
+
+    for (int k = 0; k < m_ActiveSize; k++) {
+      if (!canShrink(m_Active[k], gMax1, gMax2))
+	continue;
+      // move the last variable that can't be removed into its place
+      m_ActiveSize--;
+      while (m_ActiveSize > k) {
+	if (!canShrink(m_Active[m_ActiveSize], gMax1, gMax2)) {
+	  t                      = m_Active[k];
+	  m_Active[k]            = m_Active[m_ActiveSize];
+	  m_Active[m_ActiveSize] = t;
+	  break;
+	}
+	m_ActiveSize--;
+      }
+    }
+  }
+
+  /**
+   * Calculates the threshold, the average over the free variables or, if
+   * there are none, the middle of the feasible interval.
+   *
+   * @return		the threshold
+   */
+  protected double calculateRho() {
+    double	upper;
+    double	lower;
+    double	sumFree;
+    double	yG;
+    int		numFree;
+
+    upper   = Double.POSITIVE_INFINITY;
+    lower   = Double.NEGATIVE_INFINITY;
+    sumFree = 0;
+    numFree = 0;
+    for (int t = 0; t < m_Y.length; t++) {
+      // variables that can't move don't constrain the threshold
+      if (m_C[t] <= 0)
+	continue;
+      yG = m_Y[t] * m_G[t];
+      if (isUpperBound(t)) {
+	if (m_Y[t] == -1)
+	  upper = Math.min(upper, yG);
+	else
+	  lower = Math.max(lower, yG);
+      }
+      else if (isLowerBound(t)) {
+	if (m_Y[t] == 1)
+	  upper = Math.min(upper, yG);
+	else
+	  lower = Math.max(lower, yG);
+      }
+      else {
+	numFree++;
+	sumFree += yG;
+      }
+    }
+
+    if (numFree > 0)
+      return sumFree / numFree;
+    else if (Double.isInfinite(upper) && Double.isInfinite(lower))
+      return 0;
+    else if (Double.isInfinite(upper))
+      return lower;
+    else if (Double.isInfinite(lower))
+      return upper;
+    else
+      return (upper + lower) / 2;
+  }
+
+  /**
+   * Returns the variables after solving the problem.
+   *
+   * @return		the variables
+   */
+  public double[] getAlpha() {
+    return m_Alpha;
+  }
+
+  /**
+   * Returns the threshold after solving the problem, i.e., the decision
+   * function is sum(y[t] * a[t] * K(index[t], x)) - threshold.
+   *
+   * @return		the threshold
+   */
+  public double getRho() {
+    return m_Rho;
+  }
+
+  /**
+   * Returns the number of iterations it took to solve the problem.
+   *
+   * @return		the number of iterations
+   */
+  public int getIterations() {
+    return m_Iterations;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -29,6 +29,7 @@ import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.NormalizableDistance;
 import weka.core.neighboursearch.LinearNNSearch;
 import weka.core.neighboursearch.NearestNeighbourSearch;
 import weka.core.Option;
@@ -182,6 +183,9 @@ public class IBk
 
   /** The number of attributes the contribute to a prediction. */
   protected double m_NumAttributesUsed;
+
+  /** The number of training instances to query at once when cross-validating. */
+  protected static final int BATCH_SIZE = 1000;
   
   /**
    * IBk classifier. Simple instance-based learner that uses the class
@@ -553,6 +557,97 @@ public class IBk
    */
   public double [] distributionForInstance(Instance instance) throws Exception {
 
+    prepareForPrediction();
+
+    m_NNSearch.addInstanceInfo(instance);
+
+    Instances neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
+    double [] distances = m_NNSearch.getDistances();
+    double [] distribution = makeDistribution( neighbours, distances );
+
+    return distribution;
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test 
+   * instances. The nearest neighbour search gets queried with batches of
+   * instances. Only the first instance of a batch may change the distances,
+   * by extending the ranges of the distance function, so that the 
+   * neighbours are the same as with distributionForInstance(Instance).
+   *
+   * @param instances the instances to be classified
+   * @return predicted class probability distributions
+   * @throws Exception if an error occurred during the prediction
+   */
+  public double[][] distributionsForInstances(Instances instances) throws Exception {
+
+    prepareForPrediction();
+
+    double[][] result = new double[instances.numInstances()][];
+    int start = 0;
+    while (start < instances.numInstances()) {
+      m_NNSearch.addInstanceInfo(instances.instance(start));
+      int end = start + 1;
+      while ((end < instances.numInstances()) 
+	  && !changesDistances(instances.instance(end))) {
+	end++;
+      }
+
+      Instance[] targets = new Instance[end - start];
+      for (int i = 0; i < targets.length; i++) {
+	targets[i] = instances.instance(start + i);
+      }
+      double[][] distances = new double[targets.length][];
+      Instances[] neighbours = m_NNSearch.kNearestNeighbours(targets, m_kNN, distances);
+      for (int i = 0; i < targets.length; i++) {
+	result[start + i] = makeDistribution(neighbours[i], distances[i]);
+      }
+      start = end;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns true, since distributionsForInstances() queries the nearest
+   * neighbour search with whole batches of instances.
+   *
+   * @return true
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
+  }
+
+  /**
+   * Returns whether adding the information of the given instance to the
+   * nearest neighbour search may change the distances, i.e., whether the
+   * instance lies outside the ranges of the distance function. Distance
+   * functions that don't normalize via ranges are assumed to always change.
+   *
+   * @param instance the instance to check
+   * @return true if the distances may change
+   * @throws Exception if the ranges cannot be determined
+   */
+  protected boolean changesDistances(Instance instance) throws Exception {
+    
+    if (!(m_NNSearch.getDistanceFunction() instanceof NormalizableDistance)) {
+      return true;
+    }
+    NormalizableDistance df = (NormalizableDistance) m_NNSearch.getDistanceFunction();
+    if (!df.rangesSet()) {
+      return true;
+    }
+    return !df.inRanges(instance, df.getRanges());
+  }
+
+  /**
+   * Prepares for predictions: removes the training instances that fall
+   * outside of the window and selects k by cross-validation, if necessary.
+   *
+   * @throws Exception if there are no training instances
+   */
+  protected void prepareForPrediction() throws Exception {
+
     if (m_Train.numInstances() == 0) {
       throw new Exception("No training instances!");
     }
@@ -571,14 +666,6 @@ public class IBk
     if (!m_kNNValid && (m_CrossValidate) && (m_kNNUpper >= 1)) {
       crossValidate();
     }
-
-    m_NNSearch.addInstanceInfo(instance);
-
-    Instances neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
-    double [] distances = m_NNSearch.getDistances();
-    double [] distribution = makeDistribution( neighbours, distances );
-
-    return distribution;
   }
 
   /**
@@ -892,7 +979,9 @@ public class IBk
    * Select the best value for k by hold-one-out cross-validation.
    * If the class attribute is nominal, classification error is
    * minimised. If the class attribute is numeric, mean absolute
-   * error is minimised
+   * error is minimised. The neighbours of the training instances are
+   * queried in batches, which the nearest neighbour search may answer
+   * in parallel.
    */
   protected void crossValidate() {
 
@@ -915,14 +1004,26 @@ public class IBk
       Instance instance;
       Instances neighbours;
       double[] origDistances, convertedDistances;
+      Instance[] targets;
+      Instances[] batchNeighbours = null;
+      double[][] batchDistances = null;
       for(int i = 0; i < m_Train.numInstances(); i++) {
 	if (m_Debug && (i % 50 == 0)) {
 	  System.err.print("Cross validating "
 			   + i + "/" + m_Train.numInstances() + "\r");
 	}
+	// query the neighbours of the next batch of training instances
+	if (i % BATCH_SIZE == 0) {
+	  targets = new Instance[Math.min(BATCH_SIZE, m_Train.numInstances() - i)];
+	  for (int n = 0; n < targets.length; n++) {
+	    targets[n] = m_Train.instance(i + n);
+	  }
+	  batchDistances = new double[targets.length][];
+	  batchNeighbours = m_NNSearch.kNearestNeighbours(targets, m_kNN, batchDistances);
+	}
 	instance = m_Train.instance(i);
-	neighbours = m_NNSearch.kNearestNeighbours(instance, m_kNN);
-        origDistances = m_NNSearch.getDistances();
+	neighbours = batchNeighbours[i % BATCH_SIZE];
+        origDistances = batchDistances[i % BATCH_SIZE];
         
 	for(int j = m_kNNUpper - 1; j >= 0; j--) {
 	  // Update the performance stats
@@ -22,8 +22,10 @@
 
 package weka.classifiers.meta;
 
+import weka.classifiers.BatchPredictor;
 import weka.classifiers.SingleClassifierEnhancer;
 import weka.core.Capabilities;
+import weka.core.DenseInstance;
 import weka.core.Drawable;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -115,6 +117,52 @@ public class FilteredClassifier
   /** The instance structure of the filtered instances */
   protected Instances m_FilteredInstances;
 
+  /** The buffer for the values of the filtered test instance */
+  protected transient double[] m_FilteredValues;
+
+  /** The instance wrapping the buffer */
+  protected transient BufferInstance m_FilteredInstance;
+
+  /**
+   * An instance that wraps the buffer for the values of the filtered test
+   * instance. Setting a value makes the instance copy its values first, 
+   * which detaches it from the buffer.
+   */
+  protected static class BufferInstance
+    extends DenseInstance {
+
+    /** for serialization */
+    private static final long serialVersionUID = 6370264316716946474L;
+
+    /**
+     * Wraps the buffer.
+     *
+     * @param buffer the buffer for the values
+     */
+    public BufferInstance(double[] buffer) {
+      super(1.0, buffer);
+    }
+
+    /**
+     * Returns whether the instance still wraps the buffer.
+     *
+     * @param buffer the buffer for the values
+     * @return true if the values of the instance are the buffer
+     */
+    public boolean wraps(double[] buffer) {
+      return m_AttValues == buffer;
+    }
+
+    /**
+     * Returns the revision string.
+     * 
+     * @return the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
   /**
    * Returns a string describing this classifier
    * @return a description of the classifier suitable for
@@ -394,11 +442,18 @@ public class FilteredClassifier
     getClassifier().getCapabilities().testWithFail(data);
 
     m_FilteredInstances = data.stringFreeStructure();
+    m_FilteredValues = null;
+    m_FilteredInstance = null;
     m_Classifier.buildClassifier(data);
   }
 
   /**
-   * Classifies a given instance after filtering.
+   * Classifies a given instance after filtering. If the filter can
+   * convert into an array of values, the filtered values are stored in
+   * a buffer that is reused for all test instances. The base classifier
+   * must therefore not keep the instance it gets passed. If it modifies 
+   * the instance, which detaches the instance from the buffer, a new 
+   * instance gets wrapped around the buffer for the next prediction.
    *
    * @param instance the instance to be classified
    * @return the class distribution for the given instance
@@ -416,6 +471,18 @@ public class FilteredClassifier
     if (m_Filter.numPendingOutput() > 0) {
       throw new Exception("Filter output queue not empty!");
     }
+    if (m_Filter.canConvertInto()) {
+      if (m_FilteredValues == null) {
+        m_FilteredValues = new double[m_FilteredInstances.numAttributes()];
+      }
+      if ((m_FilteredInstance == null) || !m_FilteredInstance.wraps(m_FilteredValues)) {
+        m_FilteredInstance = new BufferInstance(m_FilteredValues);
+      }
+      m_Filter.convertInto(instance, m_FilteredValues);
+      m_FilteredInstance.setDataset(m_FilteredInstances);
+      m_FilteredInstance.setWeight(instance.weight());
+      return m_Classifier.distributionForInstance(m_FilteredInstance);
+    }
     /*
     String fname = m_Filter.getClass().getName();
     fname = fname.substring(fname.lastIndexOf('.') + 1);
@@ -437,6 +504,59 @@ public class FilteredClassifier
     return m_Classifier.distributionForInstance(newInstance);
   }
 
+  /**
+   * Classifies a batch of instances after passing them through the filter
+   * as one batch, and hands the filtered batch on to the base classifier.
+   *
+   * @param instances the instances to be classified
+   * @return the class distributions for the given instances
+   * @throws Exception if the instances could not be classified
+   * successfully
+   */
+  public double[][] distributionsForInstances(Instances instances)
+    throws Exception {
+
+    if (m_Filter.numPendingOutput() > 0) {
+      throw new Exception("Filter output queue not empty!");
+    }
+    for (int i = 0; i < instances.numInstances(); i++) {
+      if (!m_Filter.input(instances.instance(i))) {
+	throw new Exception("Filter didn't make the test instance"
+			    + " immediately available!");
+      }
+    }
+    m_Filter.batchFinished();
+    Instances filtered = m_Filter.getOutputFormat();
+    Instance newInstance;
+    while ((newInstance = m_Filter.output()) != null) {
+      filtered.add(newInstance);
+    }
+    if (filtered.numInstances() != instances.numInstances()) {
+      throw new Exception("Filter didn't output one instance per test instance!");
+    }
+
+    if (m_Classifier instanceof BatchPredictor) {
+      return ((BatchPredictor) m_Classifier).distributionsForInstances(filtered);
+    }
+    double[][] result = new double[filtered.numInstances()][];
+    for (int i = 0; i < filtered.numInstances(); i++) {
+      result[i] = m_Classifier.distributionForInstance(filtered.instance(i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if the base classifier implements a more efficient batch
+   * prediction.
+   *
+   * @return true if the base classifier is efficient in batch prediction
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+
+    return (m_Classifier instanceof BatchPredictor)
+      && ((BatchPredictor) m_Classifier).implementsMoreEfficientBatchPrediction();
+  }
+
   /**
    * Output a representation of this classifier
    * 
@@ -116,6 +116,11 @@ import java.util.Vector;
  * <pre> -Q &lt;seed&gt;
  *  Seed for random data shuffling (default 1).</pre>
  * 
+ * <pre> -num-bins &lt;num&gt;
+ *  The maximum number of bins for numeric attributes,
+ *  0 for exact split search on the sorted values.
+ *  (default 0)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -170,6 +175,9 @@ public class J48
   /** Random number seed for reduced-error pruning. */
   private int m_Seed = 1;
 
+  /** The maximum number of bins for numeric attributes (0 = no binning) */
+  private int m_numBins = 0;
+
   /**
    * Returns a string describing classifier
    * @return a description suitable for
@@ -236,11 +244,14 @@ public class J48
        throws Exception {
 
     ModelSelection modSelection;	 
+    NumericBins bins = null;
 
+    if (m_numBins > 0)
+      bins = new NumericBins(instances, m_numBins, false);
     if (m_binarySplits)
-      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new BinC45ModelSelection(m_minNumObj, instances, m_useMDLcorrection, bins);
     else
-      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection);
+      modSelection = new C45ModelSelection(m_minNumObj, instances, m_useMDLcorrection, bins);
     if (!m_reducedErrorPruning)
       m_root = new C45PruneableClassifierTree(modSelection, !m_unpruned, m_CF,
                                               m_subtreeRaising, !m_noCleanup, m_collapseTree);
@@ -374,7 +385,7 @@ public class J48
    */
   public Enumeration listOptions() {
 
-    Vector newVector = new Vector(12);
+    Vector newVector = new Vector(13);
 
     newVector.
 	addElement(new Option("\tUse unpruned tree.",
@@ -416,6 +427,11 @@ public class J48
     newVector.
       addElement(new Option("\tSeed for random data shuffling (default 1).",
 			    "Q", 1, "-Q <seed>"));
+    newVector.
+      addElement(new Option("\tThe maximum number of bins for numeric attributes,\n" +
+			    "\t0 for exact split search on the sorted values.\n" +
+			    "\t(default 0)",
+			    "num-bins", 1, "-num-bins <num>"));
 
     return newVector.elements();
   }
@@ -466,6 +482,11 @@ public class J48
    * <pre> -Q &lt;seed&gt;
    *  Seed for random data shuffling (default 1).</pre>
    * 
+   * <pre> -num-bins &lt;num&gt;
+   *  The maximum number of bins for numeric attributes,
+   *  0 for exact split search on the sorted values.
+   *  (default 0)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -533,6 +554,12 @@ public class J48
     } else {
       m_Seed = 1;
     }
+    String numBinsString = Utils.getOption("num-bins", options);
+    if (numBinsString.length() != 0) {
+      m_numBins = Integer.parseInt(numBinsString);
+    } else {
+      m_numBins = 0;
+    }
   }
 
   /**
@@ -575,6 +602,9 @@ public class J48
     if (!m_useMDLcorrection) {
       options[current++] = "-J";
     }
+    if (m_numBins > 0) {
+      options[current++] = "-num-bins"; options[current++] = "" + m_numBins;
+    }
 
     while (current < options.length) {
       options[current++] = "";
@@ -669,6 +699,38 @@ public class J48
     
     m_useMDLcorrection = newuseMDLcorrection;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numBinsTipText() {
+    return "The maximum number of bins numeric attributes are quantized into "
+      + "before growing the tree; split points are then searched on per-bin class "
+      + "distributions instead of the sorted values, which is faster for large data. "
+      + "0 for exact split search.";
+  }
+
+  /**
+   * Get the value of numBins.
+   *
+   * @return Value of numBins.
+   */
+  public int getNumBins() {
+    
+    return m_numBins;
+  }
+  
+  /**
+   * Set the value of numBins.
+   *
+   * @param newNumBins Value to assign to numBins.
+   */
+  public void setNumBins(int newNumBins) {
+    
+    m_numBins = newNumBins;
+  }
   
   /**
    * Returns a description of the classifier.
@@ -0,0 +1,292 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    NumericBins.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.classifiers.trees;
+
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Quantizes the numeric attributes of a dataset into a limited number of
+ * bins, so that tree learners can look for split points on per-bin
+ * class histograms instead of on sorted values. The bins of an attribute
+ * contain roughly the same number of instances and their boundaries always
+ * lie between two distinct values. If an attribute has no more distinct
+ * values than bins, every value gets its own bin and the split points found
+ * on the histograms are the ones found on the sorted values.
+ *
+ * @version $Revision$
+ */
+public class NumericBins
+  implements Serializable, RevisionHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -2862337624958315436L;
+
+  /** the maximum number of bins per attribute */
+  protected int m_MaxBins;
+
+  /** the smallest value in each bin, per attribute (null if not binned) */
+  protected double[][] m_Lower;
+
+  /** the largest value in each bin, per attribute (null if not binned) */
+  protected double[][] m_Upper;
+
+  /** the bin of each instance, per attribute (-1 for missing values) */
+  protected int[][] m_Bins;
+
+  /**
+   * Determines the bins of all numeric attributes except the class.
+   *
+   * @param data 	the data to determine the bins from
+   * @param maxBins 	the maximum number of bins per attribute
+   * @param storeBins	whether to store the bin of each instance, which
+   * 			can then be retrieved with <code>bin(int,int)</code>
+   */
+  public NumericBins(Instances data, int maxBins, boolean storeBins) {
+    double[]	values;
+    int		numKnown;
+
+    if (maxBins < 1)
+      throw new IllegalArgumentException("Number of bins must be at least 1!");
+
+    m_MaxBins = maxBins;
+    m_Lower   = new double[data.numAttributes()][];
+    m_Upper   = new double[data.numAttributes()][];
+    if (storeBins)
+      m_Bins = new int[data.numAttributes()][];
+
+    for (int att = 0; att < data.numAttributes(); att++) {
+      if ((att == data.classIndex()) || !data.attribute(att).isNumeric())
+	continue;
+
+      // collect the known values in ascending order
+      values   = new double[data.numInstances()];
+      numKnown = 0;
+      for (int i = 0; i < data.numInstances(); i++) {
+	if (!data.instance(i).isMissing(att))
+	  values[numKnown++] = normalize(data.instance(i).value(att));
+      }
+      Arrays.sort(values, 0, numKnown);
+      determineBins(att, values, numKnown);
+
+      if (storeBins) {
+	m_Bins[att] = new int[data.numInstances()];
+	for (int i = 0; i < data.numInstances(); i++) {
+	  if (data.instance(i).isMissing(att))
+	    m_Bins[att][i] = -1;
+	  else
+	    m_Bins[att][i] = binOf(att, data.instance(i).value(att));
+	}
+      }
+    }
+  }
+
+  /**
+   * Turns -0.0 into 0.0, since both compare as equal when splitting but
+   * not when sorting or searching.
+   *
+   * @param value	the value to normalize
+   * @return		the normalized value
+   */
+  protected static double normalize(double value) {
+    return value + 0.0;
+  }
+
+  /**
+   * Determines the bin boundaries of an attribute from its sorted known
+   * values. Bins are filled with whole runs of identical values until they
+   * hold their share of the values not binned yet.
+   *
+   * @param att		the attribute index
+   * @param values	the sorted values
+   * @param numKnown	the number of values to use
+   */
+  protected void determineBins(int att, double[] values, int numKnown) {
+    double[]	lower;
+    double[]	upper;
+    int		numBins;
+    int		inBin;
+    int		end;
+
+    lower   = new double[Math.max(1, Math.min(m_MaxBins, numKnown))];
+    upper   = new double[lower.length];
+    numBins = 0;
+    inBin   = 0;
+    for (int i = 0; i < numKnown; i = end) {
+      end = i + 1;
+      while ((end < numKnown) && (values[end] == values[i]))
+	end++;
+
+      if (inBin == 0)
+	lower[numBins] = values[i];
+      upper[numBins] = values[end - 1];
+      inBin += end - i;
+
+      // close the bin if it holds its share, keeping the last bin open
+      if ((numBins < lower.length - 1)
+	  && (inBin >= (double) (numKnown - end + inBin) / (lower.length - numBins))) {
+	numBins++;
+	inBin = 0;
+      }
+    }
+    if (inBin > 0)
+      numBins++;
+
+    // no known values at all: one empty bin
+    if (numBins == 0)
+      numBins = 1;
+
+    m_Lower[att] = Arrays.copyOf(lower, numBins);
+    m_Upper[att] = Arrays.copyOf(upper, numBins);
+  }
+
+  /**
+   * Returns the maximum number of bins per attribute.
+   *
+   * @return		the maximum number of bins
+   */
+  public int getMaxBins() {
+    return m_MaxBins;
+  }
+
+  /**
+   * Returns whether the attribute has been binned, i.e., whether it is a
+   * numeric attribute other than the class.
+   *
+   * @param att		the attribute index
+   * @return		true if the attribute has been binned
+   */
+  public boolean isBinned(int att) {
+    return (m_Lower[att] != null);
+  }
+
+  /**
+   * Returns the number of bins of the attribute.
+   *
+   * @param att		the attribute index
+   * @return		the number of bins
+   */
+  public int numBins(int att) {
+    return m_Lower[att].length;
+  }
+
+  /**
+   * Returns the bin of the given instance of the data the bins were
+   * determined from. Only available if the bins have been stored.
+   *
+   * @param att		the attribute index
+   * @param index	the index of the instance
+   * @return		the bin, -1 if the value is missing
+   */
+  public int bin(int att, int index) {
+    return m_Bins[att][index];
+  }
+
+  /**
+   * Returns the bin of the given value. Values between two bins fall into
+   * the upper one, values above the last bin into the last one.
+   *
+   * @param att		the attribute index
+   * @param value	the (non-missing) value
+   * @return		the bin
+   */
+  public int binOf(int att, double value) {
+    int		result;
+
+    result = Arrays.binarySearch(m_Upper[att], normalize(value));
+    if (result < 0)
+      result = Math.min(-result - 1, m_Upper[att].length - 1);
+
+    return result;
+  }
+
+  /**
+   * Returns the smallest value in the given bin.
+   *
+   * @param att		the attribute index
+   * @param bin		the bin
+   * @return		the smallest value
+   */
+  public double lower(int att, int bin) {
+    return m_Lower[att][bin];
+  }
+
+  /**
+   * Returns the largest value in the given bin.
+   *
+   * @param att		the attribute index
+   * @param bin		the bin
+   * @return		the largest value
+   */
+  public double upper(int att, int bin) {
+    return m_Upper[att][bin];
+  }
+
+  /**
+   * Returns the split point between two bins, i.e., the midpoint between the
+   * largest value of the left and the smallest value of the right bin.
+   *
+   * @param att		the attribute index
+   * @param left	the left bin
+   * @param right	the right bin, after the left one
+   * @return		the split point
+   */
+  public double splitPoint(int att, int left, int right) {
+    return (m_Upper[att][left] + m_Lower[att][right]) / 2;
+  }
+
+  /**
+   * Subtracts a histogram from another one, e.g., to obtain the histogram of
+   * a node's child from the ones of its parent and its siblings. Entries
+   * that are only rounding errors afterwards are set to zero, so that empty
+   * bins can be recognized.
+   *
+   * @param hist	the histogram to subtract from, gets modified
+   * @param other	the histogram to subtract
+   */
+  public static void subtract(double[][] hist, double[][] other) {
+    double	before;
+
+    for (int i = 0; i < hist.length; i++) {
+      for (int j = 0; j < hist[i].length; j++) {
+	before      = hist[i][j];
+	hist[i][j] -= other[i][j];
+	if (Math.abs(hist[i][j]) <= 1e-12 * Math.abs(before))
+	  hist[i][j] = 0;
+      }
+    }
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
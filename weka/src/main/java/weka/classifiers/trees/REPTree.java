@@ -74,6 +74,11 @@ import java.util.Vector;
  * <pre> -L
  *  Maximum tree depth (default -1, no maximum)</pre>
  * 
+ * <pre> -num-bins &lt;num&gt;
+ *  The maximum number of bins for numeric attributes,
+ *  0 for exact split search on the sorted values.
+ *  (default 0)</pre>
+ * 
  <!-- options-end -->
  *
  * @author Eibe Frank (eibe@cs.waikato.ac.nz)
@@ -499,13 +504,15 @@ public class REPTree
      * @param minVariance
      * @param depth the current depth of the tree
      * @param maxDepth the maximum allowed depth of the tree
+     * @param hists the histograms of the binned attributes, null if
+     * they still need to be collected or the attributes are not binned
      * @throws Exception if generation fails
      */
     protected void buildTree(int[][] sortedIndices, double[][] weights,
 			     Instances data, double totalWeight, 
 			     double[] classProbs, Instances header,
 			     double minNum, double minVariance,
-			     int depth, int maxDepth) 
+			     int depth, int maxDepth, double[][][] hists) 
       throws Exception {
       
       // Store structure of dataset, set minimum number of instances
@@ -582,6 +589,12 @@ public class REPTree
 	return;
       }
 
+      // Collect the histograms of the binned attributes, unless
+      // they have been derived from the parent and the siblings
+      if ((m_Bins != null) && (hists == null)) {
+	hists = histograms(sortedIndices, weights, data);
+      }
+
       // Compute class distributions and value of splitting
       // criterion for each attribute
       double[] vals = new double[data.numAttributes()];
@@ -595,7 +608,8 @@ public class REPTree
 	for (int i = 0; i < data.numAttributes(); i++) {
 	  if (i != data.classIndex()) {
 	    splits[i] = distribution(props, dists, i, sortedIndices[i], 
-				     weights[i], totalSubsetWeights, data);
+				     weights[i], totalSubsetWeights, data,
+				     (hists == null) ? null : hists[i]);
 	    vals[i] = gain(dists[i], priorVal(dists[i]));
 	  }
 	}
@@ -607,7 +621,7 @@ public class REPTree
 	    splits[i] = 
 	      numericDistribution(props, dists, i, sortedIndices[i], 
 				  weights[i], totalSubsetWeights, data, 
-				  vals);
+				  vals, (hists == null) ? null : hists[i]);
 	  }
 	}
       }
@@ -640,6 +654,26 @@ public class REPTree
 	  new double[numAttVals][data.numAttributes()][0];
 	splitData(subsetIndices, subsetWeights, m_Attribute, m_SplitPoint, 
 		  sortedIndices, weights, data);
+
+	// Collect the histograms of all subsets but the largest one,
+	// whose histograms are the remainder of this node's ones
+	double[][][][] subsetHists = new double[numAttVals][][][];
+	if (hists != null) {
+	  int largest = Utils.maxIndex(totalSubsetWeights[m_Attribute]);
+	  for (int i = 0; i < numAttVals; i++) {
+	    if (i != largest) {
+	      subsetHists[i] = 
+		histograms(subsetIndices[i], subsetWeights[i], data);
+	      for (int j = 0; j < hists.length; j++) {
+		if (hists[j] != null) {
+		  NumericBins.subtract(hists[j], subsetHists[i][j]);
+		}
+	      }
+	    }
+	  }
+	  subsetHists[largest] = hists;
+	}
+
 	m_Successors = new Tree[numAttVals];
 	for (int i = 0; i < numAttVals; i++) {
 	  m_Successors[i] = new Tree();
@@ -647,7 +681,8 @@ public class REPTree
 	    buildTree(subsetIndices[i], subsetWeights[i], 
 		      data, totalSubsetWeights[m_Attribute][i],
 		      dists[m_Attribute][i], header, minNum, 
-		      minVariance, depth + 1, maxDepth);
+		      minVariance, depth + 1, maxDepth, subsetHists[i]);
+	  subsetHists[i] = null;
 	}
       } else {
       
@@ -687,6 +722,65 @@ public class REPTree
       }
     }
 
+    /**
+     * Collects the histograms of the binned attributes: the class
+     * distribution of each bin for a nominal class, and the sum, the sum
+     * of squares and the sum of weights of the class values in each bin
+     * for a numeric class.
+     * 
+     * @param sortedIndices the indices of the instances, with missing
+     * values last
+     * @param weights the weights of the instances
+     * @param data the data to work with
+     * @return the histograms, null for attributes that are not binned
+     */
+    protected double[][][] histograms(int[][] sortedIndices, 
+				      double[][] weights, Instances data) {
+
+      boolean nominal = data.classAttribute().isNominal();
+      double[][][] hists = new double[data.numAttributes()][][];
+      for (int att = 0; att < data.numAttributes(); att++) {
+	if (!m_Bins.isBinned(att)) {
+	  continue;
+	}
+	hists[att] = 
+	  new double[m_Bins.numBins(att)][nominal ? data.numClasses() : 3];
+	for (int i = 0; i < sortedIndices[att].length; i++) {
+	  int bin = m_Bins.bin(att, sortedIndices[att][i]);
+	  if (bin < 0) {
+	    break;
+	  }
+	  double classValue = data.instance(sortedIndices[att][i]).classValue();
+	  if (nominal) {
+	    hists[att][bin][(int)classValue] += weights[att][i];
+	  } else {
+	    hists[att][bin][0] += classValue * weights[att][i];
+	    hists[att][bin][1] += classValue * classValue * weights[att][i];
+	    hists[att][bin][2] += weights[att][i];
+	  }
+	}
+      }
+      return hists;
+    }
+
+    /**
+     * Finds the position of the first missing value in the indices of
+     * a node, which are sorted with missing values last.
+     * 
+     * @param att the attribute index
+     * @param sortedIndices the sorted indices of the instances
+     * @param data the data to work with
+     * @return the position of the first missing value
+     */
+    protected int firstMissing(int att, int[] sortedIndices, Instances data) {
+
+      int i = sortedIndices.length;
+      while ((i > 0) && data.instance(sortedIndices[i - 1]).isMissing(att)) {
+	i--;
+      }
+      return i;
+    }
+
     /**
      * Splits instances into subsets.
      * 
@@ -795,6 +889,7 @@ public class REPTree
      * @param weights the weights of the instances
      * @param subsetWeights the weights of the subset
      * @param data the data to work with
+     * @param hist the histogram of the attribute, null if not binned
      * @return the split point
      * @throws Exception if computation fails
      */
@@ -803,7 +898,7 @@ public class REPTree
 				  int[] sortedIndices,
 				  double[] weights, 
 				  double[][] subsetWeights, 
-				  Instances data) 
+				  Instances data, double[][] hist) 
       throws Exception {
 
       double splitPoint = Double.NaN;
@@ -822,6 +917,46 @@ public class REPTree
 	  }
 	  dist[(int)inst.value(att)][(int)inst.classValue()] += weights[i];
 	}
+      } else if (hist != null) {
+
+	// For binned numeric attributes
+	double[][] currDist = new double[2][data.numClasses()];
+	dist = new double[2][data.numClasses()];
+
+	// Move all bins into second subset
+	for (int b = 0; b < hist.length; b++) {
+	  for (int j = 0; j < hist[b].length; j++) {
+	    currDist[1][j] += hist[b][j];
+	  }
+	}
+	double priorVal = priorVal(currDist);
+	System.arraycopy(currDist[1], 0, dist[1], 0, dist[1].length);
+
+	// Try the split points between all non-empty bins
+	int prevBin = -1;
+	double currVal, bestVal = -Double.MAX_VALUE;
+	for (int b = 0; b < hist.length; b++) {
+	  if (!(Utils.sum(hist[b]) > 0)) {
+	    continue;
+	  }
+	  if (prevBin > -1) {
+	    currVal = gain(currDist, priorVal);
+	    if (currVal > bestVal) {
+	      bestVal = currVal;
+	      splitPoint = m_Bins.splitPoint(att, prevBin, b);
+	      for (int j = 0; j < currDist.length; j++) {
+		System.arraycopy(currDist[j], 0, dist[j], 0, 
+				 dist[j].length);
+	      }
+	    } 
+	  } 
+	  prevBin = b;
+	  for (int j = 0; j < hist[b].length; j++) {
+	    currDist[0][j] += hist[b][j];
+	    currDist[1][j] -= hist[b][j];
+	  }
+	}
+	i = firstMissing(att, sortedIndices, data);
       } else {
 
 	// For numeric attributes
@@ -908,6 +1043,7 @@ public class REPTree
      * @param subsetWeights the weights of the subset
      * @param data the data to work with
      * @param vals
+     * @param hist the histogram of the attribute, null if not binned
      * @return the split point
      * @throws Exception if computation fails
      */
@@ -917,7 +1053,7 @@ public class REPTree
 					 double[] weights, 
 					 double[][] subsetWeights, 
 					 Instances data,
-					 double[] vals) 
+					 double[] vals, double[][] hist) 
       throws Exception {
 
       double splitPoint = Double.NaN;
@@ -951,6 +1087,60 @@ public class REPTree
 	totalSum = Utils.sum(sums);
 	totalSumSquared = Utils.sum(sumSquared);
 	totalSumOfWeights = Utils.sum(sumOfWeights);
+      } else if (hist != null) {
+
+	// For binned numeric attributes
+	sums = new double[2];
+        sumSquared = new double[2];
+	sumOfWeights = new double[2];
+	double[] currSums = new double[2];
+        double[] currSumSquared = new double[2];
+	double[] currSumOfWeights = new double[2];
+
+	// Move all bins into second subset
+	for (int b = 0; b < hist.length; b++) {
+	  currSums[1] += hist[b][0];
+	  currSumSquared[1] += hist[b][1];
+	  currSumOfWeights[1] += hist[b][2];
+	}
+	totalSum = currSums[1];
+	totalSumSquared = currSumSquared[1];
+	totalSumOfWeights = currSumOfWeights[1];
+	
+	sums[1] = currSums[1];
+	sumSquared[1] = currSumSquared[1];
+	sumOfWeights[1] = currSumOfWeights[1];
+
+	// Try the split points between all non-empty bins
+	int prevBin = -1;
+	double currVal, bestVal = Double.MAX_VALUE;
+	for (int b = 0; b < hist.length; b++) {
+	  if (!(hist[b][2] > 0)) {
+	    continue;
+	  }
+	  if (prevBin > -1) {
+	    currVal = variance(currSums, currSumSquared, currSumOfWeights);
+	    if (currVal < bestVal) {
+	      bestVal = currVal;
+	      splitPoint = m_Bins.splitPoint(att, prevBin, b);
+	      for (int j = 0; j < 2; j++) {
+		sums[j] = currSums[j];
+		sumSquared[j] = currSumSquared[j];
+		sumOfWeights[j] = currSumOfWeights[j];
+	      }
+	    } 
+	  } 
+	  prevBin = b;
+
+	  currSums[0] += hist[b][0];
+	  currSumSquared[0] += hist[b][1];
+	  currSumOfWeights[0] += hist[b][2];
+
+	  currSums[1] -= hist[b][0];
+	  currSumSquared[1] -= hist[b][1];
+	  currSumOfWeights[1] -= hist[b][2];
+	}
+	i = firstMissing(att, sortedIndices, data);
       } else {
 
 	// For numeric attributes
@@ -1352,6 +1542,12 @@ public class REPTree
 
   /** Upper bound on the tree depth */
   protected int m_MaxDepth = -1;
+
+  /** The maximum number of bins for numeric attributes (0 = no binning) */
+  protected int m_NumBins = 0;
+
+  /** The bins of the numeric attributes while the tree is grown */
+  protected transient NumericBins m_Bins = null;
   
   /**
    * Returns the tip text for this property
@@ -1530,6 +1726,38 @@ public class REPTree
     m_MaxDepth = newMaxDepth;
   }
   
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numBinsTipText() {
+    return "The maximum number of bins numeric attributes are quantized into "
+      + "before growing the tree; split points are then searched on per-bin "
+      + "histograms instead of the sorted values, which is faster for large data. "
+      + "0 for exact split search.";
+  }
+
+  /**
+   * Get the value of NumBins.
+   *
+   * @return Value of NumBins.
+   */
+  public int getNumBins() {
+    
+    return m_NumBins;
+  }
+  
+  /**
+   * Set the value of NumBins.
+   *
+   * @param newNumBins Value to assign to NumBins.
+   */
+  public void setNumBins(int newNumBins) {
+    
+    m_NumBins = newNumBins;
+  }
+  
   /**
    * Lists the command-line options for this classifier.
    * 
@@ -1537,7 +1765,7 @@ public class REPTree
    */
   public Enumeration listOptions() {
     
-    Vector newVector = new Vector(5);
+    Vector newVector = new Vector(7);
 
     newVector.
       addElement(new Option("\tSet minimum number of instances per leaf " +
@@ -1560,6 +1788,11 @@ public class REPTree
     newVector.
       addElement(new Option("\tMaximum tree depth (default -1, no maximum)",
 			    "L", 1, "-L"));
+    newVector.
+      addElement(new Option("\tThe maximum number of bins for numeric attributes,\n" +
+			    "\t0 for exact split search on the sorted values.\n" +
+			    "\t(default 0)",
+			    "num-bins", 1, "-num-bins <num>"));
 
     return newVector.elements();
   } 
@@ -1571,7 +1804,7 @@ public class REPTree
    */
   public String[] getOptions() {
     
-    String [] options = new String [12];
+    String [] options = new String [13];
     int current = 0;
     options[current++] = "-M"; 
     options[current++] = "" + (int)getMinNum();
@@ -1583,6 +1816,10 @@ public class REPTree
     options[current++] = "" + getSeed();
     options[current++] = "-L"; 
     options[current++] = "" + getMaxDepth();
+    if (getNumBins() > 0) {
+      options[current++] = "-num-bins"; 
+      options[current++] = "" + getNumBins();
+    }
     if (getNoPruning()) {
       options[current++] = "-P";
     }
@@ -1617,6 +1854,11 @@ public class REPTree
    * <pre> -L
    *  Maximum tree depth (default -1, no maximum)</pre>
    * 
+   * <pre> -num-bins &lt;num&gt;
+   *  The maximum number of bins for numeric attributes,
+   *  0 for exact split search on the sorted values.
+   *  (default 0)</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options the list of options as an array of strings
@@ -1655,6 +1897,12 @@ public class REPTree
     } else {
       m_MaxDepth = -1;
     }
+    String numBinsString = Utils.getOption("num-bins", options);
+    if (numBinsString.length() != 0) {
+      m_NumBins = Integer.parseInt(numBinsString);
+    } else {
+      m_NumBins = 0;
+    }
     Utils.checkForRemainingOptions(options);
   }
   
@@ -1761,6 +2009,12 @@ public class REPTree
       train = data;
     }
 
+    // Determine the bins of the numeric attributes, if required
+    m_Bins = null;
+    if (m_NumBins > 0) {
+      m_Bins = new NumericBins(train, m_NumBins, true);
+    }
+
     // Create array of sorted indices and weights
     int[][] sortedIndices = new int[train.numAttributes()][0];
     double[][] weights = new double[train.numAttributes()][0];
@@ -1768,9 +2022,9 @@ public class REPTree
     for (int j = 0; j < train.numAttributes(); j++) {
       if (j != train.classIndex()) {
 	weights[j] = new double[train.numInstances()];
-	if (train.attribute(j).isNominal()) {
+	if (train.attribute(j).isNominal() || (m_Bins != null)) {
 
-	  // Handling nominal attributes. Putting indices of
+	  // Handling nominal and binned attributes. Putting indices of
 	  // instances with missing values at the end.
 	  sortedIndices[j] = new int[train.numInstances()];
 	  int count = 0;
@@ -1830,7 +2084,8 @@ public class REPTree
     // Build tree
     m_Tree.buildTree(sortedIndices, weights, train, totalWeight, classProbs,
 		     new Instances(train, 0), m_MinNum, m_MinVarianceProp * 
-		     trainVariance, 0, m_MaxDepth);
+		     trainVariance, 0, m_MaxDepth, null);
+    m_Bins = null;
     
     // Insert pruning data and perform reduced error pruning
     if (!m_NoPruning) {
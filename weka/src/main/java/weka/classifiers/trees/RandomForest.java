@@ -22,9 +22,7 @@
 
 package weka.classifiers.trees;
 
-import weka.classifiers.Classifier;
 import weka.classifiers.AbstractClassifier;
-import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -41,7 +39,14 @@ import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
 import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -86,6 +91,15 @@ import java.util.Vector;
  *  The maximum depth of the trees, 0 for unlimited.
  *  (default 0)</pre>
  * 
+ * <pre> -num-bins &lt;num&gt;
+ *  The maximum number of bins for numeric attributes,
+ *  0 for exact split search on the sorted values.
+ *  (default 0)</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -D
  *  If set, classifier is run in debug mode and
  *  may output additional info to the console</pre>
@@ -101,7 +115,7 @@ public class RandomForest
              AdditionalMeasureProducer, TechnicalInformationHandler {
 
   /** for serialization */
-  static final long serialVersionUID = 4216839470751428698L;
+  static final long serialVersionUID = 1116839470751428698L;
   
   /** Number of trees in forest. */
   protected int m_numTrees = 10;
@@ -116,12 +130,21 @@ public class RandomForest
   /** Final number of features that were considered in last build. */
   protected int m_KValue = 0;
 
-  /** The bagger. */
-  protected Bagging m_bagger = null;
+  /** The trees of the forest. */
+  protected RandomTree[] m_Trees = null;
+
+  /** The out of bag error that has been calculated. */
+  protected double m_OutOfBagError;
+
+  /** The number of threads to use for building the trees. */
+  protected int m_numExecutionSlots = 1;
   
   /** The maximum depth of the trees (0 = unlimited) */
   protected int m_MaxDepth = 0;
 
+  /** The maximum number of bins for numeric attributes (0 = no binning) */
+  protected int m_NumBins = 0;
+
   /**
    * Returns a string describing classifier
    * @return a description suitable for
@@ -272,6 +295,67 @@ public class RandomForest
     m_MaxDepth = value;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numBinsTipText() {
+    return "The maximum number of bins numeric attributes are quantized into "
+      + "once for all trees; split points are then searched on per-bin class "
+      + "histograms instead of the sorted values, which is faster for large data. "
+      + "0 for exact split search.";
+  }
+
+  /**
+   * Get the maximum number of bins for numeric attributes, 0 for no binning.
+   *
+   * @return 		the maximum number of bins.
+   */
+  public int getNumBins() {
+    return m_NumBins;
+  }
+  
+  /**
+   * Set the maximum number of bins for numeric attributes, 0 for no binning.
+   *
+   * @param value 	the maximum number of bins.
+   */
+  public void setNumBins(int value) {
+    m_NumBins = value;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for "
+      + "constructing the trees.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use for building the
+   * trees.
+   *
+   * @param numSlots the number of slots to use.
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use for building
+   * the trees.
+   *
+   * @return the number of slots to use
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
   /**
    * Gets the out of bag error that was calculated as the classifier was built.
    *
@@ -279,8 +363,8 @@ public class RandomForest
    */
   public double measureOutOfBagError() {
     
-    if (m_bagger != null) {
-      return m_bagger.measureOutOfBagError();
+    if (m_Trees != null) {
+      return m_OutOfBagError;
     } else return Double.NaN;
   }
   
@@ -340,6 +424,17 @@ public class RandomForest
 	+ "\t(default 0)",
 	"depth", 1, "-depth <num>"));
 
+    newVector.addElement(new Option(
+	"\tThe maximum number of bins for numeric attributes,\n"
+	+ "\t0 for exact split search on the sorted values.\n"
+	+ "\t(default 0)",
+	"num-bins", 1, "-num-bins <num>"));
+
+    newVector.addElement(new Option(
+	"\tNumber of execution slots.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+
     Enumeration enu = super.listOptions();
     while (enu.hasMoreElements()) {
       newVector.addElement(enu.nextElement());
@@ -374,6 +469,14 @@ public class RandomForest
       result.add("" + getMaxDepth());
     }
     
+    if (getNumBins() > 0) {
+      result.add("-num-bins");
+      result.add("" + getNumBins());
+    }
+    
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -401,6 +504,15 @@ public class RandomForest
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
    * 
+   * <pre> -num-bins &lt;num&gt;
+   *  The maximum number of bins for numeric attributes,
+   *  0 for exact split search on the sorted values.
+   *  (default 0)</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -D
    *  If set, classifier is run in debug mode and
    *  may output additional info to the console</pre>
@@ -441,6 +553,20 @@ public class RandomForest
       setMaxDepth(0);
     }
     
+    tmpStr = Utils.getOption("num-bins", options);
+    if (tmpStr.length() != 0) {
+      setNumBins(Integer.parseInt(tmpStr));
+    } else {
+      setNumBins(0);
+    }
+    
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -456,7 +582,10 @@ public class RandomForest
   }
 
   /**
-   * Builds a classifier for a set of instances.
+   * Builds a classifier for a set of instances. The attributes are sorted
+   * once and the sorted orders are shared by all trees. Each tree is grown
+   * on a bootstrap sample that is represented by weights, ie the number of
+   * times each instance was drawn, instead of a copy of the data.
    *
    * @param data the instances to train the classifier with
    * @throws Exception if something goes wrong
@@ -466,25 +595,238 @@ public class RandomForest
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
+    if (m_numExecutionSlots < 1) {
+      throw new Exception("Number of execution slots needs to be >= 1!");
+    }
+
     // remove instances with missing class
     data = new Instances(data);
     data.deleteWithMissingClass();
     
-    m_bagger = new Bagging();
-    RandomTree rTree = new RandomTree();
-
     // set up the random tree options
     m_KValue = m_numFeatures;
     if (m_KValue < 1) m_KValue = (int) Utils.log2(data.numAttributes())+1;
-    rTree.setKValue(m_KValue);
-    rTree.setMaxDepth(getMaxDepth());
 
-    // set up the bagger and build the forest
-    m_bagger.setClassifier(rTree);
-    m_bagger.setSeed(m_randomSeed);
-    m_bagger.setNumIterations(m_numTrees);
-    m_bagger.setCalcOutOfBag(true);
-    m_bagger.buildClassifier(data);
+    // sort (or bin) all attributes only once
+    NumericBins bins = null;
+    if (m_NumBins > 0) {
+      bins = new NumericBins(data, m_NumBins, true);
+    }
+    int[][] sortedIndices = RandomTree.sortIndices(data, bins);
+    double[][] votes = new double[data.numInstances()][data.numClasses()];
+
+    // draw the seeds and samples in the same order as Bagging does
+    Random random = new Random(m_randomSeed);
+    int[] seeds = new int[m_numTrees];
+    for (int i = 0; i < m_numTrees; i++) {
+      seeds[i] = random.nextInt();
+    }
+
+    m_Trees = new RandomTree[m_numTrees];
+    ExecutorService executor = null;
+    LinkedList<Future<Object>> pending = new LinkedList<Future<Object>>();
+    if (m_numExecutionSlots > 1) {
+      executor = Executors.newFixedThreadPool(m_numExecutionSlots);
+    }
+    try {
+      for (int i = 0; i < m_numTrees; i++) {
+        if (m_Debug) {
+          System.out.println("Training tree (" + (i + 1) + ")");
+        }
+        m_Trees[i] = new RandomTree();
+        m_Trees[i].setKValue(m_KValue);
+        m_Trees[i].setMaxDepth(getMaxDepth());
+        m_Trees[i].setNumBins(getNumBins());
+        m_Trees[i].setSeed(seeds[i]);
+        TreeBuilder builder = new TreeBuilder(m_Trees[i], data, sortedIndices, bins,
+                                              bootstrap(data, random), votes);
+        if (executor == null) {
+          builder.call();
+        } else {
+          // limit the number of samples waiting in the queue
+          pending.add(executor.submit(builder));
+          while (pending.size() >= 2 * m_numExecutionSlots) {
+            waitFor(pending.removeFirst());
+          }
+        }
+      }
+      while (pending.size() > 0) {
+        waitFor(pending.removeFirst());
+      }
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+
+    // calc OOB error
+    double outOfBagCount = 0.0;
+    double errorSum = 0.0;
+    for (int i = 0; i < data.numInstances(); i++) {
+      outOfBagCount += data.instance(i).weight();
+      if (Utils.maxIndex(votes[i]) != data.instance(i).classValue()) {
+        errorSum += data.instance(i).weight();
+      }
+    }
+    m_OutOfBagError = errorSum / outOfBagCount;
+  }
+
+  /**
+   * Draws a bootstrap sample the same way as Bagging, with the instance
+   * weights as probabilities.
+   *
+   * @param data the data to sample from
+   * @param random the random number generator to use
+   * @return the number of times each instance got drawn
+   */
+  protected double[] bootstrap(Instances data, Random random) {
+
+    double[] result = new double[data.numInstances()];
+    if (data.numInstances() == 0) {
+      return result;
+    }
+    double[] weights = new double[data.numInstances()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = data.instance(i).weight();
+    }
+    double[] probabilities = new double[data.numInstances()];
+    double sumProbs = 0, sumOfWeights = Utils.sum(weights);
+    for (int i = 0; i < data.numInstances(); i++) {
+      sumProbs += random.nextDouble();
+      probabilities[i] = sumProbs;
+    }
+    Utils.normalize(probabilities, sumProbs / sumOfWeights);
+
+    // Make sure that rounding errors don't mess things up
+    probabilities[data.numInstances() - 1] = sumOfWeights;
+    int k = 0; int l = 0;
+    sumProbs = 0;
+    while ((k < data.numInstances() && (l < data.numInstances()))) {
+      if (weights[l] < 0) {
+	throw new IllegalArgumentException("Weights have to be positive.");
+      }
+      sumProbs += weights[l];
+      while ((k < data.numInstances()) &&
+	     (probabilities[k] <= sumProbs)) { 
+	result[l]++;
+	k++;
+      }
+      l++;
+    }
+    return result;
+  }
+
+  /**
+   * Waits for a tree to be built.
+   *
+   * @param result the result of building the tree
+   * @throws Exception if building the tree failed
+   */
+  protected void waitFor(Future<Object> result) throws Exception {
+    try {
+      result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw new Exception(e.getCause().toString());
+    }
+  }
+
+  /**
+   * Builds a single tree on a bootstrap sample and adds its votes for the
+   * out of bag instances.
+   */
+  protected static class TreeBuilder
+    implements Callable<Object> {
+
+    /** the tree to build. */
+    protected RandomTree m_Tree;
+
+    /** the training data. */
+    protected Instances m_Data;
+
+    /** the sorted orders of all instances. */
+    protected int[][] m_SortedIndices;
+
+    /** the bins of the numeric attributes, null if not binned. */
+    protected NumericBins m_Bins;
+
+    /** the number of times each instance is in the sample. */
+    protected double[] m_Weights;
+
+    /** the out of bag votes, shared by all trees. */
+    protected double[][] m_Votes;
+
+    /**
+     * Initializes the builder.
+     *
+     * @param tree the tree to build
+     * @param data the training data
+     * @param sortedIndices the sorted orders of all instances
+     * @param bins the bins of the numeric attributes, null if not binned
+     * @param weights the number of times each instance is in the sample
+     * @param votes the out of bag votes to add to
+     */
+    public TreeBuilder(RandomTree tree, Instances data, int[][] sortedIndices, 
+                       NumericBins bins, double[] weights, double[][] votes) {
+      m_Tree          = tree;
+      m_Data          = data;
+      m_SortedIndices = sortedIndices;
+      m_Bins          = bins;
+      m_Weights       = weights;
+      m_Votes         = votes;
+    }
+
+    /**
+     * Builds the tree and classifies the instances that are not in the
+     * sample.
+     *
+     * @return always null
+     * @throws Exception if building or classification fails
+     */
+    public Object call() throws Exception {
+      m_Tree.buildClassifier(m_Data, 
+          RandomTree.selectIndices(m_SortedIndices, m_Weights, m_Data.classIndex()), 
+          m_Weights, treeRandom(), m_Bins);
+
+      int[] predictions = new int[m_Data.numInstances()];
+      for (int i = 0; i < m_Data.numInstances(); i++) {
+        if (m_Weights[i] > 0) {
+          predictions[i] = -1;
+        } else {
+          predictions[i] = (int) m_Tree.classifyInstance(m_Data.instance(i));
+        }
+      }
+      synchronized (m_Votes) {
+        for (int i = 0; i < predictions.length; i++) {
+          if (predictions[i] > -1) {
+            m_Votes[i][predictions[i]]++;
+          }
+        }
+      }
+
+      return null;
+    }
+
+    /**
+     * Returns the random number generator that RandomTree would use for
+     * a copy of the sample, see Instances.getRandomNumberGenerator(long).
+     *
+     * @return the random number generator
+     */
+    protected Random treeRandom() {
+      long seed = m_Tree.getSeed();
+      Random result = new Random(seed);
+      int pos = result.nextInt(m_Data.numInstances());
+      int index = 0;
+      while (pos >= m_Weights[index]) {
+        pos -= m_Weights[index];
+        index++;
+      }
+      result.setSeed(m_Data.instance(index).toStringNoWeight().hashCode() + seed);
+      return result;
+    }
   }
 
   /**
@@ -496,7 +838,59 @@ public class RandomForest
    */
   public double[] distributionForInstance(Instance instance) throws Exception {
 
-    return m_bagger.distributionForInstance(instance);
+    double[] sums = new double[instance.numClasses()], newProbs;
+
+    for (int i = 0; i < m_Trees.length; i++) {
+      newProbs = m_Trees[i].distributionForInstance(instance);
+      for (int j = 0; j < newProbs.length; j++)
+        sums[j] += newProbs[j];
+    }
+    if (Utils.eq(Utils.sum(sums), 0)) {
+      return sums;
+    } else {
+      Utils.normalize(sums);
+      return sums;
+    }
+  }
+
+  /**
+   * Returns the class probability distributions for a batch of instances.
+   * Each tree is applied to all instances before moving on to the next
+   * tree, so that a tree's nodes stay in the cache.
+   *
+   * @param instances the instances to be classified
+   * @return the distributions the forest generates for the instances
+   * @throws Exception if computation fails
+   */
+  public double[][] distributionsForInstances(Instances instances) throws Exception {
+
+    double[][] sums = new double[instances.numInstances()][instances.numClasses()];
+    double[] newProbs;
+
+    for (int i = 0; i < m_Trees.length; i++) {
+      for (int n = 0; n < instances.numInstances(); n++) {
+        newProbs = m_Trees[i].distributionForInstance(instances.instance(n));
+        for (int j = 0; j < newProbs.length; j++)
+          sums[n][j] += newProbs[j];
+      }
+    }
+    for (int n = 0; n < sums.length; n++) {
+      if (!Utils.eq(Utils.sum(sums[n]), 0)) {
+        Utils.normalize(sums[n]);
+      }
+    }
+
+    return sums;
+  }
+
+  /**
+   * Returns true, since distributionsForInstances() applies the trees to
+   * the whole batch, one tree at a time.
+   *
+   * @return true
+   */
+  public boolean implementsMoreEfficientBatchPrediction() {
+    return true;
   }
 
   /**
@@ -506,14 +900,14 @@ public class RandomForest
    */
   public String toString() {
 
-    if (m_bagger == null) 
+    if (m_Trees == null) 
       return "Random forest not built yet";
     else 
       return "Random forest of " + m_numTrees
 	   + " trees, each constructed while considering "
 	   + m_KValue + " random feature" + (m_KValue==1 ? "" : "s") + ".\n"
 	   + "Out of bag error: "
-	   + Utils.doubleToString(m_bagger.measureOutOfBagError(), 4) + "\n"
+	   + Utils.doubleToString(m_OutOfBagError, 4) + "\n"
 	   + (getMaxDepth() > 0 ? ("Max. depth of trees: " + getMaxDepth() + "\n") : (""))
 	   + "\n";
   }
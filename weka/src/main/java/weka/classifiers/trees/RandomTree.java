@@ -38,6 +38,7 @@ import weka.core.Utils;
 import weka.core.WeightedInstancesHandler;
 import weka.core.Capabilities.Capability;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.Vector;
@@ -66,6 +67,11 @@ import java.util.Vector;
  *  The maximum depth of the tree, 0 for unlimited.
  *  (default 0)</pre>
  * 
+ * <pre> -num-bins &lt;num&gt;
+ *  The maximum number of bins for numeric attributes,
+ *  0 for exact split search on the sorted values.
+ *  (default 0)</pre>
+ * 
  * <pre> -N &lt;num&gt;
  *  Number of folds for backfitting (default 0, no backfitting).</pre>
  * 
@@ -118,6 +124,9 @@ WeightedInstancesHandler, Randomizable, Drawable {
   /** The maximum depth of the tree (0 = unlimited) */
   protected int m_MaxDepth = 0;
 
+  /** The maximum number of bins for numeric attributes (0 = no binning) */
+  protected int m_NumBins = 0;
+
   /** Determines how much data is used for backfitting */
   protected int m_NumFolds = 0;
 
@@ -253,6 +262,38 @@ WeightedInstancesHandler, Randomizable, Drawable {
     return m_MaxDepth;
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return tip text for this property suitable for displaying in the
+   *         explorer/experimenter gui
+   */
+  public String numBinsTipText() {
+    return "The maximum number of bins numeric attributes are quantized into "
+      + "before growing the tree; split points are then searched on per-bin class "
+      + "histograms instead of the sorted values, which is faster for large data. "
+      + "0 for exact split search.";
+  }
+
+  /**
+   * Get the maximum number of bins for numeric attributes, 0 for no binning.
+   * 
+   * @return the maximum number of bins.
+   */
+  public int getNumBins() {
+    return m_NumBins;
+  }
+
+  /**
+   * Set the maximum number of bins for numeric attributes, 0 for no binning.
+   * 
+   * @param value
+   *            the maximum number of bins.
+   */
+  public void setNumBins(int value) {
+    m_NumBins = value;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -347,6 +388,11 @@ WeightedInstancesHandler, Randomizable, Drawable {
         "\tThe maximum depth of the tree, 0 for unlimited.\n"
         + "\t(default 0)", "depth", 1, "-depth <num>"));
 
+    newVector.addElement(new Option(
+        "\tThe maximum number of bins for numeric attributes,\n"
+        + "\t0 for exact split search on the sorted values.\n"
+        + "\t(default 0)", "num-bins", 1, "-num-bins <num>"));
+
     newVector.
       addElement(new Option("\tNumber of folds for backfitting " +
 			    "(default 0, no backfitting).",
@@ -389,6 +435,11 @@ WeightedInstancesHandler, Randomizable, Drawable {
       result.add("" + getMaxDepth());
     }
 
+    if (getNumBins() > 0) {
+      result.add("-num-bins");
+      result.add("" + getNumBins());
+    }
+
     if (getNumFolds() > 0) {
       result.add("-N"); 
       result.add("" + getNumFolds());
@@ -427,6 +478,11 @@ WeightedInstancesHandler, Randomizable, Drawable {
    *  The maximum depth of the tree, 0 for unlimited.
    *  (default 0)</pre>
    * 
+   * <pre> -num-bins &lt;num&gt;
+   *  The maximum number of bins for numeric attributes,
+   *  0 for exact split search on the sorted values.
+   *  (default 0)</pre>
+   * 
    * <pre> -N &lt;num&gt;
    *  Number of folds for backfitting (default 0, no backfitting).</pre>
    * 
@@ -474,6 +530,13 @@ WeightedInstancesHandler, Randomizable, Drawable {
     } else {
       setMaxDepth(0);
     }
+
+    tmpStr = Utils.getOption("num-bins", options);
+    if (tmpStr.length() != 0) {
+      setNumBins(Integer.parseInt(tmpStr));
+    } else {
+      setNumBins(0);
+    }
     String numFoldsString = Utils.getOption('N', options);
     if (numFoldsString.length() != 0) {
       m_NumFolds = Integer.parseInt(numFoldsString);
@@ -520,12 +583,6 @@ WeightedInstancesHandler, Randomizable, Drawable {
    */
   public void buildClassifier(Instances data) throws Exception {
 
-    // Make sure K value is in range
-    if (m_KValue > data.numAttributes() - 1)
-      m_KValue = data.numAttributes() - 1;
-    if (m_KValue < 1)
-      m_KValue = (int) Utils.log2(data.numAttributes()) + 1;
-
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
@@ -558,30 +615,188 @@ WeightedInstancesHandler, Randomizable, Drawable {
       backfit = data.testCV(m_NumFolds, 1);
     }
 
+    // Build tree from the sorted (or binned) training data
+    double[] weights = new double[train.numInstances()];
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] = train.instance(i).weight();
+    }
+    NumericBins bins = null;
+    if (m_NumBins > 0) {
+      bins = new NumericBins(train, m_NumBins, true);
+    }
+    buildClassifier(train, sortIndices(train, bins), weights, rand, bins);
+      
+    // Backfit if required
+    if (backfit != null) {
+      backfitData(backfit);
+    }
+  }
+
+  /**
+   * Builds the tree from orders of instance indices, as returned by
+   * sortIndices(Instances), using the given instance weights instead of the
+   * ones stored in the data. Only the instances listed in the orders are
+   * used, so RandomForest can grow trees on bootstrap samples without
+   * copying the data. The orders are partitioned in place while the tree 
+   * grows, so they must not be shared with other trees. The data must not 
+   * contain missing class values. If bins are given, split points on 
+   * numeric attributes are searched on the bins instead of the sorted 
+   * values.
+   * 
+   * @param data
+   *            the data the indices refer to
+   * @param sortedIndices
+   *            the order of the instances for each attribute
+   * @param weights
+   *            the weight of each instance in the data
+   * @param random
+   *            random number generator for choosing random attributes
+   * @param bins
+   *            the bins of the numeric attributes, null for exact split search
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected void buildClassifier(Instances data, int[][] sortedIndices, double[] weights,
+                                 Random random, NumericBins bins) throws Exception {
+
+    // Make sure K value is in range
+    if (m_KValue > data.numAttributes() - 1)
+      m_KValue = data.numAttributes() - 1;
+    if (m_KValue < 1)
+      m_KValue = (int) Utils.log2(data.numAttributes()) + 1;
+
+    int classIndex = data.classIndex();
+
+    // only class? -> build ZeroR model
+    if (data.numAttributes() == 1) {
+      System.err
+      .println("Cannot build model (only class attribute present in data!), "
+          + "using ZeroR model instead!");
+      Instances train = new Instances(data, sortedIndices[classIndex].length);
+      for (int i = 0; i < sortedIndices[classIndex].length; i++) {
+        train.add(data.instance(sortedIndices[classIndex][i]));
+        train.lastInstance().setWeight(weights[sortedIndices[classIndex][i]]);
+      }
+      m_ZeroR = new weka.classifiers.rules.ZeroR();
+      m_ZeroR.buildClassifier(train);
+      return;
+    } else {
+      m_ZeroR = null;
+    }
+
     // Create the attribute indices window
     int[] attIndicesWindow = new int[data.numAttributes() - 1];
     int j = 0;
     for (int i = 0; i < attIndicesWindow.length; i++) {
-      if (j == data.classIndex())
+      if (j == classIndex)
         j++; // do not include the class
       attIndicesWindow[i] = j++;
     }
 
+    // Missing values temporarily scale the weights, so work on a copy
+    weights = (double[]) weights.clone();
+
     // Compute initial class counts
-    double[] classProbs = new double[train.numClasses()];
-    for (int i = 0; i < train.numInstances(); i++) {
-      Instance inst = train.instance(i);
-      classProbs[(int) inst.classValue()] += inst.weight();
+    int numInstances = sortedIndices[classIndex].length;
+    double[] classProbs = new double[data.numClasses()];
+    for (int i = 0; i < numInstances; i++) {
+      int index = sortedIndices[classIndex][i];
+      classProbs[(int) data.instance(index).classValue()] += weights[index];
     }
 
     // Build tree 
-    buildTree(train, classProbs, new Instances(data, 0), m_MinNum, m_Debug, attIndicesWindow, 
-              rand, 0, getAllowUnclassifiedInstances());
-      
-    // Backfit if required
-    if (backfit != null) {
-      backfitData(backfit);
+    buildTree(sortedIndices, 0, numInstances, weights, new int[data.numInstances()], 
+              new int[numInstances], data, classProbs, new Instances(data, 0), m_MinNum, 
+              m_Debug, attIndicesWindow, random, 0, getAllowUnclassifiedInstances(), bins);
+  }
+
+  /**
+   * Sorts the indices of the instances on each numeric attribute, with
+   * missing values last. All other attributes, including the class,
+   * share one array with the indices in their original order.
+   * 
+   * @param data
+   *            the data to sort
+   * @return the order of the instances for each attribute
+   */
+  public static int[][] sortIndices(Instances data) {
+    return sortIndices(data, null);
+  }
+
+  /**
+   * Sorts the indices of the instances on each numeric attribute, with
+   * missing values last. Attributes that have been binned don't need to be
+   * sorted and share the array with the indices in their original order
+   * with all other attributes, including the class.
+   * 
+   * @param data
+   *            the data to sort
+   * @param bins
+   *            the bins of the numeric attributes, may be null
+   * @return the order of the instances for each attribute
+   */
+  public static int[][] sortIndices(Instances data, NumericBins bins) {
+
+    int[][] result = new int[data.numAttributes()][];
+    int[] unsorted = new int[data.numInstances()];
+    for (int i = 0; i < unsorted.length; i++) {
+      unsorted[i] = i;
+    }
+    for (int att = 0; att < data.numAttributes(); att++) {
+      if ((att != data.classIndex()) && data.attribute(att).isNumeric()
+          && ((bins == null) || !bins.isBinned(att))) {
+        result[att] = Utils.sort(data.attributeToDoubleArray(att));
+      } else {
+        result[att] = unsorted;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the orders restricted to the instances with a weight greater
+   * than zero, eg the instances in a bootstrap sample. The result is a new
+   * set of arrays that a single tree can partition in place. Orders shared 
+   * with the class attribute remain shared.
+   * 
+   * @param sortedIndices
+   *            the orders of all instances, see sortIndices(Instances)
+   * @param weights
+   *            the weight of each instance
+   * @param classIndex
+   *            the index of the class attribute
+   * @return the restricted orders
+   */
+  public static int[][] selectIndices(int[][] sortedIndices, double[] weights, int classIndex) {
+
+    int num = 0;
+    for (int i = 0; i < weights.length; i++) {
+      if (weights[i] > 0) {
+        num++;
+      }
+    }
+
+    int[][] result = new int[sortedIndices.length][];
+    for (int att = 0; att < sortedIndices.length; att++) {
+      if ((att != classIndex) && (sortedIndices[att] == sortedIndices[classIndex])) {
+        continue;
+      }
+      result[att] = new int[num];
+      int n = 0;
+      for (int i = 0; i < sortedIndices[att].length; i++) {
+        if (weights[sortedIndices[att][i]] > 0) {
+          result[att][n++] = sortedIndices[att][i];
+        }
+      }
     }
+    for (int att = 0; att < sortedIndices.length; att++) {
+      if (result[att] == null) {
+        result[att] = result[classIndex];
+      }
+    }
+
+    return result;
   }
 
   /**
@@ -967,8 +1182,20 @@ WeightedInstancesHandler, Randomizable, Drawable {
   /**
    * Recursively generates a tree.
    * 
+   * @param sortedIndices
+   *            the indices of the instances, sorted on each attribute
+   * @param start
+   *            the first position of the node's instances in the orders
+   * @param end
+   *            the position after the last one of the node's instances
+   * @param weights
+   *            the weight of each instance in the data
+   * @param subsets
+   *            work space for the subset of each instance in the data
+   * @param buffer
+   *            work space for partitioning the orders
    * @param data
-   *            the data to work with
+   *            the data the indices refer to
    * @param classProbs
    *            the class distribution
    * @param header
@@ -983,14 +1210,19 @@ WeightedInstancesHandler, Randomizable, Drawable {
    *            random number generator for choosing random attributes
    * @param depth
    *            the current depth
-   * @param determineStructure
-   *            whether to determine structure
+   * @param allow
+   *            whether unclassified instances are allowed
+   * @param bins
+   *            the bins of the numeric attributes, null for exact split search
    * @throws Exception
    *             if generation fails
    */
-  protected void buildTree(Instances data, double[] classProbs, Instances header,
-                           double minNum, boolean debug, int[] attIndicesWindow,
-                           Random random, int depth, boolean allow) throws Exception {
+  protected void buildTree(int[][] sortedIndices, int start, int end, double[] weights,
+                           int[] subsets, int[] buffer, Instances data, 
+                           double[] classProbs, Instances header, double minNum, boolean debug, 
+                           int[] attIndicesWindow, Random random, int depth, boolean allow,
+                           NumericBins bins) 
+    throws Exception {
 
     // Store structure of dataset, set minimum number of instances
     m_Info = header;
@@ -999,7 +1231,7 @@ WeightedInstancesHandler, Randomizable, Drawable {
     m_AllowUnclassifiedInstances = allow;
 
     // Make leaf if there are no training instances
-    if (data.numInstances() == 0) {
+    if (start == end) {
       m_Attribute = -1;
       m_ClassDistribution = null;
       m_Prop = null;
@@ -1042,7 +1274,8 @@ WeightedInstancesHandler, Randomizable, Drawable {
       attIndicesWindow[windowSize - 1] = attIndex;
       windowSize--;
       
-      splits[attIndex] = distribution(props, dists, attIndex, data);
+      splits[attIndex] = distribution(props, dists, attIndex, sortedIndices[attIndex], 
+                                      start, end, weights, data, bins);
       vals[attIndex] = gain(dists[attIndex], priorVal(dists[attIndex]));
       
       if (Utils.gr(vals[attIndex], 0))
@@ -1059,19 +1292,68 @@ WeightedInstancesHandler, Randomizable, Drawable {
       // Build subtrees
       m_SplitPoint = splits[m_Attribute];
       m_Prop = props[m_Attribute];
-      Instances[] subsets = splitData(data);
+      int[] num = new int[distribution.length];
+      int numMissing = assignSubsets(sortedIndices[data.classIndex()], start, end, subsets, 
+                                     num, data);
       m_Successors = new RandomTree[distribution.length];
-      for (int i = 0; i < distribution.length; i++) {
-        m_Successors[i] = new RandomTree();
-        m_Successors[i].setKValue(m_KValue);
-        m_Successors[i].setMaxDepth(getMaxDepth());
-        m_Successors[i].buildTree(subsets[i], distribution[i], header, m_MinNum, m_Debug,
-                                  attIndicesWindow, random, depth + 1, allow);
+      if (numMissing == 0) {
+
+        // Partition the orders in place, the subsets follow each other
+        splitData(sortedIndices, start, end, subsets, num, buffer, data);
+        int subsetStart = start;
+        for (int i = 0; i < distribution.length; i++) {
+          m_Successors[i] = new RandomTree();
+          m_Successors[i].setKValue(m_KValue);
+          m_Successors[i].setMaxDepth(getMaxDepth());
+          m_Successors[i].setNumBins(getNumBins());
+          m_Successors[i].buildTree(sortedIndices, subsetStart, subsetStart + num[i], weights, 
+                                    subsets, buffer, data, distribution[i], header, m_MinNum, 
+                                    m_Debug, attIndicesWindow, random, depth + 1, allow, bins);
+          subsetStart += num[i];
+        }
+      } else {
+
+        // Instances with missing values go to all subsets with a fraction of
+        // their weight, so each subset gets its own copy of the orders
+        int[] missing = new int[numMissing];
+        double[] missingWeights = new double[numMissing];
+        int n = 0;
+        for (int i = start; i < end; i++) {
+          int index = sortedIndices[data.classIndex()][i];
+          if (subsets[index] == -1) {
+            missing[n] = index;
+            missingWeights[n] = weights[index];
+            n++;
+          }
+        }
+        for (int i = 0; i < distribution.length; i++) {
+
+          // The subsets of the instances get overwritten by the successors
+          if (i > 0) {
+            assignSubsets(sortedIndices[data.classIndex()], start, end, subsets, num, data);
+          }
+          int[][] subsetIndices = selectSubset(sortedIndices, start, end, subsets, i, 
+                                               data.classIndex());
+          for (int j = 0; j < numMissing; j++) {
+            weights[missing[j]] = m_Prop[i] * missingWeights[j];
+          }
+          m_Successors[i] = new RandomTree();
+          m_Successors[i].setKValue(m_KValue);
+          m_Successors[i].setMaxDepth(getMaxDepth());
+          m_Successors[i].setNumBins(getNumBins());
+          m_Successors[i].buildTree(subsetIndices, 0, subsetIndices[data.classIndex()].length, 
+                                    weights, subsets, buffer, data, distribution[i], header, 
+                                    m_MinNum, m_Debug, attIndicesWindow, random, depth + 1, 
+                                    allow, bins);
+        }
+        for (int j = 0; j < numMissing; j++) {
+          weights[missing[j]] = missingWeights[j];
+        }
       }
 
       // If all successors are non-empty, we don't need to store the class distribution
       boolean emptySuccessor = false;
-      for (int i = 0; i < subsets.length; i++) {
+      for (int i = 0; i < m_Successors.length; i++) {
         if (m_Successors[i].m_ClassDistribution == null) {
           emptySuccessor = true;
           break;
@@ -1173,6 +1455,149 @@ WeightedInstancesHandler, Randomizable, Drawable {
     return subsets;
   }
 
+  /**
+   * Determines the subset of each instance of the node based on the 
+   * current split, -1 for instances with a missing value.
+   * 
+   * @param order
+   *            any order of the node's instances
+   * @param start
+   *            the first position of the node's instances in the order
+   * @param end
+   *            the position after the last one of the node's instances
+   * @param subsets
+   *            the subset of each instance in the data, filled in
+   * @param num
+   *            the number of instances in each subset, filled in
+   * @param data
+   *            the data the indices refer to
+   * @return the number of instances with a missing value
+   * @throws Exception
+   *             if something goes wrong
+   */
+  protected int assignSubsets(int[] order, int start, int end, int[] subsets, int[] num, 
+                              Instances data) throws Exception {
+
+    int numMissing = 0;
+    Arrays.fill(num, 0);
+    for (int i = start; i < end; i++) {
+      Instance inst = data.instance(order[i]);
+      int subset;
+      if (inst.isMissing(m_Attribute)) {
+        subset = -1;
+        numMissing++;
+      } else if (data.attribute(m_Attribute).isNominal()) {
+        subset = (int) inst.value(m_Attribute);
+        num[subset]++;
+      } else if (data.attribute(m_Attribute).isNumeric()) {
+        subset = (inst.value(m_Attribute) < m_SplitPoint) ? 0 : 1;
+        num[subset]++;
+      } else {
+        throw new IllegalArgumentException("Unknown attribute type");
+      }
+      subsets[order[i]] = subset;
+    }
+
+    return numMissing;
+  }
+
+  /**
+   * Partitions the orders of the node's instances in place, so that the
+   * subsets follow each other. The subsets keep the orders, so numeric 
+   * attributes stay sorted. Orders that are shared with the class are only 
+   * partitioned once. None of the instances may have a missing value.
+   * 
+   * @param sortedIndices
+   *            the indices of the instances, sorted on each attribute
+   * @param start
+   *            the first position of the node's instances in the orders
+   * @param end
+   *            the position after the last one of the node's instances
+   * @param subsets
+   *            the subset of each instance in the data
+   * @param num
+   *            the number of instances in each subset
+   * @param buffer
+   *            work space, at least as long as the node has instances
+   * @param data
+   *            the data the indices refer to
+   */
+  protected void splitData(int[][] sortedIndices, int start, int end, int[] subsets, 
+                           int[] num, int[] buffer, Instances data) {
+
+    int classIndex = data.classIndex();
+    int[] pos = new int[num.length];
+    for (int att = 0; att < data.numAttributes(); att++) {
+      if ((att != classIndex) && (sortedIndices[att] == sortedIndices[classIndex])) {
+        continue;
+      }
+      int[] order = sortedIndices[att];
+      pos[0] = 0;
+      for (int k = 1; k < num.length; k++) {
+        pos[k] = pos[k - 1] + num[k - 1];
+      }
+      for (int i = start; i < end; i++) {
+        buffer[pos[subsets[order[i]]]++] = order[i];
+      }
+      System.arraycopy(buffer, 0, order, start, end - start);
+    }
+  }
+
+  /**
+   * Copies the orders of the instances of one subset, including the ones
+   * with a missing value if the subset gets a fraction of them. The copies 
+   * keep the orders, so numeric attributes stay sorted. Orders that are 
+   * shared with the class remain shared.
+   * 
+   * @param sortedIndices
+   *            the indices of the instances, sorted on each attribute
+   * @param start
+   *            the first position of the node's instances in the orders
+   * @param end
+   *            the position after the last one of the node's instances
+   * @param subsets
+   *            the subset of each instance in the data, -1 for missing values
+   * @param subset
+   *            the subset to copy
+   * @param classIndex
+   *            the index of the class attribute
+   * @return the orders of the subset
+   */
+  protected int[][] selectSubset(int[][] sortedIndices, int start, int end, int[] subsets,
+                                 int subset, int classIndex) {
+
+    boolean withMissing = m_Prop[subset] > 0;
+    int num = 0;
+    for (int i = start; i < end; i++) {
+      int s = subsets[sortedIndices[classIndex][i]];
+      if ((s == subset) || (withMissing && (s == -1))) {
+        num++;
+      }
+    }
+
+    int[][] result = new int[sortedIndices.length][];
+    for (int att = 0; att < sortedIndices.length; att++) {
+      if ((att != classIndex) && (sortedIndices[att] == sortedIndices[classIndex])) {
+        continue;
+      }
+      result[att] = new int[num];
+      int n = 0;
+      for (int i = start; i < end; i++) {
+        int s = subsets[sortedIndices[att][i]];
+        if ((s == subset) || (withMissing && (s == -1))) {
+          result[att][n++] = sortedIndices[att][i];
+        }
+      }
+    }
+    for (int att = 0; att < sortedIndices.length; att++) {
+      if (result[att] == null) {
+        result[att] = result[classIndex];
+      }
+    }
+
+    return result;
+  }
+
   /**
    * Computes class distribution for an attribute.
    * 
@@ -1180,25 +1605,39 @@ WeightedInstancesHandler, Randomizable, Drawable {
    * @param dists
    * @param att
    *            the attribute index
+   * @param sortedIndices
+   *            the indices of the instances, sorted on the attribute
+   * @param start
+   *            the first position of the node's instances in the order
+   * @param end
+   *            the position after the last one of the node's instances
+   * @param weights
+   *            the weight of each instance in the data
    * @param data
-   *            the data to work with
+   *            the data the indices refer to
+   * @param bins
+   *            the bins of the numeric attributes, null for exact split search
    * @throws Exception
    *             if something goes wrong
    */
-  protected double distribution(double[][] props, double[][][] dists, int att, Instances data)
+  protected double distribution(double[][] props, double[][][] dists, int att, 
+                                int[] sortedIndices, int start, int end, double[] weights, 
+                                Instances data,
+                                NumericBins bins)
   throws Exception {
 
     double splitPoint = Double.NaN;
     Attribute attribute = data.attribute(att);
     double[][] dist = null;
     int indexOfFirstMissingValue = -1;
+    boolean binned = (bins != null) && bins.isBinned(att);
 
     if (attribute.isNominal()) {
 
       // For nominal attributes
       dist = new double[attribute.numValues()][data.numClasses()];
-      for (int i = 0; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
+      for (int i = start; i < end; i++) {
+        Instance inst = data.instance(sortedIndices[i]);
         if (inst.isMissing(att)) {
 
           // Skip missing values at this stage
@@ -1207,27 +1646,84 @@ WeightedInstancesHandler, Randomizable, Drawable {
           }
           continue;
         }
-        dist[(int) inst.value(att)][(int) inst.classValue()] += inst.weight();
+        dist[(int) inst.value(att)][(int) inst.classValue()] += weights[sortedIndices[i]];
       }
-    } else {
+    } else if (binned) {
 
-      // For numeric attributes
+      // For binned numeric attributes, collect the class distribution of each bin
+      double[][] hist = new double[bins.numBins(att)][data.numClasses()];
+      boolean[] used = new boolean[hist.length];
       double[][] currDist = new double[2][data.numClasses()];
       dist = new double[2][data.numClasses()];
+      for (int i = start; i < end; i++) {
+        int bin = bins.bin(att, sortedIndices[i]);
+        if (bin < 0) {
 
-      // Sort data
-      data.sort(att);
+          // Skip missing values at this stage
+          if (indexOfFirstMissingValue < 0) {
+            indexOfFirstMissingValue = i;
+          }
+          continue;
+        }
+        int classValue = (int) data.instance(sortedIndices[i]).classValue();
+        hist[bin][classValue] += weights[sortedIndices[i]];
+        currDist[1][classValue] += weights[sortedIndices[i]];
+        used[bin] = true;
+      }
+
+      // Value before splitting
+      double priorVal = priorVal(currDist);
+
+      // Save initial distribution
+      for (int j = 0; j < currDist.length; j++) {
+        System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+      }
+
+      // Try the split points between all non-empty bins
+      int prevBin = -1;
+      double currVal, bestVal = -Double.MAX_VALUE;
+      for (int bin = 0; bin < hist.length; bin++) {
+        if (!used[bin]) {
+          continue;
+        }
+        if (prevBin > -1) {
+
+          // Compute gain for split point
+          currVal = gain(currDist, priorVal);
+
+          // Is the current split point the best point so far?
+          if (currVal > bestVal) {
+            bestVal = currVal;
+            splitPoint = bins.splitPoint(att, prevBin, bin);
+            for (int j = 0; j < currDist.length; j++) {
+              System.arraycopy(currDist[j], 0, dist[j], 0, dist[j].length);
+            }
+          }
+        }
+        prevBin = bin;
+
+        // Shift over the weight of the bin
+        for (int j = 0; j < hist[bin].length; j++) {
+          currDist[0][j] += hist[bin][j];
+          currDist[1][j] -= hist[bin][j];
+        }
+      }
+    } else {
+
+      // For numeric attributes, the indices are already sorted
+      double[][] currDist = new double[2][data.numClasses()];
+      dist = new double[2][data.numClasses()];
 
       // Move all instances into second subset
-      for (int j = 0; j < data.numInstances(); j++) {
-        Instance inst = data.instance(j);
+      for (int j = start; j < end; j++) {
+        Instance inst = data.instance(sortedIndices[j]);
         if (inst.isMissing(att)) {
 
           // Can stop as soon as we hit a missing value
           indexOfFirstMissingValue = j;
           break;
         }
-        currDist[1][(int) inst.classValue()] += inst.weight();
+        currDist[1][(int) inst.classValue()] += weights[sortedIndices[j]];
       }
 
       // Value before splitting
@@ -1239,10 +1735,10 @@ WeightedInstancesHandler, Randomizable, Drawable {
       }
 
       // Try all possible split points
-      double currSplit = data.instance(0).value(att);
+      double currSplit = data.instance(sortedIndices[start]).value(att);
       double currVal, bestVal = -Double.MAX_VALUE;
-      for (int i = 0; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
+      for (int i = start; i < end; i++) {
+        Instance inst = data.instance(sortedIndices[i]);
         if (inst.isMissing(att)) {
 
           // Can stop as soon as we hit a missing value
@@ -1273,8 +1769,8 @@ WeightedInstancesHandler, Randomizable, Drawable {
         currSplit = inst.value(att);
 
         // Shift over the weight
-        currDist[0][(int) inst.classValue()] += inst.weight();
-        currDist[1][(int) inst.classValue()] -= inst.weight();
+        currDist[0][(int) inst.classValue()] += weights[sortedIndices[i]];
+        currDist[1][(int) inst.classValue()] -= weights[sortedIndices[i]];
       }
     }
 
@@ -1295,21 +1791,21 @@ WeightedInstancesHandler, Randomizable, Drawable {
     if (indexOfFirstMissingValue > -1) {
 
       // Distribute weights for instances with missing values
-      for (int i = indexOfFirstMissingValue; i < data.numInstances(); i++) {
-        Instance inst = data.instance(i);
-        if (attribute.isNominal()) {
+      for (int i = indexOfFirstMissingValue; i < end; i++) {
+        Instance inst = data.instance(sortedIndices[i]);
+        if (attribute.isNominal() || binned) {
 
           // Need to check if attribute value is missing
           if (inst.isMissing(att)) {
             for (int j = 0; j < dist.length; j++) {
-              dist[j][(int) inst.classValue()] += props[att][j] * inst.weight();
+              dist[j][(int) inst.classValue()] += props[att][j] * weights[sortedIndices[i]];
             }
           }
         } else {
 
           // Can be sure that value is missing, so no test required
           for (int j = 0; j < dist.length; j++) {
-            dist[j][(int) inst.classValue()] += props[att][j] * inst.weight();
+            dist[j][(int) inst.classValue()] += props[att][j] * weights[sortedIndices[i]];
           }
         }
       }
@@ -22,6 +22,7 @@
 
 package weka.classifiers.trees.j48;
 
+import weka.classifiers.trees.NumericBins;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
@@ -50,6 +51,9 @@ public class BinC45ModelSelection
   /** The FULL training dataset. */
   private Instances m_allData; 
 
+  /** The bins of the numeric attributes, null if not binned */
+  private NumericBins m_bins;
+
   /**
    * Initializes the split selection method with the given parameters.
    *
@@ -67,12 +71,32 @@ public class BinC45ModelSelection
     m_useMDLcorrection = useMDLcorrection;
   }
 
+  /**
+   * Initializes the split selection method with the given parameters,
+   * searching split points on numeric attributes on the given bins.
+   *
+   * @param minNoObj minimum number of instances that have to occur in at least two
+   * subsets induced by split
+   * @param allData FULL training dataset (necessary for
+   * selection of split points).
+   * @param useMDLcorrection whether to use MDL adjustement when
+   * finding splits on numeric attributes
+   * @param bins the bins of the numeric attributes, null for
+   * exact split search
+   */
+  public BinC45ModelSelection(int minNoObj, Instances allData,
+                             boolean useMDLcorrection, NumericBins bins) {
+    this(minNoObj, allData, useMDLcorrection);
+    m_bins = bins;
+  }
+
   /**
    * Sets reference to training data to null.
    */
   public void cleanup() {
 
     m_allData = null;
+    m_bins = null;
   }
 
   /**
@@ -125,7 +149,8 @@ public class BinC45ModelSelection
 	if (i != (data).classIndex()){
 	  
 	  // Get models for current attribute.
-	  currentModel[i] = new BinC45Split(i,m_minNoObj,sumOfWeights,m_useMDLcorrection);
+	  currentModel[i] = new BinC45Split(i,m_minNoObj,sumOfWeights,m_useMDLcorrection,
+					   m_bins);
 	  currentModel[i].buildClassifier(data);
 	  
 	  // Check if useful split for current attribute
@@ -22,6 +22,7 @@
 
 package weka.classifiers.trees.j48;
 
+import weka.classifiers.trees.NumericBins;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.RevisionUtils;
@@ -68,6 +69,9 @@ public class C45Split
   /** Number of split points. */
   private int m_index;            
 
+  /** The bins of the numeric attributes, null if not binned. */
+  private transient NumericBins m_bins;
+
   /** Static reference to splitting criterion. */
   private static InfoGainSplitCrit infoGainCrit = new InfoGainSplitCrit();
 
@@ -93,6 +97,19 @@ public class C45Split
     m_useMDLcorrection = useMDLcorrection;
   }
 
+  /**
+   * Initializes the split model, searching split points on the given
+   * bins for binned numeric attributes.
+   */
+  public C45Split(int attIndex,int minNoObj, double sumOfWeights,
+                  boolean useMDLcorrection, NumericBins bins) {
+
+    this(attIndex, minNoObj, sumOfWeights, useMDLcorrection);
+
+    // Set the bins of the numeric attributes
+    m_bins = bins;
+  }
+
   /**
    * Creates a C4.5-type split on the given data. Assumes that none of
    * the class values is missing.
@@ -117,9 +134,14 @@ public class C45Split
     }else{
       m_complexityIndex = 2;
       m_index = 0;
-      trainInstances.sort(trainInstances.attribute(m_attIndex));
-      handleNumericAttribute(trainInstances);
+      if ((m_bins != null) && m_bins.isBinned(m_attIndex)) {
+	handleBinnedNumericAttribute(trainInstances);
+      } else {
+	trainInstances.sort(trainInstances.attribute(m_attIndex));
+	handleNumericAttribute(trainInstances);
+      }
     }
+    m_bins = null;
   }    
 
   /**
@@ -327,6 +349,130 @@ public class C45Split
 		     m_infoGain);
   }
 
+  /**
+   * Creates split on numeric attribute, using the class distributions
+   * of the attribute's bins instead of sorting the instances.
+   *
+   * @exception Exception if something goes wrong
+   */
+  private void handleBinnedNumericAttribute(Instances trainInstances)
+       throws Exception {
+  
+    double [][] hist;
+    int [] counts;
+    int numKnown;
+    int last = -1;
+    int shifted = 0;
+    int splitBin = -1;
+    int splitNext = -1;
+    double currentInfoGain;
+    double defaultEnt;
+    double minSplit;
+    double [][] table;
+    Instance instance;
+    int bin;
+
+    // Current attribute is a numeric attribute.
+    m_distribution = new Distribution(2,trainInstances.numClasses());
+    
+    // Only Instances with known values are relevant.
+    hist = new double[m_bins.numBins(m_attIndex)][trainInstances.numClasses()];
+    counts = new int[hist.length];
+    numKnown = 0;
+    Enumeration enu = trainInstances.enumerateInstances();
+    while (enu.hasMoreElements()) {
+      instance = (Instance) enu.nextElement();
+      if (instance.isMissing(m_attIndex))
+	continue;
+      bin = m_bins.binOf(m_attIndex,instance.value(m_attIndex));
+      hist[bin][(int)instance.classValue()] += instance.weight();
+      counts[bin]++;
+      m_distribution.add(1,instance);
+      numKnown++;
+    }
+
+    // Compute minimum number of Instances required in each
+    // subset.
+    minSplit =  0.1*(m_distribution.total())/
+      ((double)trainInstances.numClasses());
+    if (Utils.smOrEq(minSplit,m_minNoObj)) 
+      minSplit = m_minNoObj;
+    else
+      if (Utils.gr(minSplit,25)) 
+	minSplit = 25;
+	
+    // Enough Instances with known values?
+    if (Utils.sm((double)numKnown,2*minSplit))
+      return;
+    
+    // Compute values of criteria for the split points between
+    // all non-empty bins.
+    defaultEnt = infoGainCrit.oldEnt(m_distribution);
+    for (bin = 0; bin < hist.length; bin++) {
+      if (counts[bin] == 0)
+	continue;
+      if ((last > -1) &&
+	  (m_bins.upper(m_attIndex,last)+1e-5 < m_bins.lower(m_attIndex,bin))) {
+
+	// Move class values for all bins up to next 
+	// possible split point.
+	for (; shifted < bin; shifted++)
+	  m_distribution.shift(1,0,hist[shifted]);
+
+	// Check if enough Instances in each subset and compute
+	// values for criteria.
+	if (Utils.grOrEq(m_distribution.perBag(0),minSplit) &&
+	    Utils.grOrEq(m_distribution.perBag(1),minSplit)) {
+	  currentInfoGain = infoGainCrit.
+	    splitCritValue(m_distribution,m_sumOfWeights,
+			   defaultEnt);
+	  if (Utils.gr(currentInfoGain,m_infoGain)) {
+	    m_infoGain = currentInfoGain;
+	    splitBin = last;
+	    splitNext = bin;
+	  }
+	  m_index++;
+	}
+      }
+      last = bin;
+    }
+    
+    // Was there any useful split?
+    if (m_index == 0)
+      return;
+    
+    // Compute modified information gain for best split.
+    if (m_useMDLcorrection) {
+      m_infoGain = m_infoGain-(Utils.log2(m_index)/m_sumOfWeights);
+    }
+    if (Utils.smOrEq(m_infoGain,0))
+      return;
+    
+    // Set instance variables' values to values for
+    // best split.
+    m_numSubsets = 2;
+    m_splitPoint = m_bins.splitPoint(m_attIndex,splitBin,splitNext);
+
+    // In case we have a numerical precision problem we need to choose the
+    // smaller value
+    if (m_splitPoint == m_bins.lower(m_attIndex,splitNext)) {
+      m_splitPoint = m_bins.upper(m_attIndex,splitBin);
+    }
+
+    // Restore distribution for best split.
+    table = new double[2][trainInstances.numClasses()];
+    for (bin = 0; bin < hist.length; bin++) {
+      for (int j = 0; j < hist[bin].length; j++)
+	table[(bin <= splitBin) ? 0 : 1][j] += hist[bin][j];
+    }
+    m_distribution = new Distribution(table);
+
+    // Compute modified gain ratio for best split.
+    m_gainRatio = gainRatioCrit.
+      splitCritValue(m_distribution,m_sumOfWeights,
+		     m_infoGain);
+  }
+
   /**
    * Returns (C4.5-type) information gain for the generated split.
    */
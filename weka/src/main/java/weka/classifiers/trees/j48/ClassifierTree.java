@@ -262,17 +262,7 @@ public class ClassifierTree
 						 boolean useLaplace) 
        throws Exception {
 
-    double [] doubles = new double[instance.numClasses()];
-
-    for (int i = 0; i < doubles.length; i++) {
-      if (!useLaplace) {
-	doubles[i] = getProbs(i, instance, 1);
-      } else {
-	doubles[i] = getProbsLaplace(i, instance, 1);
-      }
-    }
-
-    return doubles;
+    return getAllProbs(instance, 1, useLaplace);
   }
 
   /**
@@ -611,81 +601,110 @@ public class ClassifierTree
   /**
    * Help method for computing class probabilities of 
    * a given instance.
-   *
+   * 
    * @param classIndex the class index
    * @param instance the instance to compute the probabilities for
    * @param weight the weight to use
-   * @return the laplace probs
+   * @return the probs
    * @throws Exception if something goes wrong
    */
-  private double getProbsLaplace(int classIndex, Instance instance, double weight) 
+  private double getProbs(int classIndex, Instance instance, double weight) 
     throws Exception {
     
     double prob = 0;
     
     if (m_isLeaf) {
-      return weight * localModel().classProbLaplace(classIndex, instance, -1);
+      return weight * localModel().classProb(classIndex, instance, -1);
     } else {
       int treeIndex = localModel().whichSubset(instance);
       if (treeIndex == -1) {
 	double[] weights = localModel().weights(instance);
 	for (int i = 0; i < m_sons.length; i++) {
 	  if (!son(i).m_isEmpty) {
-        prob += son(i).getProbsLaplace(classIndex, instance, 
-					     weights[i] * weight);
+	    prob += son(i).getProbs(classIndex, instance, 
+				    weights[i] * weight);
 	  }
 	}
 	return prob;
       } else {
 	if (son(treeIndex).m_isEmpty) {
-	  return weight * localModel().classProbLaplace(classIndex, instance, 
-							treeIndex);
+	  return weight * localModel().classProb(classIndex, instance, 
+						 treeIndex);
 	} else {
-	  return son(treeIndex).getProbsLaplace(classIndex, instance, weight);
+	  return son(treeIndex).getProbs(classIndex, instance, weight);
 	}
       }
     }
   }
 
   /**
-   * Help method for computing class probabilities of 
-   * a given instance.
+   * Help method for computing the probabilities of all classes for a
+   * given instance in a single pass through the tree. Gives the same
+   * results as computing the probability of each class separately.
    * 
-   * @param classIndex the class index
    * @param instance the instance to compute the probabilities for
    * @param weight the weight to use
+   * @param useLaplace whether to use laplace or not
    * @return the probs
    * @throws Exception if something goes wrong
    */
-  private double getProbs(int classIndex, Instance instance, double weight) 
-    throws Exception {
+  private double [] getAllProbs(Instance instance, double weight,
+				boolean useLaplace) throws Exception {
     
-    double prob = 0;
+    double [] probs;
     
     if (m_isLeaf) {
-      return weight * localModel().classProb(classIndex, instance, -1);
+      return leafProbs(instance, weight, -1, useLaplace);
     } else {
       int treeIndex = localModel().whichSubset(instance);
       if (treeIndex == -1) {
+	probs = new double[instance.numClasses()];
 	double[] weights = localModel().weights(instance);
 	for (int i = 0; i < m_sons.length; i++) {
 	  if (!son(i).m_isEmpty) {
-	    prob += son(i).getProbs(classIndex, instance, 
-				    weights[i] * weight);
+	    double [] sonProbs = son(i).getAllProbs(instance, weights[i] * weight,
+						    useLaplace);
+	    for (int j = 0; j < probs.length; j++) {
+	      probs[j] += sonProbs[j];
+	    }
 	  }
 	}
-	return prob;
+	return probs;
       } else {
 	if (son(treeIndex).m_isEmpty) {
-	  return weight * localModel().classProb(classIndex, instance, 
-						 treeIndex);
+	  return leafProbs(instance, weight, treeIndex, useLaplace);
 	} else {
-	  return son(treeIndex).getProbs(classIndex, instance, weight);
+	  return son(treeIndex).getAllProbs(instance, weight, useLaplace);
 	}
       }
     }
   }
 
+  /**
+   * Computes the weighted probabilities of all classes from this node's 
+   * model.
+   * 
+   * @param instance the instance to compute the probabilities for
+   * @param weight the weight to use
+   * @param theSubset the subset to use, -1 for all of them
+   * @param useLaplace whether to use laplace or not
+   * @return the probs
+   * @throws Exception if something goes wrong
+   */
+  private double [] leafProbs(Instance instance, double weight, int theSubset,
+			      boolean useLaplace) throws Exception {
+
+    double [] probs = new double[instance.numClasses()];
+    for (int j = 0; j < probs.length; j++) {
+      if (!useLaplace) {
+	probs[j] = weight * localModel().classProb(j, instance, theSubset);
+      } else {
+	probs[j] = weight * localModel().classProbLaplace(j, instance, theSubset);
+      }
+    }
+    return probs;
+  }
+
   /**
    * Method just exists to make program easier to read.
    */
@@ -714,6 +714,21 @@ public class Distribution
     m_perBag[to] += weight;
   }
 
+  /**
+   * Shifts given class counts from one bag to another one.
+   */
+  public final void shift(int from,int to,double[] counts) {
+    
+    double sum = Utils.sum(counts);
+
+    for (int i = 0; i < counts.length; i++) {
+      m_perClassPerBag[from][i] -= counts[i];
+      m_perClassPerBag[to][i] += counts[i];
+    }
+    m_perBag[from] -= sum;
+    m_perBag[to] += sum;
+  }
+
   /**
    * Shifts all instances in given range from one bag to another one.
    *
@@ -408,8 +408,13 @@ public class DBScan
 
         Constructor co = null;
         try {
-            co = (Class.forName(database_Type)).getConstructor(new Class[]{Instances.class});
+            String[] databaseSpec = Utils.splitOptions(database_Type);
+            co = (Class.forName(databaseSpec[0])).getConstructor(new Class[]{Instances.class});
             o = co.newInstance(new Object[]{instances});
+            if (o instanceof OptionHandler) {
+                databaseSpec[0] = "";
+                ((OptionHandler) o).setOptions(databaseSpec);
+            }
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -422,6 +427,8 @@ public class DBScan
             e.printStackTrace();
         } catch (InvocationTargetException e) {
             e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
         return (Database) o;
@@ -37,6 +37,11 @@ import weka.filters.unsupervised.attribute.ReplaceMissingValues;
 import java.util.Enumeration;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -78,6 +83,10 @@ import java.util.Vector;
  *  Display model in old format (good when there are many clusters)
  * </pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * <pre> -S &lt;num&gt;
  *  Random number seed.
  *  (default 100)</pre>
@@ -152,6 +161,12 @@ public class EM
   /** display model output in old-style format */
   private boolean m_displayModelInOldFormat;
 
+  /** the number of execution slots (threads) to use */
+  private int m_executionSlots = 1;
+
+  /** the thread pool used during training */
+  private transient ExecutorService m_executorPool;
+
   /**
    * Returns a string describing this clusterer
    * @return a description of the evaluator suitable for
@@ -174,7 +189,10 @@ public class EM
       + "by 1 and the program continues at step 2. \n\n"
       + "The number of folds is fixed to 10, as long as the number of "
       + "instances in the training set is not smaller 10. If this is the case "
-      + "the number of folds is set equal to the number of instances.";
+      + "the number of folds is set equal to the number of instances.\n\n"
+      + "With several execution slots, the folds of the cross validation "
+      + "run concurrently, and the E and M steps are split up among the "
+      + "threads.";
   }
 
   /**
@@ -210,6 +228,11 @@ public class EM
                          + "many clusters)\n",
                          "O", 0, "-O"));
 
+    result.addElement(new Option(
+	"\tNumber of execution slots.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+
     Enumeration en = super.listOptions();
     while (en.hasMoreElements())
       result.addElement(en.nextElement());
@@ -244,6 +267,10 @@ public class EM
    *  Display model in old format (good when there are many clusters)
    * </pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    * <pre> -S &lt;num&gt;
    *  Random number seed.
    *  (default 100)</pre>
@@ -274,6 +301,11 @@ public class EM
     }
 
     setDisplayModelInOldFormat(Utils.getFlag('O', options));
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    }
     
     super.setOptions(options);
   }
@@ -309,6 +341,41 @@ public class EM
     return m_displayModelInOldFormat;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use. The folds of the "
+      + "cross validation run concurrently, and the E and M steps are split "
+      + "up among the threads.";
+  }
+
+  /**
+   * Set the number of execution slots (threads) to use
+   *
+   * @param slots the number of slots
+   * @throws Exception if the number of slots is less than 1
+   */
+  public void setNumExecutionSlots(int slots)
+    throws Exception {
+    if (slots < 1) {
+      throw new Exception("Number of execution slots must be > 0!");
+    }
+
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Get the number of execution slots (threads) to use
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
+
   /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -473,6 +540,10 @@ public class EM
     if (m_displayModelInOldFormat) {
       result.add("-O");
     }
+    if (m_executionSlots > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
 
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
@@ -567,25 +638,86 @@ public class EM
 
 
   /**
-   * calculate prior probabilites for the clusters
+   * Returns the number of chunks the instances get split into for 
+   * processing them in parallel.
    *
-   * @param inst the instances
-   * @throws Exception if priors can't be calculated
-   **/
-  private void estimate_priors (Instances inst)
-    throws Exception {
-
-    for (int i = 0; i < m_num_clusters; i++) {
-      m_priors[i] = 0.0;
+   * @param numInstances the number of instances
+   * @return the number of chunks
+   */
+  private int numChunks (int numInstances) {
+    if (m_executorPool == null) {
+      return 1;
     }
+    return Math.max(1, Math.min(m_executionSlots, numInstances));
+  }
+
+  /**
+   * Returns the first instance of a chunk.
+   *
+   * @param numInstances the number of instances
+   * @param numChunks the number of chunks
+   * @param chunk the index of the chunk
+   * @return the index of the first instance
+   */
+  private static int chunkStart (int numInstances, int numChunks, int chunk) {
+    return (int) ((long) numInstances * chunk / numChunks);
+  }
 
-    for (int i = 0; i < inst.numInstances(); i++) {
-      for (int j = 0; j < m_num_clusters; j++) {
-        m_priors[j] += inst.instance(i).weight() * m_weights[i][j];
+  /**
+   * Waits for a task to finish and returns its result, passing on the 
+   * exception thrown by the task, if any.
+   *
+   * @param future the task
+   * @return the result of the task
+   * @throws Exception if the task failed
+   */
+  private static <T> T waitFor (Future<T> future)
+    throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
       }
+      throw e;
     }
+  }
 
-    Utils.normalize(m_priors);
+  /**
+   * Sums up the prior weights and the statistics of the estimators for a 
+   * range of instances.
+   *
+   * @param inst the training instances
+   * @param start the first instance of the range
+   * @param end the index after the last instance of the range
+   * @param priors the prior weights to add to
+   * @param model the discrete estimators to add to
+   * @param modelNormal the sums for the normal estimators to add to
+   */
+  private void accumulate (Instances inst, int start, int end, double[] priors,
+                           Estimator[][] model, double[][][] modelNormal) {
+
+    for (int l = start; l < end; l++) {
+      Instance in = inst.instance(l);
+      for (int i = 0; i < m_num_clusters; i++) {
+        priors[i] += in.weight() * m_weights[l][i];
+        for (int j = 0; j < m_num_attribs; j++) {
+          if (!in.isMissing(j)) {
+            if (inst.attribute(j).isNominal()) {
+              model[i][j].addValue(in.value(j), 
+                                   in.weight() * m_weights[l][i]);
+            }
+            else {
+              modelNormal[i][j][0] += (in.value(j) * in.weight() *
+                                       m_weights[l][i]);
+              modelNormal[i][j][2] += in.weight() * m_weights[l][i];
+              modelNormal[i][j][1] += (in.value(j) * 
+                                       in.value(j) * in.weight() * m_weights[l][i]);
+            }
+          }
+        }
+      }
+    }
   }
 
 
@@ -633,34 +765,67 @@ public class EM
    * @param inst the training instances
    * @throws Exception if something goes wrong
    */
-  private void M (Instances inst)
+  private void M (final Instances inst)
     throws Exception {
 
     int i, j, l;
 
     new_estimators();
-    estimate_priors(inst);
-
     for (i = 0; i < m_num_clusters; i++) {
-      for (j = 0; j < m_num_attribs; j++) {
-        for (l = 0; l < inst.numInstances(); l++) {
-	  Instance in = inst.instance(l);
-          if (!in.isMissing(j)) {
-            if (inst.attribute(j).isNominal()) {
-              m_model[i][j].addValue(in.value(j), 
-				     in.weight() * m_weights[l][i]);
+      m_priors[i] = 0.0;
+    }
+
+    // the first chunk adds to the estimators, the other ones to their 
+    // own statistics that get added afterwards
+    int numChunks = numChunks(inst.numInstances());
+    Future<Object>[] results = new Future[numChunks];
+    final double[][] priors = new double[numChunks][];
+    final Estimator[][][] model = new Estimator[numChunks][][];
+    final double[][][][] modelNormal = new double[numChunks][][][];
+    for (l = 1; l < numChunks; l++) {
+      priors[l] = new double[m_num_clusters];
+      model[l] = new Estimator[m_num_clusters][m_num_attribs];
+      modelNormal[l] = new double[m_num_clusters][m_num_attribs][3];
+      for (i = 0; i < m_num_clusters; i++) {
+        for (j = 0; j < m_num_attribs; j++) {
+          if (inst.attribute(j).isNominal()) {
+            model[l][i][j] = new DiscreteEstimator(inst.attribute(j).numValues(), 
+                                                   false);
+          }
+        }
+      }
+      final int chunk = l;
+      final int start = chunkStart(inst.numInstances(), numChunks, l);
+      final int end = chunkStart(inst.numInstances(), numChunks, l + 1);
+      results[l] = m_executorPool.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            accumulate(inst, start, end, priors[chunk], model[chunk], 
+                       modelNormal[chunk]);
+            return null;
+          }
+        });
+    }
+    accumulate(inst, 0, chunkStart(inst.numInstances(), numChunks, 1),
+               m_priors, m_model, m_modelNormal);
+    for (l = 1; l < numChunks; l++) {
+      waitFor(results[l]);
+      for (i = 0; i < m_num_clusters; i++) {
+        m_priors[i] += priors[l][i];
+        for (j = 0; j < m_num_attribs; j++) {
+          if (inst.attribute(j).isNominal()) {
+            for (int k = 0; k < inst.attribute(j).numValues(); k++) {
+              m_model[i][j].addValue(k, 
+                                     ((DiscreteEstimator) model[l][i][j]).getCount(k));
             }
-            else {
-              m_modelNormal[i][j][0] += (in.value(j) * in.weight() *
-					 m_weights[l][i]);
-              m_modelNormal[i][j][2] += in.weight() * m_weights[l][i];
-              m_modelNormal[i][j][1] += (in.value(j) * 
-					 in.value(j) * in.weight() * m_weights[l][i]);
+          } else {
+            for (int k = 0; k < 3; k++) {
+              m_modelNormal[i][j][k] += modelNormal[l][i][j][k];
             }
           }
         }
       }
     }
+    Utils.normalize(m_priors);
     
     // calcualte mean and std deviation for numeric attributes
     for (j = 0; j < m_num_attribs; j++) {
@@ -720,28 +885,77 @@ public class EM
    * @return the average log likelihood
    * @throws Exception if computation fails
    */
-  private double E (Instances inst, boolean change_weights)
+  private double E (final Instances inst, final boolean change_weights)
+    throws Exception {
+
+    int numChunks = numChunks(inst.numInstances());
+    Future<double[]>[] results = new Future[numChunks];
+    for (int k = 1; k < numChunks; k++) {
+      final int start = chunkStart(inst.numInstances(), numChunks, k);
+      final int end = chunkStart(inst.numInstances(), numChunks, k + 1);
+      results[k] = m_executorPool.submit(new Callable<double[]>() {
+          public double[] call() throws Exception {
+            return E(inst, change_weights, start, end);
+          }
+        });
+    }
+    double[] sums = E(inst, change_weights, 0, 
+                      chunkStart(inst.numInstances(), numChunks, 1));
+    for (int k = 1; k < numChunks; k++) {
+      double[] part = waitFor(results[k]);
+      sums[0] += part[0];
+      sums[1] += part[1];
+    }
+
+    return  sums[0] / sums[1];
+  }
+
+  /**
+   * The E step for a range of the training instances, whose missing 
+   * values have been replaced already.
+   *
+   * @param inst the training instances
+   * @param change_weights whether to change the weights
+   * @param start the first instance of the range
+   * @param end the index after the last instance of the range
+   * @return the sum of the weighted log likelihoods and the sum of weights
+   * @throws Exception if computation fails
+   */
+  private double[] E (Instances inst, boolean change_weights, 
+                      int start, int end)
     throws Exception {
 
     double loglk = 0.0, sOW = 0.0;
 
-    for (int l = 0; l < inst.numInstances(); l++) {
+    for (int l = start; l < end; l++) {
 
       Instance in = inst.instance(l);
 
-      loglk += in.weight() * logDensityForInstance(in);
+      // the same as logJointDensitiesForInstance, without the filter
+      double[] a = logDensityPerClusterForProcessedInstance(in);
+      for (int i = 0; i < a.length; i++) {
+        if (m_priors[i] > 0) {
+          a[i] += Math.log(m_priors[i]);
+        } else {
+          throw new IllegalArgumentException("Cluster empty!");
+        }
+      }
+
+      double max = a[Utils.maxIndex(a)];
+      double sum = 0.0;
+      for (int i = 0; i < a.length; i++) {
+        sum += Math.exp(a[i] - max);
+      }
+
+      loglk += in.weight() * (max + Math.log(sum));
       sOW += in.weight();
 
       if (change_weights) {
-	m_weights[l] = distributionForInstance(in);
+	m_weights[l] = Utils.logs2probs(a);
       }
     }
     
-    // reestimate priors
-    /*if (change_weights) {
-      estimate_priors(inst);
-    }*/
-    return  loglk / sOW;
+    return  new double[]{loglk, sOW};
   }
   
   
@@ -767,6 +981,7 @@ public class EM
     m_num_clusters = -1;
     m_initialNumClusters = -1;
     m_verbose = false;
+    m_executionSlots = 1;
   }
 
   /**
@@ -1088,38 +1303,43 @@ public class EM
       trainCopy = new Instances(m_theInstances);
       trainCopy.randomize(cvr);
       templl = 0.0;
+      final Instances[] cvTrain = new Instances[numFolds];
+      final Instances[] cvTest = new Instances[numFolds];
       for (i = 0; i < numFolds; i++) {
-	Instances cvTrain = trainCopy.trainCV(numFolds, i, cvr);
-	if (num_clusters > cvTrain.numInstances()) {
+	cvTrain[i] = trainCopy.trainCV(numFolds, i, cvr);
+	if (num_clusters > cvTrain[i].numInstances()) {
 	  break CLUSTER_SEARCH;
 	}
-	Instances cvTest = trainCopy.testCV(numFolds, i);
-	m_rr = new Random(seed);
-        for (int z=0; z<10; z++) m_rr.nextDouble();
-	m_num_clusters = num_clusters;
-	EM_Init(cvTrain);
-	try {
-	  iterate(cvTrain, false);
-	} catch (Exception ex) {
-	  // catch any problems - i.e. empty clusters occuring
-	  ex.printStackTrace();
-          //          System.err.println("Restarting after CV training failure ("+num_clusters+" clusters");
-          seed++;
-          restartCount++;
-          ok = false;
-          if (restartCount > 5) {
-            break CLUSTER_SEARCH;
-          }
-	  break;
-	}
-        try {
-          tll = E(cvTest, false);
-        } catch (Exception ex) {
+	cvTest[i] = trainCopy.testCV(numFolds, i);
+      }
+
+      // the folds are independent of each other, run them concurrently
+      Future<Double>[] results = new Future[numFolds];
+      if (m_executorPool != null) {
+        for (i = 0; i < numFolds; i++) {
+          final EM fold = foldCopy(num_clusters, seed);
+          final int index = i;
+          results[i] = m_executorPool.submit(new Callable<Double>() {
+              public Double call() throws Exception {
+                return fold.CVFold(cvTrain[index], cvTest[index]);
+              }
+            });
+        }
+      }
+      for (i = 0; i < numFolds; i++) {
+        Double result;
+        if (m_executorPool != null) {
+          result = waitFor(results[i]);
+        } else {
+          result = foldCopy(num_clusters, seed).CVFold(cvTrain[i], cvTest[i]);
+        }
+        if (result == null) {
           // catch any problems - i.e. empty clusters occuring
-          //          ex.printStackTrace();
-          ex.printStackTrace();
-          //          System.err.println("Restarting after CV testing failure ("+num_clusters+" clusters");
-          //          throw new Exception(ex); 
+          for (int k = i + 1; k < numFolds; k++) {
+            if (results[k] != null) {
+              results[k].cancel(true);
+            }
+          }
           seed++;
           restartCount++;
           ok = false;
@@ -1128,6 +1348,7 @@ public class EM
           }
           break;
         }
+        tll = result.doubleValue();
 
 	if (m_verbose) {
 	  System.out.println("# clust: " + num_clusters + " Fold: " + i 
@@ -1167,6 +1388,60 @@ public class EM
   }
 
 
+  /**
+   * Returns a copy of this clusterer for evaluating a fold of the cross
+   * validation, set up the way CVClusters used to set up this clusterer
+   * for each fold.
+   *
+   * @param numClusters the number of clusters
+   * @param seed the seed for the random number generator
+   * @return the copy
+   */
+  private EM foldCopy (int numClusters, int seed) {
+    EM result = new EM();
+    result.m_minStdDev = m_minStdDev;
+    result.m_minStdDevPerAtt = m_minStdDevPerAtt;
+    result.m_max_iterations = m_max_iterations;
+    result.m_Seed = m_Seed;
+    result.m_theInstances = m_theInstances;
+    result.m_minValues = m_minValues;
+    result.m_maxValues = m_maxValues;
+    result.m_num_attribs = m_num_attribs;
+    result.m_num_instances = m_num_instances;
+    result.m_num_clusters = numClusters;
+    result.m_rr = new Random(seed);
+    for (int z=0; z<10; z++) result.m_rr.nextDouble();
+
+    return result;
+  }
+
+  /**
+   * Trains on the training instances of a fold of the cross validation and
+   * returns the log likelihood of the test instances.
+   *
+   * @param cvTrain the training instances of the fold
+   * @param cvTest the test instances of the fold
+   * @return the log likelihood, null if training or testing failed
+   * @throws Exception if the initialization fails
+   */
+  private Double CVFold (Instances cvTrain, Instances cvTest)
+    throws Exception {
+
+    EM_Init(cvTrain);
+    try {
+      iterate(cvTrain, false);
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      return null;
+    }
+    try {
+      return new Double(E(cvTest, false));
+    } catch (Exception ex) {
+      ex.printStackTrace();
+      return null;
+    }
+  }
+
   /**
    * Returns the number of clusters.
    *
@@ -1254,7 +1529,17 @@ public class EM
       updateMinMax(m_theInstances.instance(i));
     }
 
-    doEM();
+    if (m_executionSlots > 1) {
+      m_executorPool = Executors.newFixedThreadPool(m_executionSlots);
+    }
+    try {
+      doEM();
+    } finally {
+      if (m_executorPool != null) {
+        m_executorPool.shutdownNow();
+        m_executorPool = null;
+      }
+    }
     
     // save memory
     m_theInstances = new Instances(m_theInstances,0);
@@ -1283,12 +1568,24 @@ public class EM
    */
   public double[] logDensityPerClusterForInstance(Instance inst) throws Exception {
 
+    m_replaceMissing.input(inst);
+    inst = m_replaceMissing.output();
+
+    return logDensityPerClusterForProcessedInstance(inst);
+  }
+
+  /**
+   * Computes the log of the conditional density (per cluster) for an
+   * instance whose missing values have been replaced already.
+   * 
+   * @param inst the instance to compute the density for
+   * @return an array containing the estimated densities
+   */
+  private double[] logDensityPerClusterForProcessedInstance(Instance inst) {
+
     int i, j;
     double logprob;
     double[] wghts = new double[m_num_clusters];
-    
-    m_replaceMissing.input(inst);
-    inst = m_replaceMissing.output();
 
     for (i = 0; i < m_num_clusters; i++) {
       //      System.err.println("Cluster : "+i);
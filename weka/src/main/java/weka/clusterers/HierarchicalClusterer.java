@@ -52,6 +52,20 @@
  * \If set, distance is interpreted as branch length, otherwise it is node height.
  * </pre>
  * 
+ * <pre> -nn-chain
+ * If set, the nearest neighbour chain algorithm is used for the link types
+ * Complete, Average and Ward, and a minimum spanning tree for Single link.
+ * </pre>
+ * 
+ * <pre> -float
+ * If set, the distance matrix is stored in single precision.
+ * </pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ * Number of execution slots used for computing the distances.
+ * (default: 1 - i.e. no parallelism)
+ * </pre>
+ * 
  *<!-- options-end -->
  *
  * 
@@ -64,10 +78,16 @@ package weka.clusterers;
 
 import java.io.Serializable;
 import java.text.DecimalFormat;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.PriorityQueue;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import weka.core.Capabilities;
 import weka.core.CapabilitiesHandler;
@@ -106,6 +126,81 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	public DistanceFunction getDistanceFunction() {return m_DistanceFunction;}
   	public void setDistanceFunction(DistanceFunction distanceFunction) {m_DistanceFunction = distanceFunction;}
 
+	/** whether to use the nearest neighbour chain algorithm (or a minimum spanning tree for single link) **/
+	protected boolean m_bUseNNChain = false;
+	public boolean getUseNNChain() {return m_bUseNNChain;}
+	public void setUseNNChain(boolean bUseNNChain) {m_bUseNNChain = bUseNNChain;}
+
+	/** whether to store the distance matrix in single precision **/
+	protected boolean m_bUseFloatMatrix = false;
+	public boolean getUseFloatMatrix() {return m_bUseFloatMatrix;}
+	public void setUseFloatMatrix(boolean bUseFloatMatrix) {m_bUseFloatMatrix = bUseFloatMatrix;}
+
+	/** number of threads used for computing distances **/
+	protected int m_nNumExecutionSlots = 1;
+	public int getNumExecutionSlots() {return m_nNumExecutionSlots;}
+	public void setNumExecutionSlots(int nSlots) {m_nNumExecutionSlots = Math.max(1, nSlots);}
+
+	/** thread pool for computing distances, only exists while building the clusterer **/
+	protected transient ExecutorService m_executorPool;
+
+	/** condensed distance matrix, which stores the lower triangle only, i.e., a
+	 * single entry for each pair of instances **/
+	static abstract class DistanceMatrix {
+		abstract double get(int i, int j);
+		abstract void set(int i, int j, double fDist);
+	}
+	/** distance matrix in double precision **/
+	static class DoubleDistanceMatrix extends DistanceMatrix {
+		double [][] m_fRows;
+		DoubleDistanceMatrix(int nInstances) {
+			m_fRows = new double[nInstances][];
+			for (int i = 0; i < nInstances; i++) {
+				m_fRows[i] = new double[i];
+			}
+		}
+		double get(int i, int j) {
+			if (i > j) {
+				return m_fRows[i][j];
+			} else if (i < j) {
+				return m_fRows[j][i];
+			}
+			return 0;
+		}
+		void set(int i, int j, double fDist) {
+			if (i > j) {
+				m_fRows[i][j] = fDist;
+			} else if (i < j) {
+				m_fRows[j][i] = fDist;
+			}
+		}
+	}
+	/** distance matrix in single precision, which takes half the memory **/
+	static class FloatDistanceMatrix extends DistanceMatrix {
+		float [][] m_fRows;
+		FloatDistanceMatrix(int nInstances) {
+			m_fRows = new float[nInstances][];
+			for (int i = 0; i < nInstances; i++) {
+				m_fRows[i] = new float[i];
+			}
+		}
+		double get(int i, int j) {
+			if (i > j) {
+				return m_fRows[i][j];
+			} else if (i < j) {
+				return m_fRows[j][i];
+			}
+			return 0;
+		}
+		void set(int i, int j, double fDist) {
+			if (i > j) {
+				m_fRows[i][j] = (float) fDist;
+			} else if (i < j) {
+				m_fRows[j][i] = (float) fDist;
+			}
+		}
+	}
+
 	/** used for priority queue for efficient retrieval of pair of clusters to merge**/
 	class Tuple {
 		public Tuple(double d, int i, int j, int nSize1, int nSize2) {
@@ -269,10 +364,23 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 		
 		// used for keeping track of hierarchy
 		Node [] clusterNodes = new Node[nInstances];
-		if (m_nLinkType == NEIGHBOR_JOINING) {
-			neighborJoining(nClusters, nClusterID, clusterNodes);
-		} else {
-			doLinkClustering(nClusters, nClusterID, clusterNodes);
+		if (m_nNumExecutionSlots > 1) {
+			m_executorPool = Executors.newFixedThreadPool(m_nNumExecutionSlots - 1);
+		}
+		try {
+			if (m_nLinkType == NEIGHBOR_JOINING) {
+				neighborJoining(nClusters, nClusterID, clusterNodes);
+			} else if (m_bUseNNChain && (m_nLinkType == SINGLE || m_nLinkType == COMPLETE 
+					|| m_nLinkType == AVERAGE || m_nLinkType == WARD)) {
+				doNNChainClustering(nClusterID, clusterNodes);
+			} else {
+				doLinkClustering(nClusters, nClusterID, clusterNodes);
+			}
+		} finally {
+			if (m_executorPool != null) {
+				m_executorPool.shutdownNow();
+				m_executorPool = null;
+			}
 		}
 		
 		// move all clusters in m_nClusterID array
@@ -440,23 +548,21 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	 * @param nClusterID 
 	 * @param clusterNodes 
 	 */
-	void doLinkClustering(int nClusters, Vector<Integer>[] nClusterID, Node [] clusterNodes) {
+	void doLinkClustering(int nClusters, Vector<Integer>[] nClusterID, Node [] clusterNodes) throws Exception {
 		int nInstances = m_instances.numInstances();
 		PriorityQueue<Tuple> queue = new PriorityQueue<Tuple>(nClusters*nClusters/2, new TupleComparator());
-		double [][] fDistance0 = new double[nClusters][nClusters];
+		DistanceMatrix fDistance0 = calcDistanceMatrix(nClusterID, false);
 		double [][] fClusterDistance = null;
 		if (m_bDebug) {
 			fClusterDistance = new double[nClusters][nClusters];
 		}
 		for (int i = 0; i < nClusters; i++) {
-			fDistance0[i][i] = 0;
 			for (int j = i+1; j < nClusters; j++) {
-				fDistance0[i][j] = getDistance0(nClusterID[i], nClusterID[j]);
-				fDistance0[j][i] = fDistance0[i][j];
-				queue.add(new Tuple(fDistance0[i][j], i, j, 1, 1));
+				double fDistance = fDistance0.get(i, j);
+				queue.add(new Tuple(fDistance, i, j, 1, 1));
 				if (m_bDebug) {
-					fClusterDistance[i][j] = fDistance0[i][j];
-					fClusterDistance[j][i] = fDistance0[i][j];
+					fClusterDistance[i][j] = fDistance;
+					fClusterDistance[j][i] = fDistance;
 				}
 			}
 		}
@@ -524,6 +630,17 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 		nClusterID[iMin2].removeAllElements();
 		
 		// track hierarchy
+		addNode(iMin1, iMin2, fDist1, fDist2, clusterNodes);
+	} // merge
+
+	/** adds the node joining two clusters to the hierarchy
+	 * @param iMin1 index of first cluster, which takes the place of the joined cluster
+	 * @param iMin2 index of second cluster, larger than iMin1
+	 * @param fDist1 distance (height or branch length) of the first cluster
+	 * @param fDist2 distance (height or branch length) of the second cluster
+	 * @param clusterNodes the hierarchy of each cluster, null for single instances
+	 */
+	void addNode(int iMin1, int iMin2, double fDist1, double fDist2, Node [] clusterNodes) {
 		Node node = new Node();
 		if (clusterNodes[iMin1] == null) {
 			node.m_iLeftInstance = iMin1;
@@ -543,7 +660,316 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 			node.setHeight(fDist1, fDist2);
 		}
 		clusterNodes[iMin1] = node;
-	} // merge
+	} // addNode
+
+	/** compute the distances between all pairs of instances. The rows of the matrix are
+	 * spread over the execution slots.
+	 * @param nClusterID the initial clusters, one per instance
+	 * @param bNNChain whether to compute the distances for the nearest neighbour chain, 
+	 * i.e., the squared distances for Ward's method
+	 * @return the distance matrix
+	 */
+	DistanceMatrix calcDistanceMatrix(final Vector<Integer>[] nClusterID, final boolean bNNChain) throws Exception {
+		int nInstances = m_instances.numInstances();
+		final DistanceMatrix fDistance;
+		if (m_bUseFloatMatrix) {
+			fDistance = new FloatDistanceMatrix(nInstances);
+		} else {
+			fDistance = new DoubleDistanceMatrix(nInstances);
+		}
+		if (m_executorPool == null || nInstances < 2) {
+			fillDistanceMatrix(fDistance, nClusterID, bNNChain, 0, 1);
+			return fDistance;
+		}
+
+		// the distance function initializes itself lazily, which must not happen concurrently
+		m_DistanceFunction.distance(m_instances.instance(0), m_instances.instance(1));
+		Vector<Future<Object>> futures = new Vector<Future<Object>>();
+		for (int i = 1; i < m_nNumExecutionSlots; i++) {
+			final int iStart = i;
+			futures.add(m_executorPool.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					fillDistanceMatrix(fDistance, nClusterID, bNNChain, iStart, m_nNumExecutionSlots);
+					return null;
+				}
+			}));
+		}
+		fillDistanceMatrix(fDistance, nClusterID, bNNChain, 0, m_nNumExecutionSlots);
+		for (int i = 0; i < futures.size(); i++) {
+			waitFor(futures.elementAt(i));
+		}
+		return fDistance;
+	} // calcDistanceMatrix
+
+	/** compute the distances of every nStep-th row of the distance matrix
+	 * @param fDistance the matrix to fill
+	 * @param nClusterID the initial clusters, one per instance
+	 * @param bNNChain whether to compute the distances for the nearest neighbour chain
+	 * @param iStart the first row to compute
+	 * @param nStep the step between rows
+	 */
+	void fillDistanceMatrix(DistanceMatrix fDistance, Vector<Integer>[] nClusterID, boolean bNNChain, int iStart, int nStep) {
+		for (int i = iStart; i < nClusterID.length; i += nStep) {
+			Instance instance = m_instances.instance(i);
+			for (int j = 0; j < i; j++) {
+				if (bNNChain) {
+					double fDist = m_DistanceFunction.distance(m_instances.instance(j), instance);
+					if (m_nLinkType == WARD) {
+						fDist *= fDist;
+					}
+					fDistance.set(i, j, fDist);
+				} else {
+					fDistance.set(i, j, getDistance0(nClusterID[j], nClusterID[i]));
+				}
+			}
+		}
+	} // fillDistanceMatrix
+
+	/** waits for a task to finish, passing on the exception it threw, if any **/
+	static <T> T waitFor(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw new Exception(e.getCause());
+		}
+	} // waitFor
+
+	/** clustering for link types that are reducible, i.e., merging two clusters never
+	 * brings the merged cluster closer to a third one than the closer of the two.
+	 * For these, the nearest neighbour chain algorithm finds the same merges as always
+	 * merging the closest pair, but in O(n^2) time and without a priority queue. Single link 
+	 * is derived from a minimum spanning tree instead, which requires no distance 
+	 * matrix at all. The merges are found in arbitrary order and replayed in order of
+	 * increasing distance to build the hierarchy.
+	 * @param nClusterID 
+	 * @param clusterNodes 
+	 */
+	void doNNChainClustering(Vector<Integer>[] nClusterID, Node [] clusterNodes) throws Exception {
+		int nInstances = nClusterID.length;
+		int [] iMerge1 = new int[nInstances - 1];
+		int [] iMerge2 = new int[nInstances - 1];
+		double [] fMergeDist = new double[nInstances - 1];
+		if (m_nLinkType == SINGLE) {
+			minimumSpanningTree(iMerge1, iMerge2, fMergeDist);
+		} else {
+			nearestNeighborChain(calcDistanceMatrix(nClusterID, true), iMerge1, iMerge2, fMergeDist);
+		}
+
+		// replay merges with smallest distance first, the lowest index of a 
+		// cluster identifies it as in doLinkClustering
+		Integer [] iOrder = new Integer[nInstances - 1];
+		for (int i = 0; i < iOrder.length; i++) {
+			iOrder[i] = i;
+		}
+		final double [] fDist = fMergeDist;
+		Arrays.sort(iOrder, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(fDist[o1], fDist[o2]);
+			}
+		});
+		int [] iParent = new int[nInstances];
+		for (int i = 0; i < nInstances; i++) {
+			iParent[i] = i;
+		}
+		for (int i = 0; i < nInstances - m_nNumClusters; i++) {
+			int k = iOrder[i];
+			int iCluster1 = findCluster(iParent, iMerge1[k]);
+			int iCluster2 = findCluster(iParent, iMerge2[k]);
+			int iMin1 = Math.min(iCluster1, iCluster2);
+			int iMin2 = Math.max(iCluster1, iCluster2);
+			if (m_bDebug) {
+				System.err.println("Merging " + iMin1 + " " + iMin2 + " " + fMergeDist[k] + " " + fMergeDist[k]);
+			}
+			addNode(iMin1, iMin2, fMergeDist[k], fMergeDist[k], clusterNodes);
+			iParent[iMin2] = iMin1;
+		}
+		for (int i = 0; i < nInstances; i++) {
+			nClusterID[i].removeAllElements();
+		}
+		for (int i = 0; i < nInstances; i++) {
+			nClusterID[findCluster(iParent, i)].add(i);
+		}
+	} // doNNChainClustering
+
+	/** find the cluster an instance belongs to, halving the paths on the way
+	 * @param iParent the parent of each instance, instances that are their own parent identify the clusters
+	 * @param i the index of the instance
+	 * @return the index of the cluster
+	 */
+	static int findCluster(int [] iParent, int i) {
+		while (iParent[i] != i) {
+			iParent[i] = iParent[iParent[i]];
+			i = iParent[i];
+		}
+		return i;
+	} // findCluster
+
+	/** nearest neighbour chain algorithm: follows a chain of nearest neighbours until two 
+	 * clusters are each other's nearest neighbours, merges these and updates the distances
+	 * to the merged cluster in place with the Lance-Williams formula. For Ward's method,
+	 * the matrix holds squared distances.
+	 * @param fDistance the distances between the instances, gets overwritten
+	 * @param iMerge1 receives the first cluster of each merge
+	 * @param iMerge2 receives the second cluster of each merge
+	 * @param fMergeDist receives the distance of each merge
+	 */
+	void nearestNeighborChain(DistanceMatrix fDistance, int [] iMerge1, int [] iMerge2, double [] fMergeDist) {
+		int nInstances = m_instances.numInstances();
+		int [] nSize = new int[nInstances];
+		boolean [] bActive = new boolean[nInstances];
+		Arrays.fill(nSize, 1);
+		Arrays.fill(bActive, true);
+		int [] iChain = new int[nInstances];
+		int nChain = 0;
+		int iFirst = 0;
+		for (int k = 0; k < nInstances - 1; k++) {
+			if (nChain == 0) {
+				while (!bActive[iFirst]) {
+					iFirst++;
+				}
+				iChain[nChain++] = iFirst;
+			}
+			// grow chain until reaching a reciprocal pair of nearest neighbours, 
+			// preferring the previous cluster in the chain on ties
+			int iCluster1;
+			int iCluster2;
+			double fMin;
+			while (true) {
+				iCluster1 = iChain[nChain - 1];
+				iCluster2 = -1;
+				fMin = Double.POSITIVE_INFINITY;
+				if (nChain > 1) {
+					iCluster2 = iChain[nChain - 2];
+					fMin = fDistance.get(iCluster1, iCluster2);
+				}
+				for (int i = 0; i < nInstances; i++) {
+					if (bActive[i] && i != iCluster1) {
+						double fDist = fDistance.get(iCluster1, i);
+						if (iCluster2 == -1 || fDist < fMin) {
+							fMin = fDist;
+							iCluster2 = i;
+						}
+					}
+				}
+				if (nChain > 1 && iCluster2 == iChain[nChain - 2]) {
+					break;
+				}
+				iChain[nChain++] = iCluster2;
+			}
+			nChain -= 2;
+
+			iMerge1[k] = iCluster1;
+			iMerge2[k] = iCluster2;
+			fMergeDist[k] = (m_nLinkType == WARD) ? Math.sqrt(Math.max(0, fMin)) : fMin;
+
+			// the merged cluster takes the place of the second one
+			int nSize1 = nSize[iCluster1];
+			int nSize2 = nSize[iCluster2];
+			for (int i = 0; i < nInstances; i++) {
+				if (bActive[i] && i != iCluster1 && i != iCluster2) {
+					double fDist1 = fDistance.get(iCluster1, i);
+					double fDist2 = fDistance.get(iCluster2, i);
+					double fDist = 0;
+					switch (m_nLinkType) {
+					case COMPLETE:
+						fDist = Math.max(fDist1, fDist2);
+						break;
+					case AVERAGE:
+						fDist = (nSize1 * fDist1 + nSize2 * fDist2) / (nSize1 + nSize2);
+						break;
+					case WARD:
+						fDist = ((nSize1 + nSize[i]) * fDist1 + (nSize2 + nSize[i]) * fDist2 - nSize[i] * fMin) 
+							/ (nSize1 + nSize2 + nSize[i]);
+						break;
+					}
+					fDistance.set(iCluster2, i, fDist);
+				}
+			}
+			bActive[iCluster1] = false;
+			nSize[iCluster2] = nSize1 + nSize2;
+		}
+	} // nearestNeighborChain
+
+	/** single link clustering through Prim's minimum spanning tree algorithm, which 
+	 * computes the distances on the fly and needs linear memory only. The update of 
+	 * the distances to the tree is spread over the execution slots.
+	 * @param iMerge1 receives the first instance of each edge
+	 * @param iMerge2 receives the second instance of each edge
+	 * @param fMergeDist receives the length of each edge
+	 */
+	void minimumSpanningTree(int [] iMerge1, int [] iMerge2, double [] fMergeDist) throws Exception {
+		final int nInstances = m_instances.numInstances();
+		final double [] fMinDist = new double[nInstances];
+		final int [] iNearest = new int[nInstances];
+		final boolean [] bInTree = new boolean[nInstances];
+		Arrays.fill(fMinDist, Double.POSITIVE_INFINITY);
+		if (m_executorPool != null && nInstances > 1) {
+			// the distance function initializes itself lazily, which must not happen concurrently
+			m_DistanceFunction.distance(m_instances.instance(0), m_instances.instance(1));
+		}
+		int iLast = 0;
+		bInTree[iLast] = true;
+		for (int k = 0; k < nInstances - 1; k++) {
+			int iBest;
+			if (m_executorPool == null) {
+				iBest = updateSpanningTree(iLast, 0, nInstances, fMinDist, iNearest, bInTree);
+			} else {
+				final int iNew = iLast;
+				Vector<Future<Integer>> futures = new Vector<Future<Integer>>();
+				for (int i = 1; i < m_nNumExecutionSlots; i++) {
+					final int iStart = (int) ((long) nInstances * i / m_nNumExecutionSlots);
+					final int iEnd = (int) ((long) nInstances * (i + 1) / m_nNumExecutionSlots);
+					futures.add(m_executorPool.submit(new Callable<Integer>() {
+						public Integer call() throws Exception {
+							return updateSpanningTree(iNew, iStart, iEnd, fMinDist, iNearest, bInTree);
+						}
+					}));
+				}
+				iBest = updateSpanningTree(iLast, 0, nInstances / m_nNumExecutionSlots, fMinDist, iNearest, bInTree);
+				for (int i = 0; i < futures.size(); i++) {
+					int iCandidate = waitFor(futures.elementAt(i));
+					if (iCandidate != -1 && (iBest == -1 || fMinDist[iCandidate] < fMinDist[iBest])) {
+						iBest = iCandidate;
+					}
+				}
+			}
+			iMerge1[k] = iNearest[iBest];
+			iMerge2[k] = iBest;
+			fMergeDist[k] = fMinDist[iBest];
+			bInTree[iBest] = true;
+			iLast = iBest;
+		}
+	} // minimumSpanningTree
+
+	/** updates the distances to the spanning tree after adding an instance to it
+	 * @param iLast the instance added to the tree
+	 * @param iStart the first instance to update
+	 * @param iEnd the instance after the last one to update
+	 * @param fMinDist the distance of each instance to the tree
+	 * @param iNearest the closest instance in the tree for each instance
+	 * @param bInTree whether an instance is in the tree
+	 * @return the instance closest to the tree in the range, -1 if all are in the tree
+	 */
+	int updateSpanningTree(int iLast, int iStart, int iEnd, double [] fMinDist, int [] iNearest, boolean [] bInTree) {
+		Instance last = m_instances.instance(iLast);
+		int iBest = -1;
+		for (int i = iStart; i < iEnd; i++) {
+			if (!bInTree[i]) {
+				double fDist = m_DistanceFunction.distance(last, m_instances.instance(i));
+				if (fDist < fMinDist[i]) {
+					fMinDist[i] = fDist;
+					iNearest[i] = iLast;
+				}
+				if (iBest == -1 || fMinDist[i] < fMinDist[iBest]) {
+					iBest = i;
+				}
+			}
+		}
+		return iBest;
+	} // updateSpanningTree
 	
 	/** calculate distance the first time when setting up the distance matrix **/
 	double getDistance0(Vector<Integer> cluster1, Vector<Integer> cluster2) {
@@ -584,7 +1010,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	 * @param cluster2 dito for second cluster
 	 * @return distance between clusters based on link type
 	 */
-	double getDistance(double [][] fDistance, Vector<Integer> cluster1, Vector<Integer> cluster2) {
+	double getDistance(DistanceMatrix fDistance, Vector<Integer> cluster1, Vector<Integer> cluster2) {
 		double fBestDist = Double.MAX_VALUE;
 		switch (m_nLinkType) {
 		case SINGLE:
@@ -595,7 +1021,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 				int i1 = cluster1.elementAt(i);
 				for (int j = 0; j < cluster2.size(); j++) {
 					int i2  = cluster2.elementAt(j);
-					double fDist = fDistance[i1][i2];
+					double fDist = fDistance.get(i1, i2);
 					if (fBestDist > fDist) {
 						fBestDist = fDist;
 					}
@@ -611,7 +1037,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 				int i1 = cluster1.elementAt(i);
 				for (int j = 0; j < cluster2.size(); j++) {
 					int i2 = cluster2.elementAt(j);
-					double fDist = fDistance[i1][i2];
+					double fDist = fDistance.get(i1, i2);
 					if (fBestDist < fDist) {
 						fBestDist = fDist;
 					}
@@ -626,7 +1052,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 				int i1 = cluster1.elementAt(i);
 				for (int j = i+1; j < cluster1.size(); j++) {
 					int i2 = cluster1.elementAt(j);
-					double fDist = fDistance[i1][i2];
+					double fDist = fDistance.get(i1, i2);
 					if (fMaxDist < fDist) {
 						fMaxDist = fDist;
 					}
@@ -636,7 +1062,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 				int i1 = cluster2.elementAt(i);
 				for (int j = i+1; j < cluster2.size(); j++) {
 					int i2 = cluster2.elementAt(j);
-					double fDist = fDistance[i1][i2];
+					double fDist = fDistance.get(i1, i2);
 					if (fMaxDist < fDist) {
 						fMaxDist = fDist;
 					}
@@ -651,7 +1077,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 				int i1 = cluster1.elementAt(i);
 				for (int j = 0; j < cluster2.size(); j++) {
 					int i2 = cluster2.elementAt(j);
-					fBestDist += fDistance[i1][i2];
+					fBestDist += fDistance.get(i1, i2);
 				}
 			}
 			fBestDist /= (cluster1.size() * cluster2.size());
@@ -667,7 +1093,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 					int i1 = merged.elementAt(i);
 					for (int j = i+1; j < merged.size(); j++) {
 						int i2 = merged.elementAt(j);
-						fBestDist += fDistance[i1][i2];
+						fBestDist += fDistance.get(i1, i2);
 					}
 				}
 				int n = merged.size();
@@ -812,7 +1238,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	   */
 	  public Enumeration listOptions() {
 
-	    Vector newVector = new Vector(8);
+	    Vector newVector = new Vector(9);
 	    newVector.addElement(new Option(
 	  	      "\tIf set, classifier is run in debug mode and\n"
 	  	      + "\tmay output additional info to the console",
@@ -836,6 +1262,17 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	    		"\tDistance function to use.\n"
 	    		+ "\t(default: weka.core.EuclideanDistance)",
 	    		"A", 1,"-A <classname and options>"));
+	    newVector.addElement(new Option(
+	    		"\tIf set, the nearest neighbour chain algorithm is used for the link types\n"
+	    		+ "\tComplete, Average and Ward, and a minimum spanning tree for Single link.",
+	    		"nn-chain", 0, "-nn-chain"));
+	    newVector.addElement(new Option(
+	    		"\tIf set, the distance matrix is stored in single precision.",
+	    		"float", 0, "-float"));
+	    newVector.addElement(new Option(
+	    		"\tNumber of execution slots used for computing the distances.\n"
+	    		+ "\t(default: 1 - i.e. no parallelism)",
+	    		"num-slots", 1, "-num-slots <num>"));
 	    return newVector.elements();
 	  }
 
@@ -864,6 +1301,16 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	    
         setDebug(Utils.getFlag('D', options));
         setDistanceIsBranchLength(Utils.getFlag('B', options));
+        setUseNNChain(Utils.getFlag("nn-chain", options));
+        setUseFloatMatrix(Utils.getFlag("float", options));
+
+	    optionString = Utils.getOption("num-slots", options);
+	    if (optionString.length() != 0) {
+	      setNumExecutionSlots(Integer.parseInt(optionString));
+	    }
+	    else {
+	      setNumExecutionSlots(1);
+	    }
 
 	    String sLinkType = Utils.getOption('L', options);
 
@@ -904,7 +1351,7 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	   */
 	  public String [] getOptions() {
 
-	    String [] options = new String [14];
+	    String [] options = new String [18];
 	    int current = 0;
 
 	    options[current++] = "-N";
@@ -930,6 +1377,16 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
         if (getDistanceIsBranchLength()) {
 	        options[current++] = "-B";
         }
+        if (getUseNNChain()) {
+	        options[current++] = "-nn-chain";
+        }
+        if (getUseFloatMatrix()) {
+	        options[current++] = "-float";
+        }
+        if (getNumExecutionSlots() > 1) {
+	        options[current++] = "-num-slots";
+	        options[current++] = "" + getNumExecutionSlots();
+        }
 	    
 		options[current++] = "-A";
 		options[current++] = (m_DistanceFunction.getClass().getName() + " " +
@@ -1013,6 +1470,32 @@ public class HierarchicalClusterer extends AbstractClusterer implements OptionHa
 	    return "If set to true, classifier may output additional info to " +
 	      "the console.";
 	  }
+	  /**
+	   * @return a string to describe the nearest neighbour chain flag
+	   */
+	  public String useNNChainTipText() {
+	    return "If set to true, the link types COMPLETE, AVERAGE and WARD use the nearest " +
+	    "neighbour chain algorithm, which needs no priority queue and runs in quadratic time. " +
+	    "SINGLE uses a minimum spanning tree instead, which needs no distance matrix either. " +
+	    "WARD is then based on squared distances, as in the usual Lance-Williams update.";
+	  }
+
+	  /**
+	   * @return a string to describe the float matrix flag
+	   */
+	  public String useFloatMatrixTipText() {
+	    return "If set to true, the distance matrix is stored in single precision, " +
+	    "which halves its memory footprint.";
+	  }
+
+	  /**
+	   * @return a string to describe the number of execution slots
+	   */
+	  public String numExecutionSlotsTipText() {
+	    return "The number of threads used for computing the distances between " +
+	    "the instances.";
+	  }
+
 	  /**
 	   * @return a string to describe the NumClusters
 	   */
@@ -0,0 +1,865 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MiniBatchKMeans.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+package weka.clusterers;
+
+import weka.classifiers.rules.DecisionTableHashKey;
+import weka.core.Capabilities;
+import weka.core.DenseInstance;
+import weka.core.DistanceFunction;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+import weka.core.WeightedInstancesHandler;
+import weka.core.Capabilities.Capability;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ * Cluster data using the mini-batch k means algorithm. The instances are processed as a stream, in mini-batches: the instances of a batch get assigned to their closest centroids, then each centroid moves towards its new members with a learning rate that decreases with the number of instances it has received, i.e., each centroid is the mean (or mode) of all the instances ever assigned to it. Apart from the current batch, only the centroids are kept in memory, so the data can be read incrementally, e.g., with ArffLoader.getNextInstance, and doesn't need to fit into memory. The initial centroids are chosen at random from the first batch, the same way as SimpleKMeans does for the full data. The distances are Euclidean distances, normalized with the ranges of the instances seen so far.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * D. Sculley: Web-scale k-means clustering. In: 19th International Conference on World Wide Web, 1177-1178, 2010.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;inproceedings{Sculley2010,
+ *    author = {D. Sculley},
+ *    booktitle = {19th International Conference on World Wide Web},
+ *    pages = {1177-1178},
+ *    publisher = {ACM},
+ *    title = {Web-scale k-means clustering},
+ *    year = {2010}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -N &lt;num&gt;
+ *  number of clusters.
+ *  (default 2).</pre>
+ *
+ * <pre> -B &lt;num&gt;
+ *  number of instances per mini-batch.
+ *  (default 100).</pre>
+ *
+ * <pre> -I &lt;num&gt;
+ *  number of passes over the data when training in batch mode.
+ *  (default 1).</pre>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Distance function to use, must be the Euclidean distance.
+ *  (default: weka.core.EuclideanDistance)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  Random number seed.
+ *  (default 10)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision$
+ * @see SimpleKMeans
+ */
+public class MiniBatchKMeans
+  extends RandomizableClusterer
+  implements NumberOfClustersRequestable, UpdateableClusterer,
+             WeightedInstancesHandler, TechnicalInformationHandler {
+
+  /** for serialization */
+  private static final long serialVersionUID = -3052483186216412867L;
+
+  /** number of clusters to generate */
+  protected int m_NumClusters = 2;
+
+  /** the number of instances per mini-batch */
+  protected int m_BatchSize = 100;
+
+  /** the number of passes over the data in batch training */
+  protected int m_NumPasses = 1;
+
+  /** the header of the training data */
+  protected Instances m_Header;
+
+  /** the instances of the current mini-batch */
+  protected Instances m_Batch;
+
+  /** the random number generator for choosing the initial centroids */
+  protected Random m_Random;
+
+  /** the distance function, only its ranges get updated during training */
+  protected EuclideanDistance m_DistanceFunction = new EuclideanDistance();
+
+  /** the ranges of the distance function, updated with each batch */
+  protected double[][] m_Ranges;
+
+  /** the cluster centroids, null if not initialized yet */
+  protected Instances m_ClusterCentroids;
+
+  /** the keys of the initial centroids, for telling duplicates apart */
+  protected HashMap<DecisionTableHashKey,Object> m_InitialKeys;
+
+  /** the means of the numeric attributes (the initial values for nominal ones) */
+  protected double[][] m_Means;
+
+  /** the sums of weights of the non-missing values per cluster and attribute */
+  protected double[][] m_Weights;
+
+  /** the sums of weights of the nominal values per cluster and attribute */
+  protected double[][][] m_ValueWeights;
+
+  /** the sums of weights of the instances per cluster */
+  protected double[] m_ClusterWeights;
+
+  /** the number of instances processed */
+  protected long m_NumInstances;
+
+  /** the sum of squared errors of the instances when they got assigned */
+  protected double m_SquaredError;
+
+  /**
+   * the default constructor
+   */
+  public MiniBatchKMeans() {
+    super();
+
+    m_SeedDefault = 10;
+    setSeed(m_SeedDefault);
+  }
+
+  /**
+   * Returns a string describing this clusterer
+   * @return a description of the evaluator suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return "Cluster data using the mini-batch k means algorithm. The "
+      + "instances are processed as a stream, in mini-batches: the instances "
+      + "of a batch get assigned to their closest centroids, then each "
+      + "centroid moves towards its new members with a learning rate that "
+      + "decreases with the number of instances it has received, i.e., each "
+      + "centroid is the mean (or mode) of all the instances ever assigned "
+      + "to it. Apart from the current batch, only the centroids are kept "
+      + "in memory, so the data can be read incrementally, e.g., with "
+      + "ArffLoader.getNextInstance, and doesn't need to fit into memory. "
+      + "The initial centroids are chosen at random from the first batch, "
+      + "the same way as SimpleKMeans does for the full data. The distances "
+      + "are Euclidean distances, normalized with the ranges of the instances "
+      + "seen so far.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing
+   * detailed information about the technical background of this class,
+   * e.g., paper reference or book this class is based on.
+   *
+   * @return the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation 	result;
+
+    result = new TechnicalInformation(Type.INPROCEEDINGS);
+    result.setValue(Field.AUTHOR, "D. Sculley");
+    result.setValue(Field.TITLE, "Web-scale k-means clustering");
+    result.setValue(Field.BOOKTITLE, "19th International Conference on World Wide Web");
+    result.setValue(Field.YEAR, "2010");
+    result.setValue(Field.PAGES, "1177-1178");
+    result.setValue(Field.PUBLISHER, "ACM");
+
+    return result;
+  }
+
+  /**
+   * Returns default capabilities of the clusterer.
+   *
+   * @return      the capabilities of this clusterer
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+    result.disableAll();
+    result.enable(Capability.NO_CLASS);
+
+    // attributes
+    result.enable(Capability.NOMINAL_ATTRIBUTES);
+    result.enable(Capability.NUMERIC_ATTRIBUTES);
+    result.enable(Capability.DATE_ATTRIBUTES);
+    result.enable(Capability.MISSING_VALUES);
+
+    // instances
+    result.setMinimumNumberInstances(0);
+
+    return result;
+  }
+
+  /**
+   * Generates a clusterer. Processes the given instances in the given
+   * order, as if they were added with updateClusterer. Passing an empty
+   * dataset only initializes the clusterer with the header.
+   *
+   * @param data set of instances serving as training data
+   * @throws Exception if the clusterer has not been
+   * generated successfully
+   */
+  public void buildClusterer(Instances data) throws Exception {
+
+    // can clusterer handle the data?
+    getCapabilities().testWithFail(data);
+
+    m_Header = new Instances(data, 0);
+    m_Batch = new Instances(data, m_BatchSize);
+    m_Random = new Random(getSeed());
+    m_Ranges = null;
+    m_ClusterCentroids = null;
+    m_InitialKeys = new HashMap<DecisionTableHashKey,Object>();
+    m_NumInstances = 0;
+    m_SquaredError = 0;
+
+    for (int n = 0; n < m_NumPasses && data.numInstances() > 0; n++) {
+      for (int i = 0; i < data.numInstances(); i++) {
+        updateClusterer(data.instance(i));
+      }
+    }
+
+    updateFinished();
+  }
+
+  /**
+   * Adds an instance to the clusterer. The centroids get updated
+   * once the current mini-batch is full.
+   *
+   * @param newInstance the instance to be added
+   * @throws Exception 	if something goes wrong
+   */
+  public void updateClusterer(Instance newInstance) throws Exception {
+    if (m_Header == null) {
+      throw new Exception("No model built yet, call buildClusterer first!");
+    }
+    if ((newInstance.dataset() != null)
+        && !m_Header.equalHeaders(newInstance.dataset())) {
+      throw new Exception("Instance is not compatible with the training data!");
+    }
+
+    m_Batch.add(newInstance);
+    if (m_Batch.numInstances() >= m_BatchSize) {
+      processBatch();
+    }
+  }
+
+  /**
+   * Signals the end of the updating, the instances of the last (partial)
+   * mini-batch get processed.
+   */
+  public void updateFinished() {
+    try {
+      processBatch();
+    } catch (Exception e) {
+      throw new IllegalStateException("Failed to process the last batch", e);
+    }
+  }
+
+  /**
+   * Chooses the initial centroids at random from the instances of the
+   * first mini-batch, the same way as SimpleKMeans does, and initializes
+   * the distance function with the ranges of the batch.
+   *
+   * @throws Exception if the initialization fails
+   * @see SimpleKMeans#chooseRandomCentroids(Instances, Random, int, Instances, HashMap)
+   */
+  protected void initialize() throws Exception {
+    Instances init = new Instances(m_Batch);
+    m_DistanceFunction.setInstances(init);
+    m_Ranges = m_DistanceFunction.getRanges();
+    // only the header and the ranges are needed from now on
+    init.delete();
+
+    int numAtts = m_Header.numAttributes();
+    m_ClusterCentroids = new Instances(m_Header, m_NumClusters);
+    m_Means = new double[m_NumClusters][];
+    m_Weights = new double[m_NumClusters][numAtts];
+    m_ValueWeights = new double[m_NumClusters][numAtts][];
+    m_ClusterWeights = new double[m_NumClusters];
+    for (int i = 0; i < m_NumClusters; i++) {
+      for (int j = 0; j < numAtts; j++) {
+        if (m_Header.attribute(j).isNominal()) {
+          m_ValueWeights[i][j] = new double[m_Header.attribute(j).numValues()];
+        }
+      }
+    }
+
+    Instances initial = new Instances(m_Header, m_NumClusters);
+    SimpleKMeans.chooseRandomCentroids(m_Batch, m_Random,
+                                       m_NumClusters, initial, m_InitialKeys);
+    for (int i = 0; i < initial.numInstances(); i++) {
+      addCentroid(initial.instance(i));
+    }
+  }
+
+  /**
+   * Makes an instance a new centroid, if not all centroids have been
+   * chosen yet and the instance doesn't duplicate another initial centroid.
+   *
+   * @param instance the instance
+   * @return the index of the new centroid, -1 if none got added
+   * @throws Exception if the instance can't be hashed
+   */
+  protected int addInitialCentroid(Instance instance) throws Exception {
+    if (m_ClusterCentroids.numInstances() == m_NumClusters) {
+      return -1;
+    }
+    DecisionTableHashKey hk = new DecisionTableHashKey(instance,
+                                                       instance.numAttributes(), true);
+    if (m_InitialKeys.containsKey(hk)) {
+      return -1;
+    }
+    m_InitialKeys.put(hk, null);
+    return addCentroid(instance);
+  }
+
+  /**
+   * Adds a centroid, initialized with the values of an instance.
+   *
+   * @param instance the instance
+   * @return the index of the new centroid
+   */
+  protected int addCentroid(Instance instance) {
+    int index = m_ClusterCentroids.numInstances();
+    m_Means[index] = instance.toDoubleArray();
+    m_ClusterCentroids.add(new DenseInstance(1.0, instance.toDoubleArray()));
+    if (m_ClusterCentroids.numInstances() == m_NumClusters) {
+      // not needed anymore
+      m_InitialKeys = null;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the closest centroid of an instance. The distances to the
+   * centroids are only calculated up to the smallest one so far.
+   *
+   * @param instance the instance
+   * @return the index of the closest centroid and the squared distance to it
+   */
+  protected double[] closest(Instance instance) {
+    double minDist = Double.MAX_VALUE;
+    int bestCluster = 0;
+    for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
+      // the squared distance, or infinity if larger than the cut-off value
+      double dist = m_DistanceFunction.distance(instance,
+                                                m_ClusterCentroids.instance(i), minDist);
+      if (dist < minDist) {
+        minDist = dist;
+        bestCluster = i;
+      }
+    }
+    return new double[]{bestCluster, minDist};
+  }
+
+  /**
+   * Processes the instances of the current mini-batch: assigns them to
+   * the centroids as they were at the start of the batch, then moves the
+   * centroids towards their new members.
+   *
+   * @throws Exception if processing fails
+   */
+  protected void processBatch() throws Exception {
+    if ((m_Batch == null) || (m_Batch.numInstances() == 0)) {
+      return;
+    }
+
+    if (m_ClusterCentroids == null) {
+      initialize();
+    } else {
+      for (int i = 0; i < m_Batch.numInstances(); i++) {
+        m_DistanceFunction.updateRanges(m_Batch.instance(i), m_Ranges.length, m_Ranges);
+      }
+    }
+
+    // assignment step
+    int[] assignments = new int[m_Batch.numInstances()];
+    for (int i = 0; i < m_Batch.numInstances(); i++) {
+      Instance instance = m_Batch.instance(i);
+      double[] closest = closest(instance);
+      assignments[i] = (int) closest[0];
+      if ((m_InitialKeys != null) && (closest[1] > 0)) {
+        // not enough distinct instances for the centroids so far
+        int index = addInitialCentroid(instance);
+        if (index > -1) {
+          assignments[i] = index;
+          continue;
+        }
+      }
+      m_SquaredError += instance.weight() * closest[1];
+    }
+
+    // update step
+    boolean[] changed = new boolean[m_ClusterCentroids.numInstances()];
+    for (int i = 0; i < m_Batch.numInstances(); i++) {
+      Instance instance = m_Batch.instance(i);
+      int c = assignments[i];
+      double weight = instance.weight();
+      m_NumInstances++;
+      if (weight <= 0) {
+        continue;
+      }
+      changed[c] = true;
+      m_ClusterWeights[c] += weight;
+      for (int j = 0; j < m_Header.numAttributes(); j++) {
+        if (instance.isMissing(j)) {
+          continue;
+        }
+        if (m_Header.attribute(j).isNominal()) {
+          m_ValueWeights[c][j][(int) instance.value(j)] += weight;
+        } else {
+          // the learning rate is the weight's share of all the weight so far
+          if (m_Weights[c][j] == 0) {
+            m_Means[c][j] = instance.value(j);
+          } else {
+            m_Means[c][j] += weight / (m_Weights[c][j] + weight)
+              * (instance.value(j) - m_Means[c][j]);
+          }
+          m_Weights[c][j] += weight;
+        }
+      }
+    }
+    for (int c = 0; c < changed.length; c++) {
+      if (changed[c]) {
+        updateCentroid(c);
+      }
+    }
+
+    m_Batch.delete();
+  }
+
+  /**
+   * Updates the centroid instance of a cluster from its statistics.
+   *
+   * @param c the index of the cluster
+   */
+  protected void updateCentroid(int c) {
+    Instance centroid = m_ClusterCentroids.instance(c);
+    for (int j = 0; j < m_Header.numAttributes(); j++) {
+      if (m_Header.attribute(j).isNominal()) {
+        if (Utils.sum(m_ValueWeights[c][j]) > 0) {
+          centroid.setValue(j, Utils.maxIndex(m_ValueWeights[c][j]));
+        }
+      } else {
+        centroid.setValue(j, m_Means[c][j]);
+      }
+    }
+  }
+
+  /**
+   * Classifies a given instance. Processes the current mini-batch first,
+   * if updateFinished hasn't been called.
+   *
+   * @param instance the instance to be assigned to a cluster
+   * @return the number of the assigned cluster as an interger
+   * if the class is enumerated, otherwise the predicted value
+   * @throws Exception if instance could not be classified
+   * successfully
+   */
+  public int clusterInstance(Instance instance) throws Exception {
+    processBatch();
+    if (m_ClusterCentroids == null) {
+      throw new Exception("No instances processed yet!");
+    }
+
+    return (int) closest(instance)[0];
+  }
+
+  /**
+   * Returns the number of clusters.
+   *
+   * @return the number of clusters generated for a training dataset.
+   * @throws Exception if number of clusters could not be returned
+   * successfully
+   */
+  public int numberOfClusters() throws Exception {
+    processBatch();
+    if (m_ClusterCentroids == null) {
+      return 0;
+    }
+
+    return m_ClusterCentroids.numInstances();
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector result = new Vector();
+
+    result.addElement(new Option(
+        "\tnumber of clusters.\n"
+        + "\t(default 2).",
+        "N", 1, "-N <num>"));
+
+    result.addElement(new Option(
+        "\tnumber of instances per mini-batch.\n"
+        + "\t(default 100).",
+        "B", 1, "-B <num>"));
+
+    result.addElement(new Option(
+        "\tnumber of passes over the data when training in batch mode.\n"
+        + "\t(default 1).",
+        "I", 1, "-I <num>"));
+
+    result.addElement(new Option(
+        "\tDistance function to use, must be the Euclidean distance.\n"
+        + "\t(default: weka.core.EuclideanDistance)",
+        "A", 1, "-A <classname and options>"));
+
+    Enumeration en = super.listOptions();
+    while (en.hasMoreElements())
+      result.addElement(en.nextElement());
+
+    return result.elements();
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numClustersTipText() {
+    return "set number of clusters";
+  }
+
+  /**
+   * set the number of clusters to generate
+   *
+   * @param n the number of clusters to generate
+   * @throws Exception if number of clusters is negative
+   */
+  public void setNumClusters(int n) throws Exception {
+    if (n <= 0) {
+      throw new Exception("Number of clusters must be > 0");
+    }
+    m_NumClusters = n;
+  }
+
+  /**
+   * gets the number of clusters to generate
+   *
+   * @return the number of clusters to generate
+   */
+  public int getNumClusters() {
+    return m_NumClusters;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String batchSizeTipText() {
+    return "The number of instances per mini-batch. The instances of a batch "
+      + "get assigned to the centroids as they were at the start of the batch; "
+      + "the first batch provides the initial centroids.";
+  }
+
+  /**
+   * set the number of instances per mini-batch
+   *
+   * @param n the number of instances
+   * @throws Exception if the number is smaller than 1
+   */
+  public void setBatchSize(int n) throws Exception {
+    if (n <= 0) {
+      throw new Exception("Batch size must be > 0");
+    }
+    m_BatchSize = n;
+  }
+
+  /**
+   * gets the number of instances per mini-batch
+   *
+   * @return the number of instances
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numPassesTipText() {
+    return "The number of passes over the data when training in batch mode, "
+      + "i.e., with buildClusterer.";
+  }
+
+  /**
+   * set the number of passes over the data in batch training
+   *
+   * @param n the number of passes
+   * @throws Exception if the number is smaller than 1
+   */
+  public void setNumPasses(int n) throws Exception {
+    if (n <= 0) {
+      throw new Exception("Number of passes must be > 0");
+    }
+    m_NumPasses = n;
+  }
+
+  /**
+   * gets the number of passes over the data in batch training
+   *
+   * @return the number of passes
+   */
+  public int getNumPasses() {
+    return m_NumPasses;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   *         		displaying in the explorer/experimenter gui
+   */
+  public String distanceFunctionTipText() {
+    return "The distance function to use for instances comparison, only the "
+      + "Euclidean distance is supported, as the centroids are means "
+      + "(default: weka.core.EuclideanDistance). ";
+  }
+
+  /**
+   * returns the distance function currently in use.
+   *
+   * @return the distance function
+   */
+  public DistanceFunction getDistanceFunction() {
+    return m_DistanceFunction;
+  }
+
+  /**
+   * sets the distance function to use for instance comparison.
+   *
+   * @param df the new distance function to use
+   * @throws Exception if the distance function is not the Euclidean distance
+   */
+  public void setDistanceFunction(DistanceFunction df) throws Exception {
+    if (!(df instanceof EuclideanDistance)) {
+      throw new Exception("MiniBatchKMeans only supports the Euclidean distance, "
+                          + "as the centroids are means.");
+    }
+    m_DistanceFunction = (EuclideanDistance) df;
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -N &lt;num&gt;
+   *  number of clusters.
+   *  (default 2).</pre>
+   *
+   * <pre> -B &lt;num&gt;
+   *  number of instances per mini-batch.
+   *  (default 100).</pre>
+   *
+   * <pre> -I &lt;num&gt;
+   *  number of passes over the data when training in batch mode.
+   *  (default 1).</pre>
+   *
+   * <pre> -A &lt;classname and options&gt;
+   *  Distance function to use, must be the Euclidean distance.
+   *  (default: weka.core.EuclideanDistance)</pre>
+   *
+   * <pre> -S &lt;num&gt;
+   *  Random number seed.
+   *  (default 10)</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    tmpStr = Utils.getOption('N', options);
+    if (tmpStr.length() != 0)
+      setNumClusters(Integer.parseInt(tmpStr));
+    else
+      setNumClusters(2);
+
+    tmpStr = Utils.getOption('B', options);
+    if (tmpStr.length() != 0)
+      setBatchSize(Integer.parseInt(tmpStr));
+    else
+      setBatchSize(100);
+
+    tmpStr = Utils.getOption('I', options);
+    if (tmpStr.length() != 0)
+      setNumPasses(Integer.parseInt(tmpStr));
+    else
+      setNumPasses(1);
+
+    tmpStr = Utils.getOption('A', options);
+    if (tmpStr.length() != 0) {
+      String[] distFunctionClassSpec = Utils.splitOptions(tmpStr);
+      if (distFunctionClassSpec.length == 0) {
+        throw new Exception("Invalid DistanceFunction specification string.");
+      }
+      String className = distFunctionClassSpec[0];
+      distFunctionClassSpec[0] = "";
+
+      setDistanceFunction((DistanceFunction)
+                          Utils.forName(DistanceFunction.class,
+                                        className, distFunctionClassSpec));
+    } else {
+      setDistanceFunction(new EuclideanDistance());
+    }
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Gets the current settings of the clusterer.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    String[]		options;
+
+    result = new Vector<String>();
+
+    result.add("-N");
+    result.add("" + getNumClusters());
+
+    result.add("-B");
+    result.add("" + getBatchSize());
+
+    result.add("-I");
+    result.add("" + getNumPasses());
+
+    result.add("-A");
+    result.add((m_DistanceFunction.getClass().getName() + " "
+                + Utils.joinOptions(m_DistanceFunction.getOptions())).trim());
+
+    options = super.getOptions();
+    for (int i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * return a string describing this clusterer
+   *
+   * @return a description of the clusterer as a string
+   */
+  public String toString() {
+    if (m_ClusterCentroids == null) {
+      return "No clusterer built yet!";
+    }
+
+    StringBuffer temp = new StringBuffer();
+
+    temp.append("\nMini-batch kMeans\n=================\n");
+    temp.append("\nNumber of clusters: " + m_ClusterCentroids.numInstances());
+    temp.append("\nNumber of instances processed: " + m_NumInstances);
+    temp.append("\nSum of squared errors when assigned: "
+                + Utils.doubleToString(m_SquaredError, 4) + "\n");
+
+    temp.append("\nCluster centroids:\n");
+    for (int i = 0; i < m_ClusterCentroids.numInstances(); i++) {
+      temp.append("\nCluster " + i + " ("
+                  + Utils.doubleToString(m_ClusterWeights[i], 2) + ")\n\t");
+      for (int j = 0; j < m_ClusterCentroids.numAttributes(); j++) {
+        Instance centroid = m_ClusterCentroids.instance(i);
+        if (centroid.isMissing(j)) {
+          temp.append(" ?");
+        } else if (m_ClusterCentroids.attribute(j).isNominal()) {
+          temp.append(" " + m_ClusterCentroids.attribute(j).value((int) centroid.value(j)));
+        } else {
+          temp.append(" " + Utils.doubleToString(centroid.value(j), 4));
+        }
+      }
+    }
+    temp.append("\n\n");
+
+    return temp.toString();
+  }
+
+  /**
+   * Returns the cluster centroids.
+   *
+   * @return the cluster centroids
+   */
+  public Instances getClusterCentroids() {
+    return m_ClusterCentroids;
+  }
+
+  /**
+   * Returns the sums of weights of the instances assigned to each cluster.
+   *
+   * @return the sums of weights
+   */
+  public double[] getClusterWeights() {
+    return m_ClusterWeights;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Main method for testing this class.
+   *
+   * @param argv should contain the following arguments: <p>
+   * -t training file [-N number of clusters]
+   */
+  public static void main(String[] argv) {
+    runClusterer(new MiniBatchKMeans(), argv);
+  }
+}
@@ -563,8 +563,13 @@ public class OPTICS
 
         Constructor co = null;
         try {
-            co = (Class.forName(database_Type)).getConstructor(new Class[]{Instances.class});
+            String[] databaseSpec = Utils.splitOptions(database_Type);
+            co = (Class.forName(databaseSpec[0])).getConstructor(new Class[]{Instances.class});
             o = co.newInstance(new Object[]{instances});
+            if (o instanceof OptionHandler) {
+                databaseSpec[0] = "";
+                ((OptionHandler) o).setOptions(databaseSpec);
+            }
         } catch (NoSuchMethodException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
@@ -577,6 +582,8 @@ public class OPTICS
             e.printStackTrace();
         } catch (InvocationTargetException e) {
             e.printStackTrace();
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
         return (Database) o;
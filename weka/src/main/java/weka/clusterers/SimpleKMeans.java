@@ -42,6 +42,11 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -78,6 +83,14 @@ import java.util.Vector;
  * <pre> -O 
  *  Preserve order of instances. </pre>
  * 
+ * <pre> -fast
+ *  Uses triangle inequality bounds to skip distance calculations
+ *  during training (Euclidean distance, no missing values).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  * 
  <!-- options-end -->
  *
@@ -174,6 +187,21 @@ public class SimpleKMeans
    * Assignments obtained
    */
   protected int[] m_Assignments = null;
+
+  /**
+   * Whether to use triangle inequality bounds to skip distance calculations
+   */
+  protected boolean m_FastDistanceCalc = false;
+
+  /**
+   * The number of execution slots (threads) to use for training
+   */
+  protected int m_executionSlots = 1;
+
+  /**
+   * The thread pool used during training
+   */
+  protected transient ExecutorService m_executorPool;
 	
   /**
    * the default constructor
@@ -194,7 +222,11 @@ public class SimpleKMeans
     return "Cluster data using the k means algorithm. Can use either "
       + "the Euclidean distance (default) or the Manhattan distance."
       + " If the Manhattan distance is used, then centroids are computed "
-      + "as the component-wise median rather than mean.";
+      + "as the component-wise median rather than mean. The instances "
+      + "can be assigned to the clusters by several threads, and with the "
+      + "Euclidean distance, bounds based on the triangle inequality can "
+      + "be used to skip most of the distance calculations once the "
+      + "centroids settle down.";
   }
 
   /**
@@ -231,9 +263,14 @@ public class SimpleKMeans
     m_Iterations = 0;
 
     m_ReplaceMissingFilter = new ReplaceMissingValues();
-    Instances instances = new Instances(data);
-				
-    instances.setClassIndex(-1);
+    // the data only gets copied if it has to be changed, e.g., the medians
+    // for the Manhattan distance sort it when preserving the order
+    Instances instances = data;
+    if ((data.classIndex() >= 0) 
+        || (m_PreserveOrder && (m_DistanceFunction instanceof ManhattanDistance))) {
+      instances = new Instances(data);
+      instances.setClassIndex(-1);
+    }
     if (!m_dontReplaceMissing) {
       m_ReplaceMissingFilter.setInputFormat(instances);
       instances = Filter.useFilter(instances, m_ReplaceMissingFilter);
@@ -272,36 +309,10 @@ public class SimpleKMeans
 		
     m_DistanceFunction.setInstances(instances);
     
-    Random RandomO = new Random(getSeed());
-    int instIndex;
-    HashMap initC = new HashMap();
-    DecisionTableHashKey hk = null;
-
-    Instances initInstances = null;
-    if(m_PreserveOrder)
-      initInstances = new Instances(instances);
-    else
-      initInstances = instances;
-		
-    for (int j = initInstances.numInstances() - 1; j >= 0; j--) {
-      instIndex = RandomO.nextInt(j+1);
-      hk = new DecisionTableHashKey(initInstances.instance(instIndex),
-                                    initInstances.numAttributes(), true);
-      if (!initC.containsKey(hk)) {
-        m_ClusterCentroids.add(initInstances.instance(instIndex));
-	initC.put(hk, null);
-      }
-      initInstances.swap(j, instIndex);
-      
-      if (m_ClusterCentroids.numInstances() == m_NumClusters) {
-	break;
-      }
-    }
+    chooseRandomCentroids(instances, new Random(getSeed()), m_NumClusters,
+                          m_ClusterCentroids, new HashMap());
 
     m_NumClusters = m_ClusterCentroids.numInstances();
-    
-    //removing reference
-    initInstances = null;
 		
     int i;
     boolean converged = false;
@@ -310,6 +321,20 @@ public class SimpleKMeans
     m_squaredErrors = new double [m_NumClusters];
     m_ClusterNominalCounts = new int [m_NumClusters][instances.numAttributes()][0];
     m_ClusterMissingCounts = new int[m_NumClusters][instances.numAttributes()];
+    if (m_executionSlots > 1 || m_FastDistanceCalc) {
+      if (m_executionSlots > 1) {
+        m_executorPool = Executors.newFixedThreadPool(m_executionSlots);
+      }
+      try {
+        tempI = runWorkers(instances, clusterAssignments);
+      } finally {
+        if (m_executorPool != null) {
+          m_executorPool.shutdownNow();
+          m_executorPool = null;
+        }
+      }
+      converged = true;
+    }
     while (!converged) {
       emptyClusterCount = 0;
       m_Iterations++;
@@ -385,6 +410,45 @@ public class SimpleKMeans
     }
   }
 
+  /**
+   * Chooses distinct instances at random as the initial centroids, until
+   * the given number of centroids is reached or the instances run out.
+   * Duplicates are recognized by their hash keys. The instances are drawn
+   * from a shuffled index, they don't get reordered.
+   *
+   * @param instances the instances to choose from
+   * @param random the random number generator
+   * @param numClusters the number of centroids to reach
+   * @param centroids the centroids chosen so far, the new ones get added
+   * @param keys the hash keys of the centroids chosen so far, the keys of
+   * the new ones get added
+   * @throws Exception if an instance can't be hashed
+   */
+  protected static void chooseRandomCentroids(Instances instances, Random random,
+                                              int numClusters, Instances centroids,
+                                              HashMap keys) throws Exception {
+    int instIndex;
+    DecisionTableHashKey hk = null;
+
+    int[] index = new int[instances.numInstances()];
+    for (int j = 0; j < index.length; j++) {
+      index[j] = j;
+    }
+    for (int j = index.length - 1; j >= 0; j--) {
+      if (centroids.numInstances() >= numClusters) {
+	break;
+      }
+      instIndex = random.nextInt(j+1);
+      hk = new DecisionTableHashKey(instances.instance(index[instIndex]),
+                                    instances.numAttributes(), true);
+      if (!keys.containsKey(hk)) {
+        centroids.add(instances.instance(index[instIndex]));
+	keys.put(hk, null);
+      }
+      index[instIndex] = index[j];
+    }
+  }
+
   /**
    * Move the centroid to it's new coordinates. Generate the centroid coordinates based 
    * on it's  members (objects assigned to the cluster of the centroid) and the distance 
@@ -456,6 +520,481 @@ public class SimpleKMeans
     return vals;
   }
 	
+  /**
+   * Assigns a range of the training instances to their closest centroids
+   * and sums up the statistics of the clusters for computing the new
+   * centroids. Each execution slot uses its own worker, the partial sums
+   * of the workers get added up afterwards. If bounds are kept, an upper
+   * bound on the distance to the assigned centroid and a lower bound on
+   * the distance to all the other centroids allow to skip the distance
+   * calculations for an instance (Hamerly's algorithm).
+   */
+  protected class KMeansWorker {
+
+    /** the training instances */
+    protected Instances m_Data;
+
+    /** the cluster assignments of all the instances */
+    protected int[] m_Assigned;
+
+    /** the upper bounds of all the instances, null if not kept */
+    protected double[] m_Upper;
+
+    /** the lower bounds of all the instances, null if not kept */
+    protected double[] m_Lower;
+
+    /** the first instance of the range */
+    protected int m_Start;
+
+    /** the index after the last instance of the range */
+    protected int m_End;
+
+    /** whether any instance changed its cluster */
+    protected boolean m_Changed;
+
+    /** the errors per cluster */
+    protected double[] m_Errors;
+
+    /** the number of instances per cluster */
+    protected int[] m_Sizes;
+
+    /** the weighted sums of the numeric values per cluster and attribute */
+    protected double[][] m_Sums;
+
+    /** the sums of weights of the non-missing values per cluster and attribute */
+    protected double[][] m_Weights;
+
+    /** the number of missing values per cluster and attribute */
+    protected int[][] m_Missing;
+
+    /** the counts of the nominal values per cluster and attribute */
+    protected int[][][] m_Counts;
+
+    /** the weighted counts of the nominal values, as used for the mode */
+    protected int[][][] m_ModeCounts;
+
+    /**
+     * Initializes the worker.
+     *
+     * @param data the training instances
+     * @param assigned the cluster assignments of all the instances
+     * @param upper the upper bounds, null if not kept
+     * @param lower the lower bounds, null if not kept
+     * @param start the first instance of the range
+     * @param end the index after the last instance of the range
+     */
+    public KMeansWorker(Instances data, int[] assigned, double[] upper, 
+                        double[] lower, int start, int end) {
+      m_Data = data;
+      m_Assigned = assigned;
+      m_Upper = upper;
+      m_Lower = lower;
+      m_Start = start;
+      m_End = end;
+    }
+
+    /**
+     * Returns the closest centroid of an instance, the same way as
+     * clusterProcessedInstance does. Updates the bounds if they are kept.
+     *
+     * @param index the index of the instance
+     * @param centroids the centroids
+     * @return the index of the closest centroid
+     */
+    protected int closest(int index, Instances centroids) {
+      Instance instance = m_Data.instance(index);
+      double minDist = Integer.MAX_VALUE;
+      double secondDist = Integer.MAX_VALUE;
+      int bestCluster = 0;
+      for (int i = 0; i < centroids.numInstances(); i++) {
+        double dist = m_DistanceFunction.distance(instance, centroids.instance(i));
+        if (dist < minDist) {
+          secondDist = minDist;
+          minDist = dist;
+          bestCluster = i;
+        } else if (dist < secondDist) {
+          secondDist = dist;
+        }
+      }
+      if (m_Upper != null) {
+        m_Upper[index] = minDist;
+        m_Lower[index] = secondDist;
+      }
+      if (m_DistanceFunction instanceof EuclideanDistance) {
+        minDist *= minDist;
+      }
+      m_Errors[bestCluster] += minDist;
+      return bestCluster;
+    }
+
+    /**
+     * Assigns the instances of the range to their closest centroids and
+     * sums up the statistics of the clusters.
+     *
+     * @param centroids the centroids
+     * @param shifts how far each centroid moved in the last update, null
+     * to calculate the distances to all centroids
+     * @param halfDists half the distance of each centroid to its closest
+     * other centroid, null if shifts is null
+     * @param sums whether to sum up the statistics of the clusters
+     */
+    public void assign(Instances centroids, double[] shifts, 
+                       double[] halfDists, boolean sums) {
+      int numClusters = centroids.numInstances();
+      int numAtts = m_Data.numAttributes();
+
+      // the largest shifts, for updating the lower bounds
+      int maxIndex = -1;
+      double maxShift = 0;
+      double secondShift = 0;
+      if (shifts != null) {
+        for (int i = 0; i < numClusters; i++) {
+          if (shifts[i] > maxShift) {
+            secondShift = maxShift;
+            maxShift = shifts[i];
+            maxIndex = i;
+          } else if (shifts[i] > secondShift) {
+            secondShift = shifts[i];
+          }
+        }
+      }
+
+      m_Changed = false;
+      m_Errors = new double[numClusters];
+      m_Sizes = new int[numClusters];
+      if (sums) {
+        m_Sums = new double[numClusters][numAtts];
+        m_Weights = new double[numClusters][numAtts];
+        m_Missing = new int[numClusters][numAtts];
+        m_Counts = new int[numClusters][numAtts][];
+        m_ModeCounts = new int[numClusters][numAtts][];
+        for (int i = 0; i < numClusters; i++) {
+          for (int j = 0; j < numAtts; j++) {
+            if (m_Data.attribute(j).isNominal()) {
+              m_Counts[i][j] = new int[m_Data.attribute(j).numValues()];
+              m_ModeCounts[i][j] = new int[m_Data.attribute(j).numValues()];
+            }
+          }
+        }
+      }
+
+      for (int n = m_Start; n < m_End; n++) {
+        int newC;
+        if (shifts == null) {
+          newC = closest(n, centroids);
+        } else {
+          newC = m_Assigned[n];
+          m_Upper[n] += shifts[newC];
+          m_Lower[n] -= (newC == maxIndex) ? secondShift : maxShift;
+          double bound = Math.max(halfDists[newC], m_Lower[n]);
+          if (m_Upper[n] >= bound) {
+            m_Upper[n] = m_DistanceFunction.distance(m_Data.instance(n), 
+                                                     centroids.instance(newC));
+            if (m_Upper[n] >= bound) {
+              newC = closest(n, centroids);
+            }
+          }
+        }
+        if (newC != m_Assigned[n]) {
+          m_Changed = true;
+        }
+        m_Assigned[n] = newC;
+        m_Sizes[newC]++;
+
+        if (sums) {
+          Instance instance = m_Data.instance(n);
+          for (int j = 0; j < numAtts; j++) {
+            if (instance.isMissing(j)) {
+              m_Missing[newC][j]++;
+            } else if (m_Data.attribute(j).isNominal()) {
+              m_Counts[newC][j][(int) instance.value(j)]++;
+              m_ModeCounts[newC][j][(int) instance.value(j)] += instance.weight();
+            } else {
+              m_Weights[newC][j] += instance.weight();
+              m_Sums[newC][j] += instance.weight() * instance.value(j);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Calculates the errors of the instances of the range with respect
+     * to the centroids they are assigned to.
+     *
+     * @param centroids the centroids
+     */
+    public void errors(Instances centroids) {
+      m_Errors = new double[centroids.numInstances()];
+      m_Sizes = null;
+      m_Sums = null;
+      for (int n = m_Start; n < m_End; n++) {
+        double dist = m_DistanceFunction.distance(m_Data.instance(n), 
+                                                  centroids.instance(m_Assigned[n]));
+        m_Errors[m_Assigned[n]] += dist * dist;
+      }
+    }
+
+    /**
+     * Adds the statistics of another worker to the ones of this worker.
+     *
+     * @param other the other worker
+     */
+    public void add(KMeansWorker other) {
+      m_Changed |= other.m_Changed;
+      for (int i = 0; i < m_Errors.length; i++) {
+        m_Errors[i] += other.m_Errors[i];
+      }
+      if (m_Sizes == null) {
+        return;
+      }
+      for (int i = 0; i < m_Sizes.length; i++) {
+        m_Sizes[i] += other.m_Sizes[i];
+        if (m_Sums == null) {
+          continue;
+        }
+        for (int j = 0; j < m_Sums[i].length; j++) {
+          m_Sums[i][j] += other.m_Sums[i][j];
+          m_Weights[i][j] += other.m_Weights[i][j];
+          m_Missing[i][j] += other.m_Missing[i][j];
+          if (m_Counts[i][j] != null) {
+            for (int v = 0; v < m_Counts[i][j].length; v++) {
+              m_Counts[i][j][v] += other.m_Counts[i][j][v];
+              m_ModeCounts[i][j][v] += other.m_ModeCounts[i][j][v];
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Moves a centroid to the mean/mode of its members, using the summed
+     * up statistics. Gives the same result as moveCentroid for the
+     * Euclidean distance.
+     *
+     * @param centroidIndex the index of the centroid
+     */
+    public void moveCentroid(int centroidIndex) {
+      double[] vals = new double[m_Data.numAttributes()];
+      for (int j = 0; j < m_Data.numAttributes(); j++) {
+        m_ClusterMissingCounts[centroidIndex][j] = m_Missing[centroidIndex][j];
+        m_ClusterNominalCounts[centroidIndex][j] = m_Counts[centroidIndex][j];
+        if (m_Data.attribute(j).isNominal()) {
+          vals[j] = Utils.maxIndex(m_ModeCounts[centroidIndex][j]);
+          if (m_Missing[centroidIndex][j] > 
+              m_Counts[centroidIndex][j][Utils.maxIndex(m_Counts[centroidIndex][j])]) {
+            vals[j] = Utils.missingValue(); // mark mode as missing
+          }
+        } else {
+          if (m_Weights[centroidIndex][j] > 0) {
+            vals[j] = m_Sums[centroidIndex][j] / m_Weights[centroidIndex][j];
+          }
+          if (m_Missing[centroidIndex][j] == m_Sizes[centroidIndex]) {
+            vals[j] = Utils.missingValue(); // mark mean as missing
+          }
+        }
+      }
+      m_ClusterCentroids.add(new DenseInstance(1.0, vals));
+    }
+  }
+
+  /**
+   * Runs the workers for one step, using the thread pool if available,
+   * and adds up their statistics in the first worker.
+   *
+   * @param workers the workers
+   * @param centroids the centroids
+   * @param shifts the shifts of the centroids, null for no bounds
+   * @param halfDists half the distances to the closest other centroids
+   * @param sums whether to sum up the statistics of the clusters
+   * @param errorsOnly whether to only calculate the errors of the 
+   * current assignments
+   * @throws Exception if a worker fails
+   */
+  protected void runStep(final KMeansWorker[] workers, final Instances centroids, 
+                         final double[] shifts, final double[] halfDists, 
+                         final boolean sums, final boolean errorsOnly) 
+    throws Exception {
+
+    Future<Object>[] results = new Future[workers.length];
+    for (int i = 1; i < workers.length; i++) {
+      final KMeansWorker worker = workers[i];
+      results[i] = m_executorPool.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            if (errorsOnly) {
+              worker.errors(centroids);
+            } else {
+              worker.assign(centroids, shifts, halfDists, sums);
+            }
+            return null;
+          }
+        });
+    }
+    if (errorsOnly) {
+      workers[0].errors(centroids);
+    } else {
+      workers[0].assign(centroids, shifts, halfDists, sums);
+    }
+    for (int i = 1; i < workers.length; i++) {
+      try {
+        results[i].get();
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof Exception) {
+          throw (Exception) e.getCause();
+        }
+        throw e;
+      }
+      workers[0].add(workers[i]);
+    }
+  }
+
+  /**
+   * Runs the k-means iterations with workers that assign the instances
+   * in parallel and sum up the statistics of the clusters, skipping
+   * distance calculations with bounds if requested.
+   *
+   * @param instances the training instances
+   * @param clusterAssignments the array for the cluster assignments
+   * @return the members of the final clusters
+   * @throws Exception if a worker fails
+   */
+  protected Instances[] runWorkers(Instances instances, int[] clusterAssignments) 
+    throws Exception {
+
+    // the centroids are the mean/mode only with the Euclidean distance
+    boolean sums = (m_DistanceFunction instanceof EuclideanDistance);
+
+    // the bounds require a metric, missing values aren't handled like one
+    boolean bounded = m_FastDistanceCalc && sums;
+    for (int i = 0; bounded && i < instances.numInstances(); i++) {
+      if (instances.instance(i).hasMissingValue()) {
+        bounded = false;
+      }
+    }
+    double[] upper = null;
+    double[] lower = null;
+    if (bounded) {
+      upper = new double[instances.numInstances()];
+      lower = new double[instances.numInstances()];
+    }
+
+    int numWorkers = (m_executorPool == null) ? 1 : m_executionSlots;
+    numWorkers = Math.max(1, Math.min(numWorkers, instances.numInstances()));
+    KMeansWorker[] workers = new KMeansWorker[numWorkers];
+    for (int i = 0; i < numWorkers; i++) {
+      workers[i] = new KMeansWorker(instances, clusterAssignments, upper, lower,
+        (int) ((long) instances.numInstances() * i / numWorkers),
+        (int) ((long) instances.numInstances() * (i + 1) / numWorkers));
+    }
+
+    // make sure the distance function is initialized before it is 
+    // used by several threads
+    if (instances.numInstances() > 0) {
+      m_DistanceFunction.distance(instances.instance(0), instances.instance(0));
+    }
+
+    boolean converged = false;
+    int emptyClusterCount;
+    Instances lastCentroids = null;
+    double[] shifts = null;
+    double[] halfDists = null;
+    while (!converged) {
+      emptyClusterCount = 0;
+      m_Iterations++;
+      runStep(workers, m_ClusterCentroids, shifts, halfDists, sums, false);
+      converged = !workers[0].m_Changed;
+      for (int i = 0; i < m_NumClusters; i++) {
+        m_squaredErrors[i] += workers[0].m_Errors[i];
+      }
+
+      // update centroids
+      lastCentroids = m_ClusterCentroids;
+      m_ClusterCentroids = new Instances(instances, m_NumClusters);
+      if (sums) {
+        for (int i = 0; i < m_NumClusters; i++) {
+          if (workers[0].m_Sizes[i] == 0) {
+            // empty cluster
+            emptyClusterCount++;
+          } else {
+            workers[0].moveCentroid(i);
+          }
+        }
+      } else {
+        Instances[] tempI = new Instances[m_NumClusters];
+        for (int i = 0; i < m_NumClusters; i++) {
+          tempI[i] = new Instances(instances, workers[0].m_Sizes[i]);
+        }
+        for (int i = 0; i < instances.numInstances(); i++) {
+          tempI[clusterAssignments[i]].add(instances.instance(i));
+        }
+        for (int i = 0; i < m_NumClusters; i++) {
+          if (tempI[i].numInstances() == 0) {
+            // empty cluster
+            emptyClusterCount++;
+          } else {
+            moveCentroid(i, tempI[i], true);
+          }
+        }
+      }
+
+      shifts = null;
+      halfDists = null;
+      if (emptyClusterCount > 0) {
+        // the bounds refer to the old clusters, start over
+        m_NumClusters -= emptyClusterCount;
+      } else if (bounded) {
+        shifts = new double[m_NumClusters];
+        halfDists = new double[m_NumClusters];
+        for (int i = 0; i < m_NumClusters; i++) {
+          shifts[i] = m_DistanceFunction.distance(lastCentroids.instance(i), 
+                                                  m_ClusterCentroids.instance(i));
+          halfDists[i] = Double.MAX_VALUE;
+        }
+        for (int i = 0; i < m_NumClusters; i++) {
+          for (int j = i + 1; j < m_NumClusters; j++) {
+            double dist = m_DistanceFunction.distance(m_ClusterCentroids.instance(i),
+                                                      m_ClusterCentroids.instance(j)) / 2;
+            halfDists[i] = Math.min(halfDists[i], dist);
+            halfDists[j] = Math.min(halfDists[j], dist);
+          }
+        }
+      }
+
+      if (m_Iterations == m_MaxIterations) {
+        converged = true;
+      }
+
+      if (!converged) {
+        m_squaredErrors = new double [m_NumClusters];
+        m_ClusterNominalCounts = new int [m_NumClusters][instances.numAttributes()][0];
+      }
+    }
+
+    // the errors of the skipped instances are only known by their bounds
+    if (bounded) {
+      runStep(workers, lastCentroids, null, null, false, true);
+      m_squaredErrors = workers[0].m_Errors;
+    }
+
+    // collect the members of the non-empty clusters
+    Instances[] tempI = new Instances[lastCentroids.numInstances()];
+    for (int i = 0; i < tempI.length; i++) {
+      tempI[i] = new Instances(instances, 0);
+    }
+    for (int i = 0; i < instances.numInstances(); i++) {
+      tempI[clusterAssignments[i]].add(instances.instance(i));
+    }
+    Instances[] result = new Instances[m_NumClusters];
+    int index = 0;
+    for (int i = 0; i < tempI.length; i++) {
+      if (tempI[i].numInstances() > 0) {
+        result[index++] = tempI[i];
+      }
+    }
+
+    return result;
+  }
+
   /**
    * clusters an instance that has been through the filters
    *
@@ -547,6 +1086,16 @@ public class SimpleKMeans
     result.addElement(new Option(
                                  "\tPreserve order of instances.\n", 
                                  "O", 0, "-O"));
+
+    result.addElement(new Option(
+                                 "\tUses triangle inequality bounds to skip distance calculations\n"
+                                 + "\tduring training (Euclidean distance, no missing values).", 
+                                 "fast", 0, "-fast"));
+
+    result.addElement(new Option(
+                                 "\tNumber of execution slots.\n"
+                                 + "\t(default 1 - i.e. no parallelism)", 
+                                 "num-slots", 1, "-num-slots <num>"));
 		
     Enumeration en = super.listOptions();
     while (en.hasMoreElements())
@@ -742,6 +1291,68 @@ public class SimpleKMeans
   public boolean getPreserveInstancesOrder() {
     return m_PreserveOrder;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String fastDistanceCalcTipText() {
+    return "Uses bounds based on the triangle inequality to skip most of the "
+      + "distance calculations during training, once the centroids settle "
+      + "down. Only possible with the Euclidean distance and data without "
+      + "missing values, otherwise all the distances get calculated.";
+  }
+
+  /**
+   * Sets whether to use bounds for skipping distance calculations
+   *
+   * @param value true if bounds are to be used
+   */
+  public void setFastDistanceCalc(boolean value) {
+    m_FastDistanceCalc = value;
+  }
+
+  /**
+   * Gets whether bounds are used for skipping distance calculations
+   *
+   * @return true if bounds are used
+   */
+  public boolean getFastDistanceCalc() {
+    return m_FastDistanceCalc;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of execution slots (threads) to use for assigning "
+      + "the instances to the clusters and summing up the new centroids.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for training
+   *
+   * @param slots the number of slots
+   * @throws Exception if the number of slots is smaller than 1
+   */
+  public void setNumExecutionSlots(int slots) throws Exception {
+    if (slots <= 0) {
+      throw new Exception("Number of execution slots must be > 0");
+    }
+    m_executionSlots = slots;
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for training
+   *
+   * @return the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_executionSlots;
+  }
 	
 	
   /**
@@ -777,6 +1388,14 @@ public class SimpleKMeans
    *  Preserve order of instances.
    * </pre>
    * 
+   * <pre> -fast
+   *  Uses triangle inequality bounds to skip distance calculations
+   *  during training (Euclidean distance, no missing values).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    *
    * @param options the list of options as an array of strings
@@ -818,6 +1437,15 @@ public class SimpleKMeans
 		
     m_PreserveOrder = Utils.getFlag("O", options);
 
+    m_FastDistanceCalc = Utils.getFlag("fast", options);
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    } else {
+      setNumExecutionSlots(1);
+    }
+
     super.setOptions(options);
   }
 
@@ -854,6 +1482,15 @@ public class SimpleKMeans
     if(m_PreserveOrder){
       result.add("-O");
     }
+
+    if (m_FastDistanceCalc) {
+      result.add("-fast");
+    }
+
+    if (m_executionSlots > 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
 		
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
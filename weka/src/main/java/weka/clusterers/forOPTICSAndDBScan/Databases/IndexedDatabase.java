@@ -0,0 +1,434 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    IndexedDatabase.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.clusterers.forOPTICSAndDBScan.Databases;
+
+import weka.clusterers.forOPTICSAndDBScan.DataObjects.DataObject;
+import weka.clusterers.forOPTICSAndDBScan.Utils.EpsilonRange_ListElement;
+import weka.clusterers.forOPTICSAndDBScan.Utils.PriorityQueueElement;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.EuclideanDistance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.RevisionUtils;
+import weka.core.Utils;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.NearestNeighbourSearch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * <p>
+ * A database that answers the queries of DBScan and OPTICS with a
+ * nearest neighbour search (KDTree by default, or BallTree, CoverTree, ...)
+ * instead of scanning all DataObjects for every query. It stores the
+ * DataObjects like the SequentialDatabase and returns the same results in
+ * the same order. <br/>
+ * The search uses the Euclidean distance on the normalized nominal and
+ * numeric attributes, which is never larger than the distance of the
+ * EuclidianDataObject or ManhattanDataObject. It therefore yields a superset
+ * of the DataObjects in range, whose actual distances are computed by the
+ * DataObjects themselves. <br/>
+ * Select it via the database type of DBScan or OPTICS, e.g.: <br/>
+ * -I "weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase -A weka.core.neighboursearch.BallTree"
+ * </p>
+ *
+ * <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Nearest neighbour search to use.
+ *  (default: weka.core.neighboursearch.KDTree)</pre>
+ *
+ * <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class IndexedDatabase
+    extends SequentialDatabase
+    implements OptionHandler {
+
+    /** for serialization */
+    private static final long serialVersionUID = -5409328474398652377L;
+
+    /**
+     * The relative tolerance by which the ranges of the search are enlarged, so that
+     * rounding errors cannot exclude DataObjects within range
+     */
+    protected static final double TOLERANCE = 1e-9;
+
+    /**
+     * The nearest neighbour search to use
+     */
+    protected NearestNeighbourSearch m_NearestNeighbourSearch = new KDTree();
+
+    /**
+     * The data the search is built on: the used attributes and the position of the DataObject
+     * as class attribute; null if the search needs to be (re)built
+     */
+    protected Instances m_Index;
+
+    /**
+     * The DataObjects in the order of the database
+     */
+    protected DataObject[] m_DataObjects;
+
+    /**
+     * The position of each DataObject in the order of the database, by key
+     */
+    protected HashMap m_Positions;
+
+    // *****************************************************************************************************************
+    // constructors
+    // *****************************************************************************************************************
+
+    /**
+     * Constructs a new indexed database and holds the original instances
+     * @param instances
+     */
+    public IndexedDatabase(Instances instances) {
+        super(instances);
+    }
+
+    // *****************************************************************************************************************
+    // methods
+    // *****************************************************************************************************************
+
+    /**
+     * Sets the nearest neighbour search to use
+     * @param value the nearest neighbour search
+     */
+    public void setNearestNeighbourSearch(NearestNeighbourSearch value) {
+        m_NearestNeighbourSearch = value;
+        m_Index = null;
+    }
+
+    /**
+     * Returns the nearest neighbour search in use
+     * @return the nearest neighbour search
+     */
+    public NearestNeighbourSearch getNearestNeighbourSearch() {
+        return m_NearestNeighbourSearch;
+    }
+
+    /**
+     * Inserts a new dataObject into the database
+     * @param dataObject
+     */
+    public void insert(DataObject dataObject) {
+        super.insert(dataObject);
+        m_Index = null;
+    }
+
+    /**
+     * Sets the minimum and maximum values for each attribute in different arrays
+     * by walking through every DataObject of the database
+     */
+    public void setMinMaxValues() {
+        super.setMinMaxValues();
+        m_Index = null;
+    }
+
+    /**
+     * Builds the nearest neighbour search on the DataObjects of the database. Only the
+     * attributes that contribute to the distances of the DataObjects are used, i.e.,
+     * the nominal ones and the numeric ones with a range.
+     * @throws Exception if the search cannot be built
+     */
+    protected void buildIndex() throws Exception {
+        Instances instances = getInstances();
+        double[] minValues = getAttributeMinValues();
+        double[] maxValues = getAttributeMaxValues();
+        if (minValues == null) {
+            setMinMaxValues();
+            minValues = getAttributeMinValues();
+            maxValues = getAttributeMaxValues();
+        }
+
+        ArrayList attributes = new ArrayList();
+        int[] indices = new int[instances.numAttributes()];
+        int numIndices = 0;
+        String positionName = "position";
+        for (int i = 0; i < instances.numAttributes(); i++) {
+            Attribute attribute = instances.attribute(i);
+            if (attribute.isNominal() || (attribute.type() == Attribute.NUMERIC
+                    && !Double.isNaN(minValues[i]) && !Utils.eq(maxValues[i], minValues[i]))) {
+                attributes.add(attribute.copy());
+                indices[numIndices++] = i;
+            }
+        }
+        while (instances.attribute(positionName) != null) {
+            positionName = "_" + positionName;
+        }
+        attributes.add(new Attribute(positionName));
+
+        m_Index = new Instances(instances.relationName(), attributes, size());
+        m_Index.setClassIndex(numIndices);
+        m_DataObjects = new DataObject[size()];
+        m_Positions = new HashMap();
+        Iterator iterator = dataObjectIterator();
+        for (int n = 0; iterator.hasNext(); n++) {
+            DataObject dataObject = (DataObject) iterator.next();
+            m_DataObjects[n] = dataObject;
+            m_Positions.put(dataObject.getKey(), new Integer(n));
+            m_Index.add(indexInstance(dataObject, indices, numIndices, n));
+        }
+
+        m_NearestNeighbourSearch.setDistanceFunction(new EuclideanDistance());
+        m_NearestNeighbourSearch.setInstances(m_Index);
+    }
+
+    /**
+     * Returns the instance of the search for a DataObject
+     * @param dataObject the DataObject
+     * @param indices the indices of the used attributes
+     * @param numIndices the number of used attributes
+     * @param position the position of the DataObject
+     * @return the instance
+     */
+    protected Instance indexInstance(DataObject dataObject, int[] indices, int numIndices, int position) {
+        double[] values = new double[numIndices + 1];
+        for (int i = 0; i < numIndices; i++) {
+            values[i] = dataObject.getInstance().value(indices[i]);
+        }
+        values[numIndices] = position;
+        return new DenseInstance(1.0, values);
+    }
+
+    /**
+     * Returns the query instance of the search for a DataObject
+     * @param dataObject the DataObject
+     * @return the instance
+     * @throws Exception if the search cannot be built
+     */
+    protected Instance queryInstance(DataObject dataObject) throws Exception {
+        if (m_Index == null) buildIndex();
+
+        Integer position = (Integer) m_Positions.get(dataObject.getKey());
+        if (position != null && m_DataObjects[position.intValue()] == dataObject) {
+            // a copy, as the searches skip the very instance they are queried with
+            return (Instance) m_Index.instance(position.intValue()).copy();
+        }
+
+        // not part of the database
+        int[] indices = new int[m_Index.numAttributes() - 1];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = getInstances().attribute(m_Index.attribute(i).name()).index();
+        }
+        Instance result = indexInstance(dataObject, indices, indices.length, -1);
+        result.setDataset(m_Index);
+        return result;
+    }
+
+    /**
+     * Returns the positions of all DataObjects whose distance to the query-object
+     * in the search may be at most the specified range, in the order of the database
+     * @param range the range
+     * @param query the query-object
+     * @return the positions
+     * @throws Exception if the search fails
+     */
+    protected int[] rangeCandidates(double range, Instance query) throws Exception {
+        Instances neighbours = m_NearestNeighbourSearch.rangeQuery(query, range + TOLERANCE * (1 + range));
+        int[] result = new int[neighbours.numInstances()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) neighbours.instance(i).classValue();
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Performs an epsilon range query for this dataObject
+     * @param epsilon Specifies the range for the query
+     * @param queryDataObject The dataObject that is used as query-object for epsilon range query
+     * @return List with all the DataObjects that are within the specified range
+     */
+    public List epsilonRangeQuery(double epsilon, DataObject queryDataObject) {
+        ArrayList epsilonRange_List = new ArrayList();
+        if (size() == 0) return epsilonRange_List;
+
+        try {
+            int[] candidates = rangeCandidates(epsilon, queryInstance(queryDataObject));
+            for (int i = 0; i < candidates.length; i++) {
+                DataObject dataObject = m_DataObjects[candidates[i]];
+                if (queryDataObject.distance(dataObject) < epsilon) {
+                    epsilonRange_List.add(dataObject);
+                }
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        return epsilonRange_List;
+    }
+
+    /**
+     * Emits the k next-neighbours and performs an epsilon-range-query at the parallel.
+     * The returned list contains two elements:
+     * At index=0 --> list with all k next-neighbours;
+     * At index=1 --> list with all dataObjects within epsilon;
+     * @param k number of next neighbours
+     * @param epsilon Specifies the range for the query
+     * @param dataObject the start object
+     * @return list with the k-next neighbours (PriorityQueueElements) and a list
+     *         with candidates from the epsilon-range-query (EpsilonRange_ListElements)
+     */
+    public List k_nextNeighbourQuery(int k, double epsilon, DataObject dataObject) {
+        List return_List = new ArrayList();
+        List nextNeighbours_List = new ArrayList();
+        List epsilonRange_List = new ArrayList();
+        return_List.add(nextNeighbours_List);
+        return_List.add(epsilonRange_List);
+        if (size() == 0 || k <= 0) return return_List;
+
+        try {
+            Instance query = queryInstance(dataObject);
+            k = Math.min(k, size());
+
+            int[] candidates = rangeCandidates(epsilon, query);
+            double[] distances = new double[candidates.length];
+            int inRange = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                distances[i] = dataObject.distance(m_DataObjects[candidates[i]]);
+                if (distances[i] <= epsilon) {
+                    epsilonRange_List.add(new EpsilonRange_ListElement(distances[i], m_DataObjects[candidates[i]]));
+                    inRange++;
+                }
+            }
+
+            if (inRange < k) {
+                // the k nearest DataObjects are within the largest distance of any k DataObjects,
+                // e.g., the k nearest ones of the search
+                Instances neighbours = m_NearestNeighbourSearch.kNearestNeighbours(query, k);
+                double range = 0;
+                for (int i = 0; i < neighbours.numInstances(); i++) {
+                    range = Math.max(range, dataObject.distance(m_DataObjects[(int) neighbours.instance(i).classValue()]));
+                }
+                candidates = rangeCandidates(range, query);
+                distances = new double[candidates.length];
+                for (int i = 0; i < candidates.length; i++) {
+                    distances[i] = dataObject.distance(m_DataObjects[candidates[i]]);
+                }
+            }
+
+            Integer[] order = new Integer[candidates.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = new Integer(i);
+            }
+            final double[] orderDistances = distances;
+            Arrays.sort(order, new Comparator() {
+                public int compare(Object o1, Object o2) {
+                    return Double.compare(orderDistances[((Integer) o1).intValue()],
+                            orderDistances[((Integer) o2).intValue()]);
+                }
+            });
+            for (int i = 0; i < k; i++) {
+                int n = order[i].intValue();
+                nextNeighbours_List.add(new PriorityQueueElement(distances[n], m_DataObjects[candidates[n]]));
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        return return_List;
+    }
+
+    /**
+     * Returns an enumeration describing the available options.
+     *
+     * @return an enumeration of all the available options.
+     */
+    public Enumeration listOptions() {
+        Vector vector = new Vector();
+
+        vector.addElement(new Option(
+                "\tNearest neighbour search to use.\n"
+                + "\t(default: weka.core.neighboursearch.KDTree)",
+                "A", 1, "-A <classname and options>"));
+
+        return vector.elements();
+    }
+
+    /**
+     * Parses a given list of options. <p/>
+     *
+     * <!-- options-start -->
+     * Valid options are: <p/>
+     *
+     * <pre> -A &lt;classname and options&gt;
+     *  Nearest neighbour search to use.
+     *  (default: weka.core.neighboursearch.KDTree)</pre>
+     *
+     * <!-- options-end -->
+     *
+     * @param options the list of options as an array of strings
+     * @throws Exception if an option is not supported
+     */
+    public void setOptions(String[] options) throws Exception {
+        String optionString = Utils.getOption('A', options);
+        if (optionString.length() != 0) {
+            String[] searchSpec = Utils.splitOptions(optionString);
+            if (searchSpec.length == 0) {
+                throw new Exception("Invalid NearestNeighbourSearch specification string.");
+            }
+            String className = searchSpec[0];
+            searchSpec[0] = "";
+            setNearestNeighbourSearch((NearestNeighbourSearch)
+                    Utils.forName(NearestNeighbourSearch.class, className, searchSpec));
+        } else {
+            setNearestNeighbourSearch(new KDTree());
+        }
+
+        Utils.checkForRemainingOptions(options);
+    }
+
+    /**
+     * Gets the current settings of the database.
+     *
+     * @return an array of strings suitable for passing to setOptions()
+     */
+    public String[] getOptions() {
+        return new String[]{
+                "-A",
+                (m_NearestNeighbourSearch.getClass().getName() + " "
+                        + Utils.joinOptions(m_NearestNeighbourSearch.getOptions())).trim()};
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+        return RevisionUtils.extract("$Revision$");
+    }
+}
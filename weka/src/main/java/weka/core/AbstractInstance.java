@@ -534,7 +534,7 @@ public abstract class AbstractInstance
    *
    * @param weight the weight
    */
-  public final void setWeight(double weight) {
+  public void setWeight(double weight) {
 
     m_Weight = weight;
   }
@@ -639,8 +639,8 @@ public abstract class AbstractInstance
 
     StringBuffer text = new StringBuffer(toStringNoWeight());
 
-    if (m_Weight != 1.0) {
-      text.append(",{" + Utils.doubleToString(m_Weight, 6) + "}");
+    if (weight() != 1.0) {
+      text.append(",{" + Utils.doubleToString(weight(), 6) + "}");
     }
 
     return text.toString();
@@ -733,7 +733,7 @@ public abstract class AbstractInstance
    *
    * @return the instance's weight as a double
    */
-  public final /*@pure@*/ double weight() {
+  public /*@pure@*/ double weight() {
 
     return m_Weight;
   }
@@ -0,0 +1,288 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstance.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+/**
+ * A view of one row of a <code>ColumnarInstances</code> set. The view
+ * does not hold any values itself, it reads its values and its weight
+ * from the columns of the set that created it. <p>
+ *
+ * Unlike <code>DenseInstance</code>, changing a value or the weight of
+ * a view writes through to the columns, ie. there is no copy-on-write.
+ * <code>copy()</code> returns a <code>DenseInstance</code> that is
+ * detached from the columns.
+ *
+ * @version $Revision$
+ * @see ColumnarInstances
+ */
+public class ColumnarInstance
+  extends AbstractInstance {
+
+  /** for serialization */
+  private static final long serialVersionUID = -4937461822618739652L;
+
+  /** the columns the values are read from. */
+  protected ColumnarInstances.ColumnStore m_Store;
+
+  /** the row of this instance in the columns. */
+  protected int m_Row;
+
+  /**
+   * Initializes the view.
+   *
+   * @param store the columns to read from
+   * @param row the row in the columns
+   * @param dataset the dataset the instance has access to
+   */
+  protected ColumnarInstance(ColumnarInstances.ColumnStore store, int row, Instances dataset) {
+    m_Store   = store;
+    m_Row     = row;
+    m_Dataset = dataset;
+  }
+
+  /**
+   * Produces a copy of this instance in the form of a
+   * <code>DenseInstance</code>. The copy has access to the same dataset,
+   * but changes to it do not affect the columns.
+   *
+   * @return the copy
+   */
+  public Object copy() {
+    DenseInstance	result;
+
+    result = new DenseInstance(weight(), toDoubleArray());
+    result.setDataset(m_Dataset);
+
+    return result;
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position.
+   * Just returns the given value.
+   *
+   * @param position the position
+   * @return the index of the attribute stored at the given position
+   */
+  public int index(int position) {
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns
+   * the result. Dataset is set to null. The returned instance
+   * is a <code>DenseInstance</code>.
+   *
+   * @param inst the instance to be merged with this one
+   * @return the merged instances
+   */
+  public Instance mergeInstance(Instance inst) {
+    int m = 0;
+    double [] newVals = new double[numAttributes() + inst.numAttributes()];
+    for (int j = 0; j < numAttributes(); j++, m++) {
+      newVals[m] = value(j);
+    }
+    for (int j = 0; j < inst.numAttributes(); j++, m++) {
+      newVals[m] = inst.value(j);
+    }
+    return new DenseInstance(1.0, newVals);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  public int numAttributes() {
+    return m_Store.numColumns();
+  }
+
+  /**
+   * Returns the number of values present. Always the same as numAttributes().
+   *
+   * @return the number of values
+   */
+  public int numValues() {
+    return m_Store.numColumns();
+  }
+
+  /**
+   * Replaces all missing values in the instance with the
+   * values contained in the given array.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   */
+  public void replaceMissingValues(double[] array) {
+    if ((array == null) || (array.length != numAttributes())) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    for (int i = 0; i < array.length; i++) {
+      if (isMissing(i)) {
+	m_Store.setValue(i, m_Row, array[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value
+   * (internal floating-point format). The value is written to
+   * the columns.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValue(int attIndex, double value) {
+    m_Store.setValue(attIndex, m_Row, value);
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value
+   * (internal floating-point format). Does exactly the same thing
+   * as setValue().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   */
+  public void setValueSparse(int indexOfIndex, double value) {
+    m_Store.setValue(indexOfIndex, m_Row, value);
+  }
+
+  /**
+   * Sets the weight of the instance. The weight is written to
+   * the columns.
+   *
+   * @param weight the weight
+   */
+  public void setWeight(double weight) {
+    m_Store.setWeight(m_Row, weight);
+  }
+
+  /**
+   * Returns the instance's weight.
+   *
+   * @return the instance's weight as a double
+   */
+  public double weight() {
+    return m_Store.weight(m_Row);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the instance attribute values
+   */
+  public double[] toDoubleArray() {
+    return m_Store.row(m_Row);
+  }
+
+  /**
+   * Returns the description of one instance (without weight
+   * appended). If the instance doesn't have access to a dataset,
+   * it returns the internal floating-point values. Quotes string
+   * values that contain whitespace characters.
+   *
+   * @return the instance's description as a string
+   */
+  public String toStringNoWeight() {
+    StringBuffer text = new StringBuffer();
+
+    for (int i = 0; i < numAttributes(); i++) {
+      if (i > 0) text.append(",");
+      text.append(toString(i));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Tests if a specific value is "missing".
+   *
+   * @param attIndex the attribute's index
+   * @return true if the value is "missing"
+   */
+  public boolean isMissing(int attIndex) {
+    return m_Store.isMissing(attIndex, m_Row);
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double value(int attIndex) {
+    return m_Store.value(attIndex, m_Row);
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given
+   * an index in the sparse representation. Same as value(int).
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double
+   */
+  public double valueSparse(int indexOfIndex) {
+    return m_Store.value(indexOfIndex, m_Row);
+  }
+
+  /**
+   * Not supported, since the columns are shared by all the instances of
+   * the set. Use <code>ColumnarInstances.deleteAttributeAt(int)</code>
+   * or a copy of this instance instead.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  protected void forceDeleteAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+	"Attributes of a columnar instance can only be removed via its dataset!");
+  }
+
+  /**
+   * Not supported, since the columns are shared by all the instances of
+   * the set. Use <code>ColumnarInstances.insertAttributeAt(Attribute, int)</code>
+   * or a copy of this instance instead.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  protected void forceInsertAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+	"Attributes of a columnar instance can only be inserted via its dataset!");
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
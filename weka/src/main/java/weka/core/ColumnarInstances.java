@@ -0,0 +1,736 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    ColumnarInstances.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * Set of instances that stores its values column-major, ie. one
+ * primitive array per attribute (double or, optionally, float
+ * precision), plus a bitmap per attribute flagging missing values and
+ * a single array holding the weights of all rows. The instances
+ * returned by this set are lightweight views of type
+ * <code>ColumnarInstance</code> that read (and write) their values
+ * lazily from the columns. <p>
+ *
+ * Compared to a regular set of <code>DenseInstance</code> objects this
+ * avoids one array per row, and methods that scan a single attribute
+ * (<code>attributeToDoubleArray</code>, <code>sort</code>,
+ * <code>kthSmallestValue</code>, <code>attributeStats</code>) work
+ * directly on the column arrays. <p>
+ *
+ * Typical usage: <p>
+ * <pre>
+ * Instances data = source.getDataSet();
+ * Instances columnar = new ColumnarInstances(data, true); // float columns
+ * </pre><p>
+ *
+ * Rows removed from the set (eg. via <code>delete(int)</code>) keep
+ * occupying space in the columns until <code>compactify()</code> is
+ * called, which also restores the row order of the columns to the order
+ * of the instances in the set. Sets derived from this one (eg. via
+ * <code>trainCV</code>, <code>resample</code> or the copy constructors
+ * of <code>Instances</code>) contain regular <code>DenseInstance</code>
+ * objects.
+ *
+ * @version $Revision$
+ * @see ColumnarInstance
+ */
+public class ColumnarInstances
+  extends Instances {
+
+  /** for serialization */
+  private static final long serialVersionUID = 6386917392127049813L;
+
+  /**
+   * The column-major storage backing the instances of a
+   * <code>ColumnarInstances</code> object. Not to be used directly.
+   */
+  protected static class ColumnStore
+    implements Serializable {
+
+    /** for serialization */
+    private static final long serialVersionUID = -3027641904612298115L;
+
+    /** whether values are stored as floats rather than doubles */
+    protected boolean m_SinglePrecision;
+
+    /** the columns in double precision (null if single precision) */
+    protected double[][] m_DoubleColumns;
+
+    /** the columns in single precision (null if double precision) */
+    protected float[][] m_FloatColumns;
+
+    /** the missing value bitmaps, one per column */
+    protected long[][] m_Missing;
+
+    /** the weights of the rows */
+    protected double[] m_Weights;
+
+    /** the number of rows in use */
+    protected int m_NumRows;
+
+    /** the number of columns */
+    protected int m_NumColumns;
+
+    /**
+     * Initializes an empty store.
+     *
+     * @param numColumns the number of columns
+     * @param capacity the number of rows to reserve
+     * @param singlePrecision whether to store the values as floats
+     */
+    protected ColumnStore(int numColumns, int capacity, boolean singlePrecision) {
+      if (capacity < 1)
+	capacity = 1;
+
+      m_SinglePrecision = singlePrecision;
+      m_NumColumns      = numColumns;
+      m_NumRows         = 0;
+      m_Weights         = new double[capacity];
+      m_Missing         = new long[numColumns][];
+      if (m_SinglePrecision)
+	m_FloatColumns = new float[numColumns][];
+      else
+	m_DoubleColumns = new double[numColumns][];
+      for (int i = 0; i < numColumns; i++)
+	allocateColumn(i, capacity);
+    }
+
+    /**
+     * Allocates the arrays for the given column.
+     *
+     * @param col the column to allocate
+     * @param capacity the number of rows
+     */
+    protected void allocateColumn(int col, int capacity) {
+      m_Missing[col] = new long[(capacity + 63) >>> 6];
+      if (m_SinglePrecision)
+	m_FloatColumns[col] = new float[capacity];
+      else
+	m_DoubleColumns[col] = new double[capacity];
+    }
+
+    /**
+     * Returns the number of rows that can be stored without growing.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+      return m_Weights.length;
+    }
+
+    /**
+     * Returns the number of rows in use.
+     *
+     * @return the number of rows
+     */
+    public int numRows() {
+      return m_NumRows;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int numColumns() {
+      return m_NumColumns;
+    }
+
+    /**
+     * Makes sure that the store can hold at least the given number of rows.
+     *
+     * @param rows the minimum number of rows
+     */
+    protected void ensureCapacity(int rows) {
+      int	capacity;
+      int	i;
+      long[]	missing;
+      double[]	doubles;
+      float[]	floats;
+      double[]	weights;
+
+      if (rows <= capacity())
+	return;
+
+      capacity = capacity() + (capacity() >> 1) + 1;
+      if (capacity < rows)
+	capacity = rows;
+
+      weights = new double[capacity];
+      System.arraycopy(m_Weights, 0, weights, 0, m_NumRows);
+      m_Weights = weights;
+      for (i = 0; i < m_NumColumns; i++) {
+	missing = new long[(capacity + 63) >>> 6];
+	System.arraycopy(m_Missing[i], 0, missing, 0, m_Missing[i].length);
+	m_Missing[i] = missing;
+	if (m_SinglePrecision) {
+	  floats = new float[capacity];
+	  System.arraycopy(m_FloatColumns[i], 0, floats, 0, m_NumRows);
+	  m_FloatColumns[i] = floats;
+	}
+	else {
+	  doubles = new double[capacity];
+	  System.arraycopy(m_DoubleColumns[i], 0, doubles, 0, m_NumRows);
+	  m_DoubleColumns[i] = doubles;
+	}
+      }
+    }
+
+    /**
+     * Appends the values and the weight of the given instance as a new row.
+     *
+     * @param inst the instance to add
+     * @return the index of the new row
+     */
+    public int appendRow(Instance inst) {
+      int	row;
+      int	i;
+
+      ensureCapacity(m_NumRows + 1);
+      row = m_NumRows;
+      m_NumRows++;
+      for (i = 0; i < m_NumColumns; i++)
+	setValue(i, row, inst.value(i));
+      m_Weights[row] = inst.weight();
+
+      return row;
+    }
+
+    /**
+     * Returns whether the given cell is missing.
+     *
+     * @param col the column
+     * @param row the row
+     * @return true if the value is missing
+     */
+    public boolean isMissing(int col, int row) {
+      return (m_Missing[col][row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Returns the value of the given cell in internal format.
+     *
+     * @param col the column
+     * @param row the row
+     * @return the value, missing value if the cell is missing
+     */
+    public double value(int col, int row) {
+      if ((m_Missing[col][row >>> 6] & (1L << row)) != 0)
+	return Utils.missingValue();
+      if (m_SinglePrecision)
+	return m_FloatColumns[col][row];
+      else
+	return m_DoubleColumns[col][row];
+    }
+
+    /**
+     * Sets the value of the given cell.
+     *
+     * @param col the column
+     * @param row the row
+     * @param value the value in internal format, missing values are
+     * recorded in the bitmap of the column
+     */
+    public void setValue(int col, int row, double value) {
+      if (Utils.isMissingValue(value)) {
+	m_Missing[col][row >>> 6] |= (1L << row);
+	value = 0;
+      }
+      else {
+	m_Missing[col][row >>> 6] &= ~(1L << row);
+      }
+      if (m_SinglePrecision)
+	m_FloatColumns[col][row] = (float) value;
+      else
+	m_DoubleColumns[col][row] = value;
+    }
+
+    /**
+     * Returns the weight of a row.
+     *
+     * @param row the row
+     * @return the weight
+     */
+    public double weight(int row) {
+      return m_Weights[row];
+    }
+
+    /**
+     * Sets the weight of a row.
+     *
+     * @param row the row
+     * @param weight the new weight
+     */
+    public void setWeight(int row, double weight) {
+      m_Weights[row] = weight;
+    }
+
+    /**
+     * Returns the values of a row.
+     *
+     * @param row the row
+     * @return a new array with the values of the row
+     */
+    public double[] row(int row) {
+      double[]	result;
+      int	i;
+
+      result = new double[m_NumColumns];
+      for (i = 0; i < m_NumColumns; i++)
+	result[i] = value(i, row);
+
+      return result;
+    }
+
+    /**
+     * Inserts a column at the given position with all values missing.
+     *
+     * @param position the position of the new column
+     */
+    public void insertColumn(int position) {
+      long[][]		missing;
+      double[][]	doubles;
+      float[][]		floats;
+
+      missing = new long[m_NumColumns + 1][];
+      System.arraycopy(m_Missing, 0, missing, 0, position);
+      System.arraycopy(m_Missing, position, missing, position + 1, m_NumColumns - position);
+      m_Missing = missing;
+      if (m_SinglePrecision) {
+	floats = new float[m_NumColumns + 1][];
+	System.arraycopy(m_FloatColumns, 0, floats, 0, position);
+	System.arraycopy(m_FloatColumns, position, floats, position + 1, m_NumColumns - position);
+	m_FloatColumns = floats;
+      }
+      else {
+	doubles = new double[m_NumColumns + 1][];
+	System.arraycopy(m_DoubleColumns, 0, doubles, 0, position);
+	System.arraycopy(m_DoubleColumns, position, doubles, position + 1, m_NumColumns - position);
+	m_DoubleColumns = doubles;
+      }
+      m_NumColumns++;
+
+      allocateColumn(position, capacity());
+      java.util.Arrays.fill(m_Missing[position], -1L);
+    }
+
+    /**
+     * Removes the column at the given position.
+     *
+     * @param position the position of the column to remove
+     */
+    public void deleteColumn(int position) {
+      long[][]		missing;
+      double[][]	doubles;
+      float[][]		floats;
+
+      missing = new long[m_NumColumns - 1][];
+      System.arraycopy(m_Missing, 0, missing, 0, position);
+      System.arraycopy(m_Missing, position + 1, missing, position, m_NumColumns - position - 1);
+      m_Missing = missing;
+      if (m_SinglePrecision) {
+	floats = new float[m_NumColumns - 1][];
+	System.arraycopy(m_FloatColumns, 0, floats, 0, position);
+	System.arraycopy(m_FloatColumns, position + 1, floats, position, m_NumColumns - position - 1);
+	m_FloatColumns = floats;
+      }
+      else {
+	doubles = new double[m_NumColumns - 1][];
+	System.arraycopy(m_DoubleColumns, 0, doubles, 0, position);
+	System.arraycopy(m_DoubleColumns, position + 1, doubles, position, m_NumColumns - position - 1);
+	m_DoubleColumns = doubles;
+      }
+      m_NumColumns--;
+    }
+  }
+
+  /** the storage of the values. */
+  protected ColumnStore m_Store;
+
+  /** whether the values are stored as floats. */
+  protected boolean m_SinglePrecision;
+
+  /**
+   * Creates a column-major copy (double precision) of the given dataset.
+   *
+   * @param dataset the set to be copied
+   */
+  public ColumnarInstances(Instances dataset) {
+    this(dataset, false);
+  }
+
+  /**
+   * Creates a column-major copy of the given dataset.
+   *
+   * @param dataset the set to be copied
+   * @param singlePrecision whether to store the values as floats, which
+   * halves the memory requirements
+   */
+  public ColumnarInstances(Instances dataset, boolean singlePrecision) {
+    this(dataset, dataset.numInstances(), singlePrecision);
+
+    dataset.copyInstances(0, this, dataset.numInstances());
+  }
+
+  /**
+   * Creates an empty column-major set of instances. Copies references to
+   * the header information from the given set of instances.
+   *
+   * @param dataset the instances from which the header information is to
+   * be taken
+   * @param capacity the number of rows to reserve
+   * @param singlePrecision whether to store the values as floats
+   */
+  public ColumnarInstances(Instances dataset, int capacity, boolean singlePrecision) {
+    super(dataset, capacity);
+
+    m_SinglePrecision = singlePrecision;
+    m_Store           = new ColumnStore(numAttributes(), capacity, singlePrecision);
+  }
+
+  /**
+   * Returns whether the values are stored in single precision.
+   *
+   * @return true if floats are used for storing the values
+   */
+  public boolean isSinglePrecision() {
+    return m_SinglePrecision;
+  }
+
+  /**
+   * Returns the row in the column store of the instance at the given
+   * position.
+   *
+   * @param index the instance's index
+   * @return the row
+   */
+  protected int row(int index) {
+    return ((ColumnarInstance) m_Instances.get(index)).m_Row;
+  }
+
+  /**
+   * Adds one instance to the end of the set. The values and the weight
+   * are copied into the columns.
+   * Note: String or relational values are not transferred.
+   *
+   * @param instance the instance to be added
+   */
+  public boolean add(Instance instance) {
+    add(m_Instances.size(), instance);
+    return true;
+  }
+
+  /**
+   * Inserts one instance at the given position. The values and the weight
+   * are copied into the columns.
+   * Note: String or relational values are not transferred.
+   *
+   * @param index position where instance is to be inserted
+   * @param instance the instance to be added
+   */
+  public void add(int index, Instance instance) {
+    int row = m_Store.appendRow(instance);
+    m_Instances.add(index, new ColumnarInstance(m_Store, row, this));
+  }
+
+  /**
+   * Replaces the instance at the given position. The values and the weight
+   * are copied into the columns.
+   * Note: String or relational values are not transferred.
+   *
+   * @param index position where instance is to be inserted
+   * @param instance the instance to be inserted
+   * @return the instance previously at that position
+   */
+  public Instance set(int index, Instance instance) {
+    int row = m_Store.appendRow(instance);
+    return m_Instances.set(index, new ColumnarInstance(m_Store, row, this));
+  }
+
+  /**
+   * Removes all instances from the set.
+   */
+  public void delete() {
+    super.delete();
+    m_Store = new ColumnStore(numAttributes(), 0, m_SinglePrecision);
+  }
+
+  /**
+   * Rebuilds the columns so that they contain only the rows of the
+   * instances currently in the set, in the order of the set, and trims
+   * the capacity to the number of instances. Instances that were
+   * removed from the set beforehand are not affected.
+   */
+  public void compactify() {
+    ColumnStore		store;
+    ColumnarInstance	inst;
+    int			i;
+
+    super.compactify();
+
+    store = new ColumnStore(numAttributes(), numInstances(), m_SinglePrecision);
+    for (i = 0; i < numInstances(); i++) {
+      inst = (ColumnarInstance) m_Instances.get(i);
+      inst.m_Row   = store.appendRow(inst);
+      inst.m_Store = store;
+    }
+    m_Store = store;
+  }
+
+  /**
+   * Deletes an attribute at the given position
+   * (0 to numAttributes() - 1). A deep copy of the attribute
+   * information is performed before the attribute is deleted.
+   *
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   *            or the class attribute is being deleted
+   */
+  public void deleteAttributeAt(int position) {
+    if ((position < 0) || (position >= m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    if (position == m_ClassIndex) {
+      throw new IllegalArgumentException("Can't delete class attribute");
+    }
+    freshAttributeInfo();
+    if (m_ClassIndex > position) {
+      m_ClassIndex--;
+    }
+    m_Attributes.remove(position);
+    for (int i = position; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.get(i);
+      current.setIndex(current.index() - 1);
+    }
+    m_Store.deleteColumn(position);
+  }
+
+  /**
+   * Inserts an attribute at the given position (0 to
+   * numAttributes()) and sets all values to be missing.
+   * Shallow copies the attribute before it is inserted, and performs
+   * a deep copy of the existing attribute information.
+   *
+   * @param att the attribute to be inserted
+   * @param position the attribute's position (position starts with 0)
+   * @throws IllegalArgumentException if the given index is out of range
+   */
+  public void insertAttributeAt(Attribute att, int position) {
+    if ((position < 0) || (position > m_Attributes.size())) {
+      throw new IllegalArgumentException("Index out of range");
+    }
+    att = (Attribute)att.copy();
+    freshAttributeInfo();
+    att.setIndex(position);
+    m_Attributes.add(position, att);
+    for (int i = position + 1; i < m_Attributes.size(); i++) {
+      Attribute current = (Attribute)m_Attributes.get(i);
+      current.setIndex(current.index() + 1);
+    }
+    m_Store.insertColumn(position);
+    if (m_ClassIndex >= position) {
+      m_ClassIndex++;
+    }
+  }
+
+  /**
+   * Gets the value of all instances in this dataset for a particular
+   * attribute, read directly from the attribute's column.
+   *
+   * @param index the index of the attribute.
+   * @return an array containing the value of the desired attribute for
+   * each instance in the dataset.
+   */
+  public double[] attributeToDoubleArray(int index) {
+    double[]	result;
+    int		i;
+
+    result = new double[numInstances()];
+    for (i = 0; i < result.length; i++)
+      result[i] = m_Store.value(index, row(i));
+
+    return result;
+  }
+
+  /**
+   * Returns the weights of all the instances in this dataset.
+   *
+   * @return an array containing the weight of each instance
+   */
+  protected double[] weightsToDoubleArray() {
+    double[]	result;
+    int		i;
+
+    result = new double[numInstances()];
+    for (i = 0; i < result.length; i++)
+      result[i] = m_Store.weight(row(i));
+
+    return result;
+  }
+
+  /**
+   * Computes the sum of all the instances' weights.
+   *
+   * @return the sum of all the instances' weights as a double
+   */
+  public double sumOfWeights() {
+    double	sum;
+    int		i;
+
+    sum = 0;
+    for (i = 0; i < numInstances(); i++)
+      sum += m_Store.weight(row(i));
+
+    return sum;
+  }
+
+  /**
+   * Sorts the instances based on an attribute. For numeric attributes,
+   * instances are sorted in ascending order. For nominal attributes,
+   * instances are sorted based on the attribute label ordering
+   * specified in the header. Instances with missing values for the
+   * attribute are placed at the end of the dataset. The sort operates
+   * on a copy of the attribute's column and only reorders the views.
+   *
+   * @param attIndex the attribute's index (index starts with 0)
+   */
+  public void sort(int attIndex) {
+    ArrayList<Instance>	sorted;
+    double[]		vals;
+    int[]		order;
+    int			i;
+
+    vals   = attributeToDoubleArray(attIndex);
+    order  = Utils.sort(vals);
+    sorted = new ArrayList<Instance>(m_Instances.size());
+    for (i = 0; i < order.length; i++)
+      sorted.add(m_Instances.get(order[i]));
+    m_Instances = sorted;
+  }
+
+  /**
+   * Returns the kth-smallest attribute value of a numeric attribute.
+   * Unlike the implementation in <code>Instances</code>, the order of
+   * the data is not changed.
+   *
+   * @param attIndex the attribute's index
+   * @param k the value of k
+   * @return the kth-smallest value
+   */
+  public double kthSmallestValue(int attIndex, int k) {
+    double[]	vals;
+    int		count;
+    int		i;
+    int		row;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException("Instances: attribute must be numeric to compute kth-smallest value.");
+    }
+
+    vals  = new double[numInstances()];
+    count = 0;
+    for (i = 0; i < vals.length; i++) {
+      row = row(i);
+      if (!m_Store.isMissing(attIndex, row))
+	vals[count++] = m_Store.value(attIndex, row);
+    }
+
+    if ((k < 1) || (k > count)) {
+      throw new IllegalArgumentException("Instances: value for k for computing kth-smallest value too large.");
+    }
+
+    if (count < vals.length) {
+      double[] tmp = new double[count];
+      System.arraycopy(vals, 0, tmp, 0, count);
+      vals = tmp;
+    }
+
+    return Utils.kthSmallestValue(vals, k);
+  }
+
+  /**
+   * Calculates summary statistics on the values that appear in this
+   * set of instances for a specified attribute, using the attribute's
+   * column and the weights directly.
+   *
+   * @param index the index of the attribute to summarize (index starts with 0)
+   * @return an AttributeStats object with it's fields calculated.
+   */
+  public AttributeStats attributeStats(int index) {
+    AttributeStats	result;
+    double[]		vals;
+    double[]		weights;
+    int[]		sorted;
+    int			currentCount;
+    double		currentWeight;
+    double		prev;
+    int			j;
+
+    result = new AttributeStats();
+    if (attribute(index).isNominal()) {
+      result.nominalCounts = new int [attribute(index).numValues()];
+      result.nominalWeights = new double[attribute(index).numValues()];
+    }
+    if (attribute(index).isNumeric()) {
+      result.numericStats = new weka.experiment.Stats();
+    }
+    result.totalCount = numInstances();
+
+    vals          = attributeToDoubleArray(index);
+    weights       = weightsToDoubleArray();
+    sorted        = Utils.sort(vals);
+    currentCount  = 0;
+    currentWeight = 0;
+    prev          = Double.NaN;
+    for (j = 0; j < sorted.length; j++) {
+      if (Utils.isMissingValue(vals[sorted[j]])) {
+	result.missingCount = numInstances() - j;
+	break;
+      }
+      if (vals[sorted[j]] == prev) {
+	currentCount++;
+	currentWeight += weights[sorted[j]];
+      } else {
+	result.addDistinct(prev, currentCount, currentWeight);
+	currentCount = 1;
+	currentWeight = weights[sorted[j]];
+	prev = vals[sorted[j]];
+      }
+    }
+    result.addDistinct(prev, currentCount, currentWeight);
+    result.distinctCount--; // So we don't count "missing" as a value
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
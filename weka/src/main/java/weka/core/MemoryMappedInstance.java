@@ -0,0 +1,316 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MemoryMappedInstance.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A view of one record of a <code>MemoryMappedInstances</code> file. The
+ * view reads its values and its weight from the mapped file on every
+ * access. Changing values or the weight is only possible if the file was
+ * mapped writable, in which case the changes are written through to the
+ * file. <code>copy()</code> returns a <code>DenseInstance</code> held on
+ * the heap. <p>
+ *
+ * Views are not serialized with the mapping, serializing one stores a
+ * <code>DenseInstance</code> instead.
+ *
+ * @version $Revision$
+ * @see MemoryMappedInstances
+ */
+public class MemoryMappedInstance
+  extends AbstractInstance {
+
+  /** for serialization */
+  private static final long serialVersionUID = 2309719316497312640L;
+
+  /** the mapped segment containing the record. */
+  protected transient ByteBuffer m_Buffer;
+
+  /** the offset of the record within the segment. */
+  protected int m_Offset;
+
+  /** the number of attributes. */
+  protected int m_NumAttributes;
+
+  /** whether the mapping is writable. */
+  protected boolean m_Writable;
+
+  /**
+   * Initializes the view.
+   *
+   * @param buffer the mapped segment containing the record
+   * @param offset the offset of the record in the segment
+   * @param numAttributes the number of attributes
+   * @param writable whether the mapping is writable
+   * @param dataset the dataset the instance has access to
+   */
+  protected MemoryMappedInstance(ByteBuffer buffer, int offset, int numAttributes,
+      boolean writable, Instances dataset) {
+
+    m_Buffer        = buffer;
+    m_Offset        = offset;
+    m_NumAttributes = numAttributes;
+    m_Writable      = writable;
+    m_Dataset       = dataset;
+  }
+
+  /**
+   * Produces a copy of this instance in the form of a
+   * <code>DenseInstance</code>. The copy has access to the same dataset,
+   * but changes to it do not affect the file.
+   *
+   * @return the copy
+   */
+  public Object copy() {
+    DenseInstance	result;
+
+    result = new DenseInstance(weight(), toDoubleArray());
+    result.setDataset(m_Dataset);
+
+    return result;
+  }
+
+  /**
+   * Replaces the view with a <code>DenseInstance</code> when serialized.
+   *
+   * @return the replacement
+   */
+  protected Object writeReplace() {
+    return copy();
+  }
+
+  /**
+   * Returns the index of the attribute stored at the given position.
+   * Just returns the given value.
+   *
+   * @param position the position
+   * @return the index of the attribute stored at the given position
+   */
+  public int index(int position) {
+    return position;
+  }
+
+  /**
+   * Merges this instance with the given instance and returns
+   * the result. Dataset is set to null. The returned instance
+   * is a <code>DenseInstance</code>.
+   *
+   * @param inst the instance to be merged with this one
+   * @return the merged instances
+   */
+  public Instance mergeInstance(Instance inst) {
+    int m = 0;
+    double [] newVals = new double[numAttributes() + inst.numAttributes()];
+    for (int j = 0; j < numAttributes(); j++, m++) {
+      newVals[m] = value(j);
+    }
+    for (int j = 0; j < inst.numAttributes(); j++, m++) {
+      newVals[m] = inst.value(j);
+    }
+    return new DenseInstance(1.0, newVals);
+  }
+
+  /**
+   * Returns the number of attributes.
+   *
+   * @return the number of attributes as an integer
+   */
+  public int numAttributes() {
+    return m_NumAttributes;
+  }
+
+  /**
+   * Returns the number of values present. Always the same as numAttributes().
+   *
+   * @return the number of values
+   */
+  public int numValues() {
+    return m_NumAttributes;
+  }
+
+  /**
+   * Checks whether the record can be changed.
+   *
+   * @throws UnsupportedOperationException if the mapping is read-only
+   */
+  protected void checkWritable() {
+    if (!m_Writable)
+      throw new UnsupportedOperationException(
+	  "Memory-mapped instance is read-only, copy it first!");
+  }
+
+  /**
+   * Replaces all missing values in the instance with the
+   * values contained in the given array.
+   *
+   * @param array containing the means and modes
+   * @throws IllegalArgumentException if numbers of attributes are unequal
+   * @throws UnsupportedOperationException if the mapping is read-only
+   */
+  public void replaceMissingValues(double[] array) {
+    if ((array == null) || (array.length != m_NumAttributes)) {
+      throw new IllegalArgumentException("Unequal number of attributes!");
+    }
+    checkWritable();
+    for (int i = 0; i < m_NumAttributes; i++) {
+      if (isMissing(i)) {
+	setValue(i, array[i]);
+      }
+    }
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value
+   * (internal floating-point format). The value is written to the file.
+   *
+   * @param attIndex the attribute's index
+   * @param value the new attribute value (If the corresponding
+   * attribute is nominal (or a string) then this is the new value's
+   * index as a double).
+   * @throws UnsupportedOperationException if the mapping is read-only
+   */
+  public void setValue(int attIndex, double value) {
+    checkWritable();
+    m_Buffer.putDouble(m_Offset + 8 * (attIndex + 1), value);
+  }
+
+  /**
+   * Sets a specific value in the instance to the given value
+   * (internal floating-point format). Does exactly the same thing
+   * as setValue().
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @param value the new attribute value
+   * @throws UnsupportedOperationException if the mapping is read-only
+   */
+  public void setValueSparse(int indexOfIndex, double value) {
+    setValue(indexOfIndex, value);
+  }
+
+  /**
+   * Sets the weight of the instance. The weight is written to the file.
+   *
+   * @param weight the weight
+   * @throws UnsupportedOperationException if the mapping is read-only
+   */
+  public void setWeight(double weight) {
+    checkWritable();
+    m_Buffer.putDouble(m_Offset, weight);
+  }
+
+  /**
+   * Returns the instance's weight.
+   *
+   * @return the instance's weight as a double
+   */
+  public double weight() {
+    return m_Buffer.getDouble(m_Offset);
+  }
+
+  /**
+   * Returns the values of each attribute as an array of doubles.
+   *
+   * @return an array containing all the instance attribute values
+   */
+  public double[] toDoubleArray() {
+    double[] result = new double[m_NumAttributes];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = m_Buffer.getDouble(m_Offset + 8 * (i + 1));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the description of one instance (without weight
+   * appended). If the instance doesn't have access to a dataset,
+   * it returns the internal floating-point values. Quotes string
+   * values that contain whitespace characters.
+   *
+   * @return the instance's description as a string
+   */
+  public String toStringNoWeight() {
+    StringBuffer text = new StringBuffer();
+
+    for (int i = 0; i < m_NumAttributes; i++) {
+      if (i > 0) text.append(",");
+      text.append(toString(i));
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format.
+   *
+   * @param attIndex the attribute's index
+   * @return the specified value as a double (If the corresponding
+   * attribute is nominal (or a string) then it returns the value's index as a
+   * double).
+   */
+  public double value(int attIndex) {
+    return m_Buffer.getDouble(m_Offset + 8 * (attIndex + 1));
+  }
+
+  /**
+   * Returns an instance's attribute value in internal format, given
+   * an index in the sparse representation. Same as value(int).
+   *
+   * @param indexOfIndex the index of the attribute's index
+   * @return the specified value as a double
+   */
+  public double valueSparse(int indexOfIndex) {
+    return value(indexOfIndex);
+  }
+
+  /**
+   * Not supported, the layout of the file is fixed.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  protected void forceDeleteAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+	"Can't delete attributes of a memory-mapped instance, copy it first!");
+  }
+
+  /**
+   * Not supported, the layout of the file is fixed.
+   *
+   * @param position the attribute's position
+   * @throws UnsupportedOperationException always
+   */
+  protected void forceInsertAttributeAt(int position) {
+    throw new UnsupportedOperationException(
+	"Can't insert attributes into a memory-mapped instance, copy it first!");
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
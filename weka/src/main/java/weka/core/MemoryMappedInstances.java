@@ -0,0 +1,690 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    MemoryMappedInstances.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core;
+
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Enumeration;
+import java.util.Random;
+
+/**
+ * Read-only set of instances whose values are kept in a binary file that
+ * is mapped into memory (via <code>FileChannel.map</code>) instead of
+ * being held on the heap. This allows algorithms that only iterate over
+ * their training data to process datasets larger than the heap. <p>
+ *
+ * The instances are returned as lightweight views of type
+ * <code>MemoryMappedInstance</code> that read their values from the
+ * mapping; the operating system pages the data in and out as required.
+ * All methods that change the order or number of instances, or the
+ * attribute information, throw an
+ * <code>UnsupportedOperationException</code>. Values and weights can
+ * only be changed if the file was opened in writable mode, in which
+ * case the changes are written through to the file. <p>
+ *
+ * Files are created from any data source (ARFF, CSV, ...), reading the
+ * source incrementally if the loader supports it: <p>
+ * <pre>
+ * MemoryMappedInstances.write(new DataSource("big.arff"), new File("big.mmi"));
+ * Instances data = new MemoryMappedInstances(new File("big.mmi"));
+ * </pre><p>
+ *
+ * Serializing a memory-mapped set (eg. with the
+ * <code>SerializedInstancesSaver</code>) only stores the header and the
+ * location of the file, deserializing maps the file again. <p>
+ *
+ * File layout (big-endian): magic number, version, class index, length
+ * and UTF-8 bytes of the ARFF header, followed by one fixed-length
+ * record per instance (weight and one double per attribute). String
+ * and relational attributes are not supported. <p>
+ *
+ * Valid options for the command-line are: <p>
+ *
+ * <pre> -i &lt;file&gt;
+ *  The input file, any format supported by the converters.</pre>
+ *
+ * <pre> -o &lt;file&gt;
+ *  The memory-mapped file to create.</pre>
+ *
+ * <pre> -c &lt;index&gt;
+ *  The 1-based class index ('first' and 'last' are accepted as well).</pre>
+ *
+ * @version $Revision$
+ * @see MemoryMappedInstance
+ */
+public class MemoryMappedInstances
+  extends Instances {
+
+  /** for serialization */
+  private static final long serialVersionUID = -1698263408153619447L;
+
+  /** the file extension for memory-mapped instances. */
+  public final static String FILE_EXTENSION = ".mmi";
+
+  /** the magic number at the start of the file. */
+  public final static int MAGIC = 0x574d4d49;
+
+  /** the version of the file format. */
+  public final static int VERSION = 1;
+
+  /** the file the data is mapped from. */
+  protected File m_File;
+
+  /** whether the mapping is writable. */
+  protected boolean m_Writable;
+
+  /** the offset of the first record in the file. */
+  protected long m_DataOffset;
+
+  /** the length of a record in bytes. */
+  protected int m_RecordLength;
+
+  /** the number of instances in the file. */
+  protected int m_NumRows;
+
+  /** the number of rows per mapped segment. */
+  protected int m_RowsPerSegment;
+
+  /** the mapped segments of the file. */
+  protected transient ByteBuffer[] m_Segments;
+
+  /**
+   * Maps the given file read-only.
+   *
+   * @param file the file created with <code>write</code>
+   * @throws IOException if the file cannot be read or mapped
+   */
+  public MemoryMappedInstances(File file) throws IOException {
+    this(file, false);
+  }
+
+  /**
+   * Maps the given file.
+   *
+   * @param file the file created with <code>write</code>
+   * @param writable whether changes to values and weights are written
+   * through to the file
+   * @throws IOException if the file cannot be read or mapped
+   */
+  public MemoryMappedInstances(File file, boolean writable) throws IOException {
+    super(readHeader(file), 0);
+
+    m_File     = file.getAbsoluteFile();
+    m_Writable = writable;
+    map();
+  }
+
+  /**
+   * Reads the header of the given file.
+   *
+   * @param file the file to read the header from
+   * @return the header, with the class index set
+   * @throws IOException if the file is not a valid file
+   */
+  protected static Instances readHeader(File file) throws IOException {
+    DataInputStream	in;
+    Instances		result;
+    byte[]		header;
+    int			classIndex;
+
+    in = new DataInputStream(new FileInputStream(file));
+    try {
+      if (in.readInt() != MAGIC)
+	throw new IOException("Not a memory-mapped instances file: " + file);
+      if (in.readInt() != VERSION)
+	throw new IOException("Unsupported version of memory-mapped instances file: " + file);
+      classIndex = in.readInt();
+      header     = new byte[in.readInt()];
+      in.readFully(header);
+    }
+    finally {
+      in.close();
+    }
+
+    result = new Instances(new StringReader(new String(header, "UTF-8")));
+    result.setClassIndex(classIndex);
+
+    return result;
+  }
+
+  /**
+   * Returns the offset of the first record for a header of the given
+   * length.
+   *
+   * @param headerLength the length of the header in bytes
+   * @return the offset, aligned to 8 bytes
+   */
+  protected static long dataOffset(int headerLength) {
+    return ((16L + headerLength + 7) / 8) * 8;
+  }
+
+  /**
+   * Maps the file into memory, splitting it into segments of less than
+   * 2GB.
+   *
+   * @throws IOException if mapping fails
+   */
+  protected void map() throws IOException {
+    RandomAccessFile	raf;
+    FileChannel		channel;
+    long		length;
+    int			numSegments;
+    int			i;
+    int			rows;
+
+    raf = new RandomAccessFile(m_File, m_Writable ? "rw" : "r");
+    try {
+      raf.seek(12);
+      m_DataOffset     = dataOffset(raf.readInt());
+      m_RecordLength   = 8 * (numAttributes() + 1);
+      length           = raf.length() - m_DataOffset;
+      if ((length < 0) || (length % m_RecordLength != 0))
+	throw new IOException("Truncated memory-mapped instances file: " + m_File);
+      if (length / m_RecordLength > Integer.MAX_VALUE)
+	throw new IOException("Too many instances in memory-mapped instances file: " + m_File);
+      m_NumRows        = (int) (length / m_RecordLength);
+      m_RowsPerSegment = Integer.MAX_VALUE / m_RecordLength;
+      numSegments      = (m_NumRows + m_RowsPerSegment - 1) / m_RowsPerSegment;
+      m_Segments       = new ByteBuffer[numSegments];
+      channel          = raf.getChannel();
+      for (i = 0; i < numSegments; i++) {
+	rows = Math.min(m_RowsPerSegment, m_NumRows - i * m_RowsPerSegment);
+	m_Segments[i] = channel.map(
+	    m_Writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+	    m_DataOffset + (long) i * m_RowsPerSegment * m_RecordLength,
+	    (long) rows * m_RecordLength);
+      }
+    }
+    finally {
+      // the mappings stay valid after the channel is closed
+      raf.close();
+    }
+  }
+
+  /**
+   * Maps the file again after deserialization.
+   *
+   * @param in the stream to read from
+   * @throws IOException if mapping fails
+   * @throws ClassNotFoundException if a class cannot be found
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    map();
+  }
+
+  /**
+   * Returns the file the instances are mapped from.
+   *
+   * @return the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns whether changes to values and weights are written to the file.
+   *
+   * @return true if writable
+   */
+  public boolean isWritable() {
+    return m_Writable;
+  }
+
+  /**
+   * Returns the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return a view of the instance at the given position
+   */
+  public Instance instance(int index) {
+    ByteBuffer	segment;
+
+    if ((index < 0) || (index >= m_NumRows))
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_NumRows);
+
+    segment = m_Segments[index / m_RowsPerSegment];
+    return new MemoryMappedInstance(
+	segment, (index % m_RowsPerSegment) * m_RecordLength, numAttributes(), m_Writable, this);
+  }
+
+  /**
+   * Returns the instance at the given position.
+   *
+   * @param index the instance's index (index starts with 0)
+   * @return a view of the instance at the given position
+   */
+  public Instance get(int index) {
+    return instance(index);
+  }
+
+  /**
+   * Returns the first instance in the set.
+   *
+   * @return the first instance in the set
+   */
+  public Instance firstInstance() {
+    return instance(0);
+  }
+
+  /**
+   * Returns the last instance in the set.
+   *
+   * @return the last instance in the set
+   */
+  public Instance lastInstance() {
+    return instance(m_NumRows - 1);
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  public int numInstances() {
+    return m_NumRows;
+  }
+
+  /**
+   * Returns the number of instances in the dataset.
+   *
+   * @return the number of instances in the dataset as an integer
+   */
+  public int size() {
+    return m_NumRows;
+  }
+
+  /**
+   * Returns an enumeration of all instances in the dataset.
+   *
+   * @return enumeration of all instances in the dataset
+   */
+  public Enumeration enumerateInstances() {
+    return new WekaEnumeration(this);
+  }
+
+  /**
+   * Does nothing, the instances are not held on the heap.
+   */
+  public void compactify() {
+  }
+
+  /**
+   * Throws an exception, since memory-mapped instances are read-only.
+   *
+   * @param operation the name of the operation
+   * @throws UnsupportedOperationException always
+   */
+  protected void readOnly(String operation) {
+    throw new UnsupportedOperationException(
+	"Memory-mapped instances don't support " + operation + "!");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param instance ignored
+   * @return nothing
+   * @throws UnsupportedOperationException always
+   */
+  public boolean add(Instance instance) {
+    readOnly("adding instances");
+    return false;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param index ignored
+   * @param instance ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void add(int index, Instance instance) {
+    readOnly("adding instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param index ignored
+   * @param instance ignored
+   * @return nothing
+   * @throws UnsupportedOperationException always
+   */
+  public Instance set(int index, Instance instance) {
+    readOnly("replacing instances");
+    return null;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  public void delete() {
+    readOnly("deleting instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param index ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void delete(int index) {
+    readOnly("deleting instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param index ignored
+   * @return nothing
+   * @throws UnsupportedOperationException always
+   */
+  public Instance remove(int index) {
+    readOnly("deleting instances");
+    return null;
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param attIndex ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void deleteWithMissing(int attIndex) {
+    readOnly("deleting instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param position ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void deleteAttributeAt(int position) {
+    readOnly("deleting attributes");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param att ignored
+   * @param position ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void insertAttributeAt(Attribute att, int position) {
+    readOnly("inserting attributes");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param i ignored
+   * @param j ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void swap(int i, int j) {
+    readOnly("reordering instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param attIndex ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void sort(int attIndex) {
+    readOnly("sorting");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param random ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void randomize(Random random) {
+    readOnly("reordering instances");
+  }
+
+  /**
+   * Not supported.
+   *
+   * @param numFolds ignored
+   * @throws UnsupportedOperationException always
+   */
+  public void stratify(int numFolds) {
+    readOnly("reordering instances");
+  }
+
+  /**
+   * Returns the kth-smallest attribute value of a numeric attribute.
+   * Unlike the implementation in <code>Instances</code>, the order of
+   * the data is not changed. Requires the values of the attribute to
+   * fit into memory.
+   *
+   * @param attIndex the attribute's index
+   * @param k the value of k
+   * @return the kth-smallest value
+   */
+  public double kthSmallestValue(int attIndex, int k) {
+    double[]	vals;
+    int		count;
+    int		i;
+
+    if (!attribute(attIndex).isNumeric()) {
+      throw new IllegalArgumentException("Instances: attribute must be numeric to compute kth-smallest value.");
+    }
+
+    vals  = new double[numInstances()];
+    count = 0;
+    for (i = 0; i < vals.length; i++) {
+      if (!instance(i).isMissing(attIndex))
+	vals[count++] = instance(i).value(attIndex);
+    }
+
+    if ((k < 1) || (k > count)) {
+      throw new IllegalArgumentException("Instances: value for k for computing kth-smallest value too large.");
+    }
+
+    if (count < vals.length) {
+      double[] tmp = new double[count];
+      System.arraycopy(vals, 0, tmp, 0, count);
+      vals = tmp;
+    }
+
+    return Utils.kthSmallestValue(vals, k);
+  }
+
+  /**
+   * Writes the data of the given source to the file, reading the source
+   * incrementally if possible. The class index of the source's structure
+   * is stored in the file.
+   *
+   * @param source the data to write
+   * @param file the file to write to
+   * @throws Exception if reading the source or writing the file fails,
+   * or if the data contains string or relational attributes
+   */
+  public static void write(DataSource source, File file) throws Exception {
+    write(source, file, source.getStructure().classIndex());
+  }
+
+  /**
+   * Writes the data of the given source to the file, reading the source
+   * incrementally if possible.
+   *
+   * @param source the data to write
+   * @param file the file to write to
+   * @param classIndex the class index to store in the file (0-based, -1
+   * for no class)
+   * @throws Exception if reading the source or writing the file fails,
+   * or if the data contains string or relational attributes
+   */
+  public static void write(DataSource source, File file, int classIndex) throws Exception {
+    Instances		structure;
+    DataOutputStream	out;
+
+    source.reset();
+    structure = source.getStructure();
+    structure.setClassIndex(classIndex);
+    out       = writeHeader(structure, file);
+    try {
+      while (source.hasMoreElements(structure))
+	writeInstance(out, source.nextElement(structure), structure.numAttributes());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Writes the given data to the file.
+   *
+   * @param data the data to write
+   * @param file the file to write to
+   * @throws IOException if writing the file fails or if the data
+   * contains string or relational attributes
+   */
+  public static void write(Instances data, File file) throws IOException {
+    DataOutputStream	out;
+
+    out = writeHeader(data, file);
+    try {
+      for (int i = 0; i < data.numInstances(); i++)
+	writeInstance(out, data.instance(i), data.numAttributes());
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Creates the file and writes the header to it.
+   *
+   * @param structure the structure of the data
+   * @param file the file to create
+   * @return the stream to write the records to
+   * @throws IOException if the data contains string or relational
+   * attributes, or writing fails
+   */
+  protected static DataOutputStream writeHeader(Instances structure, File file) throws IOException {
+    DataOutputStream	out;
+    byte[]		header;
+    long		padding;
+
+    if (structure.checkForAttributeType(Attribute.STRING))
+      throw new IOException("Memory-mapped instances don't support string attributes!");
+    if (structure.checkForAttributeType(Attribute.RELATIONAL))
+      throw new IOException("Memory-mapped instances don't support relational attributes!");
+
+    header = new Instances(structure, 0).toString().getBytes("UTF-8");
+    out    = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(structure.classIndex());
+    out.writeInt(header.length);
+    out.write(header);
+    padding = dataOffset(header.length) - 16 - header.length;
+    for (int i = 0; i < padding; i++)
+      out.writeByte(0);
+
+    return out;
+  }
+
+  /**
+   * Writes the record of an instance.
+   *
+   * @param out the stream to write to
+   * @param inst the instance to write
+   * @param numAttributes the number of attributes
+   * @throws IOException if writing fails
+   */
+  protected static void writeInstance(DataOutputStream out, Instance inst, int numAttributes) throws IOException {
+    out.writeDouble(inst.weight());
+    for (int i = 0; i < numAttributes; i++)
+      out.writeDouble(inst.value(i));
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Converts a dataset into a memory-mapped instances file.
+   *
+   * @param args the commandline options
+   */
+  public static void main(String[] args) {
+    String	input;
+    String	output;
+    String	classIndex;
+    DataSource	source;
+    Instances	data;
+
+    try {
+      input      = Utils.getOption('i', args);
+      output     = Utils.getOption('o', args);
+      classIndex = Utils.getOption('c', args);
+      if ((input.length() == 0) || (output.length() == 0))
+	throw new Exception(
+	    "\nUsage: " + MemoryMappedInstances.class.getName()
+	    + " -i <input file> -o <output file> [-c <class index>]\n");
+
+      source = new DataSource(input);
+      if (classIndex.length() != 0) {
+	SingleIndex index = new SingleIndex(classIndex);
+	index.setUpper(source.getStructure().numAttributes() - 1);
+	write(source, new File(output), index.getIndex());
+      }
+      else {
+	write(source, new File(output));
+      }
+
+      data = new MemoryMappedInstances(new File(output));
+      System.out.println(data.toSummaryString());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -25,6 +25,13 @@ package weka.core;
 import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 /**
  * Implementation of Active-sets method with BFGS update to solve optimization
  * problem with only bounds constraints in multi-dimensions.  In this
@@ -118,6 +125,19 @@ import weka.core.TechnicalInformation.Type;
  * provided, there is no need to override the <code>evaluateHessian()</code>
  * function.<p/>
  *
+ * If the objective function and its gradient are sums over instances, they
+ * can be evaluated in parallel: override <code>partialObjectiveFunction()</code>
+ * and <code>partialGradient()</code> to evaluate the sums over a range of
+ * instances, return <code>parallelObjectiveFunction()</code> and
+ * <code>parallelGradient()</code> from <code>objectiveFunction()</code> and
+ * <code>evaluateGradient()</code> (plus any terms that don't depend on the
+ * instances) and set the number of execution slots.<p/>
+ *
+ * For problems with many variables, the dense approximation of the Hessian
+ * (quadratic in the number of variables) can be replaced with the limited
+ * memory BFGS approximation (L-BFGS), which only stores the last few
+ * corrections, see <code>setNumCorrections()</code>.<p/>
+ *
  * REFERENCES (see also the <code>getTechnicalInformation()</code> method):<br/>
  * The whole model algorithm is adapted from Chapter 5 and other related
  * chapters in Gill, Murray and Wright(1981) "Practical Optimization", Academic
@@ -171,6 +191,17 @@ public abstract class Optimization
     /** Used when iteration overflow occurs */
     private double[] m_X;
     
+    /** The number of execution slots (threads) for evaluating the objective
+     * function and gradient in parallel */
+    protected int m_NumExecutionSlots = 1;
+    
+    /** The executor for evaluating in parallel, only available while searching */
+    protected ExecutorService m_Executor;
+    
+    /** The number of corrections stored by L-BFGS, 0 to use BFGS with
+     * a dense approximation of the Hessian */
+    protected int m_NumCorrections = 0;
+    
     /** Compute machine precision */
     protected static double m_Epsilon, m_Zero; 
     static {
@@ -284,6 +315,151 @@ public abstract class Optimization
 	return null;
     }
 
+    /**
+     * Subclasses that evaluate the objective function in parallel have to
+     * override this procedure to evaluate the part of the objective function
+     * that is due to the given range of instances.
+     * 
+     * @param x the variable values
+     * @param start the first instance of the range
+     * @param end the instance after the last one of the range
+     * @return the part of the objective function value
+     * @throws Exception if something goes wrong
+     * @see #parallelObjectiveFunction(double[], int)
+     */
+    protected double partialObjectiveFunction(double[] x, int start, int end) 
+      throws Exception {
+      
+      throw new Exception(getClass().getName() + " does not support parallel evaluation!");
+    }
+
+    /**
+     * Subclasses that evaluate the gradient in parallel have to override this
+     * procedure to add the part of the gradient that is due to the given range
+     * of instances.
+     * 
+     * @param x the variable values
+     * @param start the first instance of the range
+     * @param end the instance after the last one of the range
+     * @param grad the gradient vector to add to
+     * @throws Exception if something goes wrong
+     * @see #parallelGradient(double[], int)
+     */
+    protected void partialGradient(double[] x, int start, int end, double[] grad) 
+      throws Exception {
+      
+      throw new Exception(getClass().getName() + " does not support parallel evaluation!");
+    }
+
+    /**
+     * Returns the ranges of instances to evaluate in parallel, one per
+     * execution slot.
+     * 
+     * @param numInstances the number of instances
+     * @return the start of each range, followed by the end of the last one
+     */
+    protected int[] partition(int numInstances) {
+      int numParts = Math.max(1, Math.min(m_NumExecutionSlots, numInstances));
+      int[] result = new int[numParts + 1];
+      for (int i = 0; i <= numParts; i++)
+	result[i] = (int) ((long) numInstances * i / numParts);
+      
+      return result;
+    }
+    
+    /**
+     * Waits for the result of a parallel evaluation.
+     *
+     * @param future the evaluation to wait for
+     * @return the result
+     * @throws Exception if the evaluation failed
+     */
+    protected Object waitFor(Future<Object> future) throws Exception {
+      try {
+	return future.get();
+      }
+      catch (ExecutionException e) {
+	if (e.getCause() instanceof Exception)
+	  throw (Exception) e.getCause();
+	throw e;
+      }
+    }
+
+    /**
+     * Evaluates the sum of <code>partialObjectiveFunction()</code> over all
+     * instances, in parallel if several execution slots are available. The
+     * parts are always added up in the same order.
+     * 
+     * @param x the variable values
+     * @param numInstances the number of instances
+     * @return the sum
+     * @throws Exception if something goes wrong
+     */
+    protected double parallelObjectiveFunction(final double[] x, int numInstances) 
+      throws Exception {
+      
+      if (m_Executor == null)
+	return partialObjectiveFunction(x, 0, numInstances);
+
+      int[] parts = partition(numInstances);
+      Future<Object>[] results = new Future[parts.length - 1];
+      for (int i = 0; i < results.length; i++) {
+	final int start = parts[i];
+	final int end = parts[i + 1];
+	results[i] = m_Executor.submit(new Callable<Object>() {
+	    public Object call() throws Exception {
+	      return new Double(partialObjectiveFunction(x, start, end));
+	    }
+	  });
+      }
+      double result = 0;
+      for (int i = 0; i < results.length; i++)
+	result += ((Double) waitFor(results[i])).doubleValue();
+      
+      return result;
+    }
+
+    /**
+     * Evaluates the sum of <code>partialGradient()</code> over all instances,
+     * in parallel if several execution slots are available. The parts are 
+     * always added up in the same order.
+     * 
+     * @param x the variable values
+     * @param numInstances the number of instances
+     * @return the gradient vector
+     * @throws Exception if something goes wrong
+     */
+    protected double[] parallelGradient(final double[] x, int numInstances) 
+      throws Exception {
+      
+      double[] result = new double[x.length];
+      if (m_Executor == null) {
+	partialGradient(x, 0, numInstances, result);
+	return result;
+      }
+
+      int[] parts = partition(numInstances);
+      Future<Object>[] results = new Future[parts.length - 1];
+      for (int i = 0; i < results.length; i++) {
+	final int start = parts[i];
+	final int end = parts[i + 1];
+	results[i] = m_Executor.submit(new Callable<Object>() {
+	    public Object call() throws Exception {
+	      double[] grad = new double[x.length];
+	      partialGradient(x, start, end, grad);
+	      return grad;
+	    }
+	  });
+      }
+      for (int i = 0; i < results.length; i++) {
+	double[] grad = (double[]) waitFor(results[i]);
+	for (int j = 0; j < result.length; j++)
+	  result[j] += grad[j];
+      }
+      
+      return result;
+    }
+
     /**
      * Get the minimal function value
      *
@@ -311,6 +487,49 @@ public abstract class Optimization
       m_Debug = db;
     }
     
+    /**
+     * Set the number of execution slots (threads) for evaluating the 
+     * objective function and gradient in parallel (Default 1). Only 
+     * subclasses that support parallel evaluation make use of it.
+     *
+     * @param slots the number of execution slots
+     */
+    public void setNumExecutionSlots(int slots) {
+      m_NumExecutionSlots = slots;
+    }
+    
+    /**
+     * Get the number of execution slots (threads) for evaluating the 
+     * objective function and gradient in parallel.
+     *
+     * @return the number of execution slots
+     */
+    public int getNumExecutionSlots() {
+      return m_NumExecutionSlots;
+    }
+    
+    /**
+     * Set the number of corrections L-BFGS stores to approximate the Hessian,
+     * or 0 to use BFGS with a dense approximation of the Hessian (Default 0).
+     * The memory needed by L-BFGS is linear in the number of variables,
+     * rather than quadratic.
+     *
+     * @param num the number of corrections
+     */
+    public void setNumCorrections(int num) {
+      m_NumCorrections = num;
+    }
+    
+    /**
+     * Get the number of corrections L-BFGS stores to approximate the Hessian,
+     * 0 if BFGS with a dense approximation of the Hessian is used.
+     *
+     * @return the number of corrections
+     */
+    public int getNumCorrections() {
+      return m_NumCorrections;
+    }
+    
     /**
      * Get the variable values.  Only needed when iterations exceeds 
      * the max threshold.
@@ -819,6 +1038,29 @@ public abstract class Optimization
      * @throws Exception if an error occurs
      */
     public double[] findArgmin(double[] initX, double[][] constraints) 
+	throws Exception{
+	if (m_NumExecutionSlots > 1)
+	    m_Executor = Executors.newFixedThreadPool(m_NumExecutionSlots);
+	try {
+	    return search(initX, constraints);
+	}
+	finally {
+	    if (m_Executor != null) {
+		m_Executor.shutdownNow();
+		m_Executor = null;
+	    }
+	}
+    }
+    
+    /**
+     * Performs the search for findArgmin(double[], double[][]).
+     *
+     * @param initX initial point of x, assuming no value's on the bound!
+     * @param constraints the bound constraints of each variable
+     * @return the solution of x, null if number of iterations not enough
+     * @throws Exception if an error occurs
+     */
+    protected double[] search(double[] initX, double[][] constraints) 
 	throws Exception{
 	int l = initX.length;
 	
@@ -840,12 +1082,22 @@ public abstract class Optimization
 	double[] grad=evaluateGradient(initX), oldGrad, oldX,
 	    deltaGrad=new double[l], deltaX=new double[l],
 	    direct = new double[l], x = new double[l];
-	Matrix L = new Matrix(l, l);  // Lower triangle of Cholesky factor 
-	double[] D = new double[l];   // Diagonal of Cholesky factor
+	Matrix L = null;    // Lower triangle of Cholesky factor (BFGS only)
+	double[] D = null;  // Diagonal of Cholesky factor (BFGS only)
+	if (m_NumCorrections <= 0) {
+	    L = new Matrix(l, l);
+	    D = new double[l];
+	}
+	// Corrections of x and the gradient and their inverse products (L-BFGS only)
+	LinkedList<double[]> corrX = new LinkedList<double[]>();
+	LinkedList<double[]> corrGrad = new LinkedList<double[]>();
+	LinkedList<Double> corrRho = new LinkedList<Double>();
 	for(int i=0; i<l; i++){
-	    L.setRow(i, new double[l]);
-	    L.setElement(i,i,1.0);
-	    D[i] = 1.0;
+	    if (L != null) {
+		L.setRow(i, new double[l]);
+		L.setElement(i,i,1.0);
+		D[i] = 1.0;
+	    }
 	    direct[i] = -grad[i];
 	    sum += grad[i]*grad[i];
 	    x[i] = initX[i];
@@ -868,13 +1120,23 @@ public abstract class Optimization
 	    if (m_Debug)
 		System.err.println("Line search ... ");
 	    m_IsZeroStep = false;
+	    int numFixed = wsBdsIndx.size();
 	    x=lnsrch(x, grad, direct, stpmax, 
 		     isFixed, nwsBounds, wsBdsIndx);
 	    if (m_Debug)
 		System.err.println("Line search finished.");
 	    
+	    // L-BFGS: corrections only apply to the variables that were free
+	    if (wsBdsIndx.size() != numFixed) {
+		corrX.clear();
+		corrGrad.clear();
+		corrRho.clear();
+	    }
+	    
 	    if(m_IsZeroStep){ // Zero step, simply delete rows/cols of D and L
 		for(int f=0; f<wsBdsIndx.size(); f++){
+		    if (L == null)
+			break;
 		    int idx=wsBdsIndx.elementAt(f);
 		    L.setRow(idx, new double[l]);
 		    L.setColumn(idx, new double[l]);
@@ -1019,8 +1281,15 @@ public abstract class Optimization
 						   " from bound "+ 
 						   nwsBounds[1][freeIndx]);
 			}			
-			L.setElement(freeIndx, freeIndx, 1.0);
-			D[freeIndx] = 1.0;
+			if (L != null) {
+			    L.setElement(freeIndx, freeIndx, 1.0);
+			    D[freeIndx] = 1.0;
+			}
+			else {
+			    corrX.clear();
+			    corrGrad.clear();
+			    corrRho.clear();
+			}
 			isUpdate = false;			
 		    }			
 		}
@@ -1030,8 +1299,26 @@ public abstract class Optimization
 			System.err.println("dg'*dx negative!");
 		    isUpdate = false; // Do not update		    
 		}		
+		// L-BFGS: store the correction, dropping the oldest one
+		if(isUpdate && (L == null)){
+		    double[] corrXNew = new double[l], corrGradNew = new double[l];
+		    for(int g=0; g<l; g++){
+			if(!isFixed[g]){
+			    corrXNew[g] = deltaX[g];
+			    corrGradNew[g] = deltaGrad[g];
+			}
+		    }
+		    corrX.addLast(corrXNew);
+		    corrGrad.addLast(corrGradNew);
+		    corrRho.addLast(new Double(1.0/denom));
+		    if(corrX.size() > m_NumCorrections){
+			corrX.removeFirst();
+			corrGrad.removeFirst();
+			corrRho.removeFirst();
+		    }
+		}
 		// If Hessian will be positive definite, update it
-		if(isUpdate){
+		else if(isUpdate){
 		    
 		    // modify once: dg*dg'/(dg'*dx)	
 		    double coeff = 1.0/denom; // 1/(dg'*dx)	
@@ -1044,6 +1331,10 @@ public abstract class Optimization
 	    }
 	    
 	    // Find new direction 
+	    if (L == null) {
+		direct = lbfgsDirection(grad, isFixed, corrX, corrGrad, corrRho);
+		continue;
+	    }
 	    Matrix LD = new Matrix(l,l); // L*D
 	    double[] b = new double[l];
 	    
@@ -1085,6 +1376,68 @@ public abstract class Optimization
 	return null;
     }
     
+    /**
+     * Computes the search direction of L-BFGS with the two-loop recursion,
+     * i.e., -H*g where H is the approximation of the inverse Hessian given
+     * by the stored corrections. Fixed variables have zero direction.
+     *
+     * @param grad the gradient
+     * @param isFixed whether a variable has been fixed
+     * @param corrX the corrections of x, oldest first
+     * @param corrGrad the corrections of the gradient, oldest first
+     * @param corrRho the inverse products of the corrections
+     * @return the direction
+     */
+    protected double[] lbfgsDirection(double[] grad, boolean[] isFixed,
+				      LinkedList<double[]> corrX, 
+				      LinkedList<double[]> corrGrad,
+				      LinkedList<Double> corrRho) {
+	int l = grad.length, m = corrX.size();
+	double[] q = new double[l], alpha = new double[m];
+	
+	for(int i=0; i<l; i++)
+	    if(!isFixed[i])
+		q[i] = grad[i];
+	
+	// First loop: newest to oldest correction
+	for(int k=m-1; k>=0; k--){
+	    double[] s = corrX.get(k), y = corrGrad.get(k);
+	    double dot = 0.0;
+	    for(int i=0; i<l; i++)
+		dot += s[i]*q[i];
+	    alpha[k] = corrRho.get(k).doubleValue()*dot;
+	    for(int i=0; i<l; i++)
+		q[i] -= alpha[k]*y[i];
+	}
+	
+	// Scale by s'y/y'y of the newest correction
+	if(m > 0){
+	    double[] y = corrGrad.getLast();
+	    double yy = 0.0;
+	    for(int i=0; i<l; i++)
+		yy += y[i]*y[i];
+	    double gamma = 1.0/(corrRho.getLast().doubleValue()*yy);
+	    for(int i=0; i<l; i++)
+		q[i] *= gamma;
+	}
+	
+	// Second loop: oldest to newest correction
+	for(int k=0; k<m; k++){
+	    double[] s = corrX.get(k), y = corrGrad.get(k);
+	    double dot = 0.0;
+	    for(int i=0; i<l; i++)
+		dot += y[i]*q[i];
+	    double beta = corrRho.get(k).doubleValue()*dot;
+	    for(int i=0; i<l; i++)
+		q[i] += s[i]*(alpha[k]-beta);
+	}
+	
+	for(int i=0; i<l; i++)
+	    q[i] = isFixed[i] ? 0.0 : -q[i];
+	
+	return q;
+    }
+    
     /** 
      * Solve the linear equation of TX=B where T is a triangle matrix
      * It can be solved using back/forward substitution, with O(N^2) 
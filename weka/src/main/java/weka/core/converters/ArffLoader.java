@@ -73,6 +73,12 @@ public class ArffLoader
 
   /** The parser for the ARFF file */
   protected transient ArffReader m_ArffReader = null;
+
+  /** whether to use the FastArffReader for parsing the data */
+  protected boolean m_UseFastParser = true;
+
+  /** the number of threads for parsing the data in batch mode */
+  protected int m_NumExecutionSlots = 1;
   
   /**
    * Reads data from an ARFF file, either in incremental or batch mode. <p/>
@@ -843,6 +849,70 @@ public class ArffLoader
       +"format. ";
   }
 
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String useFastParserTipText() {
+    return 
+        "Whether to parse the data with a fast hand-written scanner instead "
+      + "of a StreamTokenizer; the resulting data is the same.";
+  }
+
+  /**
+   * Sets whether to parse the data with the FastArffReader.
+   * 
+   * @param value	true if to use the FastArffReader
+   */
+  public void setUseFastParser(boolean value) {
+    m_UseFastParser = value;
+  }
+
+  /**
+   * Returns whether the data is parsed with the FastArffReader.
+   * 
+   * @return		true if the FastArffReader is used
+   */
+  public boolean getUseFastParser() {
+    return m_UseFastParser;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return 
+        "The number of threads for parsing the data in batch mode, only "
+      + "used with the fast parser and data with nominal and numeric "
+      + "attributes only.";
+  }
+
+  /**
+   * Sets the number of threads for parsing the data in batch mode.
+   * 
+   * @param value	the number of threads
+   */
+  public void setNumExecutionSlots(int value) {
+    if (value >= 1)
+      m_NumExecutionSlots = value;
+    else
+      System.err.println("Number of execution slots has to be at least 1!");
+  }
+
+  /**
+   * Returns the number of threads for parsing the data in batch mode.
+   * 
+   * @return		the number of threads
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * Get the file extension used for arff files
    *
@@ -976,7 +1046,10 @@ public class ArffLoader
 
     if (m_structure == null) {
       try {
-	m_ArffReader = new ArffReader(m_sourceReader, 1);
+	if (m_UseFastParser)
+	  m_ArffReader = new FastArffReader(m_sourceReader, 1);
+	else
+	  m_ArffReader = new ArffReader(m_sourceReader, 1);
 	m_structure  = m_ArffReader.getStructure();
       } catch (Exception ex) {
 	throw new IOException("Unable to determine structure as arff (Reason: " + ex.toString() + ").");
@@ -1008,9 +1081,14 @@ public class ArffLoader
     }
 
     // Read all instances
-    Instance inst;
-    while ((inst = m_ArffReader.readInstance(m_structure)) != null)
-      m_structure.add(inst);
+    if (m_ArffReader instanceof FastArffReader) {
+      ((FastArffReader) m_ArffReader).readInstances(m_structure, m_NumExecutionSlots);
+    }
+    else {
+      Instance inst;
+      while ((inst = m_ArffReader.readInstance(m_structure)) != null)
+	m_structure.add(inst);
+    }
     
     Instances readIn = new Instances(m_structure);
 
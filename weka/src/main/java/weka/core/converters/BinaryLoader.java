@@ -0,0 +1,592 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BinaryLoader.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ <!-- globalinfo-start -->
+ * Reads a source that is in the binary format written by the BinarySaver. The data is stored in blocks of rows with typed values, optionally compressed, with an index of the blocks at the end of the file for random access.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ * The layout of the file (all numbers big-endian):
+ * <pre>
+ * int     magic number
+ * int     version
+ * byte    compression (0 = none, 1 = deflate)
+ * int     class index (-1 if none)
+ * int     length of header, followed by the ARFF header in UTF-8
+ * blocks: int number of rows (0 terminates the blocks),
+ *         int stored length, int raw length, stored bytes
+ * int     number of blocks, followed by a long offset and an int number
+ *         of rows for each block
+ * long    offset of the block index
+ * int     magic number
+ * </pre>
+ * Each row consists of a byte for the type (0 = dense, 1 = sparse), the
+ * weight as double and the values, sparse rows store the number of values
+ * and the attribute index in front of each value. Numeric and date values
+ * are stored as doubles, nominal values as byte, short or int depending
+ * on the number of labels (-1 for missing), string and relational values
+ * as length and UTF-8 bytes (length -1 for missing), relational values
+ * in ARFF format.
+ *
+ * @version $Revision$
+ * @see Loader
+ * @see BinarySaver
+ */
+public class BinaryLoader
+  extends AbstractFileLoader
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization */
+  private static final long serialVersionUID = -2931453012846538410L;
+
+  /** the file extension */
+  public static String FILE_EXTENSION = ".wbin";
+
+  /** the magic number at the start and the end of a file */
+  public final static int MAGIC = 0x5745424e;
+
+  /** the version of the format */
+  public final static int VERSION = 1;
+
+  /** no compression */
+  public final static byte COMPRESSION_NONE = 0;
+
+  /** deflate compression of the blocks */
+  public final static byte COMPRESSION_DEFLATE = 1;
+
+  /** the row type for dense instances */
+  public final static byte ROW_DENSE = 0;
+
+  /** the row type for sparse instances */
+  public final static byte ROW_SPARSE = 1;
+
+  /** the stream to read from */
+  protected transient DataInputStream m_Input = null;
+
+  /** the compression used by the source */
+  protected byte m_Compression;
+
+  /** the raw data of the current block */
+  protected transient ByteBuffer m_Block = null;
+
+  /** the number of rows left in the current block */
+  protected int m_RowsLeft;
+
+  /** whether the last block has been read */
+  protected boolean m_EndOfData;
+
+  /**
+   * Returns a string describing this Loader
+   *
+   * @return 		a description of the Loader suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Reads a source that is in the binary format written by the "
+      + "BinarySaver. The data is stored in blocks of rows with typed "
+      + "values, optionally compressed, with an index of the blocks at the "
+      + "end of the file for random access.";
+  }
+
+  /**
+   * Get the file extension used for binary files
+   *
+   * @return 		the file extension
+   */
+  public String getFileExtension() {
+    return FILE_EXTENSION;
+  }
+
+  /**
+   * Gets all the file extensions used for this type of file
+   *
+   * @return the file extensions
+   */
+  public String[] getFileExtensions() {
+    return new String[]{getFileExtension()};
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return 		a short file description
+   */
+  public String getFileDescription() {
+    return "Binary data files";
+  }
+
+  /**
+   * Resets the Loader ready to read a new data set
+   *
+   * @throws IOException 	if something goes wrong
+   */
+  public void reset() throws IOException {
+    m_structure = null;
+    m_Block     = null;
+    m_RowsLeft  = 0;
+    m_EndOfData = false;
+
+    setRetrieval(NONE);
+
+    if ((m_File != null) && !(new File(m_File).isDirectory()))
+      setFile(new File(m_File));
+  }
+
+  /**
+   * Resets the Loader object and sets the source of the data set to be
+   * the supplied InputStream.
+   *
+   * @param in 			the source InputStream.
+   * @throws IOException 	if initialization of the stream fails
+   */
+  public void setSource(InputStream in) throws IOException {
+    m_File      = (new File(System.getProperty("user.dir"))).getAbsolutePath();
+    m_structure = null;
+    m_Block     = null;
+    m_RowsLeft  = 0;
+    m_EndOfData = false;
+
+    m_Input = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+  }
+
+  /**
+   * Reads the header of a binary file from the stream.
+   *
+   * @param in			the stream to read from
+   * @param compression		to store the compression in, can be null
+   * @return			the structure, with the class index set
+   * @throws IOException 	if the stream is not in binary format
+   */
+  protected static Instances readHeader(DataInput in, byte[] compression) throws IOException {
+    Instances	result;
+    byte[]	header;
+    int		classIndex;
+
+    if (in.readInt() != MAGIC)
+      throw new IOException("Not a binary data file!");
+    if (in.readInt() != VERSION)
+      throw new IOException("Unsupported version of binary data file!");
+    if (compression != null)
+      compression[0] = in.readByte();
+    else
+      in.readByte();
+    classIndex = in.readInt();
+    header     = new byte[in.readInt()];
+    in.readFully(header);
+
+    result = new ArffLoader.ArffReader(new StringReader(new String(header, "UTF-8")), 0).getStructure();
+    result.setClassIndex(classIndex);
+
+    return result;
+  }
+
+  /**
+   * Determines and returns (if possible) the structure (internally the
+   * header) of the data set as an empty set of instances.
+   *
+   * @return 			the structure of the data set as an empty set
+   * 				of Instances
+   * @throws IOException 	if an error occurs
+   */
+  public Instances getStructure() throws IOException {
+    byte[]	compression;
+
+    if (m_Input == null)
+      throw new IOException("No source has been specified");
+
+    if (m_structure == null) {
+      compression   = new byte[1];
+      m_structure   = readHeader(m_Input, compression);
+      m_Compression = compression[0];
+    }
+
+    return new Instances(m_structure, 0);
+  }
+
+  /**
+   * Reads the next block from the stream.
+   *
+   * @return			false if there are no more blocks
+   * @throws IOException 	if reading fails
+   */
+  protected boolean nextBlock() throws IOException {
+    int		rows;
+
+    if (m_EndOfData)
+      return false;
+
+    rows = m_Input.readInt();
+    if (rows == 0) {
+      m_EndOfData = true;
+      return false;
+    }
+    m_Block    = decodeBlock(m_Input, m_Compression);
+    m_RowsLeft = rows;
+
+    return true;
+  }
+
+  /**
+   * Reads the stored bytes of a block and decompresses them if necessary.
+   * The number of rows has already been read.
+   *
+   * @param in			the stream to read from
+   * @param compression		the compression of the file
+   * @return			the raw data of the block
+   * @throws IOException 	if reading fails
+   */
+  protected static ByteBuffer decodeBlock(DataInput in, byte compression) throws IOException {
+    byte[]	stored;
+    byte[]	raw;
+    Inflater	inflater;
+
+    stored = new byte[in.readInt()];
+    raw    = new byte[in.readInt()];
+    in.readFully(stored);
+
+    if (compression == COMPRESSION_NONE) {
+      raw = stored;
+    }
+    else {
+      inflater = new Inflater();
+      try {
+	inflater.setInput(stored);
+	if (inflater.inflate(raw) != raw.length)
+	  throw new IOException("Corrupt block in binary data file!");
+      }
+      catch (DataFormatException e) {
+	throw new IOException("Corrupt block in binary data file: " + e);
+      }
+      finally {
+	inflater.end();
+      }
+    }
+
+    return ByteBuffer.wrap(raw);
+  }
+
+  /**
+   * Reads a string stored as length and UTF-8 bytes.
+   *
+   * @param block		the block to read from
+   * @return			the string, null if missing
+   * @throws IOException 	if decoding fails
+   */
+  protected static String readString(ByteBuffer block) throws IOException {
+    int		length;
+    String	result;
+
+    length = block.getInt();
+    if (length < 0)
+      return null;
+    result = new String(block.array(), block.position(), length, "UTF-8");
+    block.position(block.position() + length);
+
+    return result;
+  }
+
+  /**
+   * Reads a single value of the given attribute. String and relational
+   * values are added to the attribute.
+   *
+   * @param block		the block to read from
+   * @param att			the attribute
+   * @return			the internal value
+   * @throws IOException 	if decoding fails
+   */
+  protected static double readValue(ByteBuffer block, Attribute att) throws IOException {
+    int		index;
+    String	str;
+
+    switch (att.type()) {
+      case Attribute.NUMERIC:
+      case Attribute.DATE:
+	return block.getDouble();
+
+      case Attribute.NOMINAL:
+	if (att.numValues() <= Byte.MAX_VALUE)
+	  index = block.get();
+	else if (att.numValues() <= Short.MAX_VALUE)
+	  index = block.getShort();
+	else
+	  index = block.getInt();
+	if (index < 0)
+	  return Utils.missingValue();
+	return index;
+
+      case Attribute.STRING:
+	str = readString(block);
+	if (str == null)
+	  return Utils.missingValue();
+	return att.addStringValue(str);
+
+      case Attribute.RELATIONAL:
+	str = readString(block);
+	if (str == null)
+	  return Utils.missingValue();
+	return att.addRelation(new ArffLoader.ArffReader(new StringReader(str), att.relation(), 0).getData());
+
+      default:
+	throw new IOException("Unhandled attribute type: " + Attribute.typeToString(att));
+    }
+  }
+
+  /**
+   * Reads a single row.
+   *
+   * @param block		the block to read from
+   * @param structure		the structure, string and relational
+   * 				attributes get updated
+   * @return			the instance
+   * @throws IOException 	if decoding fails
+   */
+  protected static Instance readRow(ByteBuffer block, Instances structure) throws IOException {
+    Instance	result;
+    byte	type;
+    double	weight;
+    double[]	values;
+    int[]	indices;
+
+    type   = block.get();
+    weight = block.getDouble();
+    if (type == ROW_DENSE) {
+      values = new double[structure.numAttributes()];
+      for (int i = 0; i < values.length; i++)
+	values[i] = readValue(block, structure.attribute(i));
+      result = new DenseInstance(weight, values);
+    }
+    else if (type == ROW_SPARSE) {
+      values  = new double[block.getInt()];
+      indices = new int[values.length];
+      for (int i = 0; i < values.length; i++) {
+	indices[i] = block.getInt();
+	values[i]  = readValue(block, structure.attribute(indices[i]));
+      }
+      result = new SparseInstance(weight, values, indices, structure.numAttributes());
+    }
+    else {
+      throw new IOException("Unknown row type: " + type);
+    }
+    result.setDataset(structure);
+
+    return result;
+  }
+
+  /**
+   * Return the full data set. If the structure hasn't yet been determined
+   * by a call to getStructure then method should do so before processing
+   * the rest of the data set.
+   *
+   * @return 			the structure of the data set as an empty
+   * 				set of Instances
+   * @throws IOException 	if there is no source or parsing fails
+   */
+  public Instances getDataSet() throws IOException {
+    Instances	result;
+
+    if (m_Input == null)
+      throw new IOException("No source has been specified");
+    if (getRetrieval() == INCREMENTAL)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+    setRetrieval(BATCH);
+    if (m_structure == null)
+      getStructure();
+
+    result = new Instances(m_structure, 0);
+    while (m_RowsLeft > 0 || nextBlock()) {
+      result.add(readRow(m_Block, result));
+      m_RowsLeft--;
+    }
+    result.compactify();
+
+    // close the stream
+    m_Input.close();
+
+    return result;
+  }
+
+  /**
+   * Read the data set incrementally---get the next instance in the data
+   * set or returns null if there are no
+   * more instances to get. If the structure hasn't yet been
+   * determined by a call to getStructure then method should do so before
+   * returning the next instance in the data set.
+   *
+   * @param structure 		the dataset header information, will get
+   * 				updated in case of string or relational
+   * 				attributes
+   * @return 			the next instance in the data set as an
+   * 				Instance object or null if there are no more
+   * 				instances to be read
+   * @throws IOException 	if there is an error during parsing
+   */
+  public Instance getNextInstance(Instances structure) throws IOException {
+    Instance	result;
+
+    if (m_Input == null)
+      throw new IOException("No source has been specified");
+    if (getRetrieval() == BATCH)
+      throw new IOException("Cannot mix getting Instances in both incremental and batch modes");
+    setRetrieval(INCREMENTAL);
+    if (m_structure == null)
+      getStructure();
+
+    if ((m_RowsLeft == 0) && !nextBlock()) {
+      try {
+	// close the stream
+	m_Input.close();
+      }
+      catch (Exception ex) {
+	ex.printStackTrace();
+      }
+      return null;
+    }
+
+    result = readRow(m_Block, structure);
+    m_RowsLeft--;
+
+    return result;
+  }
+
+  /**
+   * Returns the offsets and row counts of the blocks of an uncompressed
+   * (ie. not gzipped) binary file.
+   *
+   * @param file		the file to inspect
+   * @return			the offsets (first row) and row counts
+   * 				(second row) of the blocks
+   * @throws IOException 	if reading fails
+   */
+  public static long[][] getBlockIndex(File file) throws IOException {
+    RandomAccessFile	raf;
+    long[][]		result;
+    long		offset;
+
+    raf = new RandomAccessFile(file, "r");
+    try {
+      if (raf.length() < 12)
+	throw new IOException("Not a binary data file!");
+      raf.seek(raf.length() - 12);
+      offset = raf.readLong();
+      if (raf.readInt() != MAGIC)
+	throw new IOException("Binary data file has no block index!");
+      raf.seek(offset);
+      result = new long[2][raf.readInt()];
+      for (int i = 0; i < result[0].length; i++) {
+	result[0][i] = raf.readLong();
+	result[1][i] = raf.readInt();
+      }
+    }
+    catch (EOFException e) {
+      throw new IOException("Binary data file is truncated!");
+    }
+    finally {
+      raf.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads a single block of an uncompressed (ie. not gzipped) binary file,
+   * using the block index to locate it.
+   *
+   * @param file		the file to read from
+   * @param index		the index of the block (0-based)
+   * @return			the rows of the block
+   * @throws IOException 	if reading fails
+   * @see			#getBlockIndex(File)
+   */
+  public static Instances readBlock(File file, int index) throws IOException {
+    long[][]		blocks;
+    RandomAccessFile	raf;
+    Instances		result;
+    byte[]		compression;
+    ByteBuffer		block;
+    int			rows;
+
+    blocks = getBlockIndex(file);
+    if ((index < 0) || (index >= blocks[0].length))
+      throw new IllegalArgumentException("Block index out of range: " + index);
+
+    compression = new byte[1];
+    raf         = new RandomAccessFile(file, "r");
+    try {
+      result = readHeader(raf, compression);
+      raf.seek(blocks[0][index]);
+      rows  = raf.readInt();
+      block = decodeBlock(raf, compression[0]);
+    }
+    finally {
+      raf.close();
+    }
+
+    result = new Instances(result, rows);
+    for (int i = 0; i < rows; i++)
+      result.add(readRow(block, result));
+
+    return result;
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args 	should contain the name of an input file.
+   */
+  public static void main(String[] args) {
+    runFileLoader(new BinaryLoader(), args);
+  }
+}
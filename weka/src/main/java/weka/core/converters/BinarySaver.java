@@ -0,0 +1,648 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    BinarySaver.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+import weka.core.Capabilities.Capability;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Vector;
+import java.util.zip.Deflater;
+
+/**
+ <!-- globalinfo-start -->
+ * Writes to a destination in a compact binary format. The data is stored in blocks of rows with typed values, optionally compressed, with an index of the blocks at the end of the file for random access. Use the BinaryLoader to read the data again.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -i &lt;the input file&gt;
+ * The input file</pre>
+ *
+ * <pre> -o &lt;the output file&gt;
+ * The output file</pre>
+ *
+ * <pre> -compress
+ *  Compresses the blocks with deflate.
+ *  (default: off)</pre>
+ *
+ * <pre> -block-size &lt;rows&gt;
+ *  The number of rows per block.
+ *  (default: 10000)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision$
+ * @see Saver
+ * @see BinaryLoader
+ */
+public class BinarySaver
+  extends AbstractFileSaver
+  implements BatchConverter, IncrementalConverter {
+
+  /** for serialization */
+  private static final long serialVersionUID = 4436151962741858127L;
+
+  /** the default number of rows per block */
+  public final static int DEFAULT_BLOCK_SIZE = 10000;
+
+  /** whether to compress the blocks */
+  protected boolean m_CompressOutput = false;
+
+  /** the number of rows per block */
+  protected int m_BlockSize = DEFAULT_BLOCK_SIZE;
+
+  /** the stream to write to */
+  protected transient DataOutputStream m_Output;
+
+  /** the number of bytes written so far */
+  protected long m_Written;
+
+  /** the rows of the current block */
+  protected transient ByteArrayOutputStream m_BlockBytes;
+
+  /** for writing the rows of the current block */
+  protected transient DataOutputStream m_Block;
+
+  /** the number of rows in the current block */
+  protected int m_BlockRows;
+
+  /** the offsets of the blocks written so far */
+  protected transient ArrayList<Long> m_BlockOffsets;
+
+  /** the number of rows of the blocks written so far */
+  protected transient ArrayList<Integer> m_BlockCounts;
+
+  /**
+   * Constructor
+   */
+  public BinarySaver() {
+    resetOptions();
+  }
+
+  /**
+   * Returns a string describing this Saver
+   *
+   * @return 		a description of the Saver suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Writes to a destination in a compact binary format. The data is "
+      + "stored in blocks of rows with typed values, optionally compressed, "
+      + "with an index of the blocks at the end of the file for random "
+      + "access. Use the BinaryLoader to read the data again.";
+  }
+
+  /**
+   * Returns a description of the file type.
+   *
+   * @return 		a short file description
+   */
+  public String getFileDescription() {
+    return "Binary data files";
+  }
+
+  /**
+   * Resets the Saver
+   */
+  public void resetOptions() {
+    super.resetOptions();
+    setFileExtension(BinaryLoader.FILE_EXTENSION);
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return 		an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector<Option>	result;
+
+    result = new Vector<Option>();
+
+    Enumeration en = super.listOptions();
+    while (en.hasMoreElements())
+      result.addElement((Option) en.nextElement());
+
+    result.addElement(
+        new Option(
+            "\tCompresses the blocks with deflate.\n"
+            + "\t(default: off)",
+            "compress", 0, "-compress"));
+
+    result.addElement(
+        new Option(
+            "\tThe number of rows per block.\n"
+            + "\t(default: " + DEFAULT_BLOCK_SIZE + ")",
+            "block-size", 1, "-block-size <rows>"));
+
+    return result.elements();
+  }
+
+  /**
+   * returns the options of the current setup
+   *
+   * @return		the current options
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    String[]		options;
+
+    result = new Vector<String>();
+
+    if (getCompressOutput())
+      result.add("-compress");
+
+    result.add("-block-size");
+    result.add("" + getBlockSize());
+
+    options = super.getOptions();
+    for (int i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Parses the options for this object. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -i &lt;the input file&gt;
+   * The input file</pre>
+   *
+   * <pre> -o &lt;the output file&gt;
+   * The output file</pre>
+   *
+   * <pre> -compress
+   *  Compresses the blocks with deflate.
+   *  (default: off)</pre>
+   *
+   * <pre> -block-size &lt;rows&gt;
+   *  The number of rows per block.
+   *  (default: 10000)</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options	the options to use
+   * @throws Exception	if setting of options fails
+   */
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    setCompressOutput(Utils.getFlag("compress", options));
+
+    tmpStr = Utils.getOption("block-size", options);
+    if (tmpStr.length() != 0)
+      setBlockSize(Integer.parseInt(tmpStr));
+    else
+      setBlockSize(DEFAULT_BLOCK_SIZE);
+
+    super.setOptions(options);
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String compressOutputTipText() {
+    return "Whether to compress the blocks with deflate.";
+  }
+
+  /**
+   * Gets whether the blocks are compressed.
+   *
+   * @return 		true if the blocks are compressed
+   */
+  public boolean getCompressOutput() {
+    return m_CompressOutput;
+  }
+
+  /**
+   * Sets whether to compress the blocks.
+   *
+   * @param value 	if true the blocks will be compressed
+   */
+  public void setCompressOutput(boolean value) {
+    m_CompressOutput = value;
+  }
+
+  /**
+   * Returns the tip text for this property
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String blockSizeTipText() {
+    return "The number of rows per block, ie. the unit of compression and random access.";
+  }
+
+  /**
+   * Gets the number of rows per block.
+   *
+   * @return 		the number of rows
+   */
+  public int getBlockSize() {
+    return m_BlockSize;
+  }
+
+  /**
+   * Sets the number of rows per block.
+   *
+   * @param value 	the number of rows
+   */
+  public void setBlockSize(int value) {
+    if (value > 0)
+      m_BlockSize = value;
+    else
+      System.err.println("Block size has to be at least 1!");
+  }
+
+  /**
+   * Returns the Capabilities of this saver.
+   *
+   * @return            the capabilities of this object
+   * @see               Capabilities
+   */
+  public Capabilities getCapabilities() {
+    Capabilities result = super.getCapabilities();
+
+    // attributes
+    result.enableAllAttributes();
+    result.enable(Capability.MISSING_VALUES);
+
+    // class
+    result.enableAllClasses();
+    result.enable(Capability.MISSING_CLASS_VALUES);
+    result.enable(Capability.NO_CLASS);
+
+    return result;
+  }
+
+  /**
+   * Resets the writer, setting the output stream to null.
+   */
+  public void resetWriter() {
+    super.resetWriter();
+
+    m_Output = null;
+  }
+
+  /**
+   * Sets the destination output stream.
+   *
+   * @param output 		the output stream.
+   * @throws IOException 	throws an IOException if destination cannot be set
+   */
+  public void setDestination(OutputStream output) throws IOException {
+    super.setDestination(output);
+
+    m_Output = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+  }
+
+  /**
+   * Writes the header and initializes the first block.
+   *
+   * @param structure		the structure of the data
+   * @throws IOException 	if writing fails
+   */
+  protected void writeHeader(Instances structure) throws IOException {
+    byte[]	header;
+
+    header = new Instances(structure, 0).toString().getBytes("UTF-8");
+    m_Output.writeInt(BinaryLoader.MAGIC);
+    m_Output.writeInt(BinaryLoader.VERSION);
+    m_Output.writeByte(getCompressOutput() ? BinaryLoader.COMPRESSION_DEFLATE : BinaryLoader.COMPRESSION_NONE);
+    m_Output.writeInt(structure.classIndex());
+    m_Output.writeInt(header.length);
+    m_Output.write(header);
+    m_Written = 17 + header.length;
+
+    m_BlockBytes   = new ByteArrayOutputStream();
+    m_Block        = new DataOutputStream(m_BlockBytes);
+    m_BlockRows    = 0;
+    m_BlockOffsets = new ArrayList<Long>();
+    m_BlockCounts  = new ArrayList<Integer>();
+  }
+
+  /**
+   * Writes a string as length and UTF-8 bytes to the current block.
+   *
+   * @param value		the string to write, null for missing
+   * @throws IOException 	if writing fails
+   */
+  protected void writeString(String value) throws IOException {
+    byte[]	bytes;
+
+    if (value == null) {
+      m_Block.writeInt(-1);
+    }
+    else {
+      bytes = value.getBytes("UTF-8");
+      m_Block.writeInt(bytes.length);
+      m_Block.write(bytes);
+    }
+  }
+
+  /**
+   * Writes a single value to the current block.
+   *
+   * @param att			the attribute of the value
+   * @param value		the internal value
+   * @throws IOException 	if writing fails
+   */
+  protected void writeValue(Attribute att, double value) throws IOException {
+    int			index;
+    StringBuffer	bag;
+
+    switch (att.type()) {
+      case Attribute.NUMERIC:
+      case Attribute.DATE:
+	m_Block.writeDouble(value);
+	break;
+
+      case Attribute.NOMINAL:
+	index = Utils.isMissingValue(value) ? -1 : (int) value;
+	if (att.numValues() <= Byte.MAX_VALUE)
+	  m_Block.writeByte(index);
+	else if (att.numValues() <= Short.MAX_VALUE)
+	  m_Block.writeShort(index);
+	else
+	  m_Block.writeInt(index);
+	break;
+
+      case Attribute.STRING:
+	writeString(Utils.isMissingValue(value) ? null : att.value((int) value));
+	break;
+
+      case Attribute.RELATIONAL:
+	if (Utils.isMissingValue(value)) {
+	  writeString(null);
+	}
+	else {
+	  bag = new StringBuffer();
+	  for (int i = 0; i < att.relation((int) value).numInstances(); i++)
+	    bag.append(att.relation((int) value).instance(i)).append('\n');
+	  writeString(bag.toString());
+	}
+	break;
+
+      default:
+	throw new IOException("Unhandled attribute type: " + Attribute.typeToString(att));
+    }
+  }
+
+  /**
+   * Writes the instance to the current block and writes the block if it
+   * is full.
+   *
+   * @param inst		the instance to write
+   * @throws IOException 	if writing fails
+   */
+  protected void writeRow(Instance inst) throws IOException {
+    Instances	data;
+
+    data = inst.dataset();
+    if (data == null)
+      data = getInstances();
+
+    if (inst instanceof SparseInstance) {
+      m_Block.writeByte(BinaryLoader.ROW_SPARSE);
+      m_Block.writeDouble(inst.weight());
+      m_Block.writeInt(inst.numValues());
+      for (int i = 0; i < inst.numValues(); i++) {
+	m_Block.writeInt(inst.index(i));
+	writeValue(data.attribute(inst.index(i)), inst.valueSparse(i));
+      }
+    }
+    else {
+      m_Block.writeByte(BinaryLoader.ROW_DENSE);
+      m_Block.writeDouble(inst.weight());
+      for (int i = 0; i < inst.numAttributes(); i++)
+	writeValue(data.attribute(i), inst.value(i));
+    }
+
+    m_BlockRows++;
+    if (m_BlockRows == getBlockSize())
+      writeBlock();
+  }
+
+  /**
+   * Writes the current block, if it contains any rows.
+   *
+   * @throws IOException 	if writing fails
+   */
+  protected void writeBlock() throws IOException {
+    byte[]	raw;
+    byte[]	stored;
+    int		length;
+    Deflater	deflater;
+
+    if (m_BlockRows == 0)
+      return;
+
+    m_Block.flush();
+    raw = m_BlockBytes.toByteArray();
+    if (getCompressOutput()) {
+      deflater = new Deflater();
+      deflater.setInput(raw);
+      deflater.finish();
+      stored = new byte[raw.length + raw.length / 100 + 64];
+      length = 0;
+      while (!deflater.finished()) {
+	if (length == stored.length) {
+	  byte[] larger = new byte[stored.length * 2];
+	  System.arraycopy(stored, 0, larger, 0, length);
+	  stored = larger;
+	}
+	length += deflater.deflate(stored, length, stored.length - length);
+      }
+      deflater.end();
+    }
+    else {
+      stored = raw;
+      length = raw.length;
+    }
+
+    m_BlockOffsets.add(m_Written);
+    m_BlockCounts.add(m_BlockRows);
+    m_Output.writeInt(m_BlockRows);
+    m_Output.writeInt(length);
+    m_Output.writeInt(raw.length);
+    m_Output.write(stored, 0, length);
+    m_Written += 12 + length;
+
+    m_BlockBytes.reset();
+    m_BlockRows = 0;
+  }
+
+  /**
+   * Writes the last block, the terminator, the block index and the
+   * trailer and closes the stream.
+   *
+   * @throws IOException 	if writing fails
+   */
+  protected void writeFooter() throws IOException {
+    long	indexOffset;
+
+    writeBlock();
+    m_Output.writeInt(0);
+    m_Written += 4;
+
+    indexOffset = m_Written;
+    m_Output.writeInt(m_BlockOffsets.size());
+    for (int i = 0; i < m_BlockOffsets.size(); i++) {
+      m_Output.writeLong(m_BlockOffsets.get(i));
+      m_Output.writeInt(m_BlockCounts.get(i));
+    }
+    m_Output.writeLong(indexOffset);
+    m_Output.writeInt(BinaryLoader.MAGIC);
+    m_Output.flush();
+    m_Output.close();
+
+    m_BlockBytes   = null;
+    m_Block        = null;
+    m_BlockOffsets = null;
+    m_BlockCounts  = null;
+  }
+
+  /**
+   * Saves an instances incrementally. Structure has to be set by using the
+   * setStructure() method or setInstances() method.
+   *
+   * @param inst 		the instance to save
+   * @throws IOException 	throws IOEXception if an instance cannot be
+   * 				saved incrementally.
+   */
+  public void writeIncremental(Instance inst) throws IOException {
+    int		writeMode;
+    Instances	structure;
+
+    writeMode = getWriteMode();
+    structure = getInstances();
+
+    if ((getRetrieval() == BATCH) || (getRetrieval() == NONE))
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+
+    if (writeMode == WAIT) {
+      if (structure == null) {
+	setWriteMode(CANCEL);
+	if (inst != null)
+	  System.err.println("Structure(Header Information) has to be set in advance");
+      }
+      else {
+	setWriteMode(STRUCTURE_READY);
+      }
+      writeMode = getWriteMode();
+    }
+    if (writeMode == CANCEL) {
+      if (m_Output != null)
+	m_Output.close();
+      cancel();
+    }
+    if (writeMode == STRUCTURE_READY) {
+      if (m_Output == null)
+	throw new IOException("No output for binary data.");
+      setWriteMode(WRITE);
+      writeHeader(structure);
+      writeMode = getWriteMode();
+    }
+    if (writeMode == WRITE) {
+      if (structure == null)
+	throw new IOException("No instances information available.");
+      if (inst != null) {
+	writeRow(inst);
+      }
+      else {
+	writeFooter();
+	resetStructure();
+	resetWriter();
+      }
+    }
+  }
+
+  /**
+   * Writes a Batch of instances
+   *
+   * @throws IOException 	throws IOException if saving in batch mode
+   * 				is not possible
+   */
+  public void writeBatch() throws IOException {
+    Instances	data;
+
+    if (getInstances() == null)
+      throw new IOException("No instances to save");
+    if (getRetrieval() == INCREMENTAL)
+      throw new IOException("Batch and incremental saving cannot be mixed.");
+    setRetrieval(BATCH);
+    if (m_Output == null)
+      throw new IOException("No output for binary data.");
+
+    setWriteMode(WRITE);
+    data = getInstances();
+    writeHeader(data);
+    for (int i = 0; i < data.numInstances(); i++)
+      writeRow(data.instance(i));
+    writeFooter();
+    setWriteMode(WAIT);
+    resetWriter();
+    setWriteMode(CANCEL);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Main method.
+   *
+   * @param args 	should contain the options of a Saver.
+   */
+  public static void main(String[] args) {
+    runFileSaver(new BinarySaver(), args);
+  }
+}
@@ -0,0 +1,1422 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ *    FastArffReader.java
+ *    Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ *
+ */
+
+package weka.core.converters;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+import java.io.StringReader;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An ARFF reader that parses the data section with a hand-written scanner
+ * instead of a <code>StreamTokenizer</code>. The header is still parsed by
+ * the <code>ArffReader</code>. The scanner works on large blocks of
+ * characters, parses numbers without creating strings for the common
+ * cases and looks up nominal values in hash tables built from the
+ * header. The instances produced are the same as the ones of the
+ * <code>ArffReader</code>.<p/>
+ *
+ * The remainder of the data can also be parsed in parallel, see
+ * <code>readInstances(Instances,int)</code>. Since the data section is
+ * split at line breaks, this only works if each instance is on a line of
+ * its own, as required by the ARFF format anyway.<p/>
+ *
+ * Usage:
+ * <pre>
+ * BufferedReader reader = new BufferedReader(new FileReader("file.arff"));
+ * FastArffReader arff = new FastArffReader(reader, 1000);
+ * Instances data = arff.getStructure();
+ * arff.readInstances(data, 4);
+ * </pre>
+ *
+ * @version $Revision$
+ * @see ArffLoader.ArffReader
+ */
+public class FastArffReader
+  extends ArffLoader.ArffReader {
+
+  /** the default number of characters per chunk for parallel parsing. */
+  public final static int CHUNK_SIZE = 1 << 20;
+
+  /** the scanner for the data section. */
+  protected CharScanner m_Scanner;
+
+  /** the parser for the data section. */
+  protected InstanceParser m_Parser;
+
+  /**
+   * Reads the data completely from the reader. The data can be accessed
+   * via the <code>getData()</code> method.
+   *
+   * @param reader		the reader to use
+   * @throws IOException	if something goes wrong
+   * @see			#getData()
+   */
+  public FastArffReader(Reader reader) throws IOException {
+    this(reader, 1000);
+
+    Instance inst;
+    while ((inst = readInstance(m_Data)) != null) {
+      m_Data.add(inst);
+    };
+
+    compactify();
+  }
+
+  /**
+   * Reads only the header and reserves the specified space for instances.
+   * Further instances can be read via <code>readInstance()</code> or
+   * <code>readInstances()</code>.
+   *
+   * @param reader			the reader to use
+   * @param capacity 			the capacity of the new dataset
+   * @throws IOException		if something goes wrong
+   * @throws IllegalArgumentException	if capacity is negative
+   * @see				#getStructure()
+   * @see				#readInstance(Instances)
+   * @see				#readInstances(Instances, int)
+   */
+  public FastArffReader(Reader reader, int capacity) throws IOException {
+    this(new CharScanner(reader), capacity);
+  }
+
+  /**
+   * Reads the header via the tokenizer of the <code>ArffReader</code>,
+   * which reads from the scanner, and sets up the parser for the data.
+   *
+   * @param scanner			the scanner wrapping the actual reader
+   * @param capacity 			the capacity of the new dataset
+   * @throws IOException		if something goes wrong
+   */
+  protected FastArffReader(CharScanner scanner, int capacity) throws IOException {
+    super(scanner, capacity);
+
+    m_Scanner = scanner;
+    m_Scanner.startData();
+    m_Parser  = new InstanceParser(m_Scanner, m_Tokenizer.lineno());
+  }
+
+  /**
+   * Reads a single instance using the scanner and returns it.
+   *
+   * @param structure 	the dataset header information, will get updated
+   * 				in case of string or relational attributes
+   * @param flag 		if method should test for carriage return after
+   * 				each instance
+   * @return 			null if end of file has been reached
+   * @throws IOException 	if the information is not read
+   * 				successfully
+   */
+  protected Instance getInstance(Instances structure, boolean flag) throws IOException {
+    m_Data = structure;
+    return m_Parser.readInstance(structure, flag);
+  }
+
+  /**
+   * Reads all the remaining instances and adds them to the given dataset.
+   * With more than one thread, the data is split into chunks of lines
+   * which are parsed concurrently and added in their original order. Data
+   * with string, date or relational attributes is always parsed
+   * sequentially, since parsing these values updates or uses shared state
+   * of the attributes.
+   *
+   * @param structure 	the dataset to add the instances to
+   * @param numThreads	the number of threads to use
+   * @throws IOException 	if the information is not read
+   * 				successfully
+   */
+  public void readInstances(Instances structure, int numThreads) throws IOException {
+    Instance 				inst;
+    ExecutorService			executor;
+    LinkedList<Future<List<Instance>>>	pending;
+    char[]				chunk;
+    int					line;
+
+    m_Data = structure;
+    if ((numThreads <= 1) || !canParseInParallel(structure)) {
+      while ((inst = readInstance(structure)) != null)
+	structure.add(inst);
+      return;
+    }
+
+    m_Parser.buildIndices(structure);
+    executor = Executors.newFixedThreadPool(numThreads);
+    pending  = new LinkedList<Future<List<Instance>>>();
+    try {
+      line = m_Parser.getLineNo();
+      while ((chunk = m_Scanner.nextChunk(CHUNK_SIZE)) != null) {
+	pending.add(executor.submit(new ChunkParser(m_Parser, structure, chunk, line)));
+	line += CharScanner.countLines(chunk);
+	while (pending.size() >= 2 * numThreads)
+	  addAll(structure, pending.removeFirst());
+      }
+      while (pending.size() > 0)
+	addAll(structure, pending.removeFirst());
+      m_Parser.setLineNo(line);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the result of a chunk and adds its instances to the dataset.
+   *
+   * @param structure	the dataset to add the instances to
+   * @param result	the result of the chunk
+   * @throws IOException	if parsing of the chunk failed
+   */
+  protected void addAll(Instances structure, Future<List<Instance>> result) throws IOException {
+    try {
+      for (Instance inst: result.get())
+	structure.add(inst);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException)
+	throw (IOException) e.getCause();
+      throw new IOException(e.getCause().toString());
+    }
+    catch (InterruptedException e) {
+      throw new IOException("Interrupted while parsing data: " + e);
+    }
+  }
+
+  /**
+   * Checks whether the data of the given structure can be parsed in
+   * parallel, ie. whether it contains only numeric and nominal attributes.
+   *
+   * @param structure	the structure to check
+   * @return		true if the data can be parsed in parallel
+   */
+  protected boolean canParseInParallel(Instances structure) {
+    for (int i = 0; i < structure.numAttributes(); i++) {
+      switch (structure.attribute(i).type()) {
+	case Attribute.NUMERIC:
+	case Attribute.NOMINAL:
+	  break;
+	default:
+	  return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * returns the current line number
+   *
+   * @return			the current line number
+   */
+  public int getLineNo() {
+    if (m_Parser == null)
+      return super.getLineNo();
+    else
+      return m_Lines + m_Parser.getLineNo();
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+
+  /**
+   * Parses a chunk of lines in a separate thread.
+   */
+  protected static class ChunkParser
+    implements Callable<List<Instance>> {
+
+    /** the parser to share the nominal indices with. */
+    protected InstanceParser m_Owner;
+
+    /** the structure of the data. */
+    protected Instances m_Structure;
+
+    /** the lines to parse. */
+    protected char[] m_Chunk;
+
+    /** the line number the chunk starts with. */
+    protected int m_Line;
+
+    /**
+     * Initializes the parser for the chunk.
+     *
+     * @param owner	the parser to share the nominal indices with
+     * @param structure	the structure of the data
+     * @param chunk	the lines to parse
+     * @param line	the line number the chunk starts with
+     */
+    public ChunkParser(InstanceParser owner, Instances structure, char[] chunk, int line) {
+      m_Owner     = owner;
+      m_Structure = structure;
+      m_Chunk     = chunk;
+      m_Line      = line;
+    }
+
+    /**
+     * Parses the instances of the chunk.
+     *
+     * @return		the instances
+     * @throws Exception	if parsing fails
+     */
+    public List<Instance> call() throws Exception {
+      List<Instance>	result;
+      InstanceParser	parser;
+      Instance		inst;
+
+      result = new ArrayList<Instance>();
+      parser = new InstanceParser(new CharScanner(m_Chunk), m_Line, m_Owner);
+      while ((inst = parser.readInstance(m_Structure, true)) != null)
+	result.add(inst);
+
+      return result;
+    }
+  }
+
+  /**
+   * Turns the data section into instances, using a <code>CharScanner</code>
+   * for the tokens. Behaves like the corresponding methods of the
+   * <code>ArffReader</code>, including the error messages.
+   */
+  protected static class InstanceParser
+    implements RevisionHandler {
+
+    /** the scanner to get the tokens from. */
+    protected CharScanner m_Scanner;
+
+    /** the line number the scanner started with. */
+    protected int m_FirstLine;
+
+    /** the current structure. */
+    protected Instances m_Data;
+
+    /** Buffer of values for sparse instance */
+    protected double[] m_ValueBuffer = new double[0];
+
+    /** Buffer of indices for sparse instance */
+    protected int[] m_IndicesBuffer = new int[0];
+
+    /** the attributes the nominal indices were built for. */
+    protected Attribute[] m_IndexedAttributes = new Attribute[0];
+
+    /** the nominal indices. */
+    protected NominalIndex[] m_Indices = new NominalIndex[0];
+
+    /**
+     * Initializes the parser.
+     *
+     * @param scanner	the scanner to use
+     * @param firstLine	the line number the scanner starts with
+     */
+    public InstanceParser(CharScanner scanner, int firstLine) {
+      m_Scanner   = scanner;
+      m_FirstLine = firstLine;
+    }
+
+    /**
+     * Initializes the parser, sharing the nominal indices of another one.
+     *
+     * @param scanner	the scanner to use
+     * @param firstLine	the line number the scanner starts with
+     * @param owner	the parser to get the nominal indices from
+     */
+    public InstanceParser(CharScanner scanner, int firstLine, InstanceParser owner) {
+      this(scanner, firstLine);
+
+      m_IndexedAttributes = owner.m_IndexedAttributes.clone();
+      m_Indices           = owner.m_Indices.clone();
+    }
+
+    /**
+     * Returns the current line number.
+     *
+     * @return		the line number
+     */
+    public int getLineNo() {
+      return m_FirstLine + m_Scanner.getLines();
+    }
+
+    /**
+     * Sets the current line number, after lines were parsed elsewhere.
+     *
+     * @param line	the line number
+     */
+    public void setLineNo(int line) {
+      m_FirstLine = line - m_Scanner.getLines();
+    }
+
+    /**
+     * Builds the indices for all nominal attributes of the structure.
+     *
+     * @param structure	the structure to build the indices for
+     */
+    public void buildIndices(Instances structure) {
+      for (int i = 0; i < structure.numAttributes(); i++) {
+	if (structure.attribute(i).isNominal())
+	  getIndex(structure, i);
+      }
+    }
+
+    /**
+     * Returns the index for the values of the nominal attribute, builds
+     * it if necessary.
+     *
+     * @param structure	the current structure
+     * @param index	the index of the attribute
+     * @return		the index of the values
+     */
+    protected NominalIndex getIndex(Instances structure, int index) {
+      Attribute	att;
+
+      if (m_Indices.length != structure.numAttributes()) {
+	m_Indices           = new NominalIndex[structure.numAttributes()];
+	m_IndexedAttributes = new Attribute[structure.numAttributes()];
+      }
+      att = structure.attribute(index);
+      if (m_IndexedAttributes[index] != att) {
+	m_Indices[index]           = new NominalIndex(att);
+	m_IndexedAttributes[index] = att;
+      }
+
+      return m_Indices[index];
+    }
+
+    /**
+     * Throws error message with line number and last token read.
+     *
+     * @param msg 		the error message to be thrown
+     * @throws IOException 	containing the error message
+     */
+    protected void errorMessage(String msg) throws IOException {
+      throw new IOException(msg + ", read Token[" + m_Scanner.tokenToString() + "], line " + getLineNo());
+    }
+
+    /**
+     * Gets next token, checking for a premature end of line.
+     *
+     * @return			the type of the token
+     * @throws IOException 	if it finds a premature end of line
+     */
+    protected int getNextToken() throws IOException {
+      int	type;
+
+      type = m_Scanner.nextToken();
+      if (type == StreamTokenizer.TT_EOL)
+	errorMessage("premature end of line");
+      else if (type == StreamTokenizer.TT_EOF)
+	errorMessage("premature end of file");
+
+      return type;
+    }
+
+    /**
+     * Gets the value of an instance's weight (if one exists)
+     *
+     * @return 			the value of the instance's weight, or NaN
+     * 				if no weight has been supplied in the file
+     * @throws IOException 	if the closing brace is missing
+     */
+    protected double getInstanceWeight() throws IOException {
+      double	weight;
+      int	type;
+
+      weight = Double.NaN;
+      type   = m_Scanner.nextToken();
+      if (type == '{') {
+	type = m_Scanner.nextToken();
+	if (!m_Scanner.isValue())
+	  return weight;
+	try {
+	  weight = Double.parseDouble(m_Scanner.stringValue());
+	}
+	catch (NumberFormatException e) {
+	  // quietly ignore
+	  return weight;
+	}
+	if (m_Scanner.nextToken() != '}')
+	  errorMessage("Problem reading instance weight");
+      }
+
+      return weight;
+    }
+
+    /**
+     * Reads the optional weight and the end of the line.
+     *
+     * @return			the weight of the instance
+     * @throws IOException 	if the end of the line is missing
+     */
+    protected double getWeight() throws IOException {
+      double	weight;
+      int	type;
+
+      weight = getInstanceWeight();
+      if (Double.isNaN(weight))
+	return 1.0;
+
+      type = m_Scanner.nextToken();
+      if ((type != StreamTokenizer.TT_EOL) && (type != StreamTokenizer.TT_EOF))
+	errorMessage("end of line expected");
+
+      return weight;
+    }
+
+    /**
+     * Reads a single instance and returns it.
+     *
+     * @param structure 	the dataset header information, will get updated
+     * 				in case of string or relational attributes
+     * @param flag 		if method should test for carriage return after
+     * 				each instance
+     * @return 			null if end of file has been reached
+     * @throws IOException 	if the information is not read
+     * 				successfully
+     */
+    public Instance readInstance(Instances structure, boolean flag) throws IOException {
+      int	type;
+
+      m_Data = structure;
+      if (m_Data.numAttributes() == 0)
+	errorMessage("no header information available");
+      if (m_ValueBuffer.length != m_Data.numAttributes()) {
+	m_ValueBuffer   = new double[m_Data.numAttributes()];
+	m_IndicesBuffer = new int[m_Data.numAttributes()];
+      }
+
+      // skip empty lines
+      while ((type = m_Scanner.nextToken()) == StreamTokenizer.TT_EOL) {};
+      if (type == StreamTokenizer.TT_EOF)
+	return null;
+
+      if (type == '{')
+	return getInstanceSparse(flag);
+      else
+	return getInstanceFull(flag);
+    }
+
+    /**
+     * Reads a sparse instance, the opening brace has already been read.
+     *
+     * @param flag 		if method should test for carriage return after
+     * 				each instance
+     * @return 			the instance
+     * @throws IOException 	if the information is not read
+     * 				successfully
+     */
+    protected Instance getInstanceSparse(boolean flag) throws IOException {
+      int	numValues;
+      int	maxIndex;
+      int	index;
+      double	weight;
+
+      numValues = 0;
+      maxIndex  = -1;
+      while (true) {
+	if (getNextToken() == '}')
+	  break;
+
+	index = -1;
+	try {
+	  if (!m_Scanner.isValue())
+	    throw new NumberFormatException();
+	  index = m_Scanner.intValue();
+	}
+	catch (NumberFormatException e) {
+	  errorMessage("index number expected");
+	}
+	if (index <= maxIndex)
+	  errorMessage("indices have to be ordered");
+	if ((index < 0) || (index >= m_Data.numAttributes()))
+	  errorMessage("index out of bounds");
+	maxIndex = index;
+
+	getNextToken();
+	m_IndicesBuffer[numValues] = index;
+	m_ValueBuffer[numValues]   = getValue(index);
+	numValues++;
+      }
+
+      weight = 1.0;
+      if (flag)
+	weight = getWeight();
+
+      double[] tempValues = new double[numValues];
+      int[] tempIndices = new int[numValues];
+      System.arraycopy(m_ValueBuffer, 0, tempValues, 0, numValues);
+      System.arraycopy(m_IndicesBuffer, 0, tempIndices, 0, numValues);
+      Instance inst = new SparseInstance(weight, tempValues, tempIndices, m_Data.numAttributes());
+      inst.setDataset(m_Data);
+
+      return inst;
+    }
+
+    /**
+     * Reads a full instance, the first token has already been read.
+     *
+     * @param flag 		if method should test for carriage return after
+     * 				each instance
+     * @return 			the instance
+     * @throws IOException 	if the information is not read
+     * 				successfully
+     */
+    protected Instance getInstanceFull(boolean flag) throws IOException {
+      double[]	values;
+      double	weight;
+
+      values = new double[m_Data.numAttributes()];
+      for (int i = 0; i < values.length; i++) {
+	if (i > 0)
+	  getNextToken();
+	values[i] = getValue(i);
+      }
+
+      weight = 1.0;
+      if (flag)
+	weight = getWeight();
+
+      Instance inst = new DenseInstance(weight, values);
+      inst.setDataset(m_Data);
+
+      return inst;
+    }
+
+    /**
+     * Turns the current token into the internal value of the attribute.
+     *
+     * @param index		the index of the attribute
+     * @return			the internal value
+     * @throws IOException 	if the token is not a valid value
+     */
+    protected double getValue(int index) throws IOException {
+      Attribute	att;
+      int	valIndex;
+      double	result;
+
+      if (m_Scanner.isMissing())
+	return Utils.missingValue();
+      if (!m_Scanner.isValue())
+	errorMessage("not a valid value");
+
+      result = Utils.missingValue();
+      att    = m_Data.attribute(index);
+      switch (att.type()) {
+	case Attribute.NOMINAL:
+	  if (m_Scanner.isQuoted())
+	    valIndex = att.indexOfValue(m_Scanner.stringValue());
+	  else
+	    valIndex = m_Scanner.lookup(getIndex(m_Data, index));
+	  if (valIndex == -1)
+	    errorMessage("nominal value not declared in header");
+	  result = valIndex;
+	  break;
+	case Attribute.NUMERIC:
+	  try {
+	    result = m_Scanner.doubleValue();
+	  }
+	  catch (NumberFormatException e) {
+	    errorMessage("number expected");
+	  }
+	  break;
+	case Attribute.STRING:
+	  result = att.addStringValue(m_Scanner.stringValue());
+	  break;
+	case Attribute.DATE:
+	  try {
+	    result = att.parseDate(m_Scanner.stringValue());
+	  }
+	  catch (ParseException e) {
+	    errorMessage("unparseable date: " + m_Scanner.stringValue());
+	  }
+	  break;
+	case Attribute.RELATIONAL:
+	  try {
+	    ArffLoader.ArffReader arff = new ArffLoader.ArffReader(new StringReader(m_Scanner.stringValue()), att.relation(), 0);
+	    result = att.addRelation(arff.getData());
+	  }
+	  catch (Exception e) {
+	    throw new IOException(e.toString() + " of line " + getLineNo());
+	  }
+	  break;
+	default:
+	  errorMessage("unknown attribute type in column " + index);
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
+  /**
+   * A hash table from the labels of a nominal attribute to their indices
+   * that can be queried with characters from a buffer, ie. without
+   * creating a string first.
+   */
+  protected static class NominalIndex
+    implements RevisionHandler {
+
+    /** the labels. */
+    protected char[][] m_Keys;
+
+    /** the indices of the labels. */
+    protected int[] m_Values;
+
+    /** the mask for the slots. */
+    protected int m_Mask;
+
+    /**
+     * Builds the table for the given nominal attribute.
+     *
+     * @param att	the attribute
+     */
+    public NominalIndex(Attribute att) {
+      int	size;
+      int	slot;
+      char[]	key;
+
+      size = 4;
+      while (size < 2 * att.numValues())
+	size *= 2;
+      m_Keys   = new char[size][];
+      m_Values = new int[size];
+      m_Mask   = size - 1;
+
+      for (int i = 0; i < att.numValues(); i++) {
+	key  = att.value(i).toCharArray();
+	slot = hash(key, 0, key.length) & m_Mask;
+	while (m_Keys[slot] != null) {
+	  if (equals(m_Keys[slot], key, 0, key.length))
+	    break;
+	  slot = (slot + 1) & m_Mask;
+	}
+	if (m_Keys[slot] == null) {
+	  m_Keys[slot]   = key;
+	  m_Values[slot] = i;
+	}
+      }
+    }
+
+    /**
+     * Computes the hash code of the characters.
+     *
+     * @param buffer	the buffer with the characters
+     * @param start	the first character
+     * @param end	the position after the last character
+     * @return		the hash code
+     */
+    protected static int hash(char[] buffer, int start, int end) {
+      int	result;
+
+      result = 0;
+      for (int i = start; i < end; i++)
+	result = 31 * result + buffer[i];
+
+      return result ^ (result >>> 16);
+    }
+
+    /**
+     * Compares the key with the characters.
+     *
+     * @param key	the key
+     * @param buffer	the buffer with the characters
+     * @param start	the first character
+     * @param end	the position after the last character
+     * @return		true if the same
+     */
+    protected static boolean equals(char[] key, char[] buffer, int start, int end) {
+      if (key.length != end - start)
+	return false;
+      for (int i = 0; i < key.length; i++) {
+	if (key[i] != buffer[start + i])
+	  return false;
+      }
+      return true;
+    }
+
+    /**
+     * Returns the index of the label made up by the characters.
+     *
+     * @param buffer	the buffer with the characters
+     * @param start	the first character
+     * @param end	the position after the last character
+     * @return		the index, -1 if not a label of the attribute
+     */
+    public int indexOf(char[] buffer, int start, int end) {
+      int	slot;
+
+      slot = hash(buffer, start, end) & m_Mask;
+      while (m_Keys[slot] != null) {
+	if (equals(m_Keys[slot], buffer, start, end))
+	  return m_Values[slot];
+	slot = (slot + 1) & m_Mask;
+      }
+
+      return -1;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
+  /**
+   * Splits characters from a reader into the tokens of the data section
+   * of an ARFF file, following the same rules as the tokenizer of the
+   * <code>ArffReader</code>: whitespace and commas separate tokens, '%'
+   * starts a comment, values can be quoted with single or double quotes,
+   * and braces and line breaks are tokens of their own. The characters
+   * are read in large blocks, words are only turned into strings if
+   * requested.<p/>
+   *
+   * The scanner is a reader itself, which allows the header to be parsed
+   * with a <code>StreamTokenizer</code> reading from it.
+   */
+  protected static class CharScanner
+    extends Reader
+    implements RevisionHandler {
+
+    /** the token type for quoted values. */
+    public final static int TT_QUOTED = -4;
+
+    /** the default size of the buffer. */
+    public final static int BUFFER_SIZE = 65536;
+
+    /** the powers of ten that are exactly representable as doubles. */
+    protected final static double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /** the underlying reader, null if all characters are in the buffer. */
+    protected Reader m_Reader;
+
+    /** the buffer. */
+    protected char[] m_Buffer;
+
+    /** the position of the next character in the buffer. */
+    protected int m_Pos;
+
+    /** the number of characters in the buffer. */
+    protected int m_Limit;
+
+    /** the number of line breaks read so far. */
+    protected int m_Lines;
+
+    /** the type of the current token. */
+    protected int m_Type;
+
+    /** the start of the current word in the buffer. */
+    protected int m_Start;
+
+    /** the end of the current word in the buffer. */
+    protected int m_End;
+
+    /** the current quoted value. */
+    protected String m_Quoted;
+
+    /** whether the tokenizer for the header reached the end of the stream. */
+    protected boolean m_EOF;
+
+    /**
+     * Initializes the scanner with the given reader.
+     *
+     * @param reader	the reader to read from
+     */
+    public CharScanner(Reader reader) {
+      m_Reader = reader;
+      m_Buffer = new char[BUFFER_SIZE];
+    }
+
+    /**
+     * Initializes the scanner with the given characters.
+     *
+     * @param chars	the characters to scan
+     */
+    public CharScanner(char[] chars) {
+      m_Reader = null;
+      m_Buffer = chars;
+      m_Limit  = chars.length;
+    }
+
+    /**
+     * Reads more characters into the buffer, moving the characters
+     * starting at the given position to the start of the buffer first.
+     * The buffer grows if it is full.
+     *
+     * @param keep	the position of the first character to keep
+     * @return		false if no more characters are available
+     * @throws IOException	if reading fails
+     */
+    protected boolean fill(int keep) throws IOException {
+      char[]	buffer;
+      int	read;
+
+      if (m_Reader == null)
+	return false;
+
+      if ((keep == 0) && (m_Limit == m_Buffer.length)) {
+	buffer = new char[m_Buffer.length * 2];
+	System.arraycopy(m_Buffer, 0, buffer, 0, m_Limit);
+	m_Buffer = buffer;
+      }
+      else if (keep > 0) {
+	System.arraycopy(m_Buffer, keep, m_Buffer, 0, m_Limit - keep);
+	m_Limit -= keep;
+	m_Pos   -= keep;
+	m_Start -= keep;
+	m_End   -= keep;
+      }
+
+      do {
+	read = m_Reader.read(m_Buffer, m_Limit, m_Buffer.length - m_Limit);
+      }
+      while (read == 0);
+      if (read < 0)
+	return false;
+      m_Limit += read;
+
+      return true;
+    }
+
+    /**
+     * Reads a single character, used by the tokenizer for the header.
+     *
+     * @return		the character, -1 at the end of the stream
+     * @throws IOException	if reading fails
+     */
+    public int read() throws IOException {
+      if ((m_Pos >= m_Limit) && !fill(m_Pos > 0 ? m_Pos - 1 : 0)) {
+	m_EOF = true;
+	return -1;
+      }
+      return m_Buffer[m_Pos++];
+    }
+
+    /**
+     * Reads characters into a portion of an array.
+     *
+     * @param cbuf	the destination buffer
+     * @param off	the offset at which to start storing characters
+     * @param len	the maximum number of characters to read
+     * @return		the number of characters read, or -1 at the end
+     * 			of the stream
+     * @throws IOException	if reading fails
+     */
+    public int read(char[] cbuf, int off, int len) throws IOException {
+      if (len == 0)
+	return 0;
+      if ((m_Pos >= m_Limit) && !fill(m_Pos > 0 ? m_Pos - 1 : 0))
+	return -1;
+      len = Math.min(len, m_Limit - m_Pos);
+      System.arraycopy(m_Buffer, m_Pos, cbuf, off, len);
+      m_Pos += len;
+
+      return len;
+    }
+
+    /**
+     * Closes the underlying reader.
+     *
+     * @throws IOException	if closing fails
+     */
+    public void close() throws IOException {
+      if (m_Reader != null)
+	m_Reader.close();
+    }
+
+    /**
+     * Hands back the character the tokenizer looked ahead at after the
+     * last keyword of the header, so that the data section starts with it.
+     */
+    public void startData() {
+      if (!m_EOF && (m_Pos > 0) && (m_Buffer[m_Pos - 1] != '"') && (m_Buffer[m_Pos - 1] != '\''))
+	m_Pos--;
+      m_Lines = 0;
+    }
+
+    /**
+     * Returns the number of line breaks read so far.
+     *
+     * @return		the number of lines
+     */
+    public int getLines() {
+      return m_Lines;
+    }
+
+    /**
+     * Reads the next character while scanning a quoted value.
+     *
+     * @return		the character, -1 at the end of the stream
+     * @throws IOException	if reading fails
+     */
+    protected int nextChar() throws IOException {
+      if ((m_Pos >= m_Limit) && !fill(m_Pos))
+	return -1;
+      return m_Buffer[m_Pos++];
+    }
+
+    /**
+     * Reads the next token.
+     *
+     * @return		the type of the token: StreamTokenizer.TT_EOF,
+     * 			StreamTokenizer.TT_EOL, StreamTokenizer.TT_WORD,
+     * 			TT_QUOTED or the brace
+     * @throws IOException	if reading fails
+     */
+    public int nextToken() throws IOException {
+      char	c;
+
+      m_Quoted = null;
+      while (true) {
+	if ((m_Pos >= m_Limit) && !fill(m_Pos))
+	  return m_Type = StreamTokenizer.TT_EOF;
+	c = m_Buffer[m_Pos];
+
+	if (c == '\n') {
+	  m_Pos++;
+	  m_Lines++;
+	  return m_Type = StreamTokenizer.TT_EOL;
+	}
+	else if (c == '\r') {
+	  m_Pos++;
+	  m_Lines++;
+	  if (((m_Pos < m_Limit) || fill(m_Pos)) && (m_Buffer[m_Pos] == '\n'))
+	    m_Pos++;
+	  return m_Type = StreamTokenizer.TT_EOL;
+	}
+	else if ((c <= ' ') || (c == ',')) {
+	  m_Pos++;
+	}
+	else if (c == '%') {
+	  while (true) {
+	    if ((m_Pos >= m_Limit) && !fill(m_Pos))
+	      break;
+	    c = m_Buffer[m_Pos];
+	    if ((c == '\n') || (c == '\r'))
+	      break;
+	    m_Pos++;
+	  }
+	}
+	else if ((c == '{') || (c == '}')) {
+	  m_Pos++;
+	  return m_Type = c;
+	}
+	else if ((c == '"') || (c == '\'')) {
+	  m_Pos++;
+	  return m_Type = readQuoted(c);
+	}
+	else {
+	  m_Start = m_Pos;
+	  m_Pos++;
+	  while (true) {
+	    if ((m_Pos >= m_Limit) && !fill(m_Start))
+	      break;
+	    c = m_Buffer[m_Pos];
+	    if ((c <= ' ') || (c == ',') || (c == '%') || (c == '"')
+		|| (c == '\'') || (c == '{') || (c == '}'))
+	      break;
+	    m_Pos++;
+	  }
+	  m_End = m_Pos;
+	  return m_Type = StreamTokenizer.TT_WORD;
+	}
+      }
+    }
+
+    /**
+     * Reads a quoted value, handling escape sequences the same way as the
+     * <code>StreamTokenizer</code>. The value ends with the quote or the
+     * end of the line.
+     *
+     * @param quote	the quote character
+     * @return		the token type
+     * @throws IOException	if reading fails
+     */
+    protected int readQuoted(char quote) throws IOException {
+      StringBuilder	value;
+      int		c;
+      int		c2;
+      int		d;
+      int		first;
+
+      value = new StringBuilder();
+      d     = nextChar();
+      while ((d >= 0) && (d != quote) && (d != '\n') && (d != '\r')) {
+	if (d == '\\') {
+	  c     = nextChar();
+	  first = c;
+	  if ((c >= '0') && (c <= '7')) {
+	    c  = c - '0';
+	    c2 = nextChar();
+	    if (('0' <= c2) && (c2 <= '7')) {
+	      c  = (c << 3) + (c2 - '0');
+	      c2 = nextChar();
+	      if (('0' <= c2) && (c2 <= '7') && (first <= '3')) {
+		c = (c << 3) + (c2 - '0');
+		d = nextChar();
+	      }
+	      else {
+		d = c2;
+	      }
+	    }
+	    else {
+	      d = c2;
+	    }
+	  }
+	  else {
+	    switch (c) {
+	      case 'a': c = 0x7; break;
+	      case 'b': c = '\b'; break;
+	      case 'f': c = 0xC; break;
+	      case 'n': c = '\n'; break;
+	      case 'r': c = '\r'; break;
+	      case 't': c = '\t'; break;
+	      case 'v': c = 0xB; break;
+	    }
+	    d = nextChar();
+	  }
+	}
+	else {
+	  c = d;
+	  d = nextChar();
+	}
+	value.append((char) c);
+      }
+      // hand back the line break
+      if ((d >= 0) && (d != quote))
+	m_Pos--;
+      m_Quoted = value.toString();
+
+      return TT_QUOTED;
+    }
+
+    /**
+     * Returns whether the current token is a word or a quoted value.
+     *
+     * @return		true if a value
+     */
+    public boolean isValue() {
+      return (m_Type == StreamTokenizer.TT_WORD) || (m_Type == TT_QUOTED);
+    }
+
+    /**
+     * Returns whether the current token is a quoted value.
+     *
+     * @return		true if quoted
+     */
+    public boolean isQuoted() {
+      return (m_Type == TT_QUOTED);
+    }
+
+    /**
+     * Returns whether the current token is an unquoted question mark.
+     *
+     * @return		true if a missing value
+     */
+    public boolean isMissing() {
+      return (m_Type == StreamTokenizer.TT_WORD) && (m_End - m_Start == 1) && (m_Buffer[m_Start] == '?');
+    }
+
+    /**
+     * Returns the current word or quoted value as string.
+     *
+     * @return		the value
+     */
+    public String stringValue() {
+      if (m_Type == TT_QUOTED)
+	return m_Quoted;
+      else
+	return new String(m_Buffer, m_Start, m_End - m_Start);
+    }
+
+    /**
+     * Returns the index of the current word in the given table of labels.
+     *
+     * @param index	the table of labels
+     * @return		the index of the label, -1 if not found
+     */
+    public int lookup(NominalIndex index) {
+      return index.indexOf(m_Buffer, m_Start, m_End);
+    }
+
+    /**
+     * Parses the current word or quoted value as integer.
+     *
+     * @return		the integer
+     * @throws NumberFormatException	if not an integer
+     */
+    public int intValue() {
+      long	result;
+      int	i;
+
+      if ((m_Type == StreamTokenizer.TT_WORD) && (m_End - m_Start < 10)) {
+	result = 0;
+	for (i = m_Start; i < m_End; i++) {
+	  if ((m_Buffer[i] < '0') || (m_Buffer[i] > '9'))
+	    break;
+	  result = result * 10 + (m_Buffer[i] - '0');
+	}
+	if ((i == m_End) && (i > m_Start))
+	  return (int) result;
+      }
+
+      return Integer.valueOf(stringValue()).intValue();
+    }
+
+    /**
+     * Parses the current word or quoted value as double. Plain decimal
+     * numbers with up to 15 significant digits and an exponent that keeps
+     * the power of ten exact are converted directly, which gives the same
+     * result as <code>Double.parseDouble</code> since only a single,
+     * correctly rounded operation is involved. Everything else is handed
+     * to <code>Double.parseDouble</code>.
+     *
+     * @return		the double
+     * @throws NumberFormatException	if not a number
+     */
+    public double doubleValue() {
+      boolean	negative;
+      boolean	digits;
+      long	mantissa;
+      int	significant;
+      int	exponent;
+      int	exp;
+      boolean	expNegative;
+      int	i;
+      char	c;
+      double	result;
+
+      if (m_Type != StreamTokenizer.TT_WORD)
+	return Double.parseDouble(stringValue());
+
+      i           = m_Start;
+      negative    = false;
+      digits      = false;
+      mantissa    = 0;
+      significant = 0;
+      exponent    = 0;
+
+      if ((i < m_End) && ((m_Buffer[i] == '-') || (m_Buffer[i] == '+'))) {
+	negative = (m_Buffer[i] == '-');
+	i++;
+      }
+
+      // integer part
+      for (; i < m_End; i++) {
+	c = m_Buffer[i];
+	if ((c < '0') || (c > '9'))
+	  break;
+	digits = true;
+	if ((mantissa == 0) && (c == '0'))
+	  continue;
+	if (++significant > 15)
+	  return Double.parseDouble(stringValue());
+	mantissa = mantissa * 10 + (c - '0');
+      }
+
+      // fraction
+      if ((i < m_End) && (m_Buffer[i] == '.')) {
+	for (i++; i < m_End; i++) {
+	  c = m_Buffer[i];
+	  if ((c < '0') || (c > '9'))
+	    break;
+	  digits = true;
+	  exponent--;
+	  if ((mantissa == 0) && (c == '0'))
+	    continue;
+	  if (++significant > 15)
+	    return Double.parseDouble(stringValue());
+	  mantissa = mantissa * 10 + (c - '0');
+	}
+      }
+
+      if (!digits)
+	return Double.parseDouble(stringValue());
+
+      // exponent
+      if ((i < m_End) && ((m_Buffer[i] == 'e') || (m_Buffer[i] == 'E'))) {
+	i++;
+	expNegative = false;
+	if ((i < m_End) && ((m_Buffer[i] == '-') || (m_Buffer[i] == '+'))) {
+	  expNegative = (m_Buffer[i] == '-');
+	  i++;
+	}
+	if (i == m_End)
+	  return Double.parseDouble(stringValue());
+	exp = 0;
+	for (; i < m_End; i++) {
+	  c = m_Buffer[i];
+	  if ((c < '0') || (c > '9') || (exp > 1000))
+	    return Double.parseDouble(stringValue());
+	  exp = exp * 10 + (c - '0');
+	}
+	exponent += expNegative ? -exp : exp;
+      }
+
+      if (i != m_End)
+	return Double.parseDouble(stringValue());
+
+      if (mantissa == 0)
+	result = 0.0;
+      else if ((exponent >= 0) && (exponent < POWERS_OF_TEN.length))
+	result = mantissa * POWERS_OF_TEN[exponent];
+      else if ((exponent < 0) && (-exponent < POWERS_OF_TEN.length))
+	result = mantissa / POWERS_OF_TEN[-exponent];
+      else
+	return Double.parseDouble(stringValue());
+
+      return negative ? -result : result;
+    }
+
+    /**
+     * Returns a description of the current token, like the one of the
+     * <code>StreamTokenizer</code>.
+     *
+     * @return		the description
+     */
+    public String tokenToString() {
+      switch (m_Type) {
+	case StreamTokenizer.TT_EOF:
+	  return "EOF";
+	case StreamTokenizer.TT_EOL:
+	  return "EOL";
+	case StreamTokenizer.TT_WORD:
+	case TT_QUOTED:
+	  return stringValue();
+	default:
+	  return "'" + (char) m_Type + "'";
+      }
+    }
+
+    /**
+     * Returns the next block of complete lines of the remaining
+     * characters, consuming them. The block contains at least the given
+     * number of characters, unless the end of the stream is reached first
+     * or the lines are longer.
+     *
+     * @param size	the minimum number of characters
+     * @return		the block, null if no characters are left
+     * @throws IOException	if reading fails
+     */
+    public char[] nextChunk(int size) throws IOException {
+      char[]	result;
+      int	end;
+      boolean	eof;
+
+      eof = false;
+      while (!eof && (m_Limit - m_Pos < size))
+	eof = !fill(m_Pos);
+      if (m_Limit == m_Pos)
+	return null;
+
+      while (true) {
+	end = -1;
+	if (eof) {
+	  end = m_Limit;
+	}
+	else {
+	  for (int i = m_Limit - 1; i >= m_Pos; i--) {
+	    if (m_Buffer[i] == '\n') {
+	      end = i + 1;
+	      break;
+	    }
+	  }
+	}
+	if (end > -1)
+	  break;
+	eof = !fill(m_Pos);
+      }
+
+      result = new char[end - m_Pos];
+      System.arraycopy(m_Buffer, m_Pos, result, 0, result.length);
+      m_Pos = end;
+
+      return result;
+    }
+
+    /**
+     * Counts the line breaks in the characters the same way as
+     * <code>nextToken()</code>.
+     *
+     * @param chars	the characters
+     * @return		the number of line breaks
+     */
+    public static int countLines(char[] chars) {
+      int	result;
+
+      result = 0;
+      for (int i = 0; i < chars.length; i++) {
+	if (chars[i] == '\n') {
+	  result++;
+	}
+	else if (chars[i] == '\r') {
+	  result++;
+	  if ((i + 1 < chars.length) && (chars[i + 1] == '\n'))
+	    i++;
+	}
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+}
@@ -362,6 +362,83 @@ public class BallTree
     }//end else if node is a leaf
   }
   
+  /**
+   * Returns all the instances within the given radius of the supplied 
+   * instance, ordered by their distance.
+   * 
+   * @param target	The instance to find the neighbours for.
+   * @param radius	The radius to search within.
+   * @throws Exception 	If the neighbours could not be found.
+   * @return The neighbours within the radius.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    RangeList list = new RangeList();
+
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+
+    if(radius >= 0)
+      rangeNeighbours(list, m_Root, target, radius);
+    
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+
+    m_Distances = list.postProcessedDistances(radius);
+    m_RangeDistances = m_Distances;
+
+    return list.neighbours();
+  }
+
+  /**
+   * Collects the instances in the supplied node that lie within the radius
+   * of the target. Balls that lie further away than the radius are skipped.
+   * P.S.: The distances collected are squared, and the instances are 
+   * collected with a slightly enlarged radius. The distances need to be
+   * post-processed and checked against the radius.
+   * 
+   * @param list The list to add the neighbours to.
+   * @param node The BallNode to search.
+   * @param target The target instance for which the neighbours are required.
+   * @param radius The radius to search within.
+   * @throws Exception If the structure of the BallTree is not correct.
+   */
+  protected void rangeNeighbours(RangeList list, BallNode node, 
+                                 Instance target, double radius) 
+    throws Exception {
+    
+    // The radius is not squared so need to take sqrt before comparison
+    double distance = Math.sqrt(m_DistanceFunction.distance(target, 
+        node.getPivot(), Double.POSITIVE_INFINITY));
+    if (distance - node.getRadius() > radius) {
+      return;
+    } else if (node.m_Left != null && node.m_Right != null) { // if node is not
+                                                              // a leaf
+      if (m_TreeStats != null) {
+        m_TreeStats.incrIntNodeCount();
+      }
+      rangeNeighbours(list, node.m_Left, target, radius);
+      rangeNeighbours(list, node.m_Right, target, radius);
+    } else if (node.m_Left != null || node.m_Right != null) { // invalid leaves
+                                                              // assignment
+      throw new Exception("Error: Only one leaf of the built ball tree is " + 
+                          "assigned. Please check code.");
+    } else { // if node is a leaf
+      if (m_TreeStats != null) {
+        m_TreeStats.updatePointCount(node.numInstances());
+        m_TreeStats.incrLeafCount();
+      }
+      double sqRadius = radius * radius * (1 + RANGE_TOLERANCE);
+      for (int i = node.m_Start; i <= node.m_End; i++) {
+        if (target == m_Instances.instance(m_InstList[i])) //for hold-one-out cross-validation
+          continue;
+        distance = m_DistanceFunction.distance(target, 
+            m_Instances.instance(m_InstList[i]), sqRadius, m_Stats);
+        if (distance <= sqRadius)
+          list.add(m_InstList[i], distance);
+      }
+    }//end else if node is a leaf
+  }
+  
   /**
    * Returns the nearest instance in the current neighbourhood to the supplied
    * instance.
@@ -382,7 +459,8 @@ public class BallTree
    * one of the two functions is called at any point in the past, then no   
    * exception is thrown and the distances of NN(s) from the training set for 
    * the last supplied target instance (to either one of the nearestNeighbour 
-   * functions) is/are returned.
+   * functions) is/are returned. After a rangeQuery, the distances of the 
+   * neighbours within the radius are returned.
    *
    * @return 		array containing the distances of the 
    *            	nearestNeighbours. The length and ordering of the 
@@ -225,6 +225,13 @@ public class CoverTree
       m_DistanceFunction = m_EuclideanDistance = new EuclideanDistance();
   }
 
+  /** 
+   * The relative amount by which the distances of the furthest descendants
+   * are enlarged in range queries, as max_set(Stack) computes them with 
+   * float precision only.
+   */
+  protected static final double MAX_DIST_TOLERANCE = 1e-6;
+
   /** The root node. */
   protected CoverTreeNode m_Root;
 
@@ -1655,6 +1662,99 @@ public class CoverTree
     return insts;
   }
   
+  /**
+   * Returns all the training instances within the given radius of the
+   * target instance, ordered by their distance.
+   * 
+   * @param target The instance for which the neighbours are required.
+   * @param radius The radius to search within.
+   * @return The neighbours within the radius.
+   * @throws Exception If there is some problem finding the neighbours.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+    RangeList list = new RangeList();
+    if(radius >= 0)
+      findInRange(target, radius, list);
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+
+    m_DistanceList = list.sortedDistances();
+    m_RangeDistances = m_DistanceList;
+    return list.neighbours();
+  }
+
+  /**
+   * Collects the training instances within the given radius of the target
+   * instance. Starting from the root, the children of the nodes in the
+   * current cover set are only descended into if the target might be 
+   * within the radius of any of their descendants. 
+   * 
+   * @param target The instance for which the neighbours are required.
+   * @param radius The radius to search within.
+   * @param list The list to add the neighbours to.
+   * @throws Exception If there is some problem finding the neighbours.
+   */
+  protected void findInRange(final Instance target, final double radius, 
+      RangeList list) throws Exception {
+    Stack<d_node> cover_set_current = new Stack<d_node>(),
+    		   cover_set_next;
+    CoverTreeNode parent, child; d_node par;
+    double d = Math.sqrt(m_DistanceFunction.distance(m_Root.p(), target, Double.POSITIVE_INFINITY, m_TreeStats)),
+           upper_bound;
+    //updating stats for the root node
+    if(m_TreeStats!=null) {
+      	if(m_Root.num_children > 0)
+      	  m_TreeStats.incrIntNodeCount();
+      	else
+      	  m_TreeStats.incrLeafCount();
+      	m_TreeStats.incrPointCount();
+    }
+    
+    //if root is the only node
+    if(m_Root.num_children==0) {
+      if(d <= radius && target != m_Root.p())
+	list.add(m_Root.idx, d);
+      return;
+    }
+    //else
+    if(d > radius + m_Root.max_dist * (1 + MAX_DIST_TOLERANCE))
+      return;
+    cover_set_current.push(new d_node(d, m_Root));
+    while(cover_set_current.length>0) {
+      cover_set_next = new Stack<d_node>();
+      for(int i=0; i<cover_set_current.length; i++) {
+	par = cover_set_current.element(i);
+	parent = par.n;
+	for(int c=0; c<parent.num_children; c++) {
+	  child = parent.children.element(c);
+	  upper_bound = radius + child.max_dist * (1 + MAX_DIST_TOLERANCE);
+	  if(c==0)
+	    d = par.dist;
+	  else {
+	    d = Math.sqrt(m_DistanceFunction.distance(child.p(), target, upper_bound*upper_bound*(1 + RANGE_TOLERANCE), m_TreeStats));
+	      if(m_TreeStats!=null)
+		m_TreeStats.incrPointCount();
+	  }
+	  if(d <= upper_bound) {
+	    if(child.num_children > 0) {
+	      cover_set_next.push(new d_node(d, child));
+	      if(m_TreeStats!=null)
+		m_TreeStats.incrIntNodeCount();
+	    }
+	    else if (d <= radius && target != child.p()){
+	      list.add(child.idx, d);
+	      if(m_TreeStats!=null)
+		m_TreeStats.incrLeafCount();
+	    }
+	  }
+	} //end for current_set children
+      } //end for current_set elements
+      cover_set_current = cover_set_next;
+    } //end while(curret_set not empty)
+  }
+  
   /**
    * Returns the NN instance of a given target instance, from among
    * the previously supplied training instances.
@@ -1670,7 +1770,8 @@ public class CoverTree
 
   /**
    * Returns the distances of the (k)-NN(s) found earlier
-   * by kNearestNeighbours()/nearestNeighbour().
+   * by kNearestNeighbours()/nearestNeighbour(), or of the neighbours
+   * found by rangeQuery().
    * 
    * @throws Exception If the tree hasn't been built (by calling 
    * setInstances()), or none of kNearestNeighbours() or 
@@ -1866,6 +1967,20 @@ public class CoverTree
 			  + " not supported (KDTree)");
     }
   }
+
+  /**
+   * Sets whether to calculate the performance statistics or not.
+   * @param measurePerformance Should be true if performance 
+   * statistics are to be measured.
+   */
+  public void setMeasurePerformance(boolean measurePerformance) {
+    m_MeasurePerformance = measurePerformance;
+    if (m_MeasurePerformance) {
+      if (m_Stats == null)
+        m_Stats = m_TreeStats = new TreePerformanceStats();
+    } else
+      m_Stats = m_TreeStats = null;
+  }
   
   /********Utility print functions.****** */
   /**
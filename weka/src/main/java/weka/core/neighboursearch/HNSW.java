@@ -0,0 +1,944 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * HNSW.java
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.RevisionHandler;
+import weka.core.RevisionUtils;
+import weka.core.TechnicalInformation;
+import weka.core.TechnicalInformationHandler;
+import weka.core.Utils;
+import weka.core.TechnicalInformation.Field;
+import weka.core.TechnicalInformation.Type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ <!-- globalinfo-start -->
+ * Class implementing an approximate nearest neighbour search based on a hierarchical navigable small world (HNSW) graph. Each instance is a node of the graph and gets linked to its (approximately) nearest neighbours on a randomly chosen number of layers, the higher layers containing exponentially fewer nodes. A query descends greedily through the layers and finishes with a best-first search on the bottom layer. The size of the candidate lists trades recall for speed. Instances can be added incrementally, but the neighbours returned are not guaranteed to be the exact ones.<br/>
+ * <br/>
+ * For more information see:<br/>
+ * <br/>
+ * Yu. A. Malkov, D. A. Yashunin (2016). Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs. CoRR. abs/1603.09320.
+ * <p/>
+ <!-- globalinfo-end -->
+ *
+ <!-- technical-bibtex-start -->
+ * BibTeX:
+ * <pre>
+ * &#64;article{Malkov2016,
+ *    author = {Yu. A. Malkov and D. A. Yashunin},
+ *    journal = {CoRR},
+ *    title = {Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs},
+ *    volume = {abs/1603.09320},
+ *    year = {2016},
+ *    HTTP = {http://arxiv.org/abs/1603.09320}
+ * }
+ * </pre>
+ * <p/>
+ <!-- technical-bibtex-end -->
+ *
+ <!-- options-start -->
+ * Valid options are: <p/>
+ *
+ * <pre> -A &lt;classname and options&gt;
+ *  Distance function to use.
+ *  (default: weka.core.EuclideanDistance)</pre>
+ *
+ * <pre> -P
+ *  Calculate performance statistics.</pre>
+ *
+ * <pre> -M &lt;num&gt;
+ *  The maximum number of connections per node and layer,
+ *  twice as many on the bottom layer.
+ *  (default 16)</pre>
+ *
+ * <pre> -C &lt;num&gt;
+ *  The size of the candidate list when inserting instances.
+ *  (default 100)</pre>
+ *
+ * <pre> -L &lt;num&gt;
+ *  The size of the candidate list when searching, at least k.
+ *  (default 50)</pre>
+ *
+ * <pre> -S &lt;num&gt;
+ *  The seed for choosing the layers of the nodes.
+ *  (default 1)</pre>
+ *
+ <!-- options-end -->
+ *
+ * @version $Revision$
+ */
+public class HNSW
+  extends NearestNeighbourSearch
+  implements TechnicalInformationHandler {
+
+  /** for serialization. */
+  private static final long serialVersionUID = -3021857452393108562L;
+
+  /**
+   * A node of the graph together with its distance to a target.
+   */
+  protected static class Candidate
+    implements Comparable<Candidate>, RevisionHandler {
+
+    /** the (not post-processed) distance to the target. */
+    public double m_Distance;
+
+    /** the index of the node. */
+    public int m_Node;
+
+    /**
+     * Initializes the candidate.
+     *
+     * @param distance	the distance to the target
+     * @param node	the index of the node
+     */
+    public Candidate(double distance, int node) {
+      m_Distance = distance;
+      m_Node = node;
+    }
+
+    /**
+     * Orders the candidates by distance, ties by index.
+     *
+     * @param o		the candidate to compare with
+     * @return		-1, 0 or 1 if this candidate is nearer, the same or
+     * 			further than the other one
+     */
+    public int compareTo(Candidate o) {
+      if(m_Distance < o.m_Distance)
+        return -1;
+      if(m_Distance > o.m_Distance)
+        return 1;
+      return (m_Node < o.m_Node) ? -1 : ((m_Node == o.m_Node) ? 0 : 1);
+    }
+
+    /**
+     * Returns the revision string.
+     *
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
+  /** The maximum number of connections per node and layer (M). */
+  protected int m_MaxConnections = 16;
+
+  /** The size of the candidate list when inserting (efConstruction). */
+  protected int m_ConstructionListSize = 100;
+
+  /** The size of the candidate list when searching (ef). */
+  protected int m_SearchListSize = 50;
+
+  /** The seed for choosing the layers of the nodes. */
+  protected int m_Seed = 1;
+
+  /** The random number generator for choosing the layers of the nodes. */
+  protected Random m_Random;
+
+  /** The number of instances that are nodes of the graph. */
+  protected int m_NumNodes = 0;
+
+  /** The top layer of each node. */
+  protected int[] m_NodeLayers = new int[0];
+
+  /** The neighbours of each node on each of its layers. */
+  protected int[][][] m_Links = new int[0][][];
+
+  /** The node the searches start from, -1 if the graph is empty. */
+  protected int m_EntryPoint = -1;
+
+  /** The top layer of the graph. */
+  protected int m_TopLayer = -1;
+
+  /** The distances of the neighbours found by the last query. */
+  protected double[] m_Distances;
+
+  /** The marks of the nodes visited by a search. */
+  protected transient int[] m_Visited;
+
+  /** The mark of the current search. */
+  protected transient int m_VisitMark;
+
+  /**
+   * Constructor. Needs setInstances(Instances)
+   * to be called before the class is usable.
+   */
+  public HNSW() {
+    super();
+  }
+
+  /**
+   * Constructor that uses the supplied set of
+   * instances. Needs setInstances(Instances) to be called
+   * for building the graph.
+   *
+   * @param insts	the instances to use
+   */
+  public HNSW(Instances insts) {
+    super(insts);
+  }
+
+  /**
+   * Returns a string describing this nearest neighbour search algorithm.
+   *
+   * @return 		a description of the algorithm for displaying in the
+   * 			explorer/experimenter gui
+   */
+  public String globalInfo() {
+    return
+        "Class implementing an approximate nearest neighbour search based on "
+      + "a hierarchical navigable small world (HNSW) graph. Each instance is "
+      + "a node of the graph and gets linked to its (approximately) nearest "
+      + "neighbours on a randomly chosen number of layers, the higher layers "
+      + "containing exponentially fewer nodes. A query descends greedily "
+      + "through the layers and finishes with a best-first search on the "
+      + "bottom layer. The size of the candidate lists trades recall for "
+      + "speed. Instances can be added incrementally, but the neighbours "
+      + "returned are not guaranteed to be the exact ones.\n\n"
+      + "For more information see:\n\n"
+      + getTechnicalInformation().toString();
+  }
+
+  /**
+   * Returns an instance of a TechnicalInformation object, containing detailed
+   * information about the technical background of this class, e.g., paper
+   * reference or book this class is based on.
+   *
+   * @return 		the technical information about this class
+   */
+  public TechnicalInformation getTechnicalInformation() {
+    TechnicalInformation result;
+
+    result = new TechnicalInformation(Type.ARTICLE);
+    result.setValue(Field.AUTHOR, "Yu. A. Malkov and D. A. Yashunin");
+    result.setValue(Field.TITLE, "Efficient and robust approximate nearest neighbor search using Hierarchical Navigable Small World graphs");
+    result.setValue(Field.JOURNAL, "CoRR");
+    result.setValue(Field.VOLUME, "abs/1603.09320");
+    result.setValue(Field.YEAR, "2016");
+    result.setValue(Field.HTTP, "http://arxiv.org/abs/1603.09320");
+
+    return result;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return 		an enumeration of all the available options.
+   */
+  public Enumeration listOptions() {
+    Vector<Option> result = new Vector<Option>();
+
+    Enumeration enm = super.listOptions();
+    while (enm.hasMoreElements())
+      result.add((Option) enm.nextElement());
+
+    result.add(new Option(
+	"\tThe maximum number of connections per node and layer,\n"
+	+ "\ttwice as many on the bottom layer.\n"
+	+ "\t(default 16)",
+	"M", 1, "-M <num>"));
+
+    result.add(new Option(
+	"\tThe size of the candidate list when inserting instances.\n"
+	+ "\t(default 100)",
+	"C", 1, "-C <num>"));
+
+    result.add(new Option(
+	"\tThe size of the candidate list when searching, at least k.\n"
+	+ "\t(default 50)",
+	"L", 1, "-L <num>"));
+
+    result.add(new Option(
+	"\tThe seed for choosing the layers of the nodes.\n"
+	+ "\t(default 1)",
+	"S", 1, "-S <num>"));
+
+    return result.elements();
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   <!-- options-start -->
+   * Valid options are: <p/>
+   *
+   * <pre> -A &lt;classname and options&gt;
+   *  Distance function to use.
+   *  (default: weka.core.EuclideanDistance)</pre>
+   *
+   * <pre> -P
+   *  Calculate performance statistics.</pre>
+   *
+   * <pre> -M &lt;num&gt;
+   *  The maximum number of connections per node and layer,
+   *  twice as many on the bottom layer.
+   *  (default 16)</pre>
+   *
+   * <pre> -C &lt;num&gt;
+   *  The size of the candidate list when inserting instances.
+   *  (default 100)</pre>
+   *
+   * <pre> -L &lt;num&gt;
+   *  The size of the candidate list when searching, at least k.
+   *  (default 50)</pre>
+   *
+   * <pre> -S &lt;num&gt;
+   *  The seed for choosing the layers of the nodes.
+   *  (default 1)</pre>
+   *
+   <!-- options-end -->
+   *
+   * @param options 	the list of options as an array of strings
+   * @throws Exception 	if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception {
+    String	tmpStr;
+
+    super.setOptions(options);
+
+    tmpStr = Utils.getOption('M', options);
+    if (tmpStr.length() != 0)
+      setMaxConnections(Integer.parseInt(tmpStr));
+    else
+      setMaxConnections(16);
+
+    tmpStr = Utils.getOption('C', options);
+    if (tmpStr.length() != 0)
+      setConstructionListSize(Integer.parseInt(tmpStr));
+    else
+      setConstructionListSize(100);
+
+    tmpStr = Utils.getOption('L', options);
+    if (tmpStr.length() != 0)
+      setSearchListSize(Integer.parseInt(tmpStr));
+    else
+      setSearchListSize(50);
+
+    tmpStr = Utils.getOption('S', options);
+    if (tmpStr.length() != 0)
+      setSeed(Integer.parseInt(tmpStr));
+    else
+      setSeed(1);
+  }
+
+  /**
+   * Gets the current settings.
+   *
+   * @return 		an array of strings suitable for passing to setOptions()
+   */
+  public String[] getOptions() {
+    Vector<String>	result;
+    String[]		options;
+    int			i;
+
+    result = new Vector<String>();
+
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    result.add("-M");
+    result.add("" + getMaxConnections());
+
+    result.add("-C");
+    result.add("" + getConstructionListSize());
+
+    result.add("-L");
+    result.add("" + getSearchListSize());
+
+    result.add("-S");
+    result.add("" + getSeed());
+
+    return result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String maxConnectionsTipText() {
+    return "The maximum number of connections per node and layer (M), twice "
+      + "as many on the bottom layer; more connections improve the recall at "
+      + "the expense of memory and build time.";
+  }
+
+  /**
+   * Sets the maximum number of connections per node and layer.
+   *
+   * @param value 	the maximum number, at least 2
+   */
+  public void setMaxConnections(int value) {
+    m_MaxConnections = Math.max(2, value);
+  }
+
+  /**
+   * Gets the maximum number of connections per node and layer.
+   *
+   * @return 		the maximum number
+   */
+  public int getMaxConnections() {
+    return m_MaxConnections;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String constructionListSizeTipText() {
+    return "The size of the candidate list when inserting instances "
+      + "(efConstruction); larger lists give a better graph, but take "
+      + "longer to build.";
+  }
+
+  /**
+   * Sets the size of the candidate list when inserting instances.
+   *
+   * @param value 	the size, at least 1
+   */
+  public void setConstructionListSize(int value) {
+    m_ConstructionListSize = Math.max(1, value);
+  }
+
+  /**
+   * Gets the size of the candidate list when inserting instances.
+   *
+   * @return 		the size
+   */
+  public int getConstructionListSize() {
+    return m_ConstructionListSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String searchListSizeTipText() {
+    return "The size of the candidate list when searching (ef), at least the "
+      + "number of neighbours requested; larger lists improve the recall, "
+      + "but slow down the queries.";
+  }
+
+  /**
+   * Sets the size of the candidate list when searching.
+   *
+   * @param value 	the size, at least 1
+   */
+  public void setSearchListSize(int value) {
+    m_SearchListSize = Math.max(1, value);
+  }
+
+  /**
+   * Gets the size of the candidate list when searching.
+   *
+   * @return 		the size
+   */
+  public int getSearchListSize() {
+    return m_SearchListSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String seedTipText() {
+    return "The seed for choosing the layers of the nodes.";
+  }
+
+  /**
+   * Sets the seed for choosing the layers of the nodes.
+   *
+   * @param value 	the seed
+   */
+  public void setSeed(int value) {
+    m_Seed = value;
+  }
+
+  /**
+   * Gets the seed for choosing the layers of the nodes.
+   *
+   * @return 		the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Returns the maximum number of connections of a node on a layer.
+   *
+   * @param layer	the layer
+   * @return		the maximum number of connections
+   */
+  protected int maxLinks(int layer) {
+    return (layer == 0) ? 2 * m_MaxConnections : m_MaxConnections;
+  }
+
+  /**
+   * Returns the distance between a target and a node, counting the node
+   * as visited if the performance is measured.
+   *
+   * @param target	the target
+   * @param node	the index of the node
+   * @param cutoff	the distance beyond which to stop computing
+   * @param stats	the statistics to update, can be null
+   * @return		the (not post-processed) distance, or infinity if
+   * 			it is beyond the cutoff
+   */
+  protected double distance(Instance target, int node, double cutoff,
+      PerformanceStats stats) {
+    if(stats!=null)
+      stats.incrPointCount();
+    return m_DistanceFunction.distance(target, m_Instances.instance(node), cutoff, stats);
+  }
+
+  /**
+   * Starts a new search, i.e., marks all the nodes as not visited.
+   *
+   * @return		the mark for the nodes visited by the search
+   */
+  protected int newVisitMark() {
+    if(m_Visited==null || m_Visited.length<m_NumNodes) {
+      m_Visited = new int[m_Links.length];
+      m_VisitMark = 0;
+    }
+    if(m_VisitMark==Integer.MAX_VALUE) {
+      Arrays.fill(m_Visited, 0);
+      m_VisitMark = 0;
+    }
+    return ++m_VisitMark;
+  }
+
+  /**
+   * Performs a best-first search for the nearest nodes of a target on a
+   * layer, starting from the given nodes.
+   *
+   * @param target	the target
+   * @param entries	the nodes to start from, with their distances
+   * @param size	the size of the candidate list
+   * @param layer	the layer to search
+   * @param stats	the statistics to update, can be null
+   * @return		the nearest nodes found, at most size, ordered by
+   * 			distance
+   */
+  protected List<Candidate> searchLayer(Instance target, List<Candidate> entries,
+      int size, int layer, PerformanceStats stats) {
+
+    PriorityQueue<Candidate> candidates = new PriorityQueue<Candidate>();
+    PriorityQueue<Candidate> found =
+      new PriorityQueue<Candidate>(size + 1, Collections.reverseOrder());
+    int mark = newVisitMark();
+    for(Candidate entry: entries) {
+      m_Visited[entry.m_Node] = mark;
+      candidates.add(entry);
+      found.add(entry);
+      if(found.size()>size)
+        found.poll();
+    }
+
+    while(!candidates.isEmpty()) {
+      Candidate current = candidates.poll();
+      if(found.size()>=size && current.m_Distance>found.peek().m_Distance)
+        break;
+      for(int node: m_Links[current.m_Node][layer]) {
+        if(m_Visited[node]==mark)
+          continue;
+        m_Visited[node] = mark;
+        double cutoff = (found.size()<size) ? Double.POSITIVE_INFINITY
+                                           : found.peek().m_Distance;
+        double distance = distance(target, node, cutoff, stats);
+        if(found.size()<size || distance<cutoff) {
+          Candidate candidate = new Candidate(distance, node);
+          candidates.add(candidate);
+          found.add(candidate);
+          if(found.size()>size)
+            found.poll();
+        }
+      }
+    }
+
+    List<Candidate> result = new ArrayList<Candidate>(found);
+    Collections.sort(result);
+    return result;
+  }
+
+  /**
+   * Searches the graph for the nearest nodes of a target, descending
+   * greedily to the bottom layer.
+   *
+   * @param target	the target
+   * @param size	the size of the candidate list on the bottom layer
+   * @param stats	the statistics to update, can be null
+   * @return		the nearest nodes found, ordered by distance
+   */
+  protected List<Candidate> search(Instance target, int size,
+      PerformanceStats stats) {
+
+    List<Candidate> entries = new ArrayList<Candidate>();
+    if(m_EntryPoint==-1)
+      return entries;
+
+    entries.add(new Candidate(distance(target, m_EntryPoint,
+        Double.POSITIVE_INFINITY, stats), m_EntryPoint));
+    for(int layer=m_TopLayer; layer>0; layer--)
+      entries = searchLayer(target, entries, 1, layer, stats);
+    return searchLayer(target, entries, size, 0, stats);
+  }
+
+  /**
+   * Selects the neighbours of a node from candidates, preferring candidates
+   * that are nearer to the node than to any neighbour selected already.
+   * This keeps links in all directions, which helps in clustered data.
+   *
+   * @param inst	the instance of the node
+   * @param candidates	the candidates, ordered by distance to the node
+   * @param max		the maximum number of neighbours
+   * @return		the selected neighbours
+   */
+  protected List<Candidate> selectNeighbours(Instance inst,
+      List<Candidate> candidates, int max) {
+
+    List<Candidate> result = new ArrayList<Candidate>(max);
+    for(Candidate candidate: candidates) {
+      if(result.size()>=max)
+        break;
+      Instance candidateInst = m_Instances.instance(candidate.m_Node);
+      boolean keep = true;
+      for(Candidate selected: result) {
+        if(distance(candidateInst, selected.m_Node, candidate.m_Distance, null)
+            < candidate.m_Distance) {
+          keep = false;
+          break;
+        }
+      }
+      if(keep)
+        result.add(candidate);
+    }
+    return result;
+  }
+
+  /**
+   * Turns the candidates into an array of node indices.
+   *
+   * @param candidates	the candidates
+   * @return		the indices of the nodes
+   */
+  protected int[] toLinks(List<Candidate> candidates) {
+    int[] result = new int[candidates.size()];
+    for(int i=0; i<result.length; i++)
+      result[i] = candidates.get(i).m_Node;
+    return result;
+  }
+
+  /**
+   * Links a node to a new neighbour on a layer. If the node has too many
+   * neighbours then, the neighbours get selected anew.
+   *
+   * @param node	the index of the node
+   * @param neighbour	the index of the new neighbour
+   * @param distance	the distance between the two
+   * @param layer	the layer
+   */
+  protected void connect(int node, int neighbour, double distance, int layer) {
+    int[] links = m_Links[node][layer];
+    int max = maxLinks(layer);
+    if(links.length<max) {
+      links = Arrays.copyOf(links, links.length + 1);
+      links[links.length - 1] = neighbour;
+      m_Links[node][layer] = links;
+      return;
+    }
+
+    Instance inst = m_Instances.instance(node);
+    List<Candidate> candidates = new ArrayList<Candidate>(links.length + 1);
+    for(int link: links)
+      candidates.add(new Candidate(distance(inst, link, Double.POSITIVE_INFINITY, null), link));
+    candidates.add(new Candidate(distance, neighbour));
+    Collections.sort(candidates);
+    m_Links[node][layer] = toLinks(selectNeighbours(inst, candidates, max));
+  }
+
+  /**
+   * Returns a random layer for a new node, with exponentially decaying
+   * probabilities for the higher layers.
+   *
+   * @return		the layer
+   */
+  protected int randomLayer() {
+    return (int) Math.floor(-Math.log(1.0 - m_Random.nextDouble())
+                            / Math.log(m_MaxConnections));
+  }
+
+  /**
+   * Inserts an instance into the graph.
+   *
+   * @param node	the index of the instance
+   */
+  protected void insert(int node) {
+    if(node>=m_Links.length) {
+      int capacity = Math.max(node + 1, 2 * m_Links.length);
+      m_Links = Arrays.copyOf(m_Links, capacity);
+      m_NodeLayers = Arrays.copyOf(m_NodeLayers, capacity);
+    }
+
+    int layer = randomLayer();
+    m_NodeLayers[node] = layer;
+    m_Links[node] = new int[layer + 1][0];
+    m_NumNodes = node + 1;
+    if(m_EntryPoint==-1) {
+      m_EntryPoint = node;
+      m_TopLayer = layer;
+      return;
+    }
+
+    Instance inst = m_Instances.instance(node);
+    List<Candidate> entries = new ArrayList<Candidate>();
+    entries.add(new Candidate(distance(inst, m_EntryPoint,
+        Double.POSITIVE_INFINITY, null), m_EntryPoint));
+    for(int l=m_TopLayer; l>layer; l--)
+      entries = searchLayer(inst, entries, 1, l, null);
+    for(int l=Math.min(layer, m_TopLayer); l>=0; l--) {
+      entries = searchLayer(inst, entries, m_ConstructionListSize, l, null);
+      List<Candidate> neighbours = selectNeighbours(inst, entries, m_MaxConnections);
+      m_Links[node][l] = toLinks(neighbours);
+      for(Candidate neighbour: neighbours)
+        connect(neighbour.m_Node, node, neighbour.m_Distance, l);
+    }
+
+    if(layer>m_TopLayer) {
+      m_EntryPoint = node;
+      m_TopLayer = layer;
+    }
+  }
+
+  /**
+   * Returns the nearest instance in the current neighbourhood to the supplied
+   * instance.
+   *
+   * @param target 	The instance to find the nearest neighbour for.
+   * @return		the nearest instance
+   * @throws Exception 	if the nearest neighbour could not be found.
+   */
+  public Instance nearestNeighbour(Instance target) throws Exception {
+    return (kNearestNeighbours(target, 1)).instance(0);
+  }
+
+  /**
+   * Returns (approximately) the k nearest instances in the current
+   * neighbourhood to the supplied instance. Like the other searches,
+   * instances at the same distance as the kth nearest one are returned
+   * as well, as far as they are among the candidates found.
+   *
+   * @param target 	The instance to find the k nearest neighbours for.
+   * @param kNN		The number of nearest neighbours to find.
+   * @return		the k nearest neighbors
+   * @throws Exception  if the neighbours could not be found.
+   */
+  public Instances kNearestNeighbours(Instance target, int kNN) throws Exception {
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+
+    // one more candidate in case the target itself is among them
+    List<Candidate> found = search(target, Math.max(m_SearchListSize, kNN + 1), m_Stats);
+    List<Candidate> nearest = new ArrayList<Candidate>(kNN);
+    for(Candidate candidate: found) {
+      if(target == m_Instances.instance(candidate.m_Node)) //for hold-one-out cross-validation
+        continue;
+      if(nearest.size()>=kNN &&
+          candidate.m_Distance>nearest.get(nearest.size() - 1).m_Distance)
+        break;
+      nearest.add(candidate);
+    }
+
+    Instances neighbours = new Instances(m_Instances, nearest.size());
+    m_Distances = new double[nearest.size()];
+    for(int i=0; i<nearest.size(); i++) {
+      neighbours.add(m_Instances.instance(nearest.get(i).m_Node));
+      m_Distances[i] = nearest.get(i).m_Distance;
+    }
+    m_DistanceFunction.postProcessDistances(m_Distances);
+
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+
+    return neighbours;
+  }
+
+  /**
+   * Returns (approximately) all the instances in the current neighbourhood
+   * within the given radius of the supplied instance, ordered by their
+   * distance. The graph gets searched with ever larger candidate lists,
+   * until at least half of the list is outside of the radius, since the
+   * instances at the end of a list are found less reliably.
+   *
+   * @param target 	The instance to find the neighbours for.
+   * @param radius	The radius to search within.
+   * @return		the neighbours within the radius
+   * @throws Exception  if the neighbours could not be found.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+
+    RangeList list = new RangeList();
+    if(radius>=0) {
+      List<Candidate> found;
+      double[] distances;
+      int size = m_SearchListSize;
+      while(true) {
+        found = search(target, size, m_Stats);
+        distances = new double[found.size()];
+        for(int i=0; i<distances.length; i++)
+          distances[i] = found.get(i).m_Distance;
+        // the radius is in post-processed units
+        m_DistanceFunction.postProcessDistances(distances);
+        if(found.size()<size || distances[size / 2]>radius)
+          break;
+        size *= 2;
+      }
+      for(int i=0; i<distances.length; i++) {
+        if(distances[i]>radius)
+          break;
+        if(target != m_Instances.instance(found.get(i).m_Node)) //for hold-one-out cross-validation
+          list.add(found.get(i).m_Node, distances[i]);
+      }
+    }
+    m_Distances = list.sortedDistances();
+    m_RangeDistances = m_Distances;
+
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+
+    return list.neighbours();
+  }
+
+  /**
+   * Returns the distances of the k nearest neighbours. The kNearestNeighbours
+   * or nearestNeighbour must always be called before calling this function. If
+   * this function is called before calling either the kNearestNeighbours or
+   * the nearestNeighbour, then it throws an exception. If, however, if either
+   * of the nearestNeighbour functions are called at any point in the
+   * past then no exception is thrown and the distances of the training set from
+   * the last supplied target instance (to either one of the nearestNeighbour
+   * functions) is/are returned. After a rangeQuery, the distances of the
+   * neighbours within the radius are returned.
+   *
+   * @return 		array containing the distances of the
+   * 			nearestNeighbours. The length and ordering of the
+   * 			array is the same as that of the instances returned
+   * 			by nearestNeighbour functions.
+   * @throws Exception 	if called before calling kNearestNeighbours
+   *            	or nearestNeighbours.
+   */
+  public double[] getDistances() throws Exception {
+    if(m_Distances==null)
+      throw new Exception("No distances available. Please call either "+
+                          "kNearestNeighbours or nearestNeighbours first.");
+    return m_Distances;
+  }
+
+  /**
+   * Builds the graph on the supplied set of instances, inserting them one
+   * after the other.
+   *
+   * @param insts 	The set of instances on which the nearest neighbour
+   * 			search is carried out. Usually this set is the
+   * 			training set.
+   * @throws Exception	if setting of instances fails
+   */
+  public void setInstances(Instances insts) throws Exception {
+    super.setInstances(insts);
+    m_DistanceFunction.setInstances(insts);
+
+    m_Random = new Random(m_Seed);
+    m_NumNodes = 0;
+    m_NodeLayers = new int[insts.numInstances()];
+    m_Links = new int[insts.numInstances()][][];
+    m_EntryPoint = -1;
+    m_TopLayer = -1;
+    m_Visited = null;
+    for(int i=0; i<insts.numInstances(); i++)
+      insert(i);
+  }
+
+  /**
+   * Updates the graph to cater for the new added instance, by updating
+   * the ranges of the DistanceFunction and inserting the instance into the
+   * graph. Since our set of instances is passed by reference, it should
+   * already contain the newly added instance. The nodes already in the
+   * graph keep their links, even if the ranges change.
+   *
+   * @param ins 	The instance to add. Usually this is the instance that
+   * 			is added to our neighbourhood i.e. the training
+   * 			instances.
+   * @throws Exception	if the given instances are null
+   */
+  public void update(Instance ins) throws Exception {
+    if(m_Instances==null)
+      throw new Exception("No instances supplied yet. Cannot update without"+
+                          "supplying a set of instances first.");
+    m_DistanceFunction.update(ins);
+    while(m_NumNodes<m_Instances.numInstances())
+      insert(m_NumNodes);
+  }
+
+  /**
+   * Adds the given instance info. This implementation updates the range
+   * datastructures of the DistanceFunction class, the graph stays the same.
+   *
+   * @param ins 	The instance to add the information of. Usually this is
+   * 			the test instance supplied to update the range of
+   * 			attributes in the  distance function.
+   */
+  public void addInstanceInfo(Instance ins) {
+    if(m_Instances!=null)
+      m_DistanceFunction.update(ins);
+  }
+
+  /**
+   * Returns the revision string.
+   *
+   * @return		the revision
+   */
+  public String getRevision() {
+    return RevisionUtils.extract("$Revision$");
+  }
+}
@@ -22,13 +22,17 @@
 
 package weka.core.neighboursearch;
 
+import weka.core.Attribute;
 import weka.core.DistanceFunction;
 import weka.core.EuclideanDistance;
 import weka.core.Instance;
 import weka.core.DenseInstance;
 import weka.core.Instances;
 import weka.core.Option;
+import weka.core.Range;
+import weka.core.RevisionHandler;
 import weka.core.RevisionUtils;
+import weka.core.SparseInstance;
 import weka.core.TechnicalInformation;
 import weka.core.TechnicalInformationHandler;
 import weka.core.Utils;
@@ -38,8 +42,16 @@ import weka.core.neighboursearch.kdtrees.KDTreeNode;
 import weka.core.neighboursearch.kdtrees.KDTreeNodeSplitter;
 import weka.core.neighboursearch.kdtrees.SlidingMidPointOfWidestSide;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  <!-- globalinfo-start -->
@@ -47,6 +59,7 @@ import java.util.Vector;
  * The connection to dataset is only a reference. For the tree structure the indexes are stored in an array. <br/>
  * Building the tree:<br/>
  * If a node has &lt;maximal-inst-number&gt; (option -L) instances no further splitting is done. Also if the split would leave one side empty, the branch is not split any further even if the instances in the resulting node are more than &lt;maximal-inst-number&gt; instances.<br/>
+ * For searching, the tree is laid out in flat arrays. Instances added later go into the existing leaves, until the tree gets rebuilt (option -R).<br/>
  * **PLEASE NOTE:** The algorithm can not handle missing values, so it is advisable to run ReplaceMissingValues filter if there are any missing values in the dataset.<br/>
  * <br/>
  * For more information see:<br/>
@@ -102,6 +115,16 @@ import java.util.Vector;
  *  Normalizing will be done
  *  (Select dimension for split, with normalising to universe).</pre>
  * 
+ * <pre> -R &lt;factor&gt;
+ *  Rebuild the tree once the number of instances added since
+ *  the last build exceeds this factor times the number of instances
+ *  it was built on, 0 to never rebuild.
+ *  (default: 1.0).</pre>
+ * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for building the tree.
+ *  (default 1 - i.e. no parallelism)</pre>
+ * 
  <!-- options-end --> 
  * 
  * @author Gabi Schmidberger (gabi[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -141,6 +164,59 @@ public class KDTree
   /** Tree Stats variables. */
   protected TreePerformanceStats m_TreeStats = null;
 
+  /** The number of instances the tree was last built on. */
+  protected int m_NumBuildInstances;
+
+  /** The number of instances added with update() since the last build. */
+  protected int m_NumUpdates;
+
+  /** Whether the flat arrays have been determined for the current tree. */
+  protected transient boolean m_Flattened = false;
+
+  /**
+   * The index of the right child of each node of the flat tree, -1 for
+   * leaves. The nodes are in depth-first order, i.e., the left child of an
+   * internal node is the node following it. The flat tree is null if the 
+   * tree is out of date after an update or has not been flattened yet.
+   */
+  protected transient int[] m_FlatRight;
+
+  /** The split dimension of each node of the flat tree. */
+  protected transient int[] m_FlatSplitDim;
+
+  /** The split value of each node of the flat tree. */
+  protected transient double[] m_FlatSplitValue;
+
+  /** The start index (in m_InstList) of each node of the flat tree. */
+  protected transient int[] m_FlatStart;
+
+  /** The end index (in m_InstList) of each node of the flat tree. */
+  protected transient int[] m_FlatEnd;
+
+  /** The numeric and nominal attributes the distance function uses. */
+  protected transient int[] m_FlatAttributes;
+
+  /** The minimum and maximum of the flat attributes for each node. */
+  protected transient double[] m_FlatBounds;
+
+  /**
+   * The values of the flat attributes for each instance, in the order of 
+   * m_InstList.
+   */
+  protected transient double[] m_FlatPoints;
+
+  /** A flat attribute that does not contribute to the distance. */
+  protected static final int FLAT_SKIP = 0;
+
+  /** A numeric flat attribute that gets normalized. */
+  protected static final int FLAT_NORMALIZED = 1;
+
+  /** A numeric flat attribute that does not get normalized. */
+  protected static final int FLAT_RAW = 2;
+
+  /** A nominal flat attribute. */
+  protected static final int FLAT_NOMINAL = 3;
+
   // Constants
   /** The index of MIN value in attributes' range array. */
   public static final int MIN = EuclideanDistance.R_MIN;
@@ -225,6 +301,21 @@ public class KDTree
       m_EuclideanDistance.setInstances(instances);
 
     m_Instances = instances;
+    buildTree();
+  }
+
+  /**
+   * Builds the tree structure on the current instances, using the current
+   * ranges of the distance function as universe, and lays the tree out in
+   * flat arrays. With more than one execution slot, the subtrees get split 
+   * in parallel.
+   * NOTE: This method should not be called from outside this 
+   * class. Outside classes should call setInstances(Instances)
+   * instead.
+   * 
+   * @throws Exception	if something goes wrong
+   */
+  protected void buildTree() throws Exception {
     int numInst = m_Instances.numInstances();
 
     // Make the global index list
@@ -248,7 +339,14 @@ public class KDTree
     m_Root = new KDTreeNode(m_NumNodes, 0, m_Instances.numInstances() - 1,
         universe);
 
-    splitNodes(m_Root, universe, m_MaxDepth + 1);
+    if (m_NumExecutionSlots > 1)
+      splitNodesInParallel(universe);
+    else
+      splitNodes(m_Root, universe, m_MaxDepth + 1);
+
+    m_NumBuildInstances = numInst;
+    m_NumUpdates = 0;
+    flattenTree();
   }
 
   /** 
@@ -267,24 +365,409 @@ public class KDTree
    */
   protected void splitNodes(KDTreeNode node, double[][] universe,
       int depth) throws Exception {
+    if (splitNode(node, universe, depth)) {
+      splitNodes(node.m_Left, universe, depth + 1);
+      splitNodes(node.m_Right, universe, depth + 1);
+    }
+  }
+
+  /** 
+   * Splits the supplied node into two, unless it is to be a leaf (see 
+   * splitNodes). Nodes in separate subtrees can be split in parallel.
+   * 
+   * @param node The node to split.
+   * @param universe The attribute ranges of the whole dataset.
+   * @param depth The depth of the supplied node.  
+   * @return Whether the node got split.
+   * @throws Exception If there is some problem 
+   * splitting.
+   */
+  protected boolean splitNode(KDTreeNode node, double[][] universe,
+      int depth) throws Exception {
     double[][] nodeRanges = m_EuclideanDistance.initializeRanges(m_InstList,
                                                  node.m_Start, node.m_End);
     if (node.numInstances() <= m_MaxInstInLeaf
         || getMaxRelativeNodeWidth(nodeRanges, universe) <= m_MinBoxRelWidth)
+      return false;
+
+    int numNodes;
+    synchronized (this) {
+      // splitting a node so it is no longer a leaf, but two new ones
+      m_NumLeaves++;
+
+      if (depth > m_MaxDepth)
+        m_MaxDepth = depth;
+
+      numNodes = m_NumNodes;
+      m_NumNodes += 2;
+    }
+
+    m_Splitter.splitNode(node, numNodes, nodeRanges, universe);
+    return true;
+  }
+
+  /** 
+   * Splits the nodes of the tree starting from the root node, using the 
+   * execution slots. The nodes near the root get split breadth-first until
+   * there are a few subtrees per slot, then the slots split the subtrees,
+   * largest first. The resulting tree is the same as the one from 
+   * splitNodes, only the node numbers differ.
+   * 
+   * @param universe The attribute ranges of the whole dataset.
+   * @throws Exception If there is some problem 
+   * splitting.
+   */
+  protected void splitNodesInParallel(final double[][] universe) 
+    throws Exception {
+
+    final List<KDTreeNode> subtrees = new ArrayList<KDTreeNode>();
+    final List<Integer> depths = new ArrayList<Integer>();
+    subtrees.add(m_Root);
+    depths.add(m_MaxDepth + 1);
+    int first = 0;
+    while (first < subtrees.size() 
+        && subtrees.size() - first < 4 * m_NumExecutionSlots) {
+      KDTreeNode node = subtrees.get(first);
+      int depth = depths.get(first);
+      first++;
+      if (splitNode(node, universe, depth)) {
+        subtrees.add(node.m_Left);
+        depths.add(depth + 1);
+        subtrees.add(node.m_Right);
+        depths.add(depth + 1);
+      }
+    }
+    if (first == subtrees.size())
       return;
 
-    // splitting a node so it is no longer a leaf
-    m_NumLeaves--;
+    // the subtrees got added breadth-first, i.e., roughly largest first
+    final AtomicInteger next = new AtomicInteger(first);
+    Callable<Object> worker = new Callable<Object>() {
+      public Object call() throws Exception {
+        int i;
+        while ((i = next.getAndIncrement()) < subtrees.size())
+          splitNodes(subtrees.get(i), universe, depths.get(i));
+        return null;
+      }
+    };
+
+    ExecutorService executor = Executors.newFixedThreadPool(m_NumExecutionSlots - 1);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for (int n = 1; n < m_NumExecutionSlots; n++)
+        futures.add(executor.submit(worker));
+      worker.call();
+      for (Future<Object> future : futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          throw e;
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
 
-    if (depth > m_MaxDepth)
-      m_MaxDepth = depth;
+  /**
+   * Lays the tree out in flat arrays, in depth-first order, for the
+   * searches, and copies the values of the numeric and nominal attributes 
+   * of the instances into one array, in the order of the leaves. The 
+   * searches on the flat tree compute the distances themselves, therefore
+   * the tree only gets flattened for plain EuclideanDistance and dense 
+   * instances; otherwise the searches use the nodes.
+   */
+  protected void flattenTree() {
+    clearFlatTree();
+    m_Flattened = true;
+    if (m_Root == null || m_EuclideanDistance.getClass() != EuclideanDistance.class)
+      return;
+    for (int i = 0; i < m_Instances.numInstances(); i++) {
+      if (m_Instances.instance(i) instanceof SparseInstance)
+        return;
+    }
 
-    m_Splitter.splitNode(node, m_NumNodes, nodeRanges, universe);
-    m_NumNodes += 2;
-    m_NumLeaves += 2;
+    boolean[] active = activeAttributes();
+    int numAttributes = 0;
+    for (int i = 0; i < active.length; i++) {
+      if (active[i] && isFlatAttribute(m_Instances.attribute(i)))
+        numAttributes++;
+    }
+    m_FlatAttributes = new int[numAttributes];
+    numAttributes = 0;
+    for (int i = 0; i < active.length; i++) {
+      if (active[i] && isFlatAttribute(m_Instances.attribute(i)))
+        m_FlatAttributes[numAttributes++] = i;
+    }
 
-    splitNodes(node.m_Left, universe, depth + 1);
-    splitNodes(node.m_Right, universe, depth + 1);
+    int numNodes = countNodes(m_Root);
+    m_FlatRight = new int[numNodes];
+    m_FlatSplitDim = new int[numNodes];
+    m_FlatSplitValue = new double[numNodes];
+    m_FlatStart = new int[numNodes];
+    m_FlatEnd = new int[numNodes];
+    m_FlatBounds = new double[2 * numNodes * numAttributes];
+    flattenNode(m_Root, 0);
+
+    m_FlatPoints = new double[m_InstList.length * numAttributes];
+    for (int idx = 0; idx < m_InstList.length; idx++) {
+      Instance inst = m_Instances.instance(m_InstList[idx]);
+      for (int j = 0; j < numAttributes; j++)
+        m_FlatPoints[idx * numAttributes + j] = inst.value(m_FlatAttributes[j]);
+    }
+  }
+
+  /**
+   * Discards the flat tree, e.g., when it is out of date.
+   */
+  protected void clearFlatTree() {
+    m_Flattened = false;
+    m_FlatRight = null;
+    m_FlatSplitDim = null;
+    m_FlatSplitValue = null;
+    m_FlatStart = null;
+    m_FlatEnd = null;
+    m_FlatAttributes = null;
+    m_FlatBounds = null;
+    m_FlatPoints = null;
+  }
+
+  /**
+   * Returns the number of nodes in a subtree.
+   * 
+   * @param node	the root of the subtree
+   * @return		the number of nodes
+   */
+  protected int countNodes(KDTreeNode node) {
+    if (node.isALeaf())
+      return 1;
+    return 1 + countNodes(node.m_Left) + countNodes(node.m_Right);
+  }
+
+  /**
+   * Stores a subtree in the flat arrays, in depth-first order.
+   * 
+   * @param node	the root of the subtree
+   * @param index	the index for the root in the flat arrays
+   * @return		the index after the last node of the subtree
+   */
+  protected int flattenNode(KDTreeNode node, int index) {
+    int numAttributes = m_FlatAttributes.length;
+    m_FlatStart[index] = node.m_Start;
+    m_FlatEnd[index] = node.m_End;
+    for (int j = 0; j < numAttributes; j++) {
+      m_FlatBounds[2 * (index * numAttributes + j)] = 
+        node.m_NodeRanges[m_FlatAttributes[j]][MIN];
+      m_FlatBounds[2 * (index * numAttributes + j) + 1] = 
+        node.m_NodeRanges[m_FlatAttributes[j]][MAX];
+    }
+    if (node.isALeaf()) {
+      m_FlatRight[index] = -1;
+      return index + 1;
+    }
+
+    m_FlatSplitDim[index] = node.m_SplitDim;
+    m_FlatSplitValue[index] = node.m_SplitValue;
+    m_FlatRight[index] = flattenNode(node.m_Left, index + 1);
+    return flattenNode(node.m_Right, m_FlatRight[index]);
+  }
+
+  /**
+   * Returns whether the searches can use the flat tree, flattening the tree
+   * if that has not happened yet (e.g., after deserialization). After 
+   * updates the flat tree is out of date until the tree gets rebuilt. 
+   * While the performance gets measured, the searches use the nodes, which
+   * update the statistics.
+   * 
+   * @return		true if the flat tree can be used
+   */
+  protected boolean useFlatTree() {
+    if (m_Stats != null || m_NumUpdates > 0)
+      return false;
+    if (!m_Flattened)
+      flattenTree();
+    return (m_FlatRight != null);
+  }
+
+  /**
+   * A target prepared for the searches on the flat tree, with its values
+   * of the flat attributes normalized like EuclideanDistance does.
+   */
+  protected static class FlatQuery
+    implements RevisionHandler {
+
+    /** the target. */
+    public Instance m_Target;
+
+    /** the positions of the flat attributes that contribute to the distance. */
+    public int[] m_Positions;
+
+    /** the kinds of these attributes (FLAT_NORMALIZED, FLAT_RAW or FLAT_NOMINAL). */
+    public int[] m_Kinds;
+
+    /** the (normalized) values of the target for these attributes. */
+    public double[] m_Values;
+
+    /** the minimums of these attributes, for normalizing. */
+    public double[] m_Min;
+
+    /** the widths of these attributes, for normalizing. */
+    public double[] m_Width;
+
+    /**
+     * Returns the revision string.
+     * 
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
+
+  /**
+   * Prepares a target for the searches on the flat tree, using the current
+   * ranges of the distance function.
+   * 
+   * @param target	the target
+   * @return		the prepared target
+   * @throws Exception	if the ranges are not available
+   */
+  protected FlatQuery flatQuery(Instance target) throws Exception {
+    double[][] ranges = m_EuclideanDistance.getRanges();
+    boolean normalize = !m_EuclideanDistance.getDontNormalize();
+    int numAttributes = m_FlatAttributes.length;
+    int[] kinds = new int[numAttributes];
+    int count = 0;
+    for (int j = 0; j < numAttributes; j++) {
+      int i = m_FlatAttributes[j];
+      if (m_Instances.attribute(i).isNominal())
+        kinds[j] = FLAT_NOMINAL;
+      else if (!normalize)
+        kinds[j] = FLAT_RAW;
+      else if (Double.isNaN(ranges[i][MIN]) || ranges[i][MAX] == ranges[i][MIN])
+        kinds[j] = FLAT_SKIP; // normalizes to 0 for all instances
+      else
+        kinds[j] = FLAT_NORMALIZED;
+      if (kinds[j] != FLAT_SKIP)
+        count++;
+    }
+
+    FlatQuery result = new FlatQuery();
+    result.m_Target = target;
+    result.m_Positions = new int[count];
+    result.m_Kinds = new int[count];
+    result.m_Values = new double[count];
+    result.m_Min = new double[count];
+    result.m_Width = new double[count];
+    count = 0;
+    for (int j = 0; j < numAttributes; j++) {
+      if (kinds[j] == FLAT_SKIP)
+        continue;
+      int i = m_FlatAttributes[j];
+      result.m_Positions[count] = j;
+      result.m_Kinds[count] = kinds[j];
+      result.m_Values[count] = target.value(i);
+      if (kinds[j] == FLAT_NORMALIZED) {
+        result.m_Min[count] = ranges[i][MIN];
+        result.m_Width[count] = ranges[i][WIDTH];
+        result.m_Values[count] = (target.value(i) - ranges[i][MIN]) / ranges[i][WIDTH];
+      }
+      count++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the (squared) distance between a prepared target and the 
+   * instance at the given index of m_InstList, computed from the flat
+   * values with the same arithmetic as EuclideanDistance.
+   * 
+   * @param query	the prepared target
+   * @param idx		the index of the instance in m_InstList
+   * @param cutOffValue	the value above which the calculation stops
+   * @return		the squared distance, or Double.POSITIVE_INFINITY 
+   * 			if larger than the cut off value
+   */
+  protected double flatDistance(FlatQuery query, int idx, double cutOffValue) {
+    int offset = idx * m_FlatAttributes.length;
+    double distance = 0;
+    double diff;
+    for (int j = 0; j < query.m_Positions.length; j++) {
+      double value = m_FlatPoints[offset + query.m_Positions[j]];
+      switch (query.m_Kinds[j]) {
+        case FLAT_NORMALIZED:
+          diff = query.m_Values[j] - (value - query.m_Min[j]) / query.m_Width[j];
+          break;
+        case FLAT_RAW:
+          diff = query.m_Values[j] - value;
+          break;
+        default:
+          diff = ((int) query.m_Values[j] != (int) value) ? 1 : 0;
+      }
+      distance += diff * diff;
+      if (distance > cutOffValue)
+        return Double.POSITIVE_INFINITY;
+    }
+    return distance;
+  }
+
+  /**
+   * Returns (in the supplied heap object) the k nearest neighbours of the
+   * given target, like findNearestNeighbours, but using the flat tree.
+   * 
+   * @param query	The prepared target.
+   * @param node	The index of the node to start the search from.
+   * @param k		The number of neighbours to find.
+   * @param heap	The MyHeap object to store/update the kNNs found
+   * 			during the search.
+   * @param distanceToParents The distance of the target to the 
+   * 			parents of the supplied node. 
+   * @throws Exception	if the nearest neighbour could not be found.
+   */
+  protected void findNearestNeighboursFlat(FlatQuery query, int node, int k,
+      MyHeap heap, double distanceToParents) throws Exception {
+    if (m_FlatRight[node] < 0) {
+      double distance;
+      for (int idx = m_FlatStart[node]; idx <= m_FlatEnd[node]; idx++) {
+        if (query.m_Target == m_Instances.instance(m_InstList[idx])) // for hold-one-out cross-validation
+          continue;
+        if (heap.size() < k) {
+          distance = flatDistance(query, idx, Double.POSITIVE_INFINITY);
+          heap.put(m_InstList[idx], distance);
+        } else {
+          MyHeapElement temp = heap.peek();
+          distance = flatDistance(query, idx, temp.distance);
+          if (distance < temp.distance) {
+            heap.putBySubstitute(m_InstList[idx], distance);
+          } else if (distance == temp.distance) {
+            heap.putKthNearest(m_InstList[idx], distance);
+          }
+        }
+      }
+    } else {
+      int dim = m_FlatSplitDim[node];
+      double value = query.m_Target.value(dim);
+      int nearer, further;
+      if (value <= m_FlatSplitValue[node]) {
+        nearer = node + 1;
+        further = m_FlatRight[node];
+      } else {
+        nearer = m_FlatRight[node];
+        further = node + 1;
+      }
+      findNearestNeighboursFlat(query, nearer, k, heap, distanceToParents);
+
+      // ... now look in further half if maxDist reaches into it
+      double distanceToSplitPlane = distanceToParents
+          + m_EuclideanDistance.sqDifference(dim, value, m_FlatSplitValue[node]);
+      if (heap.size() < k || heap.peek().distance >= distanceToSplitPlane)
+        findNearestNeighboursFlat(query, further, k, heap, distanceToSplitPlane);
+    }
   }
 
   /**
@@ -388,7 +871,10 @@ public class KDTree
       m_Stats.searchStart();
 
     MyHeap heap = new MyHeap(k);
-    findNearestNeighbours(target, m_Root, k, heap, 0.0);
+    if (useFlatTree())
+      findNearestNeighboursFlat(flatQuery(target), 0, k, heap, 0.0);
+    else
+      findNearestNeighbours(target, m_Root, k, heap, 0.0);
 
     if (m_Stats != null)
       m_Stats.searchFinish();
@@ -421,6 +907,205 @@ public class KDTree
   }
   
 
+  /**
+   * Returns all the instances within the given radius of the supplied 
+   * instance, ordered by their distance.
+   * 
+   * @param target	The instance to find the neighbours for.
+   * @param radius	The radius to search within.
+   * @return The neighbours within the radius.
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    checkMissing(target);
+
+    if (m_Stats != null)
+      m_Stats.searchStart();
+
+    RangeList list = new RangeList();
+    if (radius >= 0) {
+      double sqRadius = radius * radius * (1 + RANGE_TOLERANCE);
+      if (useFlatTree())
+        findRangeNeighboursFlat(flatQuery(target), 0, sqRadius, list);
+      else
+        findRangeNeighbours(target, m_Root, sqRadius, activeAttributes(), list);
+    }
+
+    if (m_Stats != null)
+      m_Stats.searchFinish();
+
+    m_DistanceList = list.postProcessedDistances(radius);
+    m_RangeDistances = m_DistanceList;
+
+    return list.neighbours();
+  }
+
+  /**
+   * Collects the instances in the supplied node that lie within the
+   * (squared) radius of the target. Nodes whose hyperrectangle is further
+   * away than the radius are skipped.
+   * 
+   * @param target	The instance to find the neighbours for.
+   * @param node	The node to search.
+   * @param sqRadius	The squared radius, slightly enlarged (see RANGE_TOLERANCE).
+   * @param active	Whether an attribute is used by the distance function.
+   * @param list	The list to add the neighbours to.
+   * @throws Exception	if the neighbours could not be found.
+   */
+  protected void findRangeNeighbours(Instance target, KDTreeNode node, 
+      double sqRadius, boolean[] active, RangeList list) throws Exception {
+    if (node.isALeaf()) {
+      if (m_TreeStats != null) {
+        m_TreeStats.updatePointCount(node.numInstances());
+        m_TreeStats.incrLeafCount();
+      }
+      double distance;
+      for (int idx = node.m_Start; idx <= node.m_End; idx++) {
+        if (target == m_Instances.instance(m_InstList[idx])) // for
+                                                              // hold-one-out
+                                                              // cross-validation
+          continue;
+        distance = m_EuclideanDistance.distance(target, m_Instances
+            .instance(m_InstList[idx]), sqRadius, m_Stats);
+        if (distance <= sqRadius)
+          list.add(m_InstList[idx], distance);
+      }
+    } else {
+      if (m_TreeStats != null) {
+        m_TreeStats.incrIntNodeCount();
+      }
+      if (distanceToNodeRanges(target, node.m_Left, active, sqRadius) <= sqRadius)
+        findRangeNeighbours(target, node.m_Left, sqRadius, active, list);
+      if (distanceToNodeRanges(target, node.m_Right, active, sqRadius) <= sqRadius)
+        findRangeNeighbours(target, node.m_Right, sqRadius, active, list);
+    }
+  }
+
+  /**
+   * Collects the instances within the (squared) radius of the target, like
+   * findRangeNeighbours, but using the flat tree.
+   * 
+   * @param query	The prepared target.
+   * @param node	The index of the node to search.
+   * @param sqRadius	The squared radius, slightly enlarged (see RANGE_TOLERANCE).
+   * @param list	The list to add the neighbours to.
+   * @throws Exception	if the neighbours could not be found.
+   */
+  protected void findRangeNeighboursFlat(FlatQuery query, int node, 
+      double sqRadius, RangeList list) throws Exception {
+    if (m_FlatRight[node] < 0) {
+      double distance;
+      for (int idx = m_FlatStart[node]; idx <= m_FlatEnd[node]; idx++) {
+        if (query.m_Target == m_Instances.instance(m_InstList[idx])) // for hold-one-out cross-validation
+          continue;
+        distance = flatDistance(query, idx, sqRadius);
+        if (distance <= sqRadius)
+          list.add(m_InstList[idx], distance);
+      }
+    } else {
+      if (distanceToFlatBounds(query.m_Target, node + 1, sqRadius) <= sqRadius)
+        findRangeNeighboursFlat(query, node + 1, sqRadius, list);
+      if (distanceToFlatBounds(query.m_Target, m_FlatRight[node], sqRadius) <= sqRadius)
+        findRangeNeighboursFlat(query, m_FlatRight[node], sqRadius, list);
+    }
+  }
+
+  /**
+   * Returns the squared distance between an instance and the hyperrectangle
+   * of a node of the flat tree, like distanceToNodeRanges.
+   * 
+   * @param x		the instance
+   * @param node	the index of the node
+   * @param cutOffValue	the value above which the calculation stops
+   * @return		the squared distance, or Double.POSITIVE_INFINITY 
+   * 			if larger than the cut off value
+   */
+  protected double distanceToFlatBounds(Instance x, int node, double cutOffValue) {
+    int numAttributes = m_FlatAttributes.length;
+    double distance = 0.0;
+    double value;
+    double bound;
+    for (int j = 0; j < numAttributes; j++) {
+      value = x.value(m_FlatAttributes[j]);
+      bound = m_FlatBounds[2 * (node * numAttributes + j)];
+      if (value < bound) {
+        distance += m_EuclideanDistance.sqDifference(m_FlatAttributes[j], value, bound);
+      } else {
+        bound = m_FlatBounds[2 * (node * numAttributes + j) + 1];
+        if (value > bound)
+          distance += m_EuclideanDistance.sqDifference(m_FlatAttributes[j], value, bound);
+        else
+          continue;
+      }
+      if (distance > cutOffValue)
+        return Double.POSITIVE_INFINITY;
+    }
+    return distance;
+  }
+
+  /**
+   * Returns the squared distance between an instance and the hyperrectangle
+   * of a node, i.e., a lower bound on the squared distance to any of the 
+   * instances in the node. Nominal attributes contribute only if the 
+   * instance's value is outside of the node's range.
+   * 
+   * @param x		the instance
+   * @param node	the node
+   * @param active	whether an attribute is used by the distance function
+   * @param cutOffValue	the value above which the calculation stops
+   * @return		the squared distance, or Double.POSITIVE_INFINITY 
+   * 			if larger than the cut off value
+   */
+  protected double distanceToNodeRanges(Instance x, KDTreeNode node, 
+      boolean[] active, double cutOffValue) {
+    double distance = 0.0;
+    double value;
+    for (int i = 0; i < active.length; i++) {
+      if (!active[i])
+        continue;
+      value = x.value(i);
+      if (value < node.m_NodeRanges[i][MIN])
+        distance += m_EuclideanDistance.sqDifference(i, value, 
+            node.m_NodeRanges[i][MIN]);
+      else if (value > node.m_NodeRanges[i][MAX])
+        distance += m_EuclideanDistance.sqDifference(i, value, 
+            node.m_NodeRanges[i][MAX]);
+      else
+        continue;
+      if (distance > cutOffValue)
+        return Double.POSITIVE_INFINITY;
+    }
+    return distance;
+  }
+
+  /**
+   * Returns whether the distance function takes the attribute into account,
+   * i.e., whether it is numeric or nominal. Like 
+   * NormalizableDistance.difference(...), dates and other types are ignored.
+   * 
+   * @param att		the attribute to check
+   * @return		true if the attribute contributes to the distance
+   */
+  protected boolean isFlatAttribute(Attribute att) {
+    return (att.type() == Attribute.NUMERIC) || (att.type() == Attribute.NOMINAL);
+  }
+
+  /**
+   * Returns which attributes the distance function uses, i.e., the selected 
+   * attributes without the class.
+   * 
+   * @return		true for each attribute used
+   */
+  protected boolean[] activeAttributes() {
+    boolean[] result = new boolean[m_Instances.numAttributes()];
+    Range range = new Range(m_EuclideanDistance.getAttributeIndices());
+    range.setInvert(m_EuclideanDistance.getInvertSelection());
+    range.setUpper(m_Instances.numAttributes() - 1);
+    for (int i = 0; i < result.length; i++)
+      result[i] = (i != m_Instances.classIndex()) && range.isInRange(i);
+    return result;
+  }
+
   /**
    * Returns the nearest neighbour of the supplied target 
    * instance. 
@@ -436,7 +1121,8 @@ public class KDTree
   
   /**
    * Returns the distances to the kNearest or 1 nearest neighbour currently
-   * found with either the kNearestNeighbours or the nearestNeighbour method.
+   * found with either the kNearestNeighbours or the nearestNeighbour method,
+   * or to the neighbours found with the rangeQuery method.
    * 
    * @return array containing the distances of the
    *         nearestNeighbours. The length and ordering of the array 
@@ -469,7 +1155,9 @@ public class KDTree
 
   /**
    * Adds one instance to the KDTree. This updates the KDTree structure to take
-   * into account the newly added training instance.
+   * into account the newly added training instance. Once enough instances 
+   * have been added (see the rebuild factor), the tree gets rebuilt, keeping
+   * the current ranges of the distance function.
    * 
    * @param instance 	the instance to be added. Usually the newly added instance in the
    *          		training set.
@@ -483,6 +1171,13 @@ public class KDTree
 
     addInstanceInfo(instance);
     addInstanceToTree(instance, m_Root);
+
+    // the flat tree is out of date now, until the tree gets rebuilt
+    m_NumUpdates++;
+    if (m_FlatRight != null)
+      clearFlatTree();
+    if (m_RebuildFactor > 0 && m_NumUpdates > m_RebuildFactor * m_NumBuildInstances)
+      buildTree();
   }
 
   /**
@@ -1028,6 +1723,12 @@ public class KDTree
   /** maximal number of instances in a leaf. */
   protected int m_MaxInstInLeaf = 40;
 
+  /** the factor of the instances to add before the tree gets rebuilt. */
+  protected double m_RebuildFactor = 1.0;
+
+  /** the number of threads to build the tree with. */
+  protected int m_NumExecutionSlots = 1;
+
   /**
    * the GET and SET - functions ===============================================
    */
@@ -1122,6 +1823,66 @@ public class KDTree
     return m_NormalizeNodeWidth;
   }
 
+  /**
+   * Tip text for this property.
+   * 
+   * @return 		the tip text for this property
+   */
+  public String rebuildFactorTipText() {
+    return "Instances added with update() go into the existing leaves, which "
+        + "can unbalance the tree. The tree gets rebuilt once the number of "
+        + "instances added since the last build exceeds this factor times "
+        + "the number of instances it was built on (0 to never rebuild).";
+  }
+
+  /**
+   * Sets the factor of the instances to add before the tree gets rebuilt.
+   * 
+   * @param value	the factor, 0 to never rebuild
+   */
+  public void setRebuildFactor(double value) {
+    m_RebuildFactor = Math.max(0, value);
+  }
+
+  /**
+   * Gets the factor of the instances to add before the tree gets rebuilt.
+   * 
+   * @return 		the factor
+   */
+  public double getRebuildFactor() {
+    return m_RebuildFactor;
+  }
+
+  /**
+   * Tip text for this property.
+   * 
+   * @return 		the tip text for this property
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for building the tree; the "
+        + "resulting tree is the same.";
+  }
+
+  /**
+   * Sets the number of execution slots (threads) to use for building the 
+   * tree.
+   * 
+   * @param numSlots	the number of slots, at least 1
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = Math.max(1, numSlots);
+  }
+
+  /**
+   * Gets the number of execution slots (threads) to use for building the 
+   * tree.
+   * 
+   * @return 		the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   /**
    * returns the distance function currently in use.
    * 
@@ -1191,6 +1952,9 @@ public class KDTree
       + "side empty, the branch is not split any further even if the "
       + "instances in the resulting node are more than "
       + "<maximal-inst-number> instances.\n"
+      + "For searching, the tree is laid out in flat arrays. Instances added "
+      + "later go into the existing leaves, until the tree gets rebuilt "
+      + "(option -R).\n"
       + "**PLEASE NOTE:** The algorithm can not handle missing values, so it "
       + "is advisable to run ReplaceMissingValues filter if there are any "
       + "missing values in the dataset.\n\n"
@@ -1226,6 +1990,18 @@ public class KDTree
         + "\t(Select dimension for split, with normalising to universe).",
         "N", 0, "-N"));
     
+    newVector.addElement(new Option(
+	"\tRebuild the tree once the number of instances added since\n"
+	+ "\tthe last build exceeds this factor times the number of instances\n"
+	+ "\tit was built on, 0 to never rebuild.\n"
+        + "\t(default: 1.0).",
+        "R", 1, "-R <factor>"));
+    
+    newVector.addElement(new Option(
+	"\tNumber of execution slots for building the tree.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+    
     return newVector.elements();
   }
 
@@ -1251,6 +2027,16 @@ public class KDTree
    *  Normalizing will be done
    *  (Select dimension for split, with normalising to universe).</pre>
    * 
+   * <pre> -R &lt;factor&gt;
+   *  Rebuild the tree once the number of instances added since
+   *  the last build exceeds this factor times the number of instances
+   *  it was built on, 0 to never rebuild.
+   *  (default: 1.0).</pre>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for building the tree.
+   *  (default 1 - i.e. no parallelism)</pre>
+   * 
    <!-- options-end -->
    * 
    * @param options	the list of options as an array of strings
@@ -1288,6 +2074,18 @@ public class KDTree
       setMaxInstInLeaf(40);
 
     setNormalizeNodeWidth(Utils.getFlag('N', options));
+
+    optionString = Utils.getOption('R', options);
+    if (optionString.length() != 0)
+      setRebuildFactor(Double.parseDouble(optionString));
+    else
+      setRebuildFactor(1.0);
+
+    optionString = Utils.getOption("num-slots", options);
+    if (optionString.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(optionString));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -1320,6 +2118,16 @@ public class KDTree
     if (getNormalizeNodeWidth())
       result.add("-N");
 
+    if (getRebuildFactor() != 1.0) {
+      result.add("-R");
+      result.add("" + getRebuildFactor());
+    }
+
+    if (getNumExecutionSlots() != 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     return result.toArray(new String[result.size()]);
   }
   
@@ -27,8 +27,15 @@ import weka.core.Option;
 import weka.core.RevisionUtils;
 import weka.core.Utils;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  <!-- globalinfo-start -->
@@ -43,6 +50,11 @@ import java.util.Vector;
  *  Skip identical instances (distances equal to zero).
  * </pre>
  * 
+ * <pre> -num-slots &lt;num&gt;
+ *  Number of execution slots for answering batches of queries.
+ *  (default 1 - i.e. no parallelism)
+ * </pre>
+ * 
  <!-- options-end -->
  *
  * @author Ashraf M. Kibriya (amk14[at-the-rate]cs[dot]waikato[dot]ac[dot]nz)
@@ -62,6 +74,12 @@ public class LinearNNSearch
   /** Whether to skip instances from the neighbours that are identical to the query instance. */
   protected boolean m_SkipIdentical = false;
 
+  /** The number of threads to answer batches of queries with. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** The number of training instances compared to all targets of a batch at a time. */
+  protected static final int BLOCK_SIZE = 256;
+
   /**
    * Constructor. Needs setInstances(Instances) 
    * to be called before the class is usable.
@@ -105,6 +123,11 @@ public class LinearNNSearch
 	"\tSkip identical instances (distances equal to zero).\n",
 	"S", 1,"-S"));
     
+    result.add(new Option(
+	"\tNumber of execution slots for answering batches of queries.\n"
+	+ "\t(default 1 - i.e. no parallelism)",
+	"num-slots", 1, "-num-slots <num>"));
+    
     return result.elements();
   }
   
@@ -118,6 +141,11 @@ public class LinearNNSearch
    *  Skip identical instances (distances equal to zero).
    * </pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of execution slots for answering batches of queries.
+   *  (default 1 - i.e. no parallelism)
+   * </pre>
+   * 
    <!-- options-end -->
    *
    * @param options 	the list of options as an array of strings
@@ -127,6 +155,12 @@ public class LinearNNSearch
     super.setOptions(options);
 
     setSkipIdentical(Utils.getFlag('S', options));
+
+    String tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0)
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    else
+      setNumExecutionSlots(1);
   }
 
   /**
@@ -148,6 +182,11 @@ public class LinearNNSearch
     if (getSkipIdentical())
       result.add("-S");
 
+    if (getNumExecutionSlots() != 1) {
+      result.add("-num-slots");
+      result.add("" + getNumExecutionSlots());
+    }
+
     return result.toArray(new String[result.size()]);
   }
 
@@ -180,6 +219,37 @@ public class LinearNNSearch
     return m_SkipIdentical;
   }
 
+  /**
+   * Returns the tip text for this property.
+   * 
+   * @return 		tip text for this property suitable for
+   * 			displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads to use for answering batches of queries, "
+      + "e.g., when classifying a whole test set.";
+  }
+  
+  /**
+   * Sets the number of execution slots (threads) to use for answering
+   * batches of queries.
+   * 
+   * @param numSlots 	the number of slots, at least 1
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = Math.max(1, numSlots);
+  }
+  
+  /**
+   * Gets the number of execution slots (threads) to use for answering
+   * batches of queries.
+   * 
+   * @return 		the number of slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
   
   /** 
    * Returns the nearest instance in the current neighbourhood to the supplied
@@ -203,76 +273,248 @@ public class LinearNNSearch
    * @throws Exception  if the neighbours could not be found.
    */
   public Instances kNearestNeighbours(Instance target, int kNN) throws Exception {
-  
-    //debug
-    boolean print=false;
 
     if(m_Stats!=null)
       m_Stats.searchStart();
  
     MyHeap heap = new MyHeap(kNN);
-    double distance; int firstkNN=0;
-    for(int i=0; i<m_Instances.numInstances(); i++) {
-      if(target == m_Instances.instance(i)) //for hold-one-out cross-validation
-        continue;
-      if(m_Stats!=null) 
-        m_Stats.incrPointCount();
-      if(firstkNN<kNN) {
-        if(print)
-          System.out.println("K(a): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
-        if(distance == 0.0 && m_SkipIdentical)
-          if(i<m_Instances.numInstances()-1)
-            continue;
-          else
-            heap.put(i, distance);
-        heap.put(i, distance);
-        firstkNN++;
+    for(int i=0; i<m_Instances.numInstances(); i++)
+      addToHeap(target, i, kNN, heap, m_Stats);
+    
+    double[][] distances = new double[1][];
+    Instances neighbours = neighbours(heap, distances, 0);
+    m_Distances = distances[0];
+    
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+    
+    return neighbours;    
+  }
+
+  /**
+   * Returns the k nearest instances in the current neighbourhood for each
+   * of the supplied instances. The training instances are scanned block 
+   * by block, and each block is compared to all the targets before moving
+   * on to the next one. With more than one execution slot, the targets are
+   * split among the slots. The queries are answered one by one if the 
+   * performance is measured.
+   *  
+   * @param targets 	The instances to find the k nearest neighbours for.
+   * @param kNN		The number of nearest neighbours to find.
+   * @param distances	The array to store the distances of the neighbours
+   * 			of each target in, can be null.
+   * @return		the k nearest neighbors of each target
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instances[] kNearestNeighbours(final Instance[] targets, final int kNN,
+      double[][] distances) throws Exception {
+    
+    if(m_Stats!=null)
+      return super.kNearestNeighbours(targets, kNN, distances);
+    
+    final Instances[] result = new Instances[targets.length];
+    final double[][] dists = (distances != null) ? distances : new double[targets.length][];
+    if(targets.length==0)
+      return result;
+    
+    // makes sure that the distance function is initialized before the 
+    // threads use it
+    if(m_Instances.numInstances()>0)
+      m_DistanceFunction.distance(targets[0], m_Instances.instance(0), 
+                                  Double.POSITIVE_INFINITY);
+
+    int numChunks = Math.min(m_NumExecutionSlots, targets.length);
+    if(numChunks<=1) {
+      findNeighbours(targets, 0, targets.length, kNN, result, dists);
+      return result;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(numChunks - 1);
+    try {
+      List<Future<Object>> futures = new ArrayList<Future<Object>>();
+      for(int n=1; n<numChunks; n++) {
+        final int from = (int) ((long) targets.length * n / numChunks);
+        final int to = (int) ((long) targets.length * (n + 1) / numChunks);
+        futures.add(executor.submit(new Callable<Object>() {
+          public Object call() throws Exception {
+            findNeighbours(targets, from, to, kNN, result, dists);
+            return null;
+          }
+        }));
       }
-      else {
-        MyHeapElement temp = heap.peek();
-        if(print)
-          System.out.println("K(b): "+(heap.size()+heap.noOfKthNearest()));
-        distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, m_Stats);
-        if(distance == 0.0 && m_SkipIdentical)
-          continue;
-        if(distance < temp.distance) {
-          heap.putBySubstitute(i, distance);
+      findNeighbours(targets, 0, targets.length / numChunks, kNN, result, dists);
+      for(Future<Object> future: futures) {
+        try {
+          future.get();
         }
-        else if(distance == temp.distance) {
-          heap.putKthNearest(i, distance);
+        catch(ExecutionException e) {
+          if(e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          throw e;
         }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    
+    return result;
+  }
 
+  /**
+   * Finds the k nearest neighbours of a range of targets, comparing one
+   * block of training instances to all the targets of the range at a time.
+   * 
+   * @param targets	the instances to find the k nearest neighbours for
+   * @param from	the index of the first target
+   * @param to		the index after the last target
+   * @param kNN		the number of nearest neighbours to find
+   * @param neighbours	the array to store the neighbours of each target in
+   * @param distances	the array to store the distances of each target in
+   * @throws Exception	if the neighbours could not be found
+   */
+  protected void findNeighbours(Instance[] targets, int from, int to, int kNN,
+      Instances[] neighbours, double[][] distances) throws Exception {
+
+    MyHeap[] heaps = new MyHeap[to - from];
+    for(int q=from; q<to; q++)
+      heaps[q - from] = new MyHeap(kNN);
+
+    int numInstances = m_Instances.numInstances();
+    for(int start=0; start<numInstances; start+=BLOCK_SIZE) {
+      int end = Math.min(numInstances, start + BLOCK_SIZE);
+      for(int q=from; q<to; q++) {
+        for(int i=start; i<end; i++)
+          addToHeap(targets[q], i, kNN, heaps[q - from], null);
       }
     }
+
+    for(int q=from; q<to; q++)
+      neighbours[q] = neighbours(heaps[q - from], distances, q);
+  }
+
+  /**
+   * Adds a training instance to the heap of the nearest neighbours of a 
+   * target, if it is one of them.
+   * 
+   * @param target	the instance to find the nearest neighbours for
+   * @param i		the index of the training instance
+   * @param kNN		the number of nearest neighbours to find
+   * @param heap	the nearest neighbours found so far
+   * @param stats	the statistics to update, can be null
+   * @throws Exception	if the heap cannot be updated
+   */
+  protected void addToHeap(Instance target, int i, int kNN, MyHeap heap, 
+      PerformanceStats stats) throws Exception {
+
+    double distance;
+    if(target == m_Instances.instance(i)) //for hold-one-out cross-validation
+      return;
+    if(stats!=null) 
+      stats.incrPointCount();
+    if(heap.size()<kNN) {
+      distance = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, stats);
+      if(distance == 0.0 && m_SkipIdentical)
+        if(i<m_Instances.numInstances()-1)
+          return;
+        else
+          heap.put(i, distance);
+      heap.put(i, distance);
+    }
+    else {
+      MyHeapElement temp = heap.peek();
+      distance = m_DistanceFunction.distance(target, m_Instances.instance(i), temp.distance, stats);
+      if(distance == 0.0 && m_SkipIdentical)
+        return;
+      if(distance < temp.distance) {
+        heap.putBySubstitute(i, distance);
+      }
+      else if(distance == temp.distance) {
+        heap.putKthNearest(i, distance);
+      }
+    }
+  }
+
+  /**
+   * Empties the heap of the nearest neighbours of a target and returns the
+   * neighbours, ordered by distance.
+   * 
+   * @param heap	the nearest neighbours
+   * @param distances	the array to store the (post-processed) distances in
+   * @param index	the index in the array to store the distances at
+   * @return		the nearest neighbours
+   * @throws Exception	if the heap cannot be emptied
+   */
+  protected Instances neighbours(MyHeap heap, double[][] distances, int index) 
+    throws Exception {
     
     Instances neighbours = new Instances(m_Instances, (heap.size()+heap.noOfKthNearest()));
-    m_Distances = new double[heap.size()+heap.noOfKthNearest()];
+    double[] dists = new double[heap.size()+heap.noOfKthNearest()];
     int [] indices = new int[heap.size()+heap.noOfKthNearest()];
     int i=1; MyHeapElement h;
     while(heap.noOfKthNearest()>0) {
       h = heap.getKthNearest();
       indices[indices.length-i] = h.index;
-      m_Distances[indices.length-i] = h.distance;
+      dists[indices.length-i] = h.distance;
       i++;
     }
     while(heap.size()>0) {
       h = heap.get();
       indices[indices.length-i] = h.index;
-      m_Distances[indices.length-i] = h.distance;
+      dists[indices.length-i] = h.distance;
       i++;
     }
     
-    m_DistanceFunction.postProcessDistances(m_Distances);
+    m_DistanceFunction.postProcessDistances(dists);
     
     for(int k=0; k<indices.length; k++) {
       neighbours.add(m_Instances.instance(indices[k]));
     }
+    distances[index] = dists;
     
+    return neighbours;
+  }
+  
+  /**
+   * Returns all the instances in the current neighbourhood within the given
+   * radius of the supplied instance, ordered by their distance.
+   *  
+   * @param target 	The instance to find the neighbours for.
+   * @param radius	The radius to search within.
+   * @return		the neighbours within the radius
+   * @throws Exception  if the neighbours could not be found.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+
+    double[] distances = new double[m_Instances.numInstances()];
+    for(int i=0; i<m_Instances.numInstances(); i++) {
+      if(target == m_Instances.instance(i)) { //for hold-one-out cross-validation
+        distances[i] = Double.POSITIVE_INFINITY;
+        continue;
+      }
+      if(m_Stats!=null) 
+        m_Stats.incrPointCount();
+      distances[i] = m_DistanceFunction.distance(target, m_Instances.instance(i), Double.POSITIVE_INFINITY, m_Stats);
+    }
+    // the radius is in post-processed units
+    m_DistanceFunction.postProcessDistances(distances);
+
+    RangeList list = new RangeList();
+    for(int i=0; i<distances.length; i++) {
+      if(distances[i] == 0.0 && m_SkipIdentical)
+        continue;
+      if(distances[i] <= radius)
+        list.add(i, distances[i]);
+    }
+    m_Distances = list.sortedDistances();
+    m_RangeDistances = m_Distances;
+
     if(m_Stats!=null)
       m_Stats.searchFinish();
-    
-    return neighbours;    
+
+    return list.neighbours();
   }
   
   /** 
@@ -283,7 +525,8 @@ public class LinearNNSearch
    * of the nearestNeighbour functions are called at any point in the 
    * past then no exception is thrown and the distances of the training set from
    * the last supplied target instance (to either one of the nearestNeighbour 
-   * functions) is/are returned.
+   * functions) is/are returned.  After a rangeQuery, the distances of the
+   * neighbours within the radius are returned.
    *
    * @return 		array containing the distances of the 
    * 			nearestNeighbours. The length and ordering of the 
@@ -33,6 +33,8 @@ import weka.core.RevisionUtils;
 import weka.core.Utils;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Vector;
 
@@ -529,7 +531,143 @@ public abstract class NearestNeighbourSearch
       return RevisionUtils.extract("$Revision$");
     }
   }
+
+  /**
+   * A class for collecting the neighbours found by a range query, i.e., the
+   * indices of the training instances together with their distances. The
+   * neighbours can be added in any order, they get sorted by distance (and
+   * by index if equally distant) when retrieved.
+   *
+   * @version $Revision$
+   */
+  protected class RangeList
+    implements RevisionHandler {
+
+    /** the indices of the neighbours. */
+    protected int[] m_Indices = new int[16];
+
+    /** the distances of the neighbours. */
+    protected double[] m_Distances = new double[16];
+
+    /** the number of neighbours. */
+    protected int m_Size = 0;
+
+    /**
+     * Adds a neighbour.
+     *
+     * @param index		the index of the training instance
+     * @param distance		the distance to the instance
+     */
+    public void add(int index, double distance) {
+      if (m_Size == m_Indices.length) {
+        int[] indices = new int[m_Size * 2];
+        double[] distances = new double[m_Size * 2];
+        System.arraycopy(m_Indices, 0, indices, 0, m_Size);
+        System.arraycopy(m_Distances, 0, distances, 0, m_Size);
+        m_Indices = indices;
+        m_Distances = distances;
+      }
+      m_Indices[m_Size] = index;
+      m_Distances[m_Size] = distance;
+      m_Size++;
+    }
+
+    /**
+     * Returns the number of neighbours.
+     *
+     * @return			the number of neighbours
+     */
+    public int size() {
+      return m_Size;
+    }
+
+    /**
+     * Sorts the neighbours by distance and returns the distances in that
+     * order.
+     *
+     * @return			the sorted distances
+     */
+    public double[] sortedDistances() {
+      Integer[] order = new Integer[m_Size];
+      for (int i = 0; i < m_Size; i++)
+        order[i] = i;
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer o1, Integer o2) {
+          if (m_Distances[o1] < m_Distances[o2])
+            return -1;
+          else if (m_Distances[o1] > m_Distances[o2])
+            return 1;
+          else
+            return m_Indices[o1] - m_Indices[o2];
+        }
+      });
+      int[] indices = new int[m_Size];
+      double[] distances = new double[m_Size];
+      for (int i = 0; i < m_Size; i++) {
+        indices[i] = m_Indices[order[i]];
+        distances[i] = m_Distances[order[i]];
+      }
+      System.arraycopy(indices, 0, m_Indices, 0, m_Size);
+      System.arraycopy(distances, 0, m_Distances, 0, m_Size);
+      return distances;
+    }
+
+    /**
+     * Sorts the neighbours by distance, post-processes the distances and
+     * drops the neighbours whose post-processed distance is larger than the 
+     * radius. Searches that work with distances that need post-processing 
+     * can thereby collect the neighbours with a slightly enlarged radius 
+     * (see RANGE_TOLERANCE), so that rounding cannot drop neighbours right 
+     * at the radius.
+     *
+     * @param radius		the radius of the range query
+     * @return			the sorted, post-processed distances
+     */
+    public double[] postProcessedDistances(double radius) {
+      double[] distances = sortedDistances();
+      m_DistanceFunction.postProcessDistances(distances);
+      int size = 0;
+      while (size < distances.length && distances[size] <= radius)
+        size++;
+      if (size < m_Size) {
+        m_Size = size;
+        double[] result = new double[size];
+        System.arraycopy(distances, 0, result, 0, size);
+        distances = result;
+      }
+      return distances;
+    }
+
+    /**
+     * Returns the neighbours in the order of the distances last returned
+     * by sortedDistances() or postProcessedDistances(double).
+     *
+     * @return			the neighbours
+     */
+    public Instances neighbours() {
+      Instances result = new Instances(m_Instances, m_Size);
+      for (int i = 0; i < m_Size; i++)
+        result.add(m_Instances.instance(m_Indices[i]));
+      return result;
+    }
+
+    /**
+     * Returns the revision string.
+     * 
+     * @return		the revision
+     */
+    public String getRevision() {
+      return RevisionUtils.extract("$Revision$");
+    }
+  }
   
+  /** 
+   * The relative amount by which the (squared) radius of a range query is 
+   * enlarged while searching, before the neighbours get checked against 
+   * the exact post-processed distances. 
+   */
+  protected static final double RANGE_TOLERANCE = 1e-10;
+
   /** The neighbourhood of instances to find neighbours in. */
   protected Instances m_Instances;
   
@@ -544,6 +682,9 @@ public abstract class NearestNeighbourSearch
   
   /** Should we measure Performance. */
   protected boolean m_MeasurePerformance = false;
+
+  /** The distances of the neighbours found by the last range query. */
+  protected double[] m_RangeDistances = null;
   
   /**
    * Constructor.
@@ -730,10 +871,98 @@ public abstract class NearestNeighbourSearch
    * @throws Exception 	if the neighbours could not be found.
    */
   public abstract Instances kNearestNeighbours(Instance target, int k) throws Exception;
+
+  /**
+   * Returns the k nearest instances in the current neighbourhood for each
+   * of the supplied instances. This implementation simply queries the
+   * instances one after the other, subclasses may answer the queries 
+   * together or in parallel. Unlike getDistances(), the distances are 
+   * returned per query.
+   *  
+   * @param targets 	The instances to find the k nearest neighbours for.
+   * @param k		The number of nearest neighbours to find.
+   * @param distances	The array to store the distances of the neighbours
+   * 			of each target in, can be null.
+   * @return		the k nearest neighbors of each target
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instances[] kNearestNeighbours(Instance[] targets, int k, 
+      double[][] distances) throws Exception {
+    Instances[] result = new Instances[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      result[i] = kNearestNeighbours(targets[i], k);
+      if (distances != null)
+        distances[i] = getDistances().clone();
+    }
+    return result;
+  }
+
+  /**
+   * Returns all instances in the current neighbourhood whose distance to the
+   * supplied instance is at most the given radius, ordered by distance. Like
+   * kNearestNeighbours, the target itself is skipped if it is one of the 
+   * instances of the neighbourhood. A negative radius finds no instances.
+   * The distances of the neighbours are returned by getRangeDistances().
+   *
+   * This implementation scans all the instances, subclasses can override
+   * it with a faster search. Overriding methods need to store the 
+   * distances of the neighbours in m_RangeDistances.
+   *
+   * @param target 	The instance to find the neighbours for.
+   * @param radius	The radius, in the same units as getDistances().
+   * @return		the neighbours within the radius
+   * @throws Exception 	if the neighbours could not be found.
+   */
+  public Instances rangeQuery(Instance target, double radius) throws Exception {
+    if(m_Stats!=null)
+      m_Stats.searchStart();
+
+    double[] distances = new double[m_Instances.numInstances()];
+    for(int i=0; i<m_Instances.numInstances(); i++) {
+      if(target == m_Instances.instance(i)) {
+        distances[i] = Double.POSITIVE_INFINITY;
+        continue;
+      }
+      if(m_Stats!=null) 
+        m_Stats.incrPointCount();
+      distances[i] = m_DistanceFunction.distance(target, m_Instances.instance(i), 
+                                                 Double.POSITIVE_INFINITY, m_Stats);
+    }
+    // the radius is in post-processed units
+    m_DistanceFunction.postProcessDistances(distances);
+
+    RangeList list = new RangeList();
+    for(int i=0; i<distances.length; i++) {
+      if(distances[i] <= radius)
+        list.add(i, distances[i]);
+    }
+    m_RangeDistances = list.sortedDistances();
+
+    if(m_Stats!=null)
+      m_Stats.searchFinish();
+
+    return list.neighbours();
+  }
  
+  /**
+   * Returns the distances of the neighbours found by the last range query,
+   * in the same order as the neighbours. The rangeQuery needs to be called 
+   * first for this to work.
+   *
+   * @return		the distances
+   * @throws Exception 	if called before calling rangeQuery.
+   */
+  public double[] getRangeDistances() throws Exception {
+    if(m_RangeDistances == null)
+      throw new Exception("No distances available. Please call rangeQuery first.");
+    return m_RangeDistances;
+  }
+
   /**
    * Returns the distances of the k nearest neighbours. The kNearestNeighbours
-   * or nearestNeighbour needs to be called first for this to work.
+   * or nearestNeighbour needs to be called first for this to work. The 
+   * distances of the neighbours found by a range query are returned by 
+   * getRangeDistances().
    *
    * @return		the distances
    * @throws Exception 	if called before calling kNearestNeighbours
@@ -116,6 +116,31 @@ public class AllFilter
     push((Instance)instance.copy());
     return true;
   }
+
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the output format
+   * has been set.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+
+    return isOutputFormatDefined() && hasNoLocatedValues();
+  }
+
+  /**
+   * Copies the values of a single instance into the supplied array.
+   *
+   * @param instance the instance to convert
+   * @param values the array to store the values in
+   */
+  public void convertInto(Instance instance, double[] values) {
+
+    for (int i = 0; i < values.length; i++) {
+      values[i] = instance.value(i);
+    }
+  }
   
   /**
    * Returns a string that describes the filter as source. The
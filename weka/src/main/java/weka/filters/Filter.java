@@ -604,6 +604,55 @@ public abstract class Filter
     return (m_OutputFormat != null);
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., without creating new instances
+   * and without going through the output queue. This default
+   * implementation returns false.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   * @see #convertInto(Instance, double[])
+   */
+  public boolean canConvertInto() {
+
+    return false;
+  }
+
+  /**
+   * Filters a single instance and stores the values of the filtered
+   * instance in the supplied array, which has to have as many elements as
+   * the output format has attributes. The output queue is not affected and
+   * the weight of the instance is left to the caller. Only to be used if
+   * canConvertInto() returns true.
+   *
+   * @param instance the instance to filter
+   * @param values the array to store the filtered values in
+   * @throws Exception if the filter can't convert into an array of values
+   * or the conversion fails
+   * @see #canConvertInto()
+   */
+  public void convertInto(Instance instance, double[] values) 
+    throws Exception {
+
+    throw new Exception(getClass().getName() 
+			+ " can't convert into an array of values!");
+  }
+
+  /**
+   * Returns whether the input format has been set and the filter doesn't
+   * need to copy any string or relational values, which can't be
+   * represented by an array of values on their own.
+   *
+   * @return true if there are no string or relational values to copy
+   */
+  protected boolean hasNoLocatedValues() {
+
+    return (m_InputFormat != null)
+      && (m_InputStringAtts != null) && (m_InputRelAtts != null)
+      && (m_InputStringAtts.getAttributeIndices().length == 0)
+      && (m_InputRelAtts.getAttributeIndices().length == 0);
+  }
+
   /**
    * Creates a deep copy of the given filter using serialization.
    *
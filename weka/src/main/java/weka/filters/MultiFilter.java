@@ -24,6 +24,7 @@
 package weka.filters;
 
 import weka.core.Capabilities;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -69,6 +70,12 @@ public class MultiFilter
 
   /** whether we already checked the streamable state */
   protected boolean m_StreamableChecked = false;
+
+  /** the buffers for the values passed between the filters by convertInto */
+  protected transient double[][] m_ConvertBuffers = null;
+
+  /** the instances wrapping the buffers */
+  protected transient Instance[] m_ConvertInstances = null;
   
   /**
    * Returns a string describing this filter
@@ -190,6 +197,8 @@ public class MultiFilter
   protected void reset() {
     super.reset();
     m_StreamableChecked = false;
+    m_ConvertBuffers    = null;
+    m_ConvertInstances  = null;
   }
 
   /**
@@ -381,6 +390,69 @@ public class MultiFilter
     return result;
   }
   
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether all the enclosed
+   * filters can do so.
+   *
+   * @return		true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+    int		i;
+
+    if (!isOutputFormatDefined() || !hasNoLocatedValues())
+      return false;
+
+    for (i = 0; i < getFilters().length; i++) {
+      if (!getFilter(i).canConvertInto())
+	return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * Passes a single instance through all the enclosed filters and stores
+   * the values in the supplied array. The values in between the filters
+   * are kept in buffers that are only allocated for the first instance.
+   *
+   * @param instance	the instance to convert
+   * @param values	the array to store the values in
+   * @throws Exception	if one of the filters fails
+   */
+  public void convertInto(Instance instance, double[] values) throws Exception {
+    Instance	current;
+    Instances	format;
+    int		last;
+    int		i;
+
+    last = getFilters().length - 1;
+    if (last < 0) {
+      for (i = 0; i < values.length; i++)
+	values[i] = instance.value(i);
+      return;
+    }
+
+    if (m_ConvertBuffers == null) {
+      m_ConvertBuffers   = new double[last][];
+      m_ConvertInstances = new Instance[last];
+      for (i = 0; i < last; i++) {
+	format                = getFilter(i).getOutputFormat();
+	m_ConvertBuffers[i]   = new double[format.numAttributes()];
+	m_ConvertInstances[i] = new DenseInstance(1.0, m_ConvertBuffers[i]);
+	m_ConvertInstances[i].setDataset(format);
+      }
+    }
+
+    current = instance;
+    for (i = 0; i < last; i++) {
+      getFilter(i).convertInto(current, m_ConvertBuffers[i]);
+      m_ConvertInstances[i].setWeight(instance.weight());
+      current = m_ConvertInstances[i];
+    }
+    getFilter(last).convertInto(current, values);
+  }
+  
   /**
    * Returns the revision string.
    * 
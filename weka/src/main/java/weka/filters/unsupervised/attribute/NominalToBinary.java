@@ -474,6 +474,56 @@ public class NominalToBinary
     setOutputFormat(outputFormat);
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the output format
+   * has been determined.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+
+    return isOutputFormatDefined() && hasNoLocatedValues();
+  }
+
+  /**
+   * Converts a single instance and stores the values in the supplied
+   * array.
+   *
+   * @param instance the instance to convert
+   * @param values the array to store the values in
+   */
+  public void convertInto(Instance instance, double[] values) {
+
+    Instances input = getInputFormat();
+    int attSoFar = 0;
+
+    for(int j = 0; j < input.numAttributes(); j++) {
+      Attribute att = input.attribute(j);
+      if (!att.isNominal() || (j == input.classIndex()) ||
+	  !m_Columns.isInRange(j) ||
+	  ((att.numValues() <= 2) && (!m_TransformAll))) {
+	values[attSoFar] = instance.value(j);
+	attSoFar++;
+      } else {
+	if (instance.isMissing(j)) {
+	  for (int k = 0; k < att.numValues(); k++) {
+	    values[attSoFar + k] = instance.value(j);
+	  }
+	} else {
+	  for (int k = 0; k < att.numValues(); k++) {
+	    if (k == (int)instance.value(j)) {
+	      values[attSoFar + k] = 1;
+	    } else {
+	      values[attSoFar + k] = 0;
+	    }
+	  }
+	}
+	attSoFar += att.numValues();
+      }
+    }
+  }
+
   /**
    * Convert a single instance over if the class is nominal. The converted 
    * instance is added to the end of the output queue.
@@ -311,6 +311,49 @@ public class Normalize
     return (numPendingOutput() != 0);
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the minimums and
+   * maximums have been computed.
+   *
+   * @return 		true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+    return (m_MinArray != null) && hasNoLocatedValues();
+  }
+
+  /**
+   * Normalizes a single instance and stores the values in the supplied
+   * array.
+   *
+   * @param instance 	the instance to convert
+   * @param values 	the array to store the values in
+   * @throws Exception 	if a NaN value was generated
+   */
+  public void convertInto(Instance instance, double[] values) throws Exception {
+    Instances input = getInputFormat();
+    for (int j = 0; j < input.numAttributes(); j++) {
+      values[j] = instance.value(j);
+      if (input.attribute(j).isNumeric() &&
+	  (!Utils.isMissingValue(values[j])) &&
+	  (input.classIndex() != j)) {
+	if (Double.isNaN(m_MinArray[j]) ||
+	    (m_MaxArray[j] == m_MinArray[j])) {
+	  values[j] = 0;
+	}
+	else {
+	  values[j] = (values[j] - m_MinArray[j]) / 
+	    (m_MaxArray[j] - m_MinArray[j]) * m_Scale + m_Translation;
+	  if (Double.isNaN(values[j])) {
+	    throw new Exception("A NaN value was generated "
+				+ "while normalizing " 
+				+ input.attribute(j).name());
+	  }
+	}
+      }
+    }
+  }
+
   /**
    * Convert a single instance over. The converted instance is 
    * added to the end of the output queue.
@@ -262,6 +262,32 @@ public class Remove
     return true;
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the output format
+   * has been determined.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+
+    return isOutputFormatDefined() && hasNoLocatedValues();
+  }
+
+  /**
+   * Copies the values of the selected attributes of a single instance
+   * into the supplied array.
+   *
+   * @param instance the instance to convert
+   * @param values the array to store the values in
+   */
+  public void convertInto(Instance instance, double[] values) {
+
+    for (int i = 0; i < m_SelectedAttributes.length; i++) {
+      values[i] = instance.value(m_SelectedAttributes[i]);
+    }
+  }
+
   /**
    * Returns a string describing this filter
    *
@@ -224,6 +224,40 @@ public class ReplaceMissingValues
     return (numPendingOutput() != 0);
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the modes and means
+   * have been computed.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+
+    return (m_ModesAndMeans != null) && hasNoLocatedValues();
+  }
+
+  /**
+   * Replaces the missing values of a single instance and stores the values
+   * in the supplied array.
+   *
+   * @param instance the instance to convert
+   * @param values the array to store the values in
+   */
+  public void convertInto(Instance instance, double[] values) {
+
+    Instances input = getInputFormat();
+    for (int j = 0; j < input.numAttributes(); j++) {
+      if (instance.isMissing(j) &&
+	  (input.classIndex() != j) &&
+	  (input.attribute(j).isNominal() ||
+	   input.attribute(j).isNumeric())) {
+	values[j] = m_ModesAndMeans[j]; 
+      } else {
+	values[j] = instance.value(j);
+      }
+    }
+  }
+
   /**
    * Convert a single instance over. The converted instance is 
    * added to the end of the output queue.
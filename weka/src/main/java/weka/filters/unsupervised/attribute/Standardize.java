@@ -183,6 +183,51 @@ public class Standardize
     return (numPendingOutput() != 0);
   }
 
+  /**
+   * Returns whether single instances can currently be converted with
+   * convertInto(Instance, double[]), i.e., whether the means and standard
+   * deviations have been computed.
+   *
+   * @return true if convertInto(Instance, double[]) can be used
+   */
+  public boolean canConvertInto() {
+
+    return (m_Means != null) && hasNoLocatedValues();
+  }
+
+  /**
+   * Standardizes a single instance and stores the values in the supplied
+   * array.
+   *
+   * @param instance the instance to convert
+   * @param values the array to store the values in
+   * @exception Exception if a NaN value was generated
+   */
+  public void convertInto(Instance instance, double[] values) 
+    throws Exception {
+
+    Instances input = getInputFormat();
+    for (int j = 0; j < input.numAttributes(); j++) {
+      values[j] = instance.value(j);
+      if (input.attribute(j).isNumeric() &&
+	  (!Utils.isMissingValue(values[j])) &&
+	  (input.classIndex() != j)) {
+
+	// Just subtract the mean if the standard deviation is zero
+	if (m_StdDevs[j] > 0) { 
+	  values[j] = (values[j] - m_Means[j]) / m_StdDevs[j];
+	} else {
+	  values[j] = (values[j] - m_Means[j]);
+	}
+	if (Double.isNaN(values[j])) {
+	  throw new Exception("A NaN value was generated "
+			      + "while standardizing attribute " 
+			      + input.attribute(j).name());
+	}
+      }
+    }
+  }
+
   /**
    * Convert a single instance over. The converted instance is 
    * added to the end of the output queue.
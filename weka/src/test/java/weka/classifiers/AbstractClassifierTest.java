@@ -27,6 +27,7 @@ import weka.core.CheckOptionHandler;
 import weka.core.FastVector;
 import weka.core.Instances;
 import weka.core.OptionHandler;
+import weka.core.Utils;
 import weka.core.CheckScheme.PostProcessor;
 import weka.test.Regression;
 
@@ -980,6 +981,77 @@ public abstract class AbstractClassifierTest
     }
   }
   
+  /**
+   * Checks a classifier that can search split points on bins of the numeric
+   * attributes. With as many bins as instances, the model must be the same
+   * as without binning. With few bins, the class distributions must still 
+   * be valid.
+   * 
+   * @param data	the data to build the classifiers on
+   * @param exact	the classifier without binning
+   * @param allBins	the classifier with as many bins as instances
+   * @param fewBins	the classifier with few bins
+   * @throws Exception	if building or prediction fails
+   */
+  protected void checkNumBins(Instances data, Classifier exact, Classifier allBins, 
+      Classifier fewBins) throws Exception {
+    int		i;
+
+    exact.buildClassifier(data);
+    allBins.buildClassifier(data);
+    assertEquals("models differ", exact.toString(), allBins.toString());
+
+    fewBins.buildClassifier(data);
+    for (i = 0; i < data.numInstances(); i++)
+      assertEquals("distribution doesn't sum up to 1", 
+	  1.0, Utils.sum(fewBins.distributionForInstance(data.instance(i))), 1e-6);
+  }
+
+  /**
+   * tests whether a more efficient batch prediction returns the same
+   * distributions as predicting the instances one at a time
+   */
+  public void testBatchPrediction() throws Exception {
+    int		i;
+    Instances	data;
+    Instances	train;
+    Instances	test;
+    double[][]	batch;
+    double[]	single;
+
+    if (!(m_Classifier instanceof BatchPredictor)
+	|| !((BatchPredictor) m_Classifier).implementsMoreEfficientBatchPrediction())
+      return;
+
+    for (i = FIRST_CLASSTYPE; i <= LAST_CLASSTYPE; i++) {
+      // does the classifier support this type of class at all?
+      if (!canPredict(i))
+        continue;
+
+      data = m_Tester.makeTestDataset(
+          42, m_Tester.getNumInstances(), 
+  	  m_NominalPredictors[i] ? m_Tester.getNumNominal() : 0,
+  	  m_NumericPredictors[i] ? m_Tester.getNumNumeric() : 0, 
+          m_StringPredictors[i] ? m_Tester.getNumString() : 0,
+          m_DatePredictors[i] ? m_Tester.getNumDate() : 0,
+          m_RelationalPredictors[i] ? m_Tester.getNumRelational() : 0,
+          2, 
+          i,
+          m_multiInstanceHandler);
+      train = new Instances(data, 0, data.numInstances() / 2);
+      test  = new Instances(data, train.numInstances(), data.numInstances() - train.numInstances());
+      m_Classifier.buildClassifier(train);
+
+      batch = ((BatchPredictor) m_Classifier).distributionsForInstances(test);
+      assertEquals("# of distributions differs", test.numInstances(), batch.length);
+      for (int n = 0; n < test.numInstances(); n++) {
+	single = m_Classifier.distributionForInstance(test.instance(n));
+	for (int j = 0; j < single.length; j++)
+	  assertEquals("distribution differs for instance " + n, single[j], batch[n][j], 0);
+      }
+    }
+  }
+
   /**
    * tests the listing of the options
    */
@@ -0,0 +1,255 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.classifiers;
+
+import weka.classifiers.evaluation.output.prediction.PlainText;
+import weka.classifiers.functions.SMO;
+import weka.classifiers.trees.J48;
+import weka.classifiers.trees.REPTree;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.TestInstances;
+import weka.core.Utils;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests Evaluation. Run from the command line with:<p/>
+ * java weka.classifiers.EvaluationTest
+ *
+ * @version $Revision$
+ */
+public class EvaluationTest
+  extends TestCase {
+
+  /**
+   * Constructs the <code>EvaluationTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public EvaluationTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(EvaluationTest.class);
+  }
+
+  /**
+   * Generates a dataset with missing values.
+   *
+   * @param classType	the type of the class attribute
+   * @return		the dataset
+   * @throws Exception	if generation fails
+   */
+  protected Instances generate(int classType) throws Exception {
+    TestInstances	test;
+    Instances		result;
+
+    test = new TestInstances();
+    test.setNumInstances(150);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setClassType(classType);
+    result = test.generate();
+    for (int i = 0; i < result.numInstances(); i += 9)
+      result.instance(i).setMissing(i % result.numAttributes());
+
+    return result;
+  }
+
+  /**
+   * Cross-validates the classifier with the given number of slots and
+   * returns the evaluation's output, including the predictions.
+   *
+   * @param classifier	the classifier to evaluate
+   * @param data	the data to use
+   * @param numSlots	the number of execution slots
+   * @return		the output
+   * @throws Exception	if the evaluation fails
+   */
+  protected String crossValidate(Classifier classifier, Instances data, int numSlots) throws Exception {
+    Evaluation		eval;
+    PlainText		output;
+    StringBuffer	predictions;
+
+    predictions = new StringBuffer();
+    output      = new PlainText();
+    output.setHeader(data);
+    output.setBuffer(predictions);
+
+    eval = new Evaluation(data);
+    eval.setNumExecutionSlots(numSlots);
+    eval.crossValidateModel(classifier, data, 10, new Random(42), output);
+
+    if (data.classAttribute().isNominal())
+      return eval.toSummaryString(true) + eval.toClassDetailsString()
+	+ eval.toMatrixString() + predictions;
+    else
+      return eval.toSummaryString(true) + predictions;
+  }
+
+  /**
+   * Tests that a parallel cross-validation produces the same results as a
+   * sequential one.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testParallelCrossValidation() throws Exception {
+    Instances	data;
+
+    data = generate(Attribute.NOMINAL);
+    assertEquals("nominal class differs",
+	crossValidate(new J48(), data, 1), crossValidate(new J48(), data, 4));
+
+    data = generate(Attribute.NUMERIC);
+    assertEquals("numeric class differs",
+	crossValidate(new REPTree(), data, 1), crossValidate(new REPTree(), data, 3));
+  }
+
+  /**
+   * Evaluates the classifier on the test set in two halves, aggregates both
+   * evaluations (after serializing one of them) and compares the result,
+   * including the priors, with an evaluation on the full test set.
+   *
+   * @param classifier	the classifier to evaluate
+   * @param data	the data to use
+   * @throws Exception	if the evaluation fails
+   */
+  protected void checkAggregate(Classifier classifier, Instances data) throws Exception {
+    Instances	train;
+    Instances	test;
+    Instances	first;
+    Instances	second;
+    Evaluation	full;
+    Evaluation	left;
+    Evaluation	right;
+
+    train  = new Instances(data, 0, 100);
+    test   = new Instances(data, 100, data.numInstances() - 100);
+    first  = new Instances(test, 0, 20);
+    second = new Instances(test, 20, test.numInstances() - 20);
+    classifier.buildClassifier(train);
+
+    full = new Evaluation(train);
+    full.evaluateModel(classifier, test);
+    left = new Evaluation(train);
+    left.evaluateModel(classifier, first);
+    right = new Evaluation(train);
+    right.evaluateModel(classifier, second);
+    left.aggregate((Evaluation) new SerializedObject(right).getObject());
+
+    assertEquals("# of instances differs", full.numInstances(), left.numInstances(), 1e-10);
+    assertEquals("correct differs", full.correct(), left.correct(), 1e-10);
+    assertEquals("MAE differs", full.meanAbsoluteError(), left.meanAbsoluteError(), 1e-10);
+    assertEquals("RMSE differs", full.rootMeanSquaredError(), left.rootMeanSquaredError(), 1e-10);
+    assertEquals("RAE differs", full.relativeAbsoluteError(), left.relativeAbsoluteError(), 1e-8);
+    assertEquals("SF entropy differs", full.SFMeanSchemeEntropy(), left.SFMeanSchemeEntropy(), 1e-10);
+    assertEquals("# of predictions differs", full.predictions().size(), left.predictions().size());
+    assertEquals("priors differ", 
+	Utils.arrayToString(full.getClassPriors()), Utils.arrayToString(left.getClassPriors()));
+    if (data.classAttribute().isNominal()) {
+      assertEquals("kappa differs", full.kappa(), left.kappa(), 1e-10);
+      assertEquals("KB info differs", full.KBInformation(), left.KBInformation(), 1e-10);
+      assertEquals("AUC differs", full.weightedAreaUnderROC(), left.weightedAreaUnderROC(), 1e-10);
+      assertEquals("confusion matrix differs", full.toMatrixString(), left.toMatrixString());
+    }
+    else {
+      assertEquals("# of training class values differs", 
+	  full.m_NumTrainClassVals, left.m_NumTrainClassVals);
+      assertEquals("correlation differs", full.correlationCoefficient(), left.correlationCoefficient(), 1e-10);
+    }
+  }
+
+  /**
+   * Tests aggregating evaluations with a nominal and a numeric class.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testAggregate() throws Exception {
+    Instances	data;
+    Evaluation	left;
+    Evaluation	full;
+
+    data = generate(Attribute.NOMINAL);
+    checkAggregate(new J48(), data);
+    checkAggregate(new REPTree(), generate(Attribute.NUMERIC));
+
+    // the prior counts of disjoint training sets add up
+    full = new Evaluation(data);
+    left = new Evaluation(new Instances(data, 0, 60));
+    left.aggregate(new Evaluation(new Instances(data, 60, data.numInstances() - 60)), true);
+    for (int i = 0; i < data.numClasses(); i++)
+      assertEquals("prior differs", full.getClassPriors()[i], left.getClassPriors()[i], 1e-10);
+  }
+
+  /**
+   * Tests that evaluating a classifier that predicts batches of instances
+   * gives the same results as evaluating it instance by instance.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testBatchEvaluation() throws Exception {
+    Instances	data;
+    Instances	train;
+    Instances	test;
+    Classifier	classifier;
+    Evaluation	batch;
+    Evaluation	single;
+
+    data  = generate(Attribute.NOMINAL);
+    train = new Instances(data, 0, 100);
+    test  = new Instances(data, 100, data.numInstances() - 100);
+    classifier = new SMO();
+    ((SMO) classifier).setBuildLogisticModels(true);
+    classifier.buildClassifier(train);
+    assertTrue("no batch prediction", ((BatchPredictor) classifier).implementsMoreEfficientBatchPrediction());
+
+    batch = new Evaluation(train);
+    batch.evaluateModel(classifier, test);
+    single = new Evaluation(train);
+    for (int i = 0; i < test.numInstances(); i++)
+      single.evaluateModelOnceAndRecordPrediction(classifier, test.instance(i));
+
+    assertEquals("summary differs", single.toSummaryString(true), batch.toSummaryString(true));
+    assertEquals("details differ", single.toClassDetailsString(), batch.toClassDetailsString());
+  }
+
+  /**
+   * Executes the test from command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
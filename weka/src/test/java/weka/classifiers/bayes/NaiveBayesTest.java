@@ -22,6 +22,11 @@ package weka.classifiers.bayes;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.MemoryMappedInstances;
+import weka.core.TestInstances;
+
+import java.io.File;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +47,46 @@ public class NaiveBayesTest extends AbstractClassifierTest {
     return new NaiveBayes();
   }
 
+  /**
+   * Tests that training on memory-mapped data, which can't be copied
+   * onto the heap, results in the same model as training on the heap.
+   *
+   * @throws Exception if an error occurs
+   */
+  public void testMemoryMappedInstances() throws Exception {
+    TestInstances test = new TestInstances();
+    test.setNumInstances(100);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    Instances data = test.generate();
+    data.instance(0).setClassMissing();
+    data.instance(1).setMissing(0);
+    data.instance(2).setWeight(0.5);
+
+    File file = File.createTempFile("weka-nb", MemoryMappedInstances.FILE_EXTENSION);
+    file.deleteOnExit();
+    try {
+      MemoryMappedInstances.write(data, file);
+      Instances mapped = new MemoryMappedInstances(file);
+
+      NaiveBayes heap = new NaiveBayes();
+      heap.buildClassifier(data);
+      NaiveBayes mmi = new NaiveBayes();
+      mmi.buildClassifier(mapped);
+
+      assertEquals("models differ", heap.toString(), mmi.toString());
+      for (int i = 0; i < data.numInstances(); i++) {
+        double[] expected = heap.distributionForInstance(data.instance(i));
+        double[] actual = mmi.distributionForInstance(mapped.instance(i));
+        for (int j = 0; j < expected.length; j++) {
+          assertEquals("distribution differs at " + i, expected[j], actual[j], 1e-12);
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(NaiveBayesTest.class);
   }
@@ -22,6 +22,10 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.filters.Filter;
+import weka.filters.unsupervised.instance.NonSparseToSparse;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +46,105 @@ public class LogisticTest extends AbstractClassifierTest {
     return new Logistic();
   }
 
+  /**
+   * Builds both classifiers on the data and compares their class 
+   * distributions.
+   * 
+   * @param data	the data to use
+   * @param first	the first classifier
+   * @param second	the second classifier
+   * @param tolerance	the maximum difference of the probabilities
+   * @throws Exception	if building fails
+   */
+  protected void compare(Instances data, Logistic first, Logistic second, 
+      double tolerance) throws Exception {
+    double[]	dist1;
+    double[]	dist2;
+
+    first.buildClassifier(data);
+    second.buildClassifier(data);
+    for (int i = 0; i < data.numInstances(); i++) {
+      dist1 = first.distributionForInstance(data.instance(i));
+      dist2 = second.distributionForInstance(data.instance(i));
+      for (int j = 0; j < dist1.length; j++)
+	assertEquals("probability differs at " + i, dist1[j], dist2[j], tolerance);
+    }
+  }
+
+  /**
+   * Tests that evaluating the log-likelihood in parallel and using L-BFGS
+   * give (nearly) the same models.
+   * 
+   * @throws Exception	if an error occurs
+   */
+  public void testParallelAndLimitedMemory() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    Logistic		parallel;
+    Logistic		limited;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumClasses(3);
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    data = test.generate();
+
+    parallel = new Logistic();
+    parallel.setNumExecutionSlots(3);
+    compare(data, new Logistic(), parallel, 1e-6);
+
+    limited = new Logistic();
+    limited.setRidge(1.0);
+    limited.setNumCorrections(5);
+    Logistic dense = new Logistic();
+    dense.setRidge(1.0);
+    compare(data, dense, limited, 1e-3);
+  }
+
+  /**
+   * Tests that training on sparse data gives (nearly) the same model as
+   * training on the same data in dense form.
+   * 
+   * @throws Exception	if an error occurs
+   */
+  public void testSparseData() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    Instances		sparse;
+    NonSparseToSparse	filter;
+    Logistic		dense;
+    Logistic		sparseLogistic;
+    double[]		dist1;
+    double[]		dist2;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumClasses(3);
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    test.setClassIndex(0);
+    data = test.generate();
+    for (int i = 0; i < data.numInstances(); i += 3)
+      data.instance(i).setValue(data.numAttributes() - 1, 0);
+    filter = new NonSparseToSparse();
+    filter.setInputFormat(data);
+    sparse = Filter.useFilter(data, filter);
+
+    dense = new Logistic();
+    dense.setRidge(0.1);
+    dense.buildClassifier(data);
+    sparseLogistic = new Logistic();
+    sparseLogistic.setRidge(0.1);
+    sparseLogistic.buildClassifier(sparse);
+    for (int i = 0; i < data.numInstances(); i++) {
+      dist1 = dense.distributionForInstance(data.instance(i));
+      dist2 = sparseLogistic.distributionForInstance(sparse.instance(i));
+      for (int j = 0; j < dist1.length; j++)
+	assertEquals("probability differs at " + i, dist1[j], dist2[j], 1e-6);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(LogisticTest.class);
   }
@@ -22,6 +22,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -43,6 +46,73 @@ public class MultilayerPerceptronTest extends AbstractClassifierTest {
     return new MultilayerPerceptron();
   }
 
+  /**
+   * Builds both networks and compares their predictions on the data.
+   *
+   * @param data	the data to use
+   * @param first	the first network
+   * @param second	the second network
+   * @param tolerance	the maximum difference of the predictions
+   * @throws Exception	if building fails
+   */
+  protected void compare(Instances data, MultilayerPerceptron first, 
+      MultilayerPerceptron second, double tolerance) throws Exception {
+    double[]	dist1;
+    double[]	dist2;
+
+    first.buildClassifier(data);
+    second.buildClassifier(data);
+    for (int i = 0; i < data.numInstances(); i++) {
+      dist1 = first.distributionForInstance(data.instance(i));
+      dist2 = second.distributionForInstance(data.instance(i));
+      for (int j = 0; j < dist1.length; j++)
+	assertEquals("prediction differs at " + i, dist1[j], dist2[j], tolerance);
+    }
+  }
+
+  /**
+   * Tests the training in flat form: per instance it has to give the same
+   * network as the node by node training, and mini-batches processed in
+   * parallel the same network as mini-batches processed sequentially.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testMiniBatches() throws Exception {
+    TestInstances		test;
+    Instances			data;
+    MultilayerPerceptron	first;
+    MultilayerPerceptron	second;
+
+    for (int k = 0; k < 2; k++) {
+      test = new TestInstances();
+      test.setNumInstances(100);
+      test.setNumNominal(2);
+      test.setNumNumeric(3);
+      test.setClassType((k == 0) ? Attribute.NOMINAL : Attribute.NUMERIC);
+      data = test.generate();
+
+      first = new MultilayerPerceptron();
+      first.setTrainingTime(20);
+      first.setHiddenLayers("3,2");
+      second = new MultilayerPerceptron();
+      second.setTrainingTime(20);
+      second.setHiddenLayers("3,2");
+      second.setNumExecutionSlots(2);
+      compare(data, first, second, 1e-8);
+
+      first = new MultilayerPerceptron();
+      first.setTrainingTime(20);
+      first.setBatchSize(7);
+      first.setValidationSetSize(20);
+      second = new MultilayerPerceptron();
+      second.setTrainingTime(20);
+      second.setBatchSize(7);
+      second.setValidationSetSize(20);
+      second.setNumExecutionSlots(3);
+      compare(data, first, second, 1e-8);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(MultilayerPerceptronTest.class);
   }
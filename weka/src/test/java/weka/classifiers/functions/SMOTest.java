@@ -22,6 +22,9 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.RBFKernel;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +45,80 @@ public class SMOTest extends AbstractClassifierTest {
     return new SMO();
   }
 
+  /**
+   * Tests that training the binary classifiers in parallel gives the same
+   * model as training them sequentially.
+   * 
+   * @throws Exception	if training fails
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    SMO			sequential;
+    SMO			parallel;
+
+    test = new TestInstances();
+    test.setNumInstances(150);
+    test.setNumClasses(5);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    data = test.generate();
+
+    sequential = new SMO();
+    sequential.setBuildLogisticModels(true);
+    sequential.setNumFolds(3);
+    sequential.buildClassifier(data);
+    parallel = new SMO();
+    parallel.setBuildLogisticModels(true);
+    parallel.setNumFolds(3);
+    parallel.setNumExecutionSlots(4);
+    parallel.buildClassifier(data);
+
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] expected = sequential.distributionForInstance(data.instance(i));
+      double[] actual = parallel.distributionForInstance(data.instance(i));
+      for (int n = 0; n < expected.length; n++)
+	assertEquals("distribution differs at " + i, expected[n], actual[n], 0);
+    }
+  }
+
+  /**
+   * Tests that the second order solver gives the same predictions as
+   * Platt's heuristics, with a linear and a non-linear kernel.
+   * 
+   * @throws Exception	if training fails
+   */
+  public void testSecondOrderSolver() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    SMO			platt;
+    SMO			secondOrder;
+
+    test = new TestInstances();
+    test.setNumInstances(150);
+    test.setNumClasses(3);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    data = test.generate();
+
+    for (int k = 0; k < 2; k++) {
+      platt = new SMO();
+      secondOrder = new SMO();
+      secondOrder.setUseSecondOrderSolver(true);
+      if (k == 1) {
+	platt.setKernel(new RBFKernel());
+	secondOrder.setKernel(new RBFKernel());
+      }
+      platt.buildClassifier(data);
+      secondOrder.buildClassifier(data);
+
+      for (int i = 0; i < data.numInstances(); i++)
+	assertEquals("prediction differs at " + i + " (kernel " + k + ")", 
+	    platt.classifyInstance(data.instance(i)), 
+	    secondOrder.classifyInstance(data.instance(i)), 0);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(SMOTest.class);
   }
@@ -22,6 +22,10 @@ package weka.classifiers.functions;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.functions.supportVector.RegSMOImproved;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +46,49 @@ public class SMOregTest extends AbstractClassifierTest {
     return new SMOreg();
   }
 
+  /**
+   * Tests that the second order solver of RegSMOImproved converges to the
+   * same model as variant 1, with a tight tolerance.
+   * 
+   * @throws Exception	if training fails
+   */
+  public void testSecondOrderSolver() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    SMOreg		variant1;
+    SMOreg		secondOrder;
+    RegSMOImproved	optimizer;
+    double		range;
+
+    test = new TestInstances();
+    test.setNumInstances(100);
+    test.setNumNominal(1);
+    test.setNumNumeric(3);
+    test.setClassType(Attribute.NUMERIC);
+    data = test.generate();
+
+    variant1 = new SMOreg();
+    optimizer = new RegSMOImproved();
+    optimizer.setUseVariant1(true);
+    optimizer.setTolerance(1e-7);
+    variant1.setRegOptimizer(optimizer);
+    variant1.buildClassifier(data);
+
+    secondOrder = new SMOreg();
+    optimizer = new RegSMOImproved();
+    optimizer.setUseSecondOrderSolver(true);
+    optimizer.setTolerance(1e-7);
+    secondOrder.setRegOptimizer(optimizer);
+    secondOrder.buildClassifier(data);
+
+    range = data.attributeStats(data.classIndex()).numericStats.max 
+      - data.attributeStats(data.classIndex()).numericStats.min;
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals("prediction differs at " + i, 
+	  variant1.classifyInstance(data.instance(i)), 
+	  secondOrder.classifyInstance(data.instance(i)), 1e-3 * range);
+  }
+
   public static Test suite() {
     return new TestSuite(SMOregTest.class);
   }
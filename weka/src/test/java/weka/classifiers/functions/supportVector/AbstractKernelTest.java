@@ -25,6 +25,7 @@ import weka.core.CheckGOE;
 import weka.core.CheckOptionHandler;
 import weka.core.Instances;
 import weka.core.OptionHandler;
+import weka.core.TestInstances;
 import weka.core.CheckScheme.PostProcessor;
 import weka.test.Regression;
 
@@ -733,6 +734,54 @@ public abstract class AbstractKernelTest
     return data;
   }
 
+  /**
+   * Tests that a kernel with a (deliberately small) row cache returns the
+   * same values as one without any cache, and that rows get evicted.
+   * Only applies to cached, single-instance kernels.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRowCache() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    CachedKernel	uncached;
+    CachedKernel	cached;
+    KernelRowCache	cache;
+
+    if (!(m_Kernel instanceof CachedKernel) || m_multiInstanceHandler)
+      return;
+
+    test = new TestInstances();
+    test.setNumInstances(60);
+    test.setNumNominal(0);
+    test.setNumNumeric(4);
+    test.setClassType(Attribute.NOMINAL);
+    data = test.generate();
+
+    uncached = (CachedKernel) Kernel.makeCopy(m_Kernel);
+    uncached.setCacheSize(-1);
+    uncached.buildKernel(data);
+    cached = (CachedKernel) Kernel.makeCopy(m_Kernel);
+    cached.setRowCacheSize(0.01);
+    cached.buildKernel(data);
+
+    for (int n = 0; n < data.numInstances(); n++) {
+      for (int i = 0; i < data.numInstances(); i++)
+	assertEquals("value " + (n+1) + "-" + (i+1) + " differs", 
+	    uncached.eval(n, i, data.instance(n)), 
+	    cached.eval(n, i, data.instance(n)), 0.0);
+    }
+
+    cache = cached.getRowCache();
+    assertTrue("no hits", cache.getHits() > 0);
+    assertTrue("no misses", cache.getMisses() > 0);
+    assertTrue("no evictions", cache.getEvictions() > 0);
+    assertTrue("cache too large", cache.getBytes() <= 0.01 * 1024 * 1024);
+
+    cached.clean();
+    assertEquals("rows not removed", 0, cache.numRows());
+  }
+
   /**
    * Runs a regression test -- this checks that the output of the tested
    * object matches that in a reference version. When this test is
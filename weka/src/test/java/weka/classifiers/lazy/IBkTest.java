@@ -20,8 +20,15 @@
 
 package weka.classifiers.lazy;
 
+import weka.classifiers.AbstractClassifier;
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.neighboursearch.KDTree;
+import weka.core.neighboursearch.LinearNNSearch;
+import weka.core.neighboursearch.NearestNeighbourSearch;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +49,137 @@ public class IBkTest extends AbstractClassifierTest {
     return new IBk();
   }
 
+  /**
+   * Generates training and test data. Some of the test instances lie 
+   * outside the ranges of the training data, so that the ranges of the
+   * distance function get extended while predicting.
+   * 
+   * @return		the training data and the test data
+   * @throws Exception	if the generation fails
+   */
+  protected Instances[] generateData() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    Instances		train;
+    Instance		inst;
+    int			att;
+    int			i;
+
+    test = new TestInstances();
+    test.setNumInstances(300);
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    data = test.generate();
+    train = new Instances(data, 0, 200);
+    data = new Instances(data, 200, 100);
+
+    for (att = 0; att < data.numAttributes(); att++) {
+      if (data.attribute(att).isNumeric())
+	break;
+    }
+    for (i = 0; i < data.numInstances(); i += 7) {
+      inst = data.instance(i);
+      inst.setValue(att, train.kthSmallestValue(att, train.numInstances()) + i);
+    }
+
+    return new Instances[]{train, data};
+  }
+
+  /**
+   * Predicts the test instances one at a time with 
+   * distributionForInstance(Instance).
+   * 
+   * @param classifier	the trained classifier
+   * @param data	the test instances
+   * @return		the distributions
+   * @throws Exception	if prediction fails
+   */
+  protected double[][] distributions(IBk classifier, Instances data) throws Exception {
+    double[][]	result;
+    int		i;
+
+    result = new double[data.numInstances()][];
+    for (i = 0; i < data.numInstances(); i++)
+      result[i] = classifier.distributionForInstance(data.instance(i));
+
+    return result;
+  }
+
+  /**
+   * Compares two sets of distributions.
+   * 
+   * @param msg		the message prefix
+   * @param expected	the expected distributions
+   * @param actual	the actual distributions
+   */
+  protected void assertDistributions(String msg, double[][] expected, double[][] actual) {
+    int		i;
+    int		n;
+
+    assertEquals(msg + ": number of distributions differs", expected.length, actual.length);
+    for (i = 0; i < expected.length; i++) {
+      for (n = 0; n < expected[i].length; n++)
+	assertEquals(msg + ": distribution differs at " + i, expected[i][n], actual[i][n], 0);
+    }
+  }
+
+  /**
+   * Tests that the batch prediction gives the same results as predicting 
+   * the instances one at a time, also when test instances outside the 
+   * training ranges split the batches.
+   * 
+   * @throws Exception	if training or prediction fails
+   */
+  public void testBatchPrediction() throws Exception {
+    Instances[]		data;
+    IBk			single;
+    IBk			batch;
+    NearestNeighbourSearch[]	searches;
+    int			i;
+
+    data = generateData();
+    searches = new NearestNeighbourSearch[]{new LinearNNSearch(), new KDTree()};
+    for (i = 0; i < searches.length; i++) {
+      single = new IBk(5);
+      single.setNearestNeighbourSearchAlgorithm(searches[i]);
+      batch = (IBk) AbstractClassifier.makeCopy(single);
+      single.buildClassifier(data[0]);
+      batch.buildClassifier(data[0]);
+      assertDistributions(searches[i].getClass().getName(),
+	  distributions(single, data[1]), batch.distributionsForInstances(data[1]));
+    }
+  }
+
+  /**
+   * Tests that the hold-one-out cross-validation and the batch prediction
+   * give the same results with the nearest neighbour queries answered in
+   * parallel as one at a time.
+   * 
+   * @throws Exception	if training or prediction fails
+   */
+  public void testNumExecutionSlots() throws Exception {
+    Instances[]		data;
+    IBk			sequential;
+    IBk			parallel;
+    LinearNNSearch	search;
+
+    data = generateData();
+    sequential = new IBk(10);
+    sequential.setCrossValidate(true);
+    sequential.buildClassifier(data[0]);
+    
+    parallel = new IBk(10);
+    parallel.setCrossValidate(true);
+    search = new LinearNNSearch();
+    search.setNumExecutionSlots(4);
+    parallel.setNearestNeighbourSearchAlgorithm(search);
+    parallel.buildClassifier(data[0]);
+
+    assertEquals("selected k differs", sequential.getKNN(), parallel.getKNN());
+    assertDistributions("parallel", 
+	distributions(sequential, data[1]), parallel.distributionsForInstances(data[1]));
+  }
+
   public static Test suite() {
     return new TestSuite(IBkTest.class);
   }
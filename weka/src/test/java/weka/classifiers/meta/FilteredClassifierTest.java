@@ -22,6 +22,11 @@ package weka.classifiers.meta;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.classifiers.bayes.NaiveBayes;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.filters.unsupervised.attribute.Normalize;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +47,48 @@ public class FilteredClassifierTest extends AbstractClassifierTest {
     return new FilteredClassifier();
   }
 
+  /**
+   * Tests that predictions stay correct if the base classifier modifies 
+   * the filtered instance it gets passed, which detaches the instance from
+   * the reused buffer of filtered values.
+   * 
+   * @throws Exception	if building or prediction fails
+   */
+  public void testModifyingBaseClassifier() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    FilteredClassifier	expected;
+    FilteredClassifier	actual;
+    int			i;
+    int			n;
+
+    test = new TestInstances();
+    test.setNumInstances(100);
+    test.setNumNumeric(4);
+    data = test.generate();
+    expected = new FilteredClassifier();
+    expected.setFilter(new Normalize());
+    expected.setClassifier(new NaiveBayes());
+    actual = new FilteredClassifier();
+    actual.setFilter(new Normalize());
+    actual.setClassifier(new NaiveBayes() {
+      private static final long serialVersionUID = 1L;
+      public double[] distributionForInstance(Instance instance) throws Exception {
+	double[] result = super.distributionForInstance(instance);
+	instance.setClassMissing();
+	return result;
+      }
+    });
+    expected.buildClassifier(data);
+    actual.buildClassifier(data);
+    for (i = 0; i < data.numInstances(); i++) {
+      double[] dist1 = expected.distributionForInstance(data.instance(i));
+      double[] dist2 = actual.distributionForInstance(data.instance(i));
+      for (n = 0; n < dist1.length; n++)
+	assertEquals("distribution differs at " + i, dist1[n], dist2[n], 0);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(FilteredClassifierTest.class);
   }
@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -42,6 +44,33 @@ public class REPTreeTest extends AbstractClassifierTest {
     return new REPTree();
   }
 
+  /**
+   * Tests that searching split points on bins gives the same tree as the
+   * exact search if there are at least as many bins as distinct values.
+   * 
+   * @throws Exception	if building fails
+   */
+  public void testNumBins() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    REPTree		allBins;
+    REPTree		fewBins;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    data = test.generate();
+    for (int i = 0; i < data.numInstances(); i += 7)
+      data.instance(i).setMissing(i % (data.numAttributes() - 1));
+
+    allBins = new REPTree();
+    allBins.setNumBins(data.numInstances());
+    fewBins = new REPTree();
+    fewBins.setNumBins(4);
+    checkNumBins(data, new REPTree(), allBins, fewBins);
+  }
+
   public static Test suite() {
     return new TestSuite(REPTreeTest.class);
   }
@@ -22,6 +22,8 @@ package weka.classifiers.trees;
 
 import weka.classifiers.AbstractClassifierTest;
 import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,42 @@ public class RandomForestTest
     return new RandomForest();
   }
 
+  /**
+   * Tests that building the trees in parallel gives the same forest as
+   * building them sequentially.
+   * 
+   * @throws Exception	if building fails
+   */
+  public void testNumExecutionSlots() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    RandomForest	sequential;
+    RandomForest	parallel;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(3);
+    test.setNumNumeric(3);
+    data = test.generate();
+    for (int i = 0; i < data.numInstances(); i += 7)
+      data.instance(i).setMissing(i % (data.numAttributes() - 1));
+
+    sequential = new RandomForest();
+    sequential.buildClassifier(data);
+    parallel = new RandomForest();
+    parallel.setNumExecutionSlots(4);
+    parallel.buildClassifier(data);
+
+    assertEquals("out of bag error differs", 
+	sequential.measureOutOfBagError(), parallel.measureOutOfBagError(), 0);
+    for (int i = 0; i < data.numInstances(); i++) {
+      double[] expected = sequential.distributionForInstance(data.instance(i));
+      double[] actual = parallel.distributionForInstance(data.instance(i));
+      for (int n = 0; n < expected.length; n++)
+	assertEquals("distribution differs at " + i, expected[n], actual[n], 0);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(RandomForestTest.class);
   }
@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,52 @@ public class DBScanTest
     return new DBScan();
   }
 
+  /**
+   * Clusters the data with the given database and returns the output
+   * without the line naming the database.
+   *
+   * @param data	the data to cluster
+   * @param database	the database to use
+   * @return		the output of the clusterer
+   * @throws Exception	if clustering fails
+   */
+  protected String cluster(Instances data, String database) throws Exception {
+    DBScan	clusterer;
+
+    clusterer = new DBScan();
+    clusterer.setEpsilon(0.2);
+    clusterer.setMinPoints(4);
+    clusterer.setDatabase_Type(database);
+    clusterer.buildClusterer(data);
+
+    return clusterer.toString().replaceAll("Index: .*\n", "").replaceAll("Elapsed time: .*\n", "");
+  }
+
+  /**
+   * Tests that the IndexedDatabase yields the same clusters as the
+   * SequentialDatabase.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testIndexedDatabase() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    String		expected;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(1);
+    test.setNumNumeric(3);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+
+    expected = cluster(data, "weka.clusterers.forOPTICSAndDBScan.Databases.SequentialDatabase");
+    assertEquals("KDTree differs", expected, 
+	cluster(data, "weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase"));
+    assertEquals("BallTree differs", expected, 
+	cluster(data, "weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase -A weka.core.neighboursearch.BallTree"));
+  }
+
   public static Test suite() {
     return new TestSuite(DBScanTest.class);
   }
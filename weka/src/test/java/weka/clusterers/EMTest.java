@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +47,48 @@ public class EMTest
     return new EM();
   }
 
+  /**
+   * Tests that running the cross validation and the E and M steps in 
+   * parallel results in the same model as the sequential training.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testParallel() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    EM			sequential;
+    EM			parallel;
+    double[]		first;
+    double[]		second;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+    for (int i = 0; i < data.numInstances(); i += 11)
+      data.instance(i).setMissing(i % data.numAttributes());
+
+    sequential = new EM();
+    sequential.buildClusterer(data);
+    parallel = new EM();
+    parallel.setNumExecutionSlots(3);
+    parallel.buildClusterer(data);
+
+    assertEquals("number of clusters differs", 
+	sequential.numberOfClusters(), parallel.numberOfClusters());
+    for (int i = 0; i < sequential.numberOfClusters(); i++)
+      assertEquals("prior differs", 
+	  sequential.clusterPriors()[i], parallel.clusterPriors()[i], 1e-6);
+    for (int i = 0; i < data.numInstances(); i++) {
+      first  = sequential.distributionForInstance(data.instance(i));
+      second = parallel.distributionForInstance(data.instance(i));
+      for (int j = 0; j < first.length; j++)
+	assertEquals("distribution differs", first[j], second[j], 1e-6);
+    }
+  }
+
   public static Test suite() {
     return new TestSuite(EMTest.class);
   }
@@ -22,6 +22,9 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +48,57 @@ public class HierarchicalClustererTest
     return new HierarchicalClusterer();
   }
 
+  /**
+   * Builds a clusterer with the given options and returns its hierarchy 
+   * and the cluster assignments of the training data.
+   *
+   * @param data	the data to cluster
+   * @param options	the options of the clusterer
+   * @return		the hierarchy and the assignments
+   * @throws Exception	if clustering fails
+   */
+  protected String cluster(Instances data, String options) throws Exception {
+    HierarchicalClusterer	clusterer;
+    StringBuffer		result;
+
+    clusterer = new HierarchicalClusterer();
+    clusterer.setOptions(Utils.splitOptions(options));
+    clusterer.buildClusterer(data);
+    result = new StringBuffer(clusterer.toString());
+    for (int i = 0; i < data.numInstances(); i++)
+      result.append(clusterer.clusterInstance(data.instance(i)));
+
+    return result.toString();
+  }
+
+  /**
+   * Tests that the nearest neighbour chain (and the minimum spanning tree
+   * for single link) yield the same hierarchy as the default algorithm.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testNNChain() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    String		expected;
+
+    test = new TestInstances();
+    test.setNumInstances(150);
+    test.setNumNominal(0);
+    test.setNumNumeric(4);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+
+    for (String link: new String[]{"SINGLE", "COMPLETE", "AVERAGE"}) {
+      expected = cluster(data, "-P -N 3 -L " + link);
+      assertEquals(link + " differs", expected, cluster(data, "-P -N 3 -L " + link + " -nn-chain"));
+      assertEquals(link + " differs in parallel", expected, cluster(data, "-P -N 3 -L " + link + " -nn-chain -num-slots 3"));
+      assertEquals(link + " differs in single precision", expected, cluster(data, "-P -N 3 -L " + link + " -nn-chain -float"));
+    }
+    assertEquals("WARD differs in parallel", 
+	cluster(data, "-P -N 3 -L WARD -nn-chain"), cluster(data, "-P -N 3 -L WARD -nn-chain -num-slots 3"));
+  }
+
   public static Test suite() {
     return new TestSuite(HierarchicalClustererTest.class);
   }
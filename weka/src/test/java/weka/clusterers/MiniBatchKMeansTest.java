@@ -0,0 +1,95 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.clusterers;
+
+import weka.core.Instances;
+import weka.core.TestInstances;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests MiniBatchKMeans. Run from the command line with:<p/>
+ * java weka.clusterers.MiniBatchKMeansTest
+ *
+ * @version $Revision$
+ */
+public class MiniBatchKMeansTest 
+  extends AbstractClustererTest {
+
+  public MiniBatchKMeansTest(String name) { 
+    super(name);  
+  }
+
+  /** Creates a default MiniBatchKMeans */
+  public Clusterer getClusterer() {
+    return new MiniBatchKMeans();
+  }
+
+  /**
+   * Tests that adding the instances one by one results in the same
+   * clusters as training on all of them at once.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testIncremental() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    MiniBatchKMeans	batch;
+    MiniBatchKMeans	incremental;
+
+    test = new TestInstances();
+    test.setNumInstances(250);
+    test.setNumNominal(2);
+    test.setNumNumeric(4);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+    for (int i = 0; i < data.numInstances(); i += 7)
+      data.instance(i).setMissing(i % data.numAttributes());
+
+    batch = new MiniBatchKMeans();
+    batch.setNumClusters(4);
+    batch.setBatchSize(30);
+    batch.buildClusterer(data);
+
+    incremental = new MiniBatchKMeans();
+    incremental.setNumClusters(4);
+    incremental.setBatchSize(30);
+    incremental.buildClusterer(new Instances(data, 0));
+    for (int i = 0; i < data.numInstances(); i++)
+      incremental.updateClusterer(data.instance(i));
+    incremental.updateFinished();
+
+    assertEquals("number of clusters differs", 4, incremental.numberOfClusters());
+    assertEquals("clusters differ", batch.toString(), incremental.toString());
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals("assignment differs", 
+	  batch.clusterInstance(data.instance(i)), incremental.clusterInstance(data.instance(i)));
+  }
+
+  public static Test suite() {
+    return new TestSuite(MiniBatchKMeansTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
@@ -22,6 +22,8 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -47,6 +49,41 @@ public class OPTICSTest
     return ops;
   }
 
+  /**
+   * Tests that the IndexedDatabase yields the same cluster ordering and
+   * reachability distances as the SequentialDatabase.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testIndexedDatabase() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    OPTICS		sequential;
+    OPTICS		indexed;
+
+    test = new TestInstances();
+    test.setNumInstances(200);
+    test.setNumNominal(1);
+    test.setNumNumeric(3);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+
+    sequential = new OPTICS();
+    sequential.setShowGUI(false);
+    sequential.setEpsilon(0.3);
+    sequential.buildClusterer(data);
+
+    indexed = new OPTICS();
+    indexed.setShowGUI(false);
+    indexed.setEpsilon(0.3);
+    indexed.setDatabase_Type("weka.clusterers.forOPTICSAndDBScan.Databases.IndexedDatabase -A weka.core.neighboursearch.CoverTree");
+    indexed.buildClusterer(data);
+
+    assertEquals("results differ", 
+	sequential.toString().replaceAll("Index: .*\n", "").replaceAll("Elapsed time: .*\n", ""), 
+	indexed.toString().replaceAll("Index: .*\n", "").replaceAll("Elapsed time: .*\n", ""));
+  }
+
   public static Test suite() {
     return new TestSuite(OPTICSTest.class);
   }
@@ -22,6 +22,9 @@ package weka.clusterers;
 
 import weka.clusterers.AbstractClustererTest;
 import weka.clusterers.Clusterer;
+import weka.core.Instances;
+import weka.core.ManhattanDistance;
+import weka.core.TestInstances;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
@@ -45,6 +48,74 @@ public class SimpleKMeansTest
     return new SimpleKMeans();
   }
 
+  /**
+   * Builds SimpleKMeans on the data, once with the default settings and 
+   * once with the given ones, and compares the clusterings.
+   *
+   * @param data	the data to use
+   * @param manhattan	whether to use the Manhattan distance
+   * @param fast	whether to use bounds for skipping distances
+   * @param slots	the number of execution slots
+   * @throws Exception	if clustering fails
+   */
+  protected void compare(Instances data, boolean manhattan, boolean fast, int slots) throws Exception {
+    SimpleKMeans	first;
+    SimpleKMeans	second;
+
+    first  = new SimpleKMeans();
+    second = new SimpleKMeans();
+    for (SimpleKMeans km: new SimpleKMeans[]{first, second}) {
+      km.setNumClusters(6);
+      km.setPreserveInstancesOrder(true);
+      km.setDisplayStdDevs(true);
+      if (manhattan)
+	km.setDistanceFunction(new ManhattanDistance());
+    }
+    second.setFastDistanceCalc(fast);
+    second.setNumExecutionSlots(slots);
+    first.buildClusterer(data);
+    second.buildClusterer(data);
+
+    assertEquals("squared error differs", first.getSquaredError(), second.getSquaredError(), 1e-8);
+    for (int i = 0; i < data.numInstances(); i++)
+      assertEquals("assignment differs", first.getAssignments()[i], second.getAssignments()[i]);
+    for (int i = 0; i < first.numberOfClusters(); i++) {
+      assertEquals("size differs", first.getClusterSizes()[i], second.getClusterSizes()[i]);
+      for (int j = 0; j < data.numAttributes(); j++) {
+	assertEquals("centroid differs",
+	    first.getClusterCentroids().instance(i).value(j),
+	    second.getClusterCentroids().instance(i).value(j), 1e-10);
+	if (data.attribute(j).isNumeric())
+	  assertEquals("std dev differs",
+	      first.getClusterStandardDevs().instance(i).value(j),
+	      second.getClusterStandardDevs().instance(i).value(j), 1e-10);
+      }
+    }
+  }
+
+  /**
+   * Tests that parallel training and skipping distances with bounds 
+   * result in the same clusters as the default training.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testParallelAndFast() throws Exception {
+    TestInstances	test;
+    Instances		data;
+
+    test = new TestInstances();
+    test.setNumInstances(300);
+    test.setNumNominal(2);
+    test.setNumNumeric(5);
+    test.setClassIndex(TestInstances.NO_CLASS);
+    data = test.generate();
+
+    compare(data, false, true, 1);
+    compare(data, false, false, 3);
+    compare(data, false, true, 4);
+    compare(data, true, false, 3);
+  }
+
   public static Test suite() {
     return new TestSuite(SimpleKMeansTest.class);
   }
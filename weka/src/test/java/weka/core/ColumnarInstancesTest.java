@@ -0,0 +1,229 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests ColumnarInstances. Run from the command line with:<p/>
+ * java weka.core.ColumnarInstancesTest
+ *
+ * @version $Revision$
+ */
+public class ColumnarInstancesTest
+  extends TestCase {
+
+  /** the test instances to work with. */
+  protected Instances m_Instances;
+
+  /**
+   * Constructs the <code>ColumnarInstancesTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public ColumnarInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Instances = DataSource.read(ClassLoader.getSystemResourceAsStream("weka/core/data/InstancesTest.arff"));
+    m_Instances.instance(3).setWeight(2.5);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    m_Instances = null;
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns the test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(ColumnarInstancesTest.class);
+  }
+
+  /**
+   * Compares the values and weights of two datasets.
+   *
+   * @param expected	the expected data
+   * @param actual	the data to check
+   * @param delta	the allowed difference
+   */
+  protected void assertSameData(Instances expected, Instances actual, double delta) {
+    assertEquals("# of instances differ", expected.numInstances(), actual.numInstances());
+    assertEquals("# of attributes differ", expected.numAttributes(), actual.numAttributes());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals("weight differs at " + i, expected.instance(i).weight(), actual.instance(i).weight(), 1e-12);
+      for (int n = 0; n < expected.numAttributes(); n++) {
+	assertEquals("missing differs at " + i + "/" + n, expected.instance(i).isMissing(n), actual.instance(i).isMissing(n));
+	if (!expected.instance(i).isMissing(n))
+	  assertEquals("value differs at " + i + "/" + n, expected.instance(i).value(n), actual.instance(i).value(n), delta);
+      }
+    }
+  }
+
+  /**
+   * Tests the copy of a dataset in double and single precision.
+   */
+  public void testCopy() {
+    assertSameData(m_Instances, new ColumnarInstances(m_Instances), 0);
+    assertSameData(m_Instances, new ColumnarInstances(m_Instances, true), 1e-6);
+    assertEquals("string representation differs", m_Instances.instance(3).toString(), new ColumnarInstances(m_Instances).instance(3).toString());
+  }
+
+  /**
+   * Tests that copies of the views are detached from the columns.
+   */
+  public void testCopyOfInstance() {
+    Instances	data;
+    Instance	inst;
+
+    data = new ColumnarInstances(m_Instances);
+    inst = (Instance) data.instance(0).copy();
+    assertTrue("copy is not a dense instance", inst instanceof DenseInstance);
+    inst.setValue(2, 42);
+    assertEquals("columns changed by copy", m_Instances.instance(0).value(2), data.instance(0).value(2), 0);
+
+    data.instance(0).setValue(2, 42);
+    data.instance(0).setWeight(3);
+    assertEquals("value not written to columns", 42, data.instance(0).value(2), 0);
+    assertEquals("weight not written to columns", 3, data.instance(0).weight(), 0);
+  }
+
+  /**
+   * Tests the column based methods against the ones of Instances.
+   */
+  public void testColumnMethods() {
+    Instances	data;
+
+    data = new ColumnarInstances(m_Instances);
+    for (int n = 0; n < m_Instances.numAttributes(); n++) {
+      double[] expected = m_Instances.attributeToDoubleArray(n);
+      double[] actual   = data.attributeToDoubleArray(n);
+      for (int i = 0; i < expected.length; i++) {
+	assertEquals("missing differs at " + i + "/" + n, Utils.isMissingValue(expected[i]), Utils.isMissingValue(actual[i]));
+	if (!Utils.isMissingValue(expected[i]))
+	  assertEquals("value differs at " + i + "/" + n, expected[i], actual[i], 0);
+      }
+      assertEquals("attribute stats differ for " + n, m_Instances.attributeStats(n).toString(), data.attributeStats(n).toString());
+    }
+    assertEquals("sum of weights differ", m_Instances.sumOfWeights(), data.sumOfWeights(), 1e-12);
+    for (int k = 1; k <= 5; k++) {
+      assertEquals("kth-smallest differs for " + k, new Instances(m_Instances).kthSmallestValue(5, k), data.kthSmallestValue(5, k), 0);
+    }
+  }
+
+  /**
+   * Tests sorting on numeric and nominal attributes.
+   */
+  public void testSort() {
+    Instances	data;
+
+    data = new ColumnarInstances(m_Instances);
+    for (int n = 1; n < m_Instances.numAttributes(); n++) {
+      if (n == 3)
+	continue;
+      Instances expected = new Instances(m_Instances);
+      expected.sort(n);
+      data.sort(n);
+      for (int i = 0; i < expected.numInstances(); i++) {
+	assertEquals("missing differs at " + i + "/" + n, expected.instance(i).isMissing(n), data.instance(i).isMissing(n));
+	if (!expected.instance(i).isMissing(n))
+	  assertEquals("sort order differs at " + i + "/" + n, expected.instance(i).value(n), data.instance(i).value(n), 0);
+      }
+    }
+  }
+
+  /**
+   * Tests inserting and deleting attributes.
+   */
+  public void testAttributeInsertionDeletion() {
+    Instances	expected;
+    Instances	data;
+
+    expected = new Instances(m_Instances);
+    data     = new ColumnarInstances(m_Instances);
+
+    expected.insertAttributeAt(new Attribute("new"), 2);
+    data.insertAttributeAt(new Attribute("new"), 2);
+    assertSameData(expected, data, 0);
+    data.instance(1).setValue(2, 1.5);
+    assertEquals("inserted value not stored", 1.5, data.instance(1).value(2), 0);
+    assertTrue("inserted value not missing", data.instance(0).isMissing(2));
+
+    expected.deleteAttributeAt(4);
+    data.deleteAttributeAt(4);
+    expected.deleteAttributeAt(2);
+    data.deleteAttributeAt(2);
+    assertSameData(expected, data, 0);
+  }
+
+  /**
+   * Tests deleting instances and compacting the columns.
+   */
+  public void testDeleteAndCompactify() {
+    Instances	expected;
+    Instances	data;
+    Instance	removed;
+
+    expected = new Instances(m_Instances);
+    data     = new ColumnarInstances(m_Instances);
+    expected.delete(4);
+    removed = data.remove(4);
+    expected.swap(0, 7);
+    data.swap(0, 7);
+    data.compactify();
+    assertSameData(expected, data, 0);
+    assertEquals("removed instance changed", m_Instances.instance(4).value(2), removed.value(2), 0);
+
+    data.add(m_Instances.instance(0));
+    assertEquals("# of instances differ", expected.numInstances() + 1, data.numInstances());
+    assertEquals("added value differs", m_Instances.instance(0).value(2), data.lastInstance().value(2), 0);
+  }
+
+  /**
+   * Executes the test from command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
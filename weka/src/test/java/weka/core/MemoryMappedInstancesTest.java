@@ -0,0 +1,206 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import weka.core.converters.ConverterUtils.DataSource;
+
+/**
+ * Tests MemoryMappedInstances. Run from the command line with:<p/>
+ * java weka.core.MemoryMappedInstancesTest
+ *
+ * @version $Revision$
+ */
+public class MemoryMappedInstancesTest
+  extends TestCase {
+
+  /** the test instances to work with. */
+  protected Instances m_Instances;
+
+  /** the memory-mapped file. */
+  protected File m_File;
+
+  /**
+   * Constructs the <code>MemoryMappedInstancesTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public MemoryMappedInstancesTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void setUp() throws Exception {
+    TestInstances	test;
+
+    super.setUp();
+
+    test = new TestInstances();
+    test.setNumInstances(50);
+    test.setNumNominal(2);
+    test.setNumNumeric(3);
+    test.setNumDate(1);
+    m_Instances = test.generate();
+    m_Instances.instance(0).setMissing(1);
+    m_Instances.instance(1).setWeight(0.5);
+
+    m_File = File.createTempFile("weka-mmi", MemoryMappedInstances.FILE_EXTENSION);
+    m_File.deleteOnExit();
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception 	if an error occurs
+   */
+  protected void tearDown() throws Exception {
+    m_Instances = null;
+    m_File.delete();
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns the test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(MemoryMappedInstancesTest.class);
+  }
+
+  /**
+   * Compares the header, values and weights of two datasets.
+   *
+   * @param expected	the expected data
+   * @param actual	the data to check
+   */
+  protected void assertSameData(Instances expected, Instances actual) {
+    assertNull(expected.equalHeadersMsg(actual), expected.equalHeadersMsg(actual));
+    assertEquals("# of instances differ", expected.numInstances(), actual.numInstances());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals("instance differs at " + i, expected.instance(i).toString(), actual.instance(i).toString());
+    }
+  }
+
+  /**
+   * Tests writing a dataset and mapping it.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testWriteAndMap() throws Exception {
+    MemoryMappedInstances.write(m_Instances, m_File);
+    assertSameData(m_Instances, new MemoryMappedInstances(m_File));
+  }
+
+  /**
+   * Tests writing a data source.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testWriteDataSource() throws Exception {
+    MemoryMappedInstances.write(new DataSource(m_Instances), m_File);
+    assertSameData(m_Instances, new MemoryMappedInstances(m_File));
+  }
+
+  /**
+   * Tests that the mapped data is read-only unless requested otherwise.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testWritable() throws Exception {
+    Instances	data;
+    Instance	inst;
+
+    MemoryMappedInstances.write(m_Instances, m_File);
+
+    data = new MemoryMappedInstances(m_File);
+    try {
+      data.instance(0).setWeight(2);
+      fail("read-only instance changed");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+    try {
+      data.delete(0);
+      fail("read-only dataset changed");
+    }
+    catch (UnsupportedOperationException e) {
+      // expected
+    }
+    inst = (Instance) data.instance(0).copy();
+    inst.setWeight(2);
+    assertEquals("copy not changed", 2, inst.weight(), 0);
+
+    data = new MemoryMappedInstances(m_File, true);
+    data.instance(2).setWeight(3);
+    data.instance(2).setValue(2, 42);
+    data = new MemoryMappedInstances(m_File);
+    assertEquals("weight not written", 3, data.instance(2).weight(), 0);
+    assertEquals("value not written", 42, data.instance(2).value(2), 0);
+  }
+
+  /**
+   * Tests serializing and deserializing a mapped dataset.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testSerialization() throws Exception {
+    ByteArrayOutputStream	bytes;
+    ObjectOutputStream		out;
+    ObjectInputStream		in;
+    Instances			data;
+
+    MemoryMappedInstances.write(m_Instances, m_File);
+    bytes = new ByteArrayOutputStream();
+    out   = new ObjectOutputStream(bytes);
+    out.writeObject(new MemoryMappedInstances(m_File));
+    out.close();
+    in   = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    data = (Instances) in.readObject();
+    in.close();
+    assertTrue("not memory-mapped", data instanceof MemoryMappedInstances);
+    assertSameData(m_Instances, data);
+  }
+
+  /**
+   * Executes the test from command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
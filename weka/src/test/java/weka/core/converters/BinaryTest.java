@@ -0,0 +1,143 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.converters;
+
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.TestInstances;
+
+import java.io.File;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests BinaryLoader/BinarySaver. Run from the command line with:<p/>
+ * java weka.core.converters.BinaryTest
+ *
+ * @version $Revision$
+ */
+public class BinaryTest
+  extends AbstractFileConverterTest {
+
+  /**
+   * Constructs the <code>BinaryTest</code>.
+   *
+   * @param name the name of the test class
+   */
+  public BinaryTest(String name) {
+    super(name);
+  }
+
+  /**
+   * returns the loader used in the tests
+   *
+   * @return the configured loader
+   */
+  public AbstractLoader getLoader() {
+    return new BinaryLoader();
+  }
+
+  /**
+   * returns the saver used in the tests
+   *
+   * @return the configured saver
+   */
+  public AbstractSaver getSaver() {
+    return new BinarySaver();
+  }
+
+  /**
+   * returns the test data generator, with all attribute types
+   *
+   * @return 	the configured test data generator
+   */
+  protected TestInstances getTestInstances() {
+    TestInstances	result;
+
+    result = super.getTestInstances();
+    result.setNumString(1);
+    result.setNumDate(1);
+    result.setNumRelational(1);
+
+    return result;
+  }
+
+  /**
+   * tests compressed, sparse data split into several blocks and reading
+   * single blocks via the block index. No string attributes, since their
+   * values can get reordered with sparse instances.
+   */
+  public void testBlocks() {
+    BinarySaver		saver;
+    Instances		data;
+    Instances		block;
+    long[][]		index;
+
+    try {
+      m_Instances = new TestInstances().generate();
+      for (int i = 0; i < m_Instances.numInstances(); i += 2)
+	m_Instances.set(i, new SparseInstance(m_Instances.instance(i)));
+
+      saver = new BinarySaver();
+      saver.setCompressOutput(true);
+      saver.setBlockSize(7);
+      saver.setInstances(m_Instances);
+      saver.setFile(new File(m_ExportFilename));
+      saver.writeBatch();
+
+      ((AbstractFileLoader) m_Loader).setFile(new File(m_ExportFilename));
+      data = m_Loader.getDataSet();
+      compareDatasets(m_Instances, data);
+      assertEquals("class index differs", m_Instances.classIndex(), data.classIndex());
+      assertTrue("sparse instance not restored", data.instance(0) instanceof SparseInstance);
+
+      index = BinaryLoader.getBlockIndex(new File(m_ExportFilename));
+      assertEquals("# of blocks differs", (m_Instances.numInstances() + 6) / 7, index[0].length);
+      block = BinaryLoader.readBlock(new File(m_ExportFilename), 1);
+      assertEquals("# of rows differs", 7, block.numInstances());
+      for (int i = 0; i < block.numInstances(); i++)
+	assertEquals("row differs", m_Instances.instance(7 + i).toString(), block.instance(i).toString());
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Block test failed: " + e.toString());
+    }
+  }
+
+  /**
+   * returns a test suite
+   *
+   * @return the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(BinaryTest.class);
+  }
+
+  /**
+   * for running the test from commandline
+   *
+   * @param args the commandline arguments - ignored
+   */
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
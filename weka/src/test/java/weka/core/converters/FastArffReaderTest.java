@@ -0,0 +1,303 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, NZ
+ */
+
+package weka.core.converters;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.TestInstances;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+/**
+ * Tests the FastArffReader against the ArffReader. Run from the command
+ * line with:<p/>
+ * java weka.core.converters.FastArffReaderTest
+ *
+ * @version $Revision$
+ */
+public class FastArffReaderTest
+  extends TestCase {
+
+  /** a hand-written ARFF file with the less common syntax. */
+  public final static String TRICKY =
+      "% a comment\n"
+    + "@relation 'tricky relation'\n"
+    + "\n"
+    + "@attribute num numeric\n"
+    + "@attribute 'nom att' {a, 'b c', \"d,e\", ?x, 1}\n"
+    + "@attribute str string\n"
+    + "@attribute dat date yyyy-MM-dd\n"
+    + "\n"
+    + "@data\n"
+    + "1.5,a,hello,2010-01-31\n"
+    + "\n"
+    + "% comment line\n"
+    + "-2e-3 'b c' 'with \\'quote\\' and \\t tab' '2010-02-01' % trailing comment\r\n"
+    + "?,\"d,e\",?,?,{0.5}\r\n"
+    + "1e400,'?x',\"\\101\\7\\n\",2010-03-03\r"
+    + "0.1234567890123456789,1,'?',2010-03-04\n"
+    + "{0 7, 1 'b c', 3 2010-05-05}\n"
+    + "{1 a} {2.5}\n"
+    + "{}\n"
+    + "-0,a,x,?\n"
+    + "NaN,1,y,?\n"
+    + "0x1p3,1,z,?\n"
+    + "3d,1,z,?";
+
+  /**
+   * Constructs the <code>FastArffReaderTest</code>.
+   *
+   * @param name 	the name of the test
+   */
+  public FastArffReaderTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Returns the test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(FastArffReaderTest.class);
+  }
+
+  /**
+   * Generates a dataset with all attribute types, missing values and
+   * weights.
+   *
+   * @param numInstances	the number of instances
+   * @param sparse		whether to turn the instances into sparse ones
+   * @return			the dataset
+   * @throws Exception		if generation fails
+   */
+  protected Instances generate(int numInstances, boolean sparse) throws Exception {
+    TestInstances	test;
+    Instances		result;
+    Instance		inst;
+
+    test = new TestInstances();
+    test.setNumInstances(numInstances);
+    test.setNumNominal(3);
+    test.setNumNominalValues(4);
+    test.setNumNumeric(4);
+    test.setNumString(1);
+    test.setNumDate(1);
+    test.setNumRelational(1);
+    test.setNumRelationalNumeric(2);
+    test.setNumInstancesRelational(3);
+    result = test.generate();
+
+    for (int i = 0; i < result.numInstances(); i++) {
+      if (i % 7 == 0)
+	result.instance(i).setMissing(i % result.numAttributes());
+      if (i % 5 == 0)
+	result.instance(i).setWeight(0.25 * i);
+      if (sparse) {
+	inst = new SparseInstance(result.instance(i));
+	result.set(i, inst);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Asserts that both datasets have the same header, values and weights.
+   *
+   * @param expected	the expected data
+   * @param actual	the data to check
+   */
+  protected void assertSameData(Instances expected, Instances actual) {
+    assertNull(expected.equalHeadersMsg(actual), expected.equalHeadersMsg(actual));
+    assertEquals("# of instances differ", expected.numInstances(), actual.numInstances());
+    for (int i = 0; i < expected.numInstances(); i++) {
+      assertEquals("class differs at " + i, expected.instance(i).getClass(), actual.instance(i).getClass());
+      assertEquals("weight differs at " + i, expected.instance(i).weight(), actual.instance(i).weight(), 0);
+      assertEquals("# of values differs at " + i, expected.instance(i).numValues(), actual.instance(i).numValues());
+      for (int n = 0; n < expected.instance(i).numValues(); n++) {
+	assertEquals("index differs at " + i + "/" + n, expected.instance(i).index(n), actual.instance(i).index(n));
+	assertEquals("value differs at " + i + "/" + n,
+	    Double.doubleToLongBits(expected.instance(i).valueSparse(n)),
+	    Double.doubleToLongBits(actual.instance(i).valueSparse(n)));
+      }
+    }
+    assertEquals("string representation differs", expected.toString(), actual.toString());
+  }
+
+  /**
+   * Reads the ARFF content with the ArffReader.
+   *
+   * @param content	the ARFF content
+   * @return		the data
+   * @throws IOException	if reading fails
+   */
+  protected Instances readReference(String content) throws IOException {
+    return new ArffLoader.ArffReader(new StringReader(content)).getData();
+  }
+
+  /**
+   * Compares both readers on the given content, reading it completely
+   * and instance by instance.
+   *
+   * @param content	the ARFF content
+   * @throws Exception	if reading fails
+   */
+  protected void checkParity(String content) throws Exception {
+    Instances		expected;
+    Instances		actual;
+    FastArffReader	reader;
+    Instance		inst;
+
+    expected = readReference(content);
+    assertSameData(expected, new FastArffReader(new StringReader(content)).getData());
+
+    reader = new FastArffReader(new StringReader(content), 10);
+    actual = reader.getStructure();
+    while ((inst = reader.readInstance(actual)) != null)
+      actual.add(inst);
+    assertSameData(expected, actual);
+  }
+
+  /**
+   * Tests generated dense data.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testDense() throws Exception {
+    checkParity(generate(100, false).toString());
+  }
+
+  /**
+   * Tests generated sparse data.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testSparse() throws Exception {
+    checkParity(generate(100, true).toString());
+  }
+
+  /**
+   * Tests the less common syntax: comments, quotes, escapes, line breaks,
+   * weights and numbers that need a fallback.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testSyntax() throws Exception {
+    checkParity(TRICKY);
+  }
+
+  /**
+   * Tests that the same errors are reported for broken data.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testErrors() throws Exception {
+    String[]	broken;
+    String	expected;
+    String	actual;
+
+    broken = new String[]{
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x\n\nabc,x\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x\n1,z\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x\n1\n2,y\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n{1 x, 0 1}\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n{0 1, 5 1}\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x,{2 x\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x,{2} 3\n",
+	"@relation r\n@attribute a numeric\n@attribute b {x,y}\n@data\n1,x\n1,"};
+    for (int i = 0; i < broken.length; i++) {
+      expected = null;
+      try {
+	readReference(broken[i]);
+      }
+      catch (IOException e) {
+	expected = e.getMessage();
+      }
+      actual = null;
+      try {
+	new FastArffReader(new StringReader(broken[i]));
+      }
+      catch (IOException e) {
+	actual = e.getMessage();
+      }
+      assertNotNull("no error for " + i, expected);
+      assertEquals("error differs for " + i, expected, actual);
+    }
+  }
+
+  /**
+   * Tests the loader in batch mode with several threads, using enough
+   * data to be split into several chunks, and in incremental mode.
+   *
+   * @throws Exception	if an error occurs
+   */
+  public void testLoader() throws Exception {
+    TestInstances	test;
+    Instances		data;
+    String		content;
+    ArffLoader		loader;
+    Instances		structure;
+    Instances		actual;
+    Instance		inst;
+
+    test = new TestInstances();
+    test.setNumInstances(8000);
+    test.setNumNominal(10);
+    test.setNumNumeric(30);
+    data = test.generate();
+    data.instance(10).setWeight(3);
+    content = data.toString();
+    data    = readReference(content);
+    assertTrue("too little data for several chunks", content.length() > 2 * FastArffReader.CHUNK_SIZE);
+
+    loader = new ArffLoader();
+    loader.setNumExecutionSlots(4);
+    loader.setSource(new ByteArrayInputStream(content.getBytes()));
+    assertSameData(data, loader.getDataSet());
+
+    loader = new ArffLoader();
+    loader.setSource(new ByteArrayInputStream(content.getBytes()));
+    structure = loader.getStructure();
+    actual    = new Instances(structure, 0);
+    while ((inst = loader.getNextInstance(structure)) != null)
+      actual.add(inst);
+    assertSameData(data, actual);
+
+  }
+
+  /**
+   * Executes the test from command-line.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args){
+    TestRunner.run(suite());
+  }
+}
@@ -22,9 +22,12 @@ package weka.core.neighboursearch;
 
 import weka.core.CheckGOE;
 import weka.core.CheckOptionHandler;
+import weka.core.DistanceFunction;
 import weka.core.FastVector;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SerializationHelper;
+import weka.core.Utils;
 import weka.test.Regression;
 
 import java.io.BufferedReader;
@@ -271,6 +274,144 @@ public abstract class AbstractNearestNeighbourSearchTest
     }
   }
   
+  /**
+   * tests whether querying a batch of instances returns the same neighbours
+   * and distances as querying the instances one by one
+   */
+  public void testBatchQuery() {
+    checkBatchQuery(m_NearestNeighbourSearch);
+  }
+
+  /**
+   * Checks whether querying a batch of instances returns the same neighbours
+   * and distances as querying the instances one by one. The batch contains
+   * training instances (which are skipped as their own neighbours) as well
+   * as copies of them.
+   * 
+   * @param search	the search to check
+   */
+  protected void checkBatchQuery(NearestNeighbourSearch search) {
+    Instance[]		targets;
+    Instances[]		neighbors;
+    double[][]		distances;
+    Instances		single;
+    int			i;
+    int			n;
+    
+    targets = new Instance[50];
+    for (i = 0; i < targets.length; i++) {
+      targets[i] = m_Instances.instance(m_Random.nextInt(m_Instances.numInstances()));
+      if (i % 2 == 0)
+	targets[i] = (Instance) targets[i].copy();
+    }
+    
+    try {
+      search.setInstances(m_Instances);
+      distances = new double[targets.length][];
+      neighbors = search.kNearestNeighbours(targets, m_NumNeighbors, distances);
+      for (i = 0; i < targets.length; i++) {
+	single = search.kNearestNeighbours(targets[i], m_NumNeighbors);
+	assertEquals("Neighbors differ for target " + i, 
+	    single.toString(), neighbors[i].toString());
+	assertEquals("Number of distances differs for target " + i, 
+	    search.getDistances().length, distances[i].length);
+	for (n = 0; n < distances[i].length; n++)
+	  assertEquals("Distances differ for target " + i, 
+	      search.getDistances()[n], distances[i][n], 0);
+      }
+    }
+    catch (Exception e) {
+      fail("Batch query failed: " + e);
+    }
+  }
+
+  /**
+   * tests whether range queries return the same neighbours, in the same
+   * order, as a linear scan over the instances
+   */
+  public void testRangeQuery() {
+    int			i;
+    int			n;
+    int			m;
+    int			instIndex;
+    Instance		target;
+    DistanceFunction	df;
+    double[]		all;
+    double[]		radii;
+    double[]		distances;
+    Instances		neighbors;
+    int			count;
+    
+    try {
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+    }
+    catch (Exception e) {
+      fail("Failed setting the instances: " + e);
+    }
+    df = m_NearestNeighbourSearch.getDistanceFunction();
+    
+    for (i = 0; i < 10; i++) {
+      instIndex = m_Random.nextInt(m_Instances.numInstances());
+      // a copy, so that the instance itself is among the neighbors
+      target    = (Instance) m_Instances.instance(instIndex).copy();
+      all       = new double[m_Instances.numInstances()];
+      for (n = 0; n < all.length; n++)
+	all[n] = df.distance(target, m_Instances.instance(n), Double.POSITIVE_INFINITY);
+      df.postProcessDistances(all);
+      radii = new double[]{-1, 0, all[m_Random.nextInt(all.length)], 
+	  all[Utils.sort(all)[all.length / 10]], Double.POSITIVE_INFINITY};
+      
+      for (m = 0; m < radii.length; m++) {
+	try {
+	  neighbors = m_NearestNeighbourSearch.rangeQuery(target, radii[m]);
+	  distances = m_NearestNeighbourSearch.getRangeDistances();
+	}
+	catch (Exception e) {
+	  fail("Failed for radius " + radii[m] + " on instance " 
+	      + (instIndex+1) + ": " + e);
+	  return;
+	}
+	
+	count = 0;
+	for (n = 0; n < all.length; n++) {
+	  if (all[n] <= radii[m])
+	    count++;
+	}
+	assertEquals("Number of neighbors for radius " + radii[m], 
+	    count, neighbors.numInstances());
+	assertEquals("Number of distances for radius " + radii[m], 
+	    count, distances.length);
+	for (n = 0; n < count; n++) {
+	  assertTrue("Distance beyond radius " + radii[m], 
+	      distances[n] <= radii[m]);
+	  if (n > 0)
+	    assertTrue("Neighbors not ordered by distance", 
+		distances[n - 1] <= distances[n]);
+	  assertEquals("Distance differs from neighbor's distance", 
+	      distances[n], 
+	      distance(df, target, neighbors.instance(n)), 1e-10);
+	}
+      }
+    }
+  }
+
+  /**
+   * Returns the (post-processed) distance between two instances.
+   * 
+   * @param df		the distance function to use
+   * @param first	the first instance
+   * @param second	the second instance
+   * @return		the distance
+   */
+  protected double distance(DistanceFunction df, Instance first, Instance second) {
+    double[]	result;
+    
+    result = new double[]{df.distance(first, second, Double.POSITIVE_INFINITY)};
+    df.postProcessDistances(result);
+    
+    return result[0];
+  }
+  
   /**
    * tests whether the tokenizer correctly initializes in the
    * buildTokenizer method
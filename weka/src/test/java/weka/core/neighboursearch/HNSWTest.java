@@ -0,0 +1,154 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+/*
+ * Copyright (C) 2010 University of Waikato, Hamilton, New Zealand
+ */
+
+package weka.core.neighboursearch;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * Tests HNSW. Run from the command line with: <p/>
+ * java weka.core.neighboursearch.HNSWTest
+ *
+ * @version $Revision$
+ */
+public class HNSWTest
+  extends AbstractNearestNeighbourSearchTest {
+
+  public HNSWTest(String name) {
+    super(name);
+  }
+
+  /** Creates a default HNSW */
+  public NearestNeighbourSearch getNearestNeighbourSearch() {
+    return new HNSW();
+  }
+
+  /**
+   * Returns the fraction of the training instances whose k nearest 
+   * neighbours the search finds at the same distances as a linear scan.
+   * 
+   * @param search	the search to check, already built
+   * @param data	the training instances
+   * @return		the fraction of exact answers
+   * @throws Exception	if a search fails
+   */
+  protected double recall(NearestNeighbourSearch search, Instances data) 
+    throws Exception {
+    
+    LinearNNSearch	linear;
+    double[]		exact;
+    double[]		approx;
+    int			correct;
+    int			i;
+    int			n;
+    boolean		same;
+    
+    linear = new LinearNNSearch();
+    linear.setInstances(data);
+    correct = 0;
+    for (i = 0; i < data.numInstances(); i++) {
+      linear.kNearestNeighbours(data.instance(i), m_NumNeighbors);
+      exact = linear.getDistances();
+      search.kNearestNeighbours(data.instance(i), m_NumNeighbors);
+      approx = search.getDistances();
+      same = (exact.length == approx.length);
+      for (n = 0; same && (n < exact.length); n++)
+	same = (Math.abs(exact[n] - approx[n]) < 1e-10);
+      if (same)
+	correct++;
+    }
+    
+    return (double) correct / data.numInstances();
+  }
+  
+  /**
+   * tests whether the default settings find the exact neighbours for
+   * most of the instances
+   */
+  public void testRecall() {
+    try {
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+      assertTrue("Recall too low", recall(m_NearestNeighbourSearch, m_Instances) >= 0.95);
+    }
+    catch (Exception e) {
+      fail("Recall test failed: " + e);
+    }
+  }
+  
+  /**
+   * tests whether instances added incrementally can be found
+   */
+  public void testUpdate() {
+    Instances	data;
+    int		i;
+    
+    try {
+      data = new Instances(m_Instances, 0);
+      for (i = 0; i < 10; i++)
+	data.add(m_Instances.instance(i));
+      m_NearestNeighbourSearch.setInstances(data);
+      for (i = 10; i < m_Instances.numInstances(); i++) {
+	data.add(m_Instances.instance(i));
+	m_NearestNeighbourSearch.update(m_Instances.instance(i));
+      }
+      assertTrue("Recall too low", recall(m_NearestNeighbourSearch, data) >= 0.95);
+    }
+    catch (Exception e) {
+      fail("Update test failed: " + e);
+    }
+  }
+  
+  /**
+   * tests whether a serialized graph returns the same neighbours
+   */
+  public void testSerialization() {
+    NearestNeighbourSearch	copy;
+    Instance			target;
+    int				i;
+    
+    try {
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+      copy = (NearestNeighbourSearch) new SerializedObject(m_NearestNeighbourSearch).getObject();
+      for (i = 0; i < m_Instances.numInstances(); i += 10) {
+	// a copy, since the training instances of the two searches differ
+	target = (Instance) m_Instances.instance(i).copy();
+	assertEquals("Neighbors differ for instance " + (i+1),
+	    m_NearestNeighbourSearch.kNearestNeighbours(target, m_NumNeighbors).toString(),
+	    copy.kNearestNeighbours(target, m_NumNeighbors).toString());
+      }
+    }
+    catch (Exception e) {
+      fail("Serialization test failed: " + e);
+    }
+  }
+  
+  public static Test suite() {
+    return new TestSuite(HNSWTest.class);
+  }
+
+  public static void main(String[] args){
+    junit.textui.TestRunner.run(suite());
+  }
+}
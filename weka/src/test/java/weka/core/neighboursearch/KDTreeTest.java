@@ -20,6 +20,11 @@
 
 package weka.core.neighboursearch;
 
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.TestInstances;
+import weka.core.Utils;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -41,6 +46,136 @@ public class KDTreeTest
   public NearestNeighbourSearch getNearestNeighbourSearch() {
     return new KDTree();
   }
+
+  /**
+   * Checks whether two searches return the same neighbours and distances
+   * for all the instances.
+   * 
+   * @param expected	the search with the expected results
+   * @param actual	the search to check
+   * @param data	the instances to query
+   * @throws Exception	if a search fails
+   */
+  protected void checkSameNeighbors(NearestNeighbourSearch expected, 
+      NearestNeighbourSearch actual, Instances data) throws Exception {
+    
+    Instance	target;
+    int		i;
+    
+    for (i = 0; i < data.numInstances(); i++) {
+      target = (i % 2 == 0) ? data.instance(i) : (Instance) data.instance(i).copy();
+      assertEquals("Neighbors differ for instance " + (i+1),
+	  expected.kNearestNeighbours(target, m_NumNeighbors).toString(),
+	  actual.kNearestNeighbours(target, m_NumNeighbors).toString());
+      assertEquals("Distances differ for instance " + (i+1),
+	  Utils.arrayToString(expected.getDistances()),
+	  Utils.arrayToString(actual.getDistances()));
+    }
+  }
+
+  /**
+   * tests whether the flat tree returns the same neighbours as the tree 
+   * nodes, which are searched while measuring the performance, and whether
+   * it ignores date attributes like the distance function does
+   */
+  public void testFlatTree() {
+    TestInstances	test;
+    Instances		data;
+    KDTree		nodes;
+    LinearNNSearch	linear;
+    
+    try {
+      nodes = new KDTree();
+      nodes.setMeasurePerformance(true);
+      nodes.setInstances(m_Instances);
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+      checkSameNeighbors(nodes, m_NearestNeighbourSearch, m_Instances);
+
+      test = new TestInstances();
+      test.setNumInstances(200);
+      test.setNumNominal(1);
+      test.setNumNumeric(2);
+      test.setNumDate(2);
+      data = test.generate();
+      nodes.setInstances(data);
+      linear = new LinearNNSearch();
+      linear.setInstances(data);
+      m_NearestNeighbourSearch.setInstances(data);
+      checkSameNeighbors(nodes, m_NearestNeighbourSearch, data);
+      checkSameNeighbors(linear, m_NearestNeighbourSearch, data);
+    }
+    catch (Exception e) {
+      fail("Flat tree test failed: " + e);
+    }
+  }
+
+  /**
+   * tests whether building the tree in parallel results in the same tree
+   */
+  public void testNumExecutionSlots() {
+    KDTree	parallel;
+    
+    try {
+      parallel = new KDTree();
+      parallel.setMaxInstInLeaf(5);
+      parallel.setNumExecutionSlots(3);
+      parallel.setInstances(m_Instances);
+      ((KDTree) m_NearestNeighbourSearch).setMaxInstInLeaf(5);
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+      assertEquals("Tree sizes differ", 
+	  ((KDTree) m_NearestNeighbourSearch).measureTreeSize(), parallel.measureTreeSize());
+      assertEquals("Numbers of leaves differ", 
+	  ((KDTree) m_NearestNeighbourSearch).measureNumLeaves(), parallel.measureNumLeaves());
+      assertEquals("Depths differ", 
+	  ((KDTree) m_NearestNeighbourSearch).measureMaxDepth(), parallel.measureMaxDepth());
+      checkSameNeighbors(m_NearestNeighbourSearch, parallel, m_Instances);
+    }
+    catch (Exception e) {
+      fail("Parallel build test failed: " + e);
+    }
+  }
+
+  /**
+   * tests whether the tree finds the neighbours at the same distances as a 
+   * linear scan after adding instances, with and without rebuilding it
+   */
+  public void testUpdate() {
+    Instances		data;
+    KDTree		tree;
+    LinearNNSearch	linear;
+    Instance		target;
+    double[]		rebuildFactors;
+    int			i;
+    int			n;
+    
+    rebuildFactors = new double[]{0, 0.1, 1};
+    try {
+      for (n = 0; n < rebuildFactors.length; n++) {
+	data = new Instances(m_Instances, 0, 10);
+	tree = new KDTree();
+	tree.setRebuildFactor(rebuildFactors[n]);
+	tree.setInstances(data);
+	for (i = 10; i < m_Instances.numInstances(); i++) {
+	  data.add(m_Instances.instance(i));
+	  tree.update(data.instance(data.numInstances() - 1));
+	  if (i % 10 == 0) {
+	    linear = new LinearNNSearch(data);
+	    linear.setDistanceFunction(tree.getDistanceFunction());
+	    target = (Instance) m_Instances.instance(m_Random.nextInt(i)).copy();
+	    tree.kNearestNeighbours(target, m_NumNeighbors);
+	    linear.kNearestNeighbours(target, m_NumNeighbors);
+	    assertEquals("Distances differ after adding " + (i - 9) 
+		+ " instances with rebuild factor " + rebuildFactors[n],
+		Utils.arrayToString(linear.getDistances()),
+		Utils.arrayToString(tree.getDistances()));
+	  }
+	}
+      }
+    }
+    catch (Exception e) {
+      fail("Update test failed: " + e);
+    }
+  }
   
   public static Test suite() {
     return new TestSuite(KDTreeTest.class);
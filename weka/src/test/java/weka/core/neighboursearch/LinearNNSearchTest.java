@@ -20,6 +20,10 @@
 
 package weka.core.neighboursearch;
 
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
@@ -42,6 +46,74 @@ public class LinearNNSearchTest
     return new LinearNNSearch();
   }
   
+  /**
+   * tests whether answering a batch of queries in parallel returns the same
+   * neighbours as querying the instances one by one
+   */
+  public void testNumExecutionSlots() {
+    LinearNNSearch	search;
+    
+    search = new LinearNNSearch();
+    search.setNumExecutionSlots(3);
+    checkBatchQuery(search);
+  }
+  
+  /**
+   * tests whether the default range query of NearestNeighbourSearch, which 
+   * subclasses that don't implement their own get, returns the same 
+   * neighbours and distances as the linear search
+   */
+  public void testDefaultRangeQuery() {
+    NearestNeighbourSearch	search;
+    Instance			target;
+    double[]			radii;
+    int				i;
+    int				n;
+    
+    search = new NearestNeighbourSearch() {
+      private static final long serialVersionUID = 1L;
+      public Instance nearestNeighbour(Instance target) throws Exception {
+	return rangeQuery(target, Double.POSITIVE_INFINITY).instance(0);
+      }
+      public Instances kNearestNeighbours(Instance target, int k) throws Exception {
+	throw new UnsupportedOperationException();
+      }
+      public double[] getDistances() throws Exception {
+	throw new UnsupportedOperationException();
+      }
+      public void setInstances(Instances insts) throws Exception {
+	super.setInstances(insts);
+	m_DistanceFunction.setInstances(insts);
+      }
+      public void update(Instance ins) throws Exception {
+      }
+      public String getRevision() {
+	return "";
+      }
+    };
+    radii = new double[]{-1, 0, 0.5, 1, Double.POSITIVE_INFINITY};
+    try {
+      search.setInstances(m_Instances);
+      m_NearestNeighbourSearch.setInstances(m_Instances);
+      for (i = 0; i < 10; i++) {
+	target = m_Instances.instance(m_Random.nextInt(m_Instances.numInstances()));
+	if (i % 2 == 1)
+	  target = (Instance) target.copy();
+	for (n = 0; n < radii.length; n++) {
+	  assertEquals("Neighbors differ for radius " + radii[n],
+	      m_NearestNeighbourSearch.rangeQuery(target, radii[n]).toString(),
+	      search.rangeQuery(target, radii[n]).toString());
+	  assertEquals("Distances differ for radius " + radii[n],
+	      Utils.arrayToString(m_NearestNeighbourSearch.getRangeDistances()),
+	      Utils.arrayToString(search.getRangeDistances()));
+	}
+      }
+    }
+    catch (Exception e) {
+      fail("Default range query failed: " + e);
+    }
+  }
+  
   public static Test suite() {
     return new TestSuite(LinearNNSearchTest.class);
   }
@@ -29,6 +29,7 @@ import weka.core.Instances;
 import weka.core.OptionHandler;
 import weka.core.SerializationHelper;
 import weka.core.TestInstances;
+import weka.core.Utils;
 import weka.core.Capabilities.Capability;
 import weka.test.Regression;
 
@@ -604,6 +605,52 @@ public abstract class AbstractFilterTest
     }
   }
   
+  /**
+   * tests that filters implementing convertInto(Instance, double[])
+   * produce the same values as input()/output(). String attributes are
+   * removed from the data beforehand, since their values can't be stored
+   * in an array of values.
+   */
+  public void testConvertInto() {
+    Instances	data;
+    Instance	filtered;
+    double[]	values;
+    int		i;
+    int		n;
+
+    try {
+      if (m_Filter.getClass().getMethod("convertInto", Instance.class, double[].class).getDeclaringClass() == Filter.class)
+	return;
+
+      data = new Instances(m_Instances);
+      for (i = data.numAttributes() - 1; i >= 0; i--) {
+	if (data.attribute(i).isString() || data.attribute(i).isRelationValued())
+	  data.deleteAttributeAt(i);
+      }
+      m_Filter.setInputFormat(data);
+      Filter.useFilter(data, m_Filter);
+      assertTrue("can't convert into array of values", m_Filter.canConvertInto());
+
+      values = new double[m_Filter.getOutputFormat().numAttributes()];
+      for (i = 0; i < data.numInstances(); i++) {
+	m_Filter.input(data.instance(i));
+	m_Filter.batchFinished();
+	filtered = m_Filter.output();
+	m_Filter.convertInto(data.instance(i), values);
+	for (n = 0; n < values.length; n++) {
+	  if (filtered.isMissing(n))
+	    assertTrue("value should be missing", Utils.isMissingValue(values[n]));
+	  else
+	    assertEquals("value differs", filtered.value(n), values[n], 0.0);
+	}
+      }
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+      fail("Problem with convertInto: " + e.toString());
+    }
+  }
+
   /**
    * simulates batch filtering
    */